@@ -0,0 +1,175 @@
+package de.otto.edison.eventsourcing.consumer;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Logs the time and bytes allocated per event of the invokers bound by the {@link MethodInvokingEventConsumer},
+ * compared to calling the consumer method using {@link Method#invoke(Object, Object...)}, as before.
+ * <p>
+ *     The numbers are measured after a warm-up and depend on the JIT, so they are only logged, and this is part of the
+ *     {@code benchmark} task instead of the unit tests. The behaviour of the invokers is tested by
+ *     {@link MethodInvokingEventConsumerTest}.
+ * </p>
+ * <p>
+ *     Every invoker is measured by a test method and loop of its own, so the call site only ever sees a single
+ *     consumer class and the JIT is able to inline it, like in an application consuming with a single method.
+ *     The {@code benchmark} task forks a new JVM for every benchmark class, so the profiles are not shared with
+ *     other benchmarks either.
+ * </p>
+ */
+public class MethodInvokingEventConsumerBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MethodInvokingEventConsumerBenchmark.class);
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    private final Event<Object> event = new Event<>("someKey", new Object(), "0", Instant.now(), Duration.ZERO);
+
+    @Test
+    public void shouldMeasureReflection() throws Exception {
+        // given
+        final PublicCounter counter = new PublicCounter();
+        final Method method = PublicCounter.class.getMethod("count", Event.class);
+        final Consumer<Event<Object>> reflection = event -> {
+            try {
+                method.invoke(counter, event);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        final Stopwatch stopwatch = new Stopwatch();
+
+        // when
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            reflection.accept(event);
+        }
+        stopwatch.start();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            reflection.accept(event);
+        }
+        final Measurement measurement = stopwatch.stop();
+
+        // then
+        LOG.info("Per event using Method.invoke: {}", measurement);
+        assertThat(counter.count, is((long) WARMUP_ITERATIONS + ITERATIONS));
+    }
+
+    @Test
+    public void shouldMeasureLambdaInvoker() throws Exception {
+        // given
+        final PublicCounter counter = new PublicCounter();
+        final Method method = PublicCounter.class.getMethod("count", Event.class);
+        final Consumer<Event<Object>> lambda = new MethodInvokingEventConsumer<>("stream", ".*", counter, method).consumerFunction();
+        final Stopwatch stopwatch = new Stopwatch();
+
+        // when
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            lambda.accept(event);
+        }
+        stopwatch.start();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            lambda.accept(event);
+        }
+        final Measurement measurement = stopwatch.stop();
+
+        // then
+        LOG.info("Per event using LambdaMetafactory: {}", measurement);
+        assertThat(counter.count, is((long) WARMUP_ITERATIONS + ITERATIONS));
+    }
+
+    @Test
+    public void shouldMeasureMethodHandleInvoker() throws Exception {
+        // given
+        final NonPublicCounter counter = new NonPublicCounter();
+        final Method method = NonPublicCounter.class.getDeclaredMethod("count", Event.class);
+        final Consumer<Event<Object>> methodHandle = new MethodInvokingEventConsumer<>("stream", ".*", counter, method).consumerFunction();
+        final Stopwatch stopwatch = new Stopwatch();
+
+        // when
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            methodHandle.accept(event);
+        }
+        stopwatch.start();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            methodHandle.accept(event);
+        }
+        final Measurement measurement = stopwatch.stop();
+
+        // then
+        LOG.info("Per event using MethodHandle: {}", measurement);
+        assertThat(counter.count, is((long) WARMUP_ITERATIONS + ITERATIONS));
+    }
+
+    /**
+     * Measures time and bytes allocated by the current thread, without calling the measured code itself.
+     */
+    private static final class Stopwatch {
+        private final com.sun.management.ThreadMXBean allocations;
+        private final long threadId = Thread.currentThread().getId();
+        private long bytesBefore;
+        private long nanosBefore;
+
+        private Stopwatch() {
+            final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+            allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+            assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+        }
+
+        private void start() {
+            bytesBefore = allocations.getThreadAllocatedBytes(threadId);
+            nanosBefore = System.nanoTime();
+        }
+
+        private Measurement stop() {
+            final long nanos = System.nanoTime() - nanosBefore;
+            final long bytes = allocations.getThreadAllocatedBytes(threadId) - bytesBefore;
+            return new Measurement((double) nanos / ITERATIONS, bytes / ITERATIONS);
+        }
+    }
+
+    private static final class Measurement {
+        private final double nanos;
+        private final long bytes;
+
+        private Measurement(final double nanos, final long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f ns, %d bytes", nanos, bytes);
+        }
+    }
+
+    public static class PublicCounter {
+        private long count;
+
+        public void count(final Event<Object> event) {
+            ++count;
+        }
+    }
+
+    static class NonPublicCounter {
+        private long count;
+
+        void count(final Event<Object> event) {
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.otto.edison.eventsourcing.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.encryption.Base64EncodingTextEncryptor;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the bytes allocated per decoded event by the {@link PayloadCodec} with the String based decoding used
+ * before: {@code ByteBuffer -> String -> TextEncryptor.decrypt(String) -> ObjectMapper.readValue(String)}.
+ * <p>
+ *     Allocated bytes are measured using the allocation counter of the current thread, after a warm-up, so the
+ *     numbers include the allocations of Jackson and the encryptor. The results depend on the JIT, so this is part of
+ *     the {@code benchmark} task instead of the unit tests; that both decodings return the same values is tested by
+ *     {@link PayloadCodecTest}.
+ * </p>
+ */
+public class PayloadCodecAllocationBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PayloadCodecAllocationBenchmark.class);
+
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 20000;
+    private static final String PAYLOAD = "{\"values\":[" + Strings.repeat("{\"name\":\"bänänä\",\"price\":42},", 30) + "{}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldAllocateLessThanStringBasedDecodingWithoutEncryption() throws Exception {
+        assertCodecAllocatesLess("noOpText", Encryptors.noOpText());
+    }
+
+    @Test
+    public void shouldAllocateLessThanStringBasedDecodingWithEncryption() throws Exception {
+        assertCodecAllocatesLess("Base64EncodingTextEncryptor", new Base64EncodingTextEncryptor(Encryptors.standard("test", "deadbeef")));
+    }
+
+    private void assertCodecAllocatesLess(final String name, final TextEncryptor textEncryptor) {
+        // given
+        final ByteBuffer data = ByteBuffer.wrap(textEncryptor.encrypt(PAYLOAD).getBytes(UTF_8)).asReadOnlyBuffer();
+        final PayloadCodec codec = new PayloadCodec(objectMapper, textEncryptor, PayloadCompressor.none());
+        final Function<ByteBuffer, Map> stringBased = buffer -> {
+            try {
+                return objectMapper.readValue(textEncryptor.decrypt(UTF_8.decode(buffer.duplicate()).toString()), Map.class);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        final Function<ByteBuffer, Map> bytesBased = buffer -> codec.decode(buffer, Map.class);
+
+        // when
+        final long stringBasedBytes = allocatedBytesPerEvent(stringBased, data);
+        final long bytesBasedBytes = allocatedBytesPerEvent(bytesBased, data);
+
+        // then
+        LOG.info("Allocated bytes per event using {}: String based decoding {}, PayloadCodec {}", name, stringBasedBytes, bytesBasedBytes);
+        assertThat(bytesBasedBytes, lessThan(stringBasedBytes));
+    }
+
+    private long allocatedBytesPerEvent(final Function<ByteBuffer, Map> decoder, final ByteBuffer data) {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        long size = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            size += decoder.apply(data).size();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            size += decoder.apply(data).size();
+        }
+        final long after = allocations.getThreadAllocatedBytes(threadId);
+        assertThat(size, lessThan(Long.MAX_VALUE));
+        return (after - before) / ITERATIONS;
+    }
+}
@@ -1,16 +1,20 @@
 package de.otto.edison.eventsourcing;
 
+import de.otto.edison.eventsourcing.consumer.AsyncEventSource;
 import de.otto.edison.eventsourcing.consumer.Event;
-import de.otto.edison.eventsourcing.consumer.EventSource;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
 import de.otto.edison.eventsourcing.kinesis.KinesisEventSource;
 import de.otto.edison.eventsourcing.s3.SnapshotEventSource;
 
+import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-public class CompactingKinesisEventSource<T> implements EventSource<T> {
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+public class CompactingKinesisEventSource<T> implements AsyncEventSource<T> {
 
     private final SnapshotEventSource snapshotEventSource;
     private final KinesisEventSource kinesisEventSource;
@@ -35,9 +39,57 @@ public class CompactingKinesisEventSource<T> implements EventSource<T> {
         return streamName;
     }
 
+    /**
+     * Consumes the latest snapshot, followed by the Kinesis stream starting at the position of the snapshot.
+     * <p>
+     *     If {@code startFrom} contains the positions of shards, for example the last checkpoint of a consumer, the
+     *     snapshot is skipped and the stream is consumed starting at {@code startFrom}.
+     * </p>
+     */
     @Override
     public StreamPosition consumeAll(StreamPosition startFrom, Predicate<Event<T>> stopCondition, Consumer<Event<T>> consumer) {
+        if (!startFrom.shards().isEmpty()) {
+            return kinesisEventSource.consumeAll(startFrom, stopCondition, consumer);
+        }
         final StreamPosition streamPosition = snapshotEventSource.consumeAll(stopCondition, consumer);
         return kinesisEventSource.consumeAll(streamPosition, stopCondition, consumer);
     }
+
+    /**
+     * Consumes the latest snapshot in the calling thread, followed by the Kinesis stream starting at the position of
+     * the snapshot, like {@link #consumeAll(StreamPosition, Predicate, Consumer)}.
+     * <p>
+     *     The Kinesis stream is consumed without blocking the calling thread if the Kinesis event source is an
+     *     {@link AsyncEventSource}; otherwise, it is consumed by the calling thread, too, and the returned future is
+     *     already completed.
+     * </p>
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<StreamPosition> consumeAllAsync(StreamPosition startFrom, Predicate<Event<T>> stopCondition, Consumer<Event<T>> consumer) {
+        final StreamPosition kinesisStartFrom = startFrom.shards().isEmpty()
+                ? snapshotEventSource.consumeAll(stopCondition, consumer)
+                : startFrom;
+        if (kinesisEventSource instanceof AsyncEventSource) {
+            return ((AsyncEventSource<T>) kinesisEventSource).consumeAllAsync(kinesisStartFrom, stopCondition, consumer);
+        }
+        return completedFuture(kinesisEventSource.consumeAll(kinesisStartFrom, stopCondition, consumer));
+    }
+
+    /**
+     * Consumes the latest snapshot, followed by the Kinesis stream starting at the position of the snapshot, until
+     * all shards of the stream have caught up.
+     * <p>
+     *     Like {@link #consumeAll(StreamPosition, Predicate, Consumer)}, the snapshot is skipped if {@code startFrom}
+     *     contains the positions of shards.
+     * </p>
+     */
+    @Override
+    public StreamPosition consumeUntilCaughtUp(StreamPosition startFrom, Duration tolerance, Consumer<Event<T>> consumer) {
+        if (!startFrom.shards().isEmpty()) {
+            return kinesisEventSource.consumeUntilCaughtUp(startFrom, tolerance, consumer);
+        }
+        final StreamPosition streamPosition = snapshotEventSource.consumeAll(consumer);
+        return kinesisEventSource.consumeUntilCaughtUp(streamPosition, tolerance, consumer);
+    }
 }
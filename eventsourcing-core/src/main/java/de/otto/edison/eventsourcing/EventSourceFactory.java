@@ -1,17 +1,34 @@
 package de.otto.edison.eventsourcing;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
 import de.otto.edison.eventsourcing.consumer.EventSource;
+import de.otto.edison.eventsourcing.kinesis.AsyncKinesisEventSource;
+import de.otto.edison.eventsourcing.kinesis.FanOutKinesisEventSource;
 import de.otto.edison.eventsourcing.kinesis.KinesisEventSource;
 import de.otto.edison.eventsourcing.kinesis.KinesisStream;
+import de.otto.edison.eventsourcing.kinesis.ShardExecutor;
+import de.otto.edison.eventsourcing.kinesis.ShardSubscriptionClient;
+import de.otto.edison.eventsourcing.kinesis.StreamScheduler;
+import de.otto.edison.eventsourcing.lease.ShardLeaseCoordinator;
+import de.otto.edison.eventsourcing.lease.ShardLeaseTable;
 import de.otto.edison.eventsourcing.s3.SnapshotConsumerService;
 import de.otto.edison.eventsourcing.s3.SnapshotEventSource;
 import de.otto.edison.eventsourcing.s3.SnapshotReadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.UUID;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
 
 @Component
 public class EventSourceFactory {
@@ -22,18 +39,73 @@ public class EventSourceFactory {
     private final ObjectMapper objectMapper;
     private final KinesisClient kinesisClient;
     private final TextEncryptor textEncryptor;
+    private final EventSourcingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ShardSubscriptionClient shardSubscriptionClient;
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final CheckpointStore checkpointStore;
+    private final ShardLeaseTable shardLeaseTable;
+    private StreamScheduler streamScheduler;
+    private ShardLeaseCoordinator leaseCoordinator;
+
+    public EventSourceFactory(
+            SnapshotReadService snapshotReadService,
+            SnapshotConsumerService snapshotConsumerService,
+            ObjectMapper objectMapper,
+            KinesisClient kinesisClient,
+            TextEncryptor textEncryptor,
+            EventSourcingProperties properties,
+            MeterRegistry meterRegistry) {
+        this(snapshotReadService, snapshotConsumerService, objectMapper, kinesisClient, textEncryptor, properties, meterRegistry, null, null, null, null);
+    }
+
+    public EventSourceFactory(
+            SnapshotReadService snapshotReadService,
+            SnapshotConsumerService snapshotConsumerService,
+            ObjectMapper objectMapper,
+            KinesisClient kinesisClient,
+            TextEncryptor textEncryptor,
+            EventSourcingProperties properties,
+            MeterRegistry meterRegistry,
+            ShardSubscriptionClient shardSubscriptionClient,
+            KinesisAsyncClient kinesisAsyncClient,
+            CheckpointStore checkpointStore) {
+        this(snapshotReadService, snapshotConsumerService, objectMapper, kinesisClient, textEncryptor, properties, meterRegistry, shardSubscriptionClient, kinesisAsyncClient, checkpointStore, null);
+    }
 
+    /**
+     * @param shardSubscriptionClient client used by {@link FanOutKinesisEventSource fan-out event sources}; may be
+     *                                null, if no fan-out event sources are used.
+     * @param kinesisAsyncClient client used by {@link AsyncKinesisEventSource async event sources}; may be null, if
+     *                           no async event sources are used.
+     * @param checkpointStore store used to checkpoint the positions of Kinesis event sources; may be null, if
+     *                        checkpointing is disabled.
+     * @param shardLeaseTable table of the leases used to split the shards of Kinesis event sources between instances;
+     *                        may be null, if leasing is disabled.
+     */
     public EventSourceFactory(
             SnapshotReadService snapshotReadService,
             SnapshotConsumerService snapshotConsumerService,
             ObjectMapper objectMapper,
             KinesisClient kinesisClient,
-            TextEncryptor textEncryptor) {
+            TextEncryptor textEncryptor,
+            EventSourcingProperties properties,
+            MeterRegistry meterRegistry,
+            ShardSubscriptionClient shardSubscriptionClient,
+            KinesisAsyncClient kinesisAsyncClient,
+            CheckpointStore checkpointStore,
+            ShardLeaseTable shardLeaseTable) {
         this.snapshotReadService = snapshotReadService;
         this.snapshotConsumerService = snapshotConsumerService;
         this.objectMapper = objectMapper;
         this.kinesisClient = kinesisClient;
         this.textEncryptor = textEncryptor;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.shardSubscriptionClient = shardSubscriptionClient;
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.checkpointStore = checkpointStore;
+        this.shardLeaseTable = shardLeaseTable;
     }
 
     public <T> EventSource<T> createEventSource(Class<? extends EventSource> eventSourceClazz, String streamName, Class<T> payloadClazz) {
@@ -47,22 +119,121 @@ public class EventSourceFactory {
             return createKinesisEventSource(streamName, payloadClazz);
         } else if (eventSourceClazz.equals(CompactingKinesisEventSource.class)) {
             return createCompactingKinesisEventSource(streamName, payloadClazz);
+        } else if (eventSourceClazz.equals(FanOutKinesisEventSource.class)) {
+            return createFanOutKinesisEventSource(streamName, payloadClazz);
+        } else if (eventSourceClazz.equals(AsyncKinesisEventSource.class)) {
+            return createAsyncKinesisEventSource(streamName, payloadClazz);
         }
         throw new IllegalArgumentException("Unknown event source type to create instance.");
     }
 
     public <T> KinesisEventSource<T> createKinesisEventSource(String streamName, Class<T> payloadClazz) {
-        KinesisStream kinesisStream = new KinesisStream(kinesisClient, streamName, objectMapper, textEncryptor);
-        return new KinesisEventSource<>(payloadClazz, objectMapper, kinesisStream, textEncryptor);
+        return withShardLeasing(createUnleasedKinesisEventSource(streamName, payloadClazz));
+    }
+
+    /**
+     * Creates the Kinesis event source of {@link KinesisEventSource} and {@link CompactingKinesisEventSource}:
+     * an {@link AsyncKinesisEventSource} if async event sources are enabled, which is the default, otherwise a
+     * blocking event source with a thread per shard.
+     */
+    private <T> KinesisEventSource<T> createUnleasedKinesisEventSource(String streamName, Class<T> payloadClazz) {
+        if (isAsyncEnabled()) {
+            return createUnleasedAsyncKinesisEventSource(streamName, payloadClazz);
+        }
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, streamName, objectMapper, textEncryptor, properties, meterRegistry);
+        return withCheckpointing(withKeyOrderedLanes(new KinesisEventSource<>(payloadClazz, objectMapper, kinesisStream, textEncryptor, createShardExecutor(streamName))));
+    }
+
+    private boolean isAsyncEnabled() {
+        return properties.getKinesis().getAsync().isEnabled() && kinesisAsyncClient != null;
+    }
+
+    public <T> FanOutKinesisEventSource<T> createFanOutKinesisEventSource(String streamName, Class<T> payloadClazz) {
+        if (shardSubscriptionClient == null) {
+            throw new IllegalStateException("Unable to create FanOutKinesisEventSource: no ShardSubscriptionClient configured");
+        }
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, streamName, objectMapper, textEncryptor, properties, meterRegistry);
+        return withShardLeasing(withCheckpointing(withKeyOrderedLanes(new FanOutKinesisEventSource<>(payloadClazz, objectMapper, kinesisStream, textEncryptor, createShardExecutor(streamName), shardSubscriptionClient))));
+    }
+
+    public <T> AsyncKinesisEventSource<T> createAsyncKinesisEventSource(String streamName, Class<T> payloadClazz) {
+        if (kinesisAsyncClient == null) {
+            throw new IllegalStateException("Unable to create AsyncKinesisEventSource: no KinesisAsyncClient configured");
+        }
+        return withShardLeasing(createUnleasedAsyncKinesisEventSource(streamName, payloadClazz));
+    }
+
+    private <T> AsyncKinesisEventSource<T> createUnleasedAsyncKinesisEventSource(String streamName, Class<T> payloadClazz) {
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, streamName, objectMapper, textEncryptor, properties, meterRegistry);
+        return withCheckpointing(withKeyOrderedLanes(new AsyncKinesisEventSource<>(payloadClazz, objectMapper, kinesisStream, textEncryptor, kinesisAsyncClient, getStreamScheduler().forStream(streamName))));
+    }
+
+    private <S extends KinesisEventSource<?>> S withCheckpointing(S eventSource) {
+        if (checkpointStore != null) {
+            final EventSourcingProperties.Checkpoint checkpoint = properties.getCheckpoint();
+            eventSource.withCheckpointing(checkpointStore, checkpoint.getMaxRecords(), Duration.ofMillis(checkpoint.getMaxIntervalMillis()));
+        }
+        return eventSource;
+    }
+
+    private <S extends KinesisEventSource<?>> S withShardLeasing(S eventSource) {
+        if (shardLeaseTable != null) {
+            eventSource.withShardLeasing(getLeaseCoordinator());
+        }
+        return eventSource;
+    }
+
+    private synchronized ShardLeaseCoordinator getLeaseCoordinator() {
+        if (leaseCoordinator == null) {
+            final EventSourcingProperties.Leasing leasing = properties.getLeasing();
+            final String owner = leasing.getOwner() != null ? leasing.getOwner() : UUID.randomUUID().toString();
+            leaseCoordinator = new ShardLeaseCoordinator(shardLeaseTable, owner, Duration.ofMillis(leasing.getLeaseDurationMillis()));
+        }
+        return leaseCoordinator;
+    }
+
+    private <S extends KinesisEventSource<?>> S withKeyOrderedLanes(S eventSource) {
+        final EventSourcingProperties.Lanes lanes = properties.getKinesis().getLanes();
+        if (lanes.getPerShard() > 1) {
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("edison-eventsourcing-" + eventSource.getStreamName() + "-lane-");
+            threadFactory.setDaemon(true);
+            eventSource.withKeyOrderedLanes(lanes.getPerShard(), lanes.getMaxPendingEvents(), newCachedThreadPool(threadFactory));
+        }
+        return eventSource;
+    }
+
+    /**
+     * Shuts down the {@link StreamScheduler} of the async event sources, if one was created.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (streamScheduler != null) {
+            streamScheduler.shutdown();
+        }
+    }
+
+    private synchronized StreamScheduler getStreamScheduler() {
+        if (streamScheduler == null) {
+            streamScheduler = new StreamScheduler(properties.getKinesis().getAsync().getSchedulerThreads(), meterRegistry);
+        }
+        return streamScheduler;
+    }
+
+    private ShardExecutor createShardExecutor(String streamName) {
+        return new ShardExecutor(streamName, properties.getKinesis().getThreads().isVirtual(), meterRegistry);
     }
 
     public <T> SnapshotEventSource<T> createSnapshotEventSource(String streamName, Class<T> payloadClazz) {
         return new SnapshotEventSource<>(streamName, snapshotReadService, snapshotConsumerService, payloadClazz);
     }
 
+    /**
+     * Creates a CompactingKinesisEventSource. Shard leasing is not used, as the snapshot contains all shards, and
+     * compactions need to consume all shards of the stream.
+     */
     public <T> CompactingKinesisEventSource<T> createCompactingKinesisEventSource(String streamName, Class<T> payloadClazz) {
         return new CompactingKinesisEventSource<>(
                 createSnapshotEventSource(streamName, payloadClazz),
-                createKinesisEventSource(streamName, payloadClazz));
+                createUnleasedKinesisEventSource(streamName, payloadClazz));
     }
 }
@@ -42,6 +42,12 @@ public @interface EventSourceConsumer {
 
     /**
      * The type of event source that should by instantiated and used for consumption.
+     * <p>
+     *     Supported types are {@code CompactingKinesisEventSource}, {@code KinesisEventSource},
+     *     {@code SnapshotEventSource}, {@code FanOutKinesisEventSource} and {@code AsyncKinesisEventSource}.
+     *     {@code FanOutKinesisEventSource} requires a {@code ShardSubscriptionClient} bean, {@code AsyncKinesisEventSource}
+     *     requires a {@code KinesisAsyncClient} bean (see {@code edison.eventsourcing.kinesis.async.enabled}).
+     * </p>
      * @return event source type; defaults to <code>CompactingKinesisEventSource.class</code>
      */
     Class<? extends EventSource> eventSourceType() default CompactingKinesisEventSource.class;
@@ -0,0 +1,40 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checkpoints are stored as properties files, mapping shard ids to positions.
+ */
+final class CheckpointFormat {
+
+    private CheckpointFormat() {
+    }
+
+    static byte[] write(final StreamPosition position) {
+        final Properties properties = new Properties();
+        position.shards().forEach(shardId -> properties.setProperty(shardId, position.positionOf(shardId)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            properties.store(out, null);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static StreamPosition read(final InputStream in) throws IOException {
+        final Properties properties = new Properties();
+        properties.load(in);
+        final Map<String, String> positions = new HashMap<>();
+        properties.stringPropertyNames().forEach(shardId -> positions.put(shardId, properties.getProperty(shardId)));
+        return StreamPosition.of(positions);
+    }
+}
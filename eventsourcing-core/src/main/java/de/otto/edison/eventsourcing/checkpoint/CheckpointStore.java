@@ -0,0 +1,32 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+
+import java.util.Optional;
+
+/**
+ * Persists the positions of consumed streams, so a consumer is able to continue where it stopped after a restart,
+ * instead of replaying the stream from the latest snapshot.
+ * <p>
+ *     Checkpoints are written by the {@link Checkpointer} of a Kinesis event source, and read by the
+ *     {@link de.otto.edison.eventsourcing.consumer.EventSourceConsumerProcess} on startup.
+ * </p>
+ */
+public interface CheckpointStore {
+
+    /**
+     * Returns the last checkpoint of a stream.
+     *
+     * @param streamName the name of the stream
+     * @return position of the stream, or empty, if there is no checkpoint
+     */
+    Optional<StreamPosition> load(String streamName);
+
+    /**
+     * Replaces the checkpoint of a stream.
+     *
+     * @param streamName the name of the stream
+     * @param position the position of all shards of the stream
+     */
+    void save(String streamName, StreamPosition position);
+}
@@ -0,0 +1,97 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the positions of the shards of a stream while it is consumed, and saves them to a
+ * {@link CheckpointStore} every {@code maxRecords} records, or if {@code maxInterval} has elapsed since the last
+ * checkpoint.
+ * <p>
+ *     Positions must only be {@link #update(String, String) updated} after the event at that position was
+ *     processed, so a consumer resuming from a checkpoint never misses events; events processed after the last
+ *     checkpoint are consumed again. Failures to save a checkpoint while consuming are logged, and the positions are
+ *     saved with the next checkpoint.
+ * </p>
+ * <p>
+ *     Instances are thread-safe, as the shards of a stream are consumed concurrently.
+ * </p>
+ */
+public class Checkpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final CheckpointStore checkpointStore;
+    private final String streamName;
+    private final int maxRecords;
+    private final Duration maxInterval;
+    private final Clock clock;
+
+    private final Map<String, String> positions = new LinkedHashMap<>();
+    private int uncommittedRecords = 0;
+    private boolean dirty = false;
+    private Instant lastCommit;
+
+    public Checkpointer(final CheckpointStore checkpointStore,
+                        final String streamName,
+                        final StreamPosition startFrom,
+                        final int maxRecords,
+                        final Duration maxInterval) {
+        this(checkpointStore, streamName, startFrom, maxRecords, maxInterval, Clock.systemUTC());
+    }
+
+    Checkpointer(final CheckpointStore checkpointStore,
+                 final String streamName,
+                 final StreamPosition startFrom,
+                 final int maxRecords,
+                 final Duration maxInterval,
+                 final Clock clock) {
+        this.checkpointStore = checkpointStore;
+        this.streamName = streamName;
+        this.maxRecords = maxRecords;
+        this.maxInterval = maxInterval;
+        this.clock = clock;
+        this.lastCommit = clock.instant();
+        startFrom.shards().forEach(shardId -> positions.put(shardId, startFrom.positionOf(shardId)));
+    }
+
+    /**
+     * Sets the position of a shard after an event was processed, and saves a checkpoint if one is due.
+     *
+     * @param shardId the id of the shard
+     * @param position the position of the processed event
+     */
+    public synchronized void update(final String shardId, final String position) {
+        positions.put(shardId, position);
+        dirty = true;
+        if (++uncommittedRecords >= maxRecords || !clock.instant().isBefore(lastCommit.plus(maxInterval))) {
+            try {
+                commit();
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to save checkpoint of stream {}: {}", streamName, e.getMessage());
+                uncommittedRecords = 0;
+                lastCommit = clock.instant();
+            }
+        }
+    }
+
+    /**
+     * Saves a checkpoint, if positions have changed since the last checkpoint.
+     */
+    public synchronized void commit() {
+        if (!dirty) {
+            return;
+        }
+        checkpointStore.save(streamName, StreamPosition.of(new LinkedHashMap<>(positions)));
+        dirty = false;
+        uncommittedRecords = 0;
+        lastCommit = clock.instant();
+    }
+}
@@ -0,0 +1,64 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Stores checkpoints in a local directory, using a file {@code <streamName>.checkpoint} per stream.
+ * <p>
+ *     Checkpoints are written to a temporary file first, that is atomically moved to the checkpoint file, so a
+ *     crash while saving never leaves a partially written checkpoint.
+ * </p>
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private static final String FILE_EXTENSION = ".checkpoint";
+
+    private final Path directory;
+
+    public FileCheckpointStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Optional<StreamPosition> load(final String streamName) {
+        final Path file = fileOf(streamName);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return Optional.of(CheckpointFormat.read(in));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void save(final String streamName, final StreamPosition position) {
+        try {
+            Files.createDirectories(directory);
+            final Path tempFile = Files.createTempFile(directory, streamName, ".tmp");
+            try {
+                Files.write(tempFile, CheckpointFormat.write(position));
+                Files.move(tempFile, fileOf(streamName), REPLACE_EXISTING, ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path fileOf(final String streamName) {
+        return directory.resolve(streamName + FILE_EXTENSION);
+    }
+}
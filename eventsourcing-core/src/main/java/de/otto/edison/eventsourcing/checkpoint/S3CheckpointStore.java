@@ -0,0 +1,62 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Stores checkpoints in an S3 bucket, using an object {@code <prefix><streamName>.checkpoint} per stream.
+ */
+public class S3CheckpointStore implements CheckpointStore {
+
+    private static final String FILE_EXTENSION = ".checkpoint";
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String prefix;
+
+    public S3CheckpointStore(final S3Client s3Client,
+                             final String bucketName,
+                             final String prefix) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Optional<StreamPosition> load(final String streamName) {
+        final GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(keyOf(streamName))
+                .build();
+        try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(request)) {
+            return Optional.of(CheckpointFormat.read(in));
+        } catch (final NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void save(final String streamName, final StreamPosition position) {
+        final PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(keyOf(streamName))
+                .build();
+        s3Client.putObject(request, RequestBody.of(CheckpointFormat.write(position)));
+    }
+
+    private String keyOf(final String streamName) {
+        return prefix + streamName + FILE_EXTENSION;
+    }
+}
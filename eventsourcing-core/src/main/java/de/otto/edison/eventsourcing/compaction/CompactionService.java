@@ -2,8 +2,8 @@ package de.otto.edison.eventsourcing.compaction;
 
 import de.otto.edison.eventsourcing.CompactingKinesisEventSource;
 import de.otto.edison.eventsourcing.EventSourceFactory;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
 import de.otto.edison.eventsourcing.consumer.DefaultEventConsumer;
-import de.otto.edison.eventsourcing.consumer.Event;
 import de.otto.edison.eventsourcing.consumer.EventConsumer;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
 import de.otto.edison.eventsourcing.s3.SnapshotWriteService;
@@ -14,8 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
-import java.util.function.Predicate;
+import java.time.Duration;
 
 @Service
 @ConditionalOnProperty(name = "edison.eventsourcing.compaction.enabled", havingValue = "true")
@@ -26,16 +25,27 @@ public class CompactionService {
     private final SnapshotWriteService snapshotWriteService;
     private final StateRepository<String> stateRepository;
     private final EventSourceFactory eventSourceFactory;
+    private final Duration catchUpTolerance;
 
-    @Autowired
     public CompactionService(
             SnapshotWriteService snapshotWriteService,
             StateRepository<String> stateRepository,
             EventSourceFactory eventSourceFactory)
+    {
+        this(snapshotWriteService, stateRepository, eventSourceFactory, new EventSourcingProperties());
+    }
+
+    @Autowired
+    public CompactionService(
+            SnapshotWriteService snapshotWriteService,
+            StateRepository<String> stateRepository,
+            EventSourceFactory eventSourceFactory,
+            EventSourcingProperties properties)
     {
         this.snapshotWriteService = snapshotWriteService;
         this.stateRepository = stateRepository;
         this.eventSourceFactory = eventSourceFactory;
+        this.catchUpTolerance = Duration.ofMillis(properties.getCompaction().getCatchUpToleranceMillis());
     }
 
     public String compact(final String streamName) {
@@ -49,7 +59,7 @@ public class CompactionService {
 
         try {
             EventConsumer<String> consumer = new DefaultEventConsumer<>(streamName, ".*", stateRepository);
-            StreamPosition currentPosition = compactingKinesisEventSource.consumeAll(stopCondition(), consumer.consumerFunction());
+            StreamPosition currentPosition = compactingKinesisEventSource.consumeUntilCaughtUp(StreamPosition.of(), catchUpTolerance, consumer.consumerFunction());
 
             LOG.info("Finished updating snapshot data. StateRepository now holds {} entries.", stateRepository.size());
 
@@ -59,16 +69,4 @@ public class CompactionService {
         }
     }
 
-    private Predicate<Event<String>> stopCondition() {
-        final Instant now = Instant.now();
-        return event -> {
-            if (event != null) {
-                return event.arrivalTimestamp().isAfter(now);
-            } else {
-                return true;
-            }
-        };
-    }
-
 }
-
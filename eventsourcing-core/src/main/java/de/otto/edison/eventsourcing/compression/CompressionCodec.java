@@ -0,0 +1,19 @@
+package de.otto.edison.eventsourcing.compression;
+
+/**
+ * A compression algorithm used by the {@link PayloadCompressor}.
+ */
+public interface CompressionCodec {
+
+    /**
+     * The character identifying the codec in the header of compressed payloads. Must be unique and must never change,
+     * as it is stored together with the payloads.
+     *
+     * @return codec id
+     */
+    char id();
+
+    byte[] compress(byte[] data);
+
+    byte[] decompress(byte[] data);
+}
@@ -0,0 +1,47 @@
+package de.otto.edison.eventsourcing.compression;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fast compression using LZ4 blocks. The compressed data is prefixed by the length of the uncompressed data.
+ */
+public class Lz4CompressionCodec implements CompressionCodec {
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public Lz4CompressionCodec() {
+        final LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public char id() {
+        return 'L';
+    }
+
+    @Override
+    public byte[] compress(final byte[] data) {
+        final byte[] compressed = new byte[LENGTH_BYTES + compressor.maxCompressedLength(data.length)];
+        ByteBuffer.wrap(compressed).putInt(data.length);
+        final int length = compressor.compress(data, 0, data.length, compressed, LENGTH_BYTES);
+        final byte[] result = new byte[LENGTH_BYTES + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(final byte[] data) {
+        final int length = ByteBuffer.wrap(data).getInt();
+        final byte[] result = new byte[length];
+        decompressor.decompress(data, LENGTH_BYTES, result, 0, length);
+        return result;
+    }
+}
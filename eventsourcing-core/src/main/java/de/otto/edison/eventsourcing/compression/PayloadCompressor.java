@@ -0,0 +1,158 @@
+package de.otto.edison.eventsourcing.compression;
+
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compresses the payloads of events before they are encrypted, and decompresses them after they are decrypted.
+ * <p>
+ *     A compressed payload is written as text, so it can be passed to a
+ *     {@link org.springframework.security.crypto.encrypt.TextEncryptor}: a header consisting of the character
+ *     {@code \u0000} and the {@link CompressionCodec#id() id} of the codec, followed by the Base64 encoded compressed
+ *     payload. JSON never starts with {@code \u0000}, so payloads without header - for example, events written
+ *     before compression was enabled - are returned unchanged by {@link #decompress(String)}.
+ * </p>
+ * <p>
+ *     Payloads shorter than {@link EventSourcingProperties.Compression#getMinBytes() minBytes}, and payloads that
+ *     would not get shorter, are not compressed.
+ * </p>
+ */
+public class PayloadCompressor {
+
+    static final byte HEADER = 0;
+    private static final int HEADER_LENGTH = 2;
+
+    private final CompressionCodec codec;
+    private final int minBytes;
+    private final Map<Character, CompressionCodec> codecs = new HashMap<>();
+
+    /**
+     * Creates a PayloadCompressor. Payloads compressed by LZ4, gzip or one of the {@code additionalCodecs} can be
+     * decompressed.
+     *
+     * @param codec the codec used to compress payloads, or null if payloads should not be compressed
+     * @param minBytes the minimum size of payloads that are compressed
+     * @param additionalCodecs custom codecs
+     */
+    public PayloadCompressor(final CompressionCodec codec,
+                             final int minBytes,
+                             final CompressionCodec... additionalCodecs) {
+        this.codec = codec;
+        this.minBytes = minBytes;
+        register(new Lz4CompressionCodec());
+        register(new GzipCompressionCodec());
+        for (final CompressionCodec additionalCodec : additionalCodecs) {
+            register(additionalCodec);
+        }
+        if (codec != null) {
+            register(codec);
+        }
+    }
+
+    /**
+     * Returns a PayloadCompressor that does not compress payloads, but is able to decompress payloads compressed by
+     * one of the built-in codecs.
+     *
+     * @return PayloadCompressor
+     */
+    public static PayloadCompressor none() {
+        return new PayloadCompressor(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a PayloadCompressor using the configured codec: {@code none}, {@code lz4} or {@code gzip}.
+     *
+     * @param properties compression properties
+     * @return PayloadCompressor
+     */
+    public static PayloadCompressor of(final EventSourcingProperties.Compression properties) {
+        switch (properties.getCodec().toLowerCase()) {
+            case "none":
+                return none();
+            case "lz4":
+                return new PayloadCompressor(new Lz4CompressionCodec(), properties.getMinBytes());
+            case "gzip":
+                return new PayloadCompressor(new GzipCompressionCodec(), properties.getMinBytes());
+            default:
+                throw new IllegalArgumentException("Unknown compression codec " + properties.getCodec());
+        }
+    }
+
+    public String compress(final String payload) {
+        if (codec == null || payload == null || payload.length() < minBytes) {
+            return payload;
+        }
+        final byte[] data = payload.getBytes(UTF_8);
+        final byte[] compressed = compress(data);
+        return compressed != data
+                ? new String(compressed, ISO_8859_1)
+                : payload;
+    }
+
+    /**
+     * Compresses the UTF-8 encoded bytes of a payload, or returns the bytes unchanged if the payload is not
+     * compressed.
+     *
+     * @param payload UTF-8 encoded payload
+     * @return UTF-8 encoded, possibly compressed payload
+     */
+    public byte[] compress(final byte[] payload) {
+        if (codec == null || payload == null || payload.length < minBytes) {
+            return payload;
+        }
+        final byte[] compressed = Base64.getEncoder().encode(codec.compress(payload));
+        if (HEADER_LENGTH + compressed.length >= payload.length) {
+            return payload;
+        }
+        final byte[] result = new byte[HEADER_LENGTH + compressed.length];
+        result[0] = HEADER;
+        result[1] = (byte) codec.id();
+        System.arraycopy(compressed, 0, result, HEADER_LENGTH, compressed.length);
+        return result;
+    }
+
+    /**
+     * Decompresses a payload, or returns the payload unchanged if it is not compressed.
+     *
+     * @param payload the possibly compressed payload
+     * @return uncompressed payload
+     * @throws IllegalStateException if the payload was compressed using an unknown codec
+     */
+    public String decompress(final String payload) {
+        if (payload == null || payload.length() < HEADER_LENGTH || payload.charAt(0) != HEADER) {
+            return payload;
+        }
+        return new String(decompress(payload.getBytes(ISO_8859_1)), UTF_8);
+    }
+
+    /**
+     * Decompresses the UTF-8 encoded bytes of a payload, or returns the bytes unchanged if the payload is not
+     * compressed.
+     *
+     * @param payload the UTF-8 encoded, possibly compressed payload
+     * @return UTF-8 encoded uncompressed payload
+     * @throws IllegalStateException if the payload was compressed using an unknown codec
+     */
+    public byte[] decompress(final byte[] payload) {
+        if (payload == null || payload.length < HEADER_LENGTH || payload[0] != HEADER) {
+            return payload;
+        }
+        final CompressionCodec payloadCodec = codecs.get((char) payload[1]);
+        if (payloadCodec == null) {
+            throw new IllegalStateException("Unknown compression codec '" + (char) payload[1] + "'");
+        }
+        final byte[] compressed = Base64.getDecoder().decode(Arrays.copyOfRange(payload, HEADER_LENGTH, payload.length));
+        return payloadCodec.decompress(compressed);
+    }
+
+    private void register(final CompressionCodec codec) {
+        codecs.put(codec.id(), codec);
+    }
+}
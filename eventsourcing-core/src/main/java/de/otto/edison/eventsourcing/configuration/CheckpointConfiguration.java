@@ -0,0 +1,42 @@
+package de.otto.edison.eventsourcing.configuration;
+
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
+import de.otto.edison.eventsourcing.checkpoint.FileCheckpointStore;
+import de.otto.edison.eventsourcing.checkpoint.S3CheckpointStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.nio.file.Paths;
+import java.util.Optional;
+
+@Configuration
+@EnableConfigurationProperties(EventSourcingProperties.class)
+@ConditionalOnProperty(
+        prefix = "edison.eventsourcing",
+        name = "checkpoint.enabled",
+        havingValue = "true"
+)
+public class CheckpointConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public CheckpointStore checkpointStore(final EventSourcingProperties eventSourcingProperties,
+                                           final Optional<S3Client> s3Client) {
+        final EventSourcingProperties.Checkpoint checkpoint = eventSourcingProperties.getCheckpoint();
+        switch (checkpoint.getStore()) {
+            case "file":
+                return new FileCheckpointStore(Paths.get(checkpoint.getDirectory()));
+            case "s3":
+                return new S3CheckpointStore(
+                        s3Client.orElseThrow(() -> new IllegalStateException("S3 checkpoint store requires an S3Client bean")),
+                        checkpoint.getBucketName() != null ? checkpoint.getBucketName() : eventSourcingProperties.getSnapshot().getBucketName(),
+                        checkpoint.getPrefix());
+            default:
+                throw new IllegalArgumentException("Unknown checkpoint store " + checkpoint.getStore());
+        }
+    }
+}
@@ -2,17 +2,23 @@ package de.otto.edison.eventsourcing.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.edison.eventsourcing.EventSourceFactory;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
 import de.otto.edison.eventsourcing.consumer.EventConsumer;
 import de.otto.edison.eventsourcing.consumer.EventSource;
 import de.otto.edison.eventsourcing.consumer.EventSourceConsumerProcess;
+import de.otto.edison.eventsourcing.kinesis.ShardSubscriptionClient;
+import de.otto.edison.eventsourcing.lease.ShardLeaseTable;
 import de.otto.edison.eventsourcing.s3.SnapshotConsumerService;
 import de.otto.edison.eventsourcing.s3.SnapshotReadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
 import java.util.List;
@@ -25,6 +31,8 @@ import static java.util.Collections.emptyList;
         EventSourcingBootstrapConfiguration.class,
         SnapshotConfiguration.class,
         KinesisConfiguration.class,
+        CheckpointConfiguration.class,
+        LeaseConfiguration.class,
 })
 @EnableConfigurationProperties(EventSourcingProperties.class)
 public class EventSourcingConfiguration {
@@ -37,10 +45,12 @@ public class EventSourcingConfiguration {
             matchIfMissing = true)
     public EventSourceConsumerProcess eventSourceConsumerProcess(
             Optional<List<EventConsumer>> eventConsumers,
-            Optional<List<EventSource>> eventSources) {
+            Optional<List<EventSource>> eventSources,
+            Optional<CheckpointStore> checkpointStore) {
         return new EventSourceConsumerProcess(
                 eventSources.orElse(emptyList()),
-                eventConsumers.orElse(emptyList())
+                eventConsumers.orElse(emptyList()),
+                checkpointStore.orElse(null)
         );
     }
 
@@ -50,14 +60,26 @@ public class EventSourcingConfiguration {
             SnapshotConsumerService snapshotConsumerService,
             ObjectMapper objectMapper,
             KinesisClient kinesisClient,
-            TextEncryptor textEncryptor)
+            TextEncryptor textEncryptor,
+            EventSourcingProperties eventSourcingProperties,
+            Optional<MeterRegistry> meterRegistry,
+            Optional<ShardSubscriptionClient> shardSubscriptionClient,
+            Optional<KinesisAsyncClient> kinesisAsyncClient,
+            Optional<CheckpointStore> checkpointStore,
+            Optional<ShardLeaseTable> shardLeaseTable)
     {
         return new EventSourceFactory(
                 snapshotReadService,
                 snapshotConsumerService,
                 objectMapper,
                 kinesisClient,
-                textEncryptor);
+                textEncryptor,
+                eventSourcingProperties,
+                meterRegistry.orElse(Metrics.globalRegistry),
+                shardSubscriptionClient.orElse(null),
+                kinesisAsyncClient.orElse(null),
+                checkpointStore.orElse(null),
+                shardLeaseTable.orElse(null));
     }
 }
 
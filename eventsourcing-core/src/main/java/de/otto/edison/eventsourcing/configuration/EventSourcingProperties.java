@@ -7,6 +7,10 @@ public class EventSourcingProperties {
     private Snapshot snapshot = new Snapshot();
     private ConsumerProcess consumerProcess = new ConsumerProcess();
     private Compaction compaction = new Compaction();
+    private Kinesis kinesis = new Kinesis();
+    private Compression compression = new Compression();
+    private Checkpoint checkpoint = new Checkpoint();
+    private Leasing leasing = new Leasing();
 
     public Snapshot getSnapshot() {
         return snapshot;
@@ -32,6 +36,38 @@ public class EventSourcingProperties {
         this.compaction = compaction;
     }
 
+    public Kinesis getKinesis() {
+        return kinesis;
+    }
+
+    public void setKinesis(Kinesis kinesis) {
+        this.kinesis = kinesis;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public Leasing getLeasing() {
+        return leasing;
+    }
+
+    public void setLeasing(Leasing leasing) {
+        this.leasing = leasing;
+    }
+
     public static class Snapshot {
         private boolean enabled = true;
         private String bucketName;
@@ -53,6 +89,158 @@ public class EventSourcingProperties {
         }
     }
 
+    /**
+     * Compression of event payloads sent to Kinesis, applied before encryption. The {@code codec} is one of
+     * {@code none}, {@code lz4} or {@code gzip}; payloads shorter than {@code minBytes} are not compressed.
+     * Compressed payloads of all codecs are decompressed, regardless of the configured codec.
+     */
+    public static class Compression {
+        private String codec = "none";
+        private int minBytes = 512;
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        public int getMinBytes() {
+            return minBytes;
+        }
+
+        public void setMinBytes(int minBytes) {
+            this.minBytes = minBytes;
+        }
+    }
+
+    /**
+     * Checkpointing of the positions of consumed Kinesis streams. The {@code store} is either {@code file}, writing
+     * checkpoints to {@code directory}, or {@code s3}, writing checkpoints to {@code bucketName} (default: the
+     * snapshot bucket) using the key prefix {@code prefix}. Checkpoints are saved every {@code maxRecords} events
+     * or {@code maxIntervalMillis}, whatever comes first.
+     */
+    public static class Checkpoint {
+        private boolean enabled = false;
+        private String store = "file";
+        private String directory = System.getProperty("java.io.tmpdir") + "/edison-eventsourcing/checkpoints";
+        private String bucketName;
+        private String prefix = "checkpoints/";
+        private int maxRecords = 1000;
+        private long maxIntervalMillis = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public void setStore(String store) {
+            this.store = store;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public String getBucketName() {
+            return bucketName;
+        }
+
+        public void setBucketName(String bucketName) {
+            this.bucketName = bucketName;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public int getMaxRecords() {
+            return maxRecords;
+        }
+
+        public void setMaxRecords(int maxRecords) {
+            this.maxRecords = maxRecords;
+        }
+
+        public long getMaxIntervalMillis() {
+            return maxIntervalMillis;
+        }
+
+        public void setMaxIntervalMillis(long maxIntervalMillis) {
+            this.maxIntervalMillis = maxIntervalMillis;
+        }
+    }
+
+    /**
+     * Lease-based assignment of the shards of Kinesis streams to the instances of a service. The {@code table} is
+     * {@code file}, storing the leases in {@code directory}; other tables are configured by a ShardLeaseTable bean.
+     * Every instance needs a unique {@code owner} (default: a random id per start). Leases expire if they are not
+     * renewed within {@code leaseDurationMillis}.
+     */
+    public static class Leasing {
+        private boolean enabled = false;
+        private String table = "file";
+        private String directory = System.getProperty("java.io.tmpdir") + "/edison-eventsourcing/leases";
+        private String owner;
+        private long leaseDurationMillis = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public void setTable(String table) {
+            this.table = table;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public void setOwner(String owner) {
+            this.owner = owner;
+        }
+
+        public long getLeaseDurationMillis() {
+            return leaseDurationMillis;
+        }
+
+        public void setLeaseDurationMillis(long leaseDurationMillis) {
+            this.leaseDurationMillis = leaseDurationMillis;
+        }
+    }
+
     public static class ConsumerProcess {
         private boolean enabled = true;
 
@@ -67,6 +255,7 @@ public class EventSourcingProperties {
 
     public static class Compaction {
         private boolean enabled = false;
+        private long catchUpToleranceMillis = 0;
 
         public boolean isEnabled() {
             return enabled;
@@ -75,5 +264,316 @@ public class EventSourcingProperties {
         public void setEnabled(boolean enabled) {
             this.enabled = enabled;
         }
+
+        public long getCatchUpToleranceMillis() {
+            return catchUpToleranceMillis;
+        }
+
+        public void setCatchUpToleranceMillis(long catchUpToleranceMillis) {
+            this.catchUpToleranceMillis = catchUpToleranceMillis;
+        }
+    }
+
+    public static class Kinesis {
+        private Polling polling = new Polling();
+        private Prefetch prefetch = new Prefetch();
+        private Threads threads = new Threads();
+        private Lanes lanes = new Lanes();
+        private ShardDiscovery shardDiscovery = new ShardDiscovery();
+        private Async async = new Async();
+        private Producer producer = new Producer();
+
+        public Polling getPolling() {
+            return polling;
+        }
+
+        public void setPolling(Polling polling) {
+            this.polling = polling;
+        }
+
+        public Prefetch getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(Prefetch prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public Threads getThreads() {
+            return threads;
+        }
+
+        public void setThreads(Threads threads) {
+            this.threads = threads;
+        }
+
+        public Lanes getLanes() {
+            return lanes;
+        }
+
+        public void setLanes(Lanes lanes) {
+            this.lanes = lanes;
+        }
+
+        public ShardDiscovery getShardDiscovery() {
+            return shardDiscovery;
+        }
+
+        public void setShardDiscovery(ShardDiscovery shardDiscovery) {
+            this.shardDiscovery = shardDiscovery;
+        }
+
+        public Async getAsync() {
+            return async;
+        }
+
+        public void setAsync(Async async) {
+            this.async = async;
+        }
+
+        public Producer getProducer() {
+            return producer;
+        }
+
+        public void setProducer(Producer producer) {
+            this.producer = producer;
+        }
+    }
+
+    /**
+     * Settings of the adaptive GetRecords polling of a single shard. See DECISIONS.md - Question #1
+     */
+    public static class Polling {
+        private long minIdleWaitMillis = 100;
+        private long maxIdleWaitMillis = 1000;
+        private double maxPollsPerSecond = 5.0;
+
+        public long getMinIdleWaitMillis() {
+            return minIdleWaitMillis;
+        }
+
+        public void setMinIdleWaitMillis(long minIdleWaitMillis) {
+            this.minIdleWaitMillis = minIdleWaitMillis;
+        }
+
+        public long getMaxIdleWaitMillis() {
+            return maxIdleWaitMillis;
+        }
+
+        public void setMaxIdleWaitMillis(long maxIdleWaitMillis) {
+            this.maxIdleWaitMillis = maxIdleWaitMillis;
+        }
+
+        public double getMaxPollsPerSecond() {
+            return maxPollsPerSecond;
+        }
+
+        public void setMaxPollsPerSecond(double maxPollsPerSecond) {
+            this.maxPollsPerSecond = maxPollsPerSecond;
+        }
+    }
+
+    /**
+     * Settings of the background prefetching of GetRecords responses of a single shard.
+     */
+    public static class Prefetch {
+        private boolean enabled = false;
+        private int queueDepth = 2;
+        private long maxBytes = 10 * 1024 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public void setQueueDepth(int queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Settings of the threads consuming the shards of a Kinesis event source. Virtual threads are only used
+     * if the JVM supports them; otherwise, a platform thread per shard is used.
+     */
+    public static class Threads {
+        private boolean virtual = false;
+
+        public boolean isVirtual() {
+            return virtual;
+        }
+
+        public void setVirtual(boolean virtual) {
+            this.virtual = virtual;
+        }
+    }
+
+    /**
+     * Settings of the key-ordered lanes used to process the events of a single shard in parallel. Events having
+     * the same key are processed in order. Parallel processing is disabled, if there is a single lane per shard.
+     */
+    public static class Lanes {
+        private int perShard = 1;
+        private int maxPendingEvents = 1000;
+
+        public int getPerShard() {
+            return perShard;
+        }
+
+        public void setPerShard(int perShard) {
+            this.perShard = perShard;
+        }
+
+        public int getMaxPendingEvents() {
+            return maxPendingEvents;
+        }
+
+        public void setMaxPendingEvents(int maxPendingEvents) {
+            this.maxPendingEvents = maxPendingEvents;
+        }
+    }
+
+    /**
+     * Settings of the discovery of new shards while a Kinesis stream is consumed, for example after
+     * the stream was resharded. The shards are cached and refreshed in the background every {@code intervalMillis}.
+     * {@code pageSize} is the number of shards retrieved per DescribeStream request (max. 100).
+     */
+    public static class ShardDiscovery {
+        private long intervalMillis = 30000;
+        private int pageSize = 100;
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public void setIntervalMillis(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * Settings of the non-blocking AsyncKinesisEventSource. If enabled, which is the default, a KinesisAsyncClient is
+     * configured, and Kinesis and compacting event sources are async event sources: the shards of all async event
+     * sources are driven by a single StreamScheduler having {@code schedulerThreads} worker threads, shared fairly by
+     * the streams, and the EventSourceConsumerProcess does not need a thread per event source. If disabled, every
+     * shard is consumed by a thread of its own.
+     */
+    public static class Async {
+        private boolean enabled = true;
+        private int schedulerThreads = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSchedulerThreads() {
+            return schedulerThreads;
+        }
+
+        public void setSchedulerThreads(int schedulerThreads) {
+            this.schedulerThreads = schedulerThreads;
+        }
+    }
+
+    /**
+     * Settings of the batching producer of a Kinesis stream. Records are sent using PutRecords as soon as a batch
+     * contains {@code maxBatchRecords} records or {@code maxBatchBytes} bytes (Kinesis limits: 500 records, 5 MB),
+     * or {@code lingerMillis} after the first record was added to the batch. Records rejected by Kinesis are retried
+     * up to {@code maxRetries} times with exponential back-off, starting at {@code retryBackoffMillis}.
+     * <p>
+     *     The {@link de.otto.edison.eventsourcing.kinesis.AsyncKinesisProducer} accepts at most
+     *     {@code maxInFlightRecords} records and {@code maxInFlightBytes} bytes that are not yet written.
+     * </p>
+     */
+    public static class Producer {
+        private int maxBatchRecords = 500;
+        private long maxBatchBytes = 5 * 1024 * 1024;
+        private long lingerMillis = 100;
+        private int maxRetries = 5;
+        private long retryBackoffMillis = 100;
+        private int maxInFlightRecords = 10000;
+        private long maxInFlightBytes = 50 * 1024 * 1024;
+
+        public int getMaxBatchRecords() {
+            return maxBatchRecords;
+        }
+
+        public void setMaxBatchRecords(int maxBatchRecords) {
+            this.maxBatchRecords = maxBatchRecords;
+        }
+
+        public long getMaxBatchBytes() {
+            return maxBatchBytes;
+        }
+
+        public void setMaxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+        }
+
+        public long getLingerMillis() {
+            return lingerMillis;
+        }
+
+        public void setLingerMillis(long lingerMillis) {
+            this.lingerMillis = lingerMillis;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public long getRetryBackoffMillis() {
+            return retryBackoffMillis;
+        }
+
+        public void setRetryBackoffMillis(long retryBackoffMillis) {
+            this.retryBackoffMillis = retryBackoffMillis;
+        }
+
+        public int getMaxInFlightRecords() {
+            return maxInFlightRecords;
+        }
+
+        public void setMaxInFlightRecords(int maxInFlightRecords) {
+            this.maxInFlightRecords = maxInFlightRecords;
+        }
+
+        public long getMaxInFlightBytes() {
+            return maxInFlightBytes;
+        }
+
+        public void setMaxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+        }
     }
 }
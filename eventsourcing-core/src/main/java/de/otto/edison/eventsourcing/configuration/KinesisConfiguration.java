@@ -3,11 +3,13 @@ package de.otto.edison.eventsourcing.configuration;
 import de.otto.edison.aws.configuration.AwsProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.core.auth.AwsCredentialsProvider;
 import software.amazon.awssdk.core.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
 @Configuration
@@ -34,4 +36,15 @@ public class KinesisConfiguration {
                 .build();
     }
 
+    @Bean
+    @ConditionalOnMissingBean(KinesisAsyncClient.class)
+    @ConditionalOnProperty(prefix = "edison.eventsourcing.kinesis.async", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public KinesisAsyncClient kinesisAsyncClient(final AwsCredentialsProvider credentialsProvider) {
+        System.setProperty("aws.cborEnabled", "false");
+        return KinesisAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(Region.of(awsProperties.getRegion()))
+                .build();
+    }
+
 }
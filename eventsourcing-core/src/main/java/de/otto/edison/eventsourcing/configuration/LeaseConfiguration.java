@@ -0,0 +1,33 @@
+package de.otto.edison.eventsourcing.configuration;
+
+import de.otto.edison.eventsourcing.lease.FileShardLeaseTable;
+import de.otto.edison.eventsourcing.lease.ShardLeaseTable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+@EnableConfigurationProperties(EventSourcingProperties.class)
+@ConditionalOnProperty(
+        prefix = "edison.eventsourcing",
+        name = "leasing.enabled",
+        havingValue = "true"
+)
+public class LeaseConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ShardLeaseTable shardLeaseTable(final EventSourcingProperties eventSourcingProperties) {
+        final EventSourcingProperties.Leasing leasing = eventSourcingProperties.getLeasing();
+        switch (leasing.getTable()) {
+            case "file":
+                return new FileShardLeaseTable(Paths.get(leasing.getDirectory()));
+            default:
+                throw new IllegalArgumentException("Unknown shard lease table " + leasing.getTable());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.otto.edison.eventsourcing.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
 import de.otto.edison.aws.configuration.AwsConfiguration;
 import de.otto.edison.aws.s3.S3Service;
 import de.otto.edison.aws.s3.configuration.S3Configuration;
@@ -46,7 +47,9 @@ public class SnapshotConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public SnapshotConsumerService snapshotConsumerService(final ObjectMapper objectMapper, TextEncryptor textEncryptor) {
-        return new SnapshotConsumerService(objectMapper, textEncryptor);
+    public SnapshotConsumerService snapshotConsumerService(final ObjectMapper objectMapper,
+                                                           final TextEncryptor textEncryptor,
+                                                           final EventSourcingProperties eventSourcingProperties) {
+        return new SnapshotConsumerService(objectMapper, textEncryptor, PayloadCompressor.of(eventSourcingProperties.getCompression()));
     }
 }
@@ -0,0 +1,37 @@
+package de.otto.edison.eventsourcing.consumer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An {@link EventSource} that can be consumed without blocking a thread until the consumption is stopped.
+ * <p>
+ *     The {@link EventSourceConsumerProcess} uses {@link #consumeAllAsync(StreamPosition, Predicate, Consumer)}
+ *     instead of {@link #consumeAll(StreamPosition, Predicate, Consumer)}, so it does not need a thread of its
+ *     own per event source.
+ * </p>
+ *
+ * @param <T> the type of the event payloads
+ */
+public interface AsyncEventSource<T> extends EventSource<T> {
+
+    /**
+     * Consumes all events from the EventSource like {@link #consumeAll(StreamPosition, Predicate, Consumer)},
+     * beginning with {@link StreamPosition startFrom}, until the {@link Predicate stopCondition} is met.
+     * <p>
+     *     The method returns as soon as the consumption is started; work that is blocking anyway, like reading a
+     *     snapshot, may still be done by the calling thread. Cancelling the returned future stops the consumption.
+     * </p>
+     *
+     * {@link Consumer consumer} has to be thread safe as it may be called from multiple threads
+     *
+     * @param startFrom the read position returned from earlier executions
+     * @param stopCondition the predicate used as a stop condition
+     * @param consumer consumer used to process events
+     * @return future of the new read position
+     */
+    CompletableFuture<StreamPosition> consumeAllAsync(StreamPosition startFrom,
+                                                      Predicate<Event<T>> stopCondition,
+                                                      Consumer<Event<T>> consumer);
+}
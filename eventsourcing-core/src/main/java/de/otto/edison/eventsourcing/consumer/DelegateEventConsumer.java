@@ -6,20 +6,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
 
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Delegates events to all consumers with a {@link EventConsumer#getKeyPattern() key pattern} matching the key of
+ * the event.
+ * <p>
+ *     Routing only looks at the {@link Event#key() key}, so the lazily decoded payload of events that are not
+ *     matched by any consumer is never decoded.
+ * </p>
+ * <p>
+ *     The consumers of a key are looked up in a {@link KeyRoutingTable} that is built once, and called in the order
+ *     of registration, without evaluating the regex of literal and prefix patterns for every event.
+ * </p>
+ */
 class DelegateEventConsumer<T> implements EventConsumer<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(DelegateEventConsumer.class);
 
     private final ImmutableList<EventConsumer> eventConsumers;
-    private final Map<EventConsumer, Pattern> eventConsumerMatcherMap = new ConcurrentHashMap<>();
+    private final Consumer<Event<T>>[] consumerFunctions;
+    private final KeyRoutingTable routingTable;
 
     private String streamName = null;
 
+    @SuppressWarnings("unchecked")
     DelegateEventConsumer(Collection<EventConsumer> eventConsumers) {
         if (eventConsumers.isEmpty()) {
             throw new IllegalArgumentException("list of event consumers must not be empty");
@@ -27,7 +40,12 @@ class DelegateEventConsumer<T> implements EventConsumer<T> {
         this.eventConsumers = ImmutableList.copyOf(eventConsumers);
         this.streamName = this.eventConsumers.get(0).streamName();
         assertSameStreamNameForAllConsumers();
-        registerPatternMatcher();
+        this.consumerFunctions = this.eventConsumers.stream()
+                .map(EventConsumer::consumerFunction)
+                .toArray(Consumer[]::new);
+        this.routingTable = new KeyRoutingTable(this.eventConsumers.stream()
+                .map(EventConsumer::getKeyPattern)
+                .collect(toList()));
     }
 
     @Override
@@ -35,10 +53,6 @@ class DelegateEventConsumer<T> implements EventConsumer<T> {
         return ".*";
     }
 
-    private void registerPatternMatcher() {
-        eventConsumers.forEach(eventConsumer -> eventConsumerMatcherMap.put(eventConsumer, Pattern.compile(eventConsumer.getKeyPattern())));
-    }
-
     private void assertSameStreamNameForAllConsumers() {
         long count = eventConsumers.stream()
                 .map(EventConsumer::streamName)
@@ -59,21 +73,20 @@ class DelegateEventConsumer<T> implements EventConsumer<T> {
         return this::accept;
     }
 
-    @SuppressWarnings("unchecked")
     private void accept(Event<T> event) {
-        eventConsumers.stream()
-                .filter(eventConsumer -> matchesEventKey(eventConsumer, event))
-                .forEach(eventConsumer -> {
-                    try {
-                        eventConsumer.consumerFunction().accept(event);
-                    } catch (Exception e) {
-                        LOG.error("error in consuming event");
-                    }
-                });
-    }
-
-    private boolean matchesEventKey(EventConsumer eventConsumer, Event<T> event) {
-        return eventConsumerMatcherMap.get(eventConsumer).matcher(event.key()).matches();
+        final long[] routes = routingTable.routesOf(event.key());
+        for (int word = 0; word < routes.length; ++word) {
+            long bits = routes[word];
+            while (bits != 0) {
+                final int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                try {
+                    consumerFunctions[index].accept(event);
+                } catch (Exception e) {
+                    LOG.error("error in consuming event with key {}", event.key(), e);
+                }
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
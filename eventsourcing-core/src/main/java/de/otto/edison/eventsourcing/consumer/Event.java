@@ -3,7 +3,19 @@ package de.otto.edison.eventsourcing.consumer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.function.Supplier;
 
+/**
+ * An event consumed from an {@link EventSource}.
+ * <p>
+ *     The payload of an event may be decoded lazily: event sources that need to decrypt and deserialize their
+ *     records pass a supplier of the payload, that is called at most once, when {@link #payload()} is first called.
+ *     Events that are filtered by their {@link #key() key}, and never reach a consumer, are therefore not decoded at
+ *     all.
+ * </p>
+ *
+ * @param <T> the type of the payload
+ */
 public class Event<T> {
 
     public static <T> Event<T> event(final String key,
@@ -31,11 +43,13 @@ public class Event<T> {
     }
 
     private final String key;
-    private final T payload;
     private final String sequenceNumber;
     private final Instant arrivalTimestamp;
     private final Duration durationBehind;
 
+    private Supplier<T> payloadSupplier;
+    private T payload;
+    private volatile boolean decoded;
 
     protected Event(final String key,
                     final T payload,
@@ -47,13 +61,53 @@ public class Event<T> {
         this.sequenceNumber = sequenceNumber;
         this.arrivalTimestamp = approximateArrivalTimestamp;
         this.durationBehind = durationBehind;
+        this.decoded = true;
+    }
+
+    /**
+     * Creates an event with a lazily decoded payload.
+     *
+     * @param key the key of the event
+     * @param sequenceNumber the sequence number of the event
+     * @param approximateArrivalTimestamp the arrival timestamp of the event
+     * @param durationBehind the duration behind the latest event, or null
+     * @param payloadSupplier supplier of the payload, called at most once, when the payload is first accessed
+     */
+    protected Event(final String key,
+                    final String sequenceNumber,
+                    final Instant approximateArrivalTimestamp,
+                    final Duration durationBehind,
+                    final Supplier<T> payloadSupplier) {
+        this.key = key;
+        this.payloadSupplier = payloadSupplier;
+        this.sequenceNumber = sequenceNumber;
+        this.arrivalTimestamp = approximateArrivalTimestamp;
+        this.durationBehind = durationBehind;
+        this.decoded = false;
     }
 
     public String key() {
         return key;
     }
 
+    /**
+     * Returns the payload of the event, decoding it on first access if the payload is decoded lazily.
+     * <p>
+     *     If decoding fails, the exception is thrown to the caller, and decoding is retried on the next access.
+     * </p>
+     *
+     * @return payload
+     */
     public T payload() {
+        if (!decoded) {
+            synchronized (this) {
+                if (!decoded) {
+                    payload = payloadSupplier.get();
+                    payloadSupplier = null;
+                    decoded = true;
+                }
+            }
+        }
         return payload;
     }
 
@@ -78,7 +132,7 @@ public class Event<T> {
     public String toString() {
         return "Event{" +
                 "key='" + key + '\'' +
-                ", payload=" + payload +
+                ", payload=" + (decoded ? payload : "<not decoded>") +
                 ", sequenceNumber='" + sequenceNumber + '\'' +
                 ", arrivalTimestamp=" + arrivalTimestamp +
                 ", durationBehind=" + durationBehind +
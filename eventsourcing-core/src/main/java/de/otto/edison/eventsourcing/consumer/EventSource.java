@@ -1,5 +1,6 @@
 package de.otto.edison.eventsourcing.consumer;
 
+import java.time.Duration;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -97,4 +98,39 @@ public interface EventSource<T> {
     StreamPosition consumeAll(StreamPosition startFrom,
                               Predicate<Event<T>> stopCondition,
                               Consumer<Event<T>> consumer);
+
+    /**
+     * Consumes all events from the EventSource, beginning with {@link StreamPosition startFrom}, until the consumer
+     * has caught up with the tip of the stream.
+     * <p>
+     *     In contrast to a stop condition that stops at the first empty response, or at events that arrived after
+     *     some point in time, the consumption does not stop in front of gaps in the stream, and it is stopped
+     *     deterministically as soon as all events written before are consumed. This is useful for compaction
+     *     or batch jobs.
+     * </p>
+     * <p>
+     *     The default implementation stops as soon as an event is at most {@code tolerance}
+     *     {@link Event#durationBehind() behind} the latest event, or reads to the end of event sources that do not
+     *     know the duration behind. Streaming event sources should override this method to also stop if there are
+     *     no more events.
+     * </p>
+     *
+     * {@link Consumer consumer} has to be thread safe as it may be called from multiple threads
+     * (e.g. for kinesis streams there is one thread per shard)
+     *
+     * @param startFrom the read position returned from earlier executions
+     * @param tolerance the max duration behind the latest event that is considered to be caught up
+     * @param consumer consumer used to process events
+     * @return the new read position
+     */
+    default StreamPosition consumeUntilCaughtUp(StreamPosition startFrom,
+                                                Duration tolerance,
+                                                Consumer<Event<T>> consumer) {
+        return consumeAll(
+                startFrom,
+                event -> event != null && event.durationBehind()
+                        .map(durationBehind -> durationBehind.compareTo(tolerance) <= 0)
+                        .orElse(false),
+                consumer);
+    }
 }
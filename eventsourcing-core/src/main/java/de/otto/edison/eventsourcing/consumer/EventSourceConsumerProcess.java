@@ -3,20 +3,33 @@ package de.otto.edison.eventsourcing.consumer;
 
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
 import org.slf4j.Logger;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
-import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Consumes all event sources having at least one {@link EventConsumer}, until the process is shut down.
+ * <p>
+ *     {@link AsyncEventSource Async event sources} are consumed without a thread of their own; a thread is only used
+ *     while they do blocking work, like reading a snapshot. Every other event source is consumed by a thread of its
+ *     own. Threads are created on demand, and released after a minute of idleness.
+ * </p>
+ */
 public class EventSourceConsumerProcess {
 
     // Siehe https://programtalk.com/java/executorservice-not-shutting-down/
@@ -27,14 +40,27 @@ public class EventSourceConsumerProcess {
     private final AtomicBoolean stopThread = new AtomicBoolean(false);
 
     private final ExecutorService executorService;
+    private final List<CompletableFuture<StreamPosition>> asyncConsumptions = new CopyOnWriteArrayList<>();
+    private final CheckpointStore checkpointStore;
     private final Multimap<EventSource, EventConsumer> eventSourceWithConsumer = LinkedHashMultimap.create();
 
     public EventSourceConsumerProcess(final List<EventSource> eventSources,
                                       final List<EventConsumer> eventConsumers) {
+        this(eventSources, eventConsumers, null);
+    }
+
+    /**
+     * @param checkpointStore store of the checkpoints used to resume the consumption of the event sources; may be
+     *                        null, if checkpointing is disabled.
+     */
+    public EventSourceConsumerProcess(final List<EventSource> eventSources,
+                                      final List<EventConsumer> eventConsumers,
+                                      final CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
         matchEventConsumersWithEventSourcesByStreamName(eventSources, eventConsumers);
         if (eventSourceWithConsumer.size() > 0) {
             final ThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
-            executorService = newFixedThreadPool(eventSourceWithConsumer.size(), threadFactory);
+            executorService = newCachedThreadPool(threadFactory);
         } else {
             executorService = null;
         }
@@ -58,7 +84,15 @@ public class EventSourceConsumerProcess {
                     try {
                         LOG.info("Starting {}...", eventSource.getStreamName());
                         DelegateEventConsumer delegateEventConsumer = new DelegateEventConsumer(eventSourceWithConsumer.get(eventSource));
-                        eventSource.consumeAll(ignore -> stopThread.get(), delegateEventConsumer.consumerFunction());
+                        final Optional<StreamPosition> checkpoint = checkpointOf(eventSource);
+                        checkpoint.ifPresent(position -> LOG.info("Resuming {} from checkpoint", eventSource.getStreamName()));
+                        if (eventSource instanceof AsyncEventSource) {
+                            consumeAsync((AsyncEventSource) eventSource, checkpoint.orElse(StreamPosition.of()), delegateEventConsumer.consumerFunction());
+                        } else if (checkpoint.isPresent()) {
+                            eventSource.consumeAll(checkpoint.get(), ignore -> stopThread.get(), delegateEventConsumer.consumerFunction());
+                        } else {
+                            eventSource.consumeAll(ignore -> stopThread.get(), delegateEventConsumer.consumerFunction());
+                        }
                     } catch (Exception e) {
                         LOG.error("Starting failed: " + e.getMessage(), e);
                     }
@@ -66,10 +100,32 @@ public class EventSourceConsumerProcess {
         ));
     }
 
+    private <T> void consumeAsync(final AsyncEventSource<T> eventSource,
+                                  final StreamPosition startFrom,
+                                  final Consumer<Event<T>> consumer) {
+        final CompletableFuture<StreamPosition> consumption = eventSource.consumeAllAsync(startFrom, ignore -> stopThread.get(), consumer);
+        asyncConsumptions.add(consumption);
+        if (stopThread.get()) {
+            consumption.cancel(true);
+        }
+        consumption.whenComplete((position, failure) -> {
+            if (failure != null && !consumption.isCancelled()) {
+                LOG.error("Consuming {} failed: {}", eventSource.getStreamName(), failure.getMessage(), failure);
+            }
+        });
+    }
+
+    private Optional<StreamPosition> checkpointOf(final EventSource eventSource) {
+        return checkpointStore != null
+                ? checkpointStore.load(eventSource.getStreamName())
+                : Optional.empty();
+    }
+
     @PreDestroy
     public void shutdown() {
         LOG.info("Shutting down...");
         this.stopThread.set(true);
+        asyncConsumptions.forEach(consumption -> consumption.cancel(true));
         if (executorService != null) {
             try {
                 executorService.shutdownNow();
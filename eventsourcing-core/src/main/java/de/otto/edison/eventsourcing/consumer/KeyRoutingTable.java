@@ -0,0 +1,217 @@
+package de.otto.edison.eventsourcing.consumer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Routes event keys to the indexes of a list of key patterns, as used by the {@link DelegateEventConsumer}.
+ * <p>
+ *     The table is built once from the patterns. Patterns that only match a literal key, like {@code apple\.123},
+ *     are looked up in a hash map, and patterns matching a literal prefix, like {@code apple\..*} or {@code .*}, are
+ *     looked up in a trie, both without running the regex. The routes of literal keys and trie nodes are
+ *     precomputed, so keys that are only matched by such patterns are routed without allocation.
+ * </p>
+ * <p>
+ *     All other patterns are matched using the regex. Their routing decisions are kept in a bounded cache per key.
+ *     Keys containing line terminators, which are not matched by {@code .}, are always matched using the regex.
+ * </p>
+ * <p>
+ *     Routes are returned as bit sets: bit {@code i} of {@code routes[i / 64]} is set, if the key is matched by
+ *     pattern {@code i}. The returned arrays are shared and must not be modified.
+ * </p>
+ */
+final class KeyRoutingTable {
+
+    static final int DEFAULT_MAX_CACHED_KEYS = 10_000;
+
+    private final Pattern[] patterns;
+    private final int words;
+    private final TrieNode prefixes = new TrieNode();
+    private final Map<String, long[]> literals = new HashMap<>();
+    private final int[] regexPatterns;
+    private final Cache<String, long[]> cache;
+
+    KeyRoutingTable(final List<String> keyPatterns) {
+        this(keyPatterns, DEFAULT_MAX_CACHED_KEYS);
+    }
+
+    KeyRoutingTable(final List<String> keyPatterns, final int maxCachedKeys) {
+        this.patterns = new Pattern[keyPatterns.size()];
+        this.words = Math.max(1, (keyPatterns.size() + 63) / 64);
+        final Map<String, long[]> literalRoutes = new HashMap<>();
+        final List<Integer> regexIndexes = new ArrayList<>();
+        for (int i = 0; i < keyPatterns.size(); ++i) {
+            final String keyPattern = keyPatterns.get(i);
+            patterns[i] = Pattern.compile(keyPattern);
+            final Literal literal = Literal.parse(keyPattern);
+            if (literal == null) {
+                regexIndexes.add(i);
+            } else if (literal.isPrefix) {
+                prefixes.insert(literal.value, words).routes[i >> 6] |= 1L << i;
+            } else {
+                literalRoutes.computeIfAbsent(literal.value, key -> new long[words])[i >> 6] |= 1L << i;
+            }
+        }
+        prefixes.inheritRoutes(new long[words]);
+        literalRoutes.forEach((key, routes) -> literals.put(key, or(routes, prefixes.routesOf(key))));
+        this.regexPatterns = regexIndexes.stream().mapToInt(Integer::intValue).toArray();
+        this.cache = regexPatterns.length > 0
+                ? CacheBuilder.newBuilder().maximumSize(maxCachedKeys).build()
+                : null;
+    }
+
+    /**
+     * Returns the indexes of all patterns matching a key.
+     *
+     * @param key the key of an event
+     * @return bit set of the matching patterns, not to be modified
+     */
+    long[] routesOf(final String key) {
+        if (containsLineTerminator(key)) {
+            return matchAll(key);
+        }
+        if (cache == null) {
+            return literalOrPrefixRoutesOf(key);
+        }
+        long[] routes = cache.getIfPresent(key);
+        if (routes == null) {
+            routes = literalOrPrefixRoutesOf(key).clone();
+            for (final int i : regexPatterns) {
+                if (patterns[i].matcher(key).matches()) {
+                    routes[i >> 6] |= 1L << i;
+                }
+            }
+            cache.put(key, routes);
+        }
+        return routes;
+    }
+
+    private long[] literalOrPrefixRoutesOf(final String key) {
+        final long[] literalRoutes = literals.get(key);
+        return literalRoutes != null ? literalRoutes : prefixes.routesOf(key);
+    }
+
+    private long[] matchAll(final String key) {
+        final long[] routes = new long[words];
+        for (int i = 0; i < patterns.length; ++i) {
+            if (patterns[i].matcher(key).matches()) {
+                routes[i >> 6] |= 1L << i;
+            }
+        }
+        return routes;
+    }
+
+    private static long[] or(final long[] first, final long[] second) {
+        final long[] result = first.clone();
+        for (int i = 0; i < result.length; ++i) {
+            result[i] |= second[i];
+        }
+        return result;
+    }
+
+    private static boolean containsLineTerminator(final String key) {
+        for (int i = 0; i < key.length(); ++i) {
+            final char c = key.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Node of the trie of literal prefixes. After {@link #inheritRoutes(long[])}, the routes of a node contain
+     * the patterns of the node itself and of all its ancestors.
+     */
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private long[] routes;
+
+        private TrieNode insert(final String prefix, final int words) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); ++i) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode());
+            }
+            if (node.routes == null) {
+                node.routes = new long[words];
+            }
+            return node;
+        }
+
+        private void inheritRoutes(final long[] parentRoutes) {
+            routes = routes != null ? or(routes, parentRoutes) : parentRoutes;
+            children.values().forEach(child -> child.inheritRoutes(routes));
+        }
+
+        private long[] routesOf(final String key) {
+            TrieNode node = this;
+            for (int i = 0; i < key.length() && !node.children.isEmpty(); ++i) {
+                final TrieNode child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    break;
+                }
+                node = child;
+            }
+            return node.routes;
+        }
+    }
+
+    /**
+     * A key pattern consisting of literal characters, optionally followed by {@code .*}.
+     */
+    static final class Literal {
+        private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+        final String value;
+        final boolean isPrefix;
+
+        private Literal(final String value, final boolean isPrefix) {
+            this.value = value;
+            this.isPrefix = isPrefix;
+        }
+
+        /**
+         * Parses a literal or literal prefix pattern. Supports escaped metacharacters and {@code \Q...\E} quotes.
+         *
+         * @param keyPattern the regex
+         * @return literal, or null, if the pattern is neither a literal nor a literal prefix
+         */
+        static Literal parse(final String keyPattern) {
+            final StringBuilder value = new StringBuilder(keyPattern.length());
+            int i = 0;
+            while (i < keyPattern.length()) {
+                final char c = keyPattern.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 >= keyPattern.length()) {
+                        return null;
+                    }
+                    final char escaped = keyPattern.charAt(i + 1);
+                    if (escaped == 'Q') {
+                        final int end = keyPattern.indexOf("\\E", i + 2);
+                        value.append(keyPattern, i + 2, end < 0 ? keyPattern.length() : end);
+                        i = end < 0 ? keyPattern.length() : end + 2;
+                    } else if (escaped < 128 && !Character.isLetterOrDigit(escaped)) {
+                        value.append(escaped);
+                        i += 2;
+                    } else {
+                        return null;
+                    }
+                } else if (c == '.' && i == keyPattern.length() - 2 && keyPattern.charAt(i + 1) == '*') {
+                    return new Literal(value.toString(), true);
+                } else if (METACHARACTERS.indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    value.append(c);
+                    ++i;
+                }
+            }
+            return new Literal(value.toString(), false);
+        }
+    }
+}
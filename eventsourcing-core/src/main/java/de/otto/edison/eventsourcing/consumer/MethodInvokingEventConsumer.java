@@ -1,16 +1,36 @@
 package de.otto.edison.eventsourcing.consumer;
 
-import java.lang.reflect.InvocationTargetException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Objects;
 import java.util.function.Consumer;
 
+/**
+ * An {@link EventConsumer} calling a method of a bean, like the methods annotated with
+ * {@link de.otto.edison.eventsourcing.annotation.EventSourceConsumer}.
+ * <p>
+ *     The method is bound once, when the consumer is created: public methods of public classes that are visible to
+ *     the class loader of this library are bound to a {@code Consumer<Event<T>>} generated by the
+ *     {@link LambdaMetafactory}, so the JIT is able to inline the call. All other methods are called using a
+ *     {@link MethodHandle}. Neither way boxes the event into an argument array, and exceptions thrown by the method
+ *     are propagated unchanged instead of being wrapped in an {@code InvocationTargetException}.
+ * </p>
+ */
 public class MethodInvokingEventConsumer<T> implements EventConsumer<T> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(MethodInvokingEventConsumer.class);
+
     private final String streamName;
     private final String keyPattern;
-    private final Object instance;
-    private final Method method;
+    private final Consumer<Event<T>> invoker;
 
     public MethodInvokingEventConsumer(final String streamName, final String keyPattern, final Object instance, final Method method) {
         Objects.requireNonNull(streamName, "stream name must not be null");
@@ -25,11 +45,13 @@ public class MethodInvokingEventConsumer<T> implements EventConsumer<T> {
         if (!paramType.equals(Event.class)) {
             throw new IllegalArgumentException("Unable to build MethodInvokingEventConsumer: expected parameter type is Event, not " + paramType.getName());
         }
+        if (Modifier.isStatic(method.getModifiers()) || !method.getDeclaringClass().isInstance(instance)) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingEventConsumer: method " + method + " can not be called on instance of " + instance.getClass().getName());
+        }
 
         this.streamName = streamName;
         this.keyPattern = keyPattern;
-        this.method = method;
-        this.instance = instance;
+        this.invoker = invokerOf(instance, method);
     }
 
     @Override
@@ -44,15 +66,74 @@ public class MethodInvokingEventConsumer<T> implements EventConsumer<T> {
 
     @Override
     public Consumer<Event<T>> consumerFunction() {
-        return this::accept;
+        return invoker;
+    }
+
+    private static <T> Consumer<Event<T>> invokerOf(final Object instance, final Method method) {
+        if (isLinkable(method)) {
+            try {
+                return lambdaInvokerOf(instance, method);
+            } catch (final Throwable e) {
+                LOG.debug("Unable to generate lambda for method {}, falling back to MethodHandle", method, e);
+            }
+        }
+        return methodHandleInvokerOf(instance, method);
     }
 
-    private void accept(final Event<T> event) {
+    /*
+     * The class generated by the LambdaMetafactory calls the method with the access rights and class loader of this
+     * class.
+     */
+    private static boolean isLinkable(final Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return false;
+        }
         try {
-            method.invoke(instance, event);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalStateException(e);
+            return Class.forName(declaringClass.getName(), false, MethodInvokingEventConsumer.class.getClassLoader()) == declaringClass;
+        } catch (final ClassNotFoundException e) {
+            return false;
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> Consumer<Event<T>> lambdaInvokerOf(final Object instance, final Method method) throws Throwable {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle target = lookup.unreflect(method);
+        final CallSite callSite = LambdaMetafactory.metafactory(
+                lookup,
+                "accept",
+                MethodType.methodType(Consumer.class, method.getDeclaringClass()),
+                MethodType.methodType(void.class, Object.class),
+                target,
+                MethodType.methodType(void.class, Event.class));
+        return (Consumer<Event<T>>) callSite.getTarget().invoke(instance);
+    }
+
+    private static <T> Consumer<Event<T>> methodHandleInvokerOf(final Object instance, final Method method) {
+        final MethodHandle target;
+        try {
+            if (!method.isAccessible()) {
+                method.setAccessible(true);
+            }
+            target = MethodHandles.lookup().unreflect(method)
+                    .bindTo(instance)
+                    .asType(MethodType.methodType(void.class, Event.class));
+        } catch (final IllegalAccessException | SecurityException e) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingEventConsumer: method " + method + " is not accessible", e);
+        }
+        return event -> {
+            try {
+                target.invokeExact(event);
+            } catch (final Throwable e) {
+                throw MethodInvokingEventConsumer.<RuntimeException>propagate(e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E propagate(final Throwable e) throws E {
+        throw (E) e;
+    }
+
 }
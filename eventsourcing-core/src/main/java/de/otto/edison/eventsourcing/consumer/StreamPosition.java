@@ -1,16 +1,32 @@
 package de.otto.edison.eventsourcing.consumer;
 
+import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 
 import static java.util.Collections.emptyMap;
 
+/**
+ * The positions of the shards of a stream, and an optional timestamp.
+ * <p>
+ *     If a timestamp is given, shards without position are consumed starting at the first record that arrived at or
+ *     after the timestamp, instead of starting at the trim horizon. The timestamp is also used if the position of a
+ *     shard is no longer valid, for example because it is older than the retention period of the stream.
+ * </p>
+ */
 public class StreamPosition {
     private final Map<String, String> shardPositions;
+    private final Instant timestamp;
 
     protected StreamPosition(final Map<String, String> shardPositions) {
+        this(shardPositions, null);
+    }
+
+    protected StreamPosition(final Map<String, String> shardPositions, final Instant timestamp) {
         this.shardPositions = shardPositions;
+        this.timestamp = timestamp;
     }
 
     public static StreamPosition of() {
@@ -21,6 +37,27 @@ public class StreamPosition {
         return new StreamPosition(shardPositions);
     }
 
+    /**
+     * Creates a StreamPosition with the positions of some shards and a timestamp used for all other shards.
+     *
+     * @param shardPositions the positions of the shards
+     * @param timestamp the timestamp to start shards without valid position, or null to start at the trim horizon
+     * @return StreamPosition
+     */
+    public static StreamPosition of(final Map<String, String> shardPositions, final Instant timestamp) {
+        return new StreamPosition(shardPositions, timestamp);
+    }
+
+    /**
+     * Creates a StreamPosition starting all shards at the given timestamp.
+     *
+     * @param timestamp the timestamp
+     * @return StreamPosition
+     */
+    public static StreamPosition at(final Instant timestamp) {
+        return of(emptyMap(), timestamp);
+    }
+
     public Set<String> shards() {
         return shardPositions.keySet();
     }
@@ -35,16 +72,26 @@ public class StreamPosition {
         return shardPositions.getOrDefault(shard, "0");
     }
 
+    /**
+     * Returns the timestamp used to start shards without valid position.
+     *
+     * @return timestamp, or empty if these shards are consumed from the trim horizon
+     */
+    public Optional<Instant> timestamp() {
+        return Optional.ofNullable(timestamp);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         StreamPosition that = (StreamPosition) o;
-        return Objects.equals(shardPositions, that.shardPositions);
+        return Objects.equals(shardPositions, that.shardPositions) &&
+                Objects.equals(timestamp(), that.timestamp());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(shardPositions);
+        return Objects.hash(shardPositions, timestamp());
     }
 }
@@ -1,12 +1,16 @@
 package de.otto.edison.eventsourcing.encryption;
 
-import com.google.common.base.Charsets;
-import org.springframework.security.crypto.codec.Base64;
-import org.springframework.security.crypto.codec.Utf8;
 import org.springframework.security.crypto.encrypt.BytesEncryptor;
-import org.springframework.security.crypto.encrypt.TextEncryptor;
 
-public class Base64EncodingTextEncryptor implements TextEncryptor {
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encrypts texts using a {@link BytesEncryptor}, and encodes the encrypted bytes using Base64.
+ */
+public class Base64EncodingTextEncryptor implements ByteTextEncryptor {
 
     private final BytesEncryptor encryptor;
 
@@ -15,11 +19,22 @@ public class Base64EncodingTextEncryptor implements TextEncryptor {
     }
 
     public String encrypt(String text) {
-        return new String(Base64.encode(encryptor.encrypt(Utf8.encode(text))), Charsets.UTF_8);
+        // Base64 is ASCII, so ISO_8859_1 decodes it without validating UTF-8 sequences
+        return new String(encrypt(text.getBytes(UTF_8)), ISO_8859_1);
     }
 
     public String decrypt(String encryptedText) {
-        return Utf8.decode(encryptor.decrypt(Base64.decode(encryptedText.getBytes(Charsets.UTF_8))));
+        return new String(decrypt(encryptedText.getBytes(ISO_8859_1)), UTF_8);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text) {
+        return Base64.getEncoder().encode(encryptor.encrypt(text));
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedText) {
+        return encryptor.decrypt(Base64.getDecoder().decode(encryptedText));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package de.otto.edison.eventsourcing.encryption;
+
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link TextEncryptor} that is able to encrypt and decrypt the UTF-8 encoded bytes of texts, without creating
+ * intermediate Strings.
+ * <p>
+ *     The byte methods are equivalent to the String methods: {@code encrypt(text.getBytes(UTF_8))} returns the UTF-8
+ *     encoded bytes of {@code encrypt(text)}.
+ * </p>
+ */
+public interface ByteTextEncryptor extends TextEncryptor {
+
+    /**
+     * Encrypts the UTF-8 encoded bytes of a text.
+     *
+     * @param text UTF-8 encoded text
+     * @return UTF-8 encoded encrypted text
+     */
+    byte[] encrypt(byte[] text);
+
+    /**
+     * Decrypts the UTF-8 encoded bytes of an encrypted text.
+     *
+     * @param encryptedText UTF-8 encoded encrypted text
+     * @return UTF-8 encoded text
+     */
+    byte[] decrypt(byte[] encryptedText);
+
+    /**
+     * Returns a ByteTextEncryptor that is equivalent to the given TextEncryptor.
+     * <p>
+     *     ByteTextEncryptors are returned unchanged, and {@link Encryptors#noOpText()} is replaced by an encryptor
+     *     returning the bytes unchanged. Other TextEncryptors are adapted by converting the bytes from and to Strings.
+     * </p>
+     *
+     * @param textEncryptor the TextEncryptor
+     * @return ByteTextEncryptor
+     */
+    static ByteTextEncryptor of(final TextEncryptor textEncryptor) {
+        if (textEncryptor instanceof ByteTextEncryptor) {
+            return (ByteTextEncryptor) textEncryptor;
+        }
+        if (textEncryptor.getClass() == Encryptors.noOpText().getClass()) {
+            return NoOpByteTextEncryptor.INSTANCE;
+        }
+        return new ByteTextEncryptor() {
+            @Override
+            public byte[] encrypt(final byte[] text) {
+                return textEncryptor.encrypt(new String(text, UTF_8)).getBytes(UTF_8);
+            }
+
+            @Override
+            public byte[] decrypt(final byte[] encryptedText) {
+                return textEncryptor.decrypt(new String(encryptedText, UTF_8)).getBytes(UTF_8);
+            }
+
+            @Override
+            public String encrypt(final String text) {
+                return textEncryptor.encrypt(text);
+            }
+
+            @Override
+            public String decrypt(final String encryptedText) {
+                return textEncryptor.decrypt(encryptedText);
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package de.otto.edison.eventsourcing.encryption;
+
+/**
+ * A ByteTextEncryptor that does not encrypt texts.
+ */
+final class NoOpByteTextEncryptor implements ByteTextEncryptor {
+
+    static final NoOpByteTextEncryptor INSTANCE = new NoOpByteTextEncryptor();
+
+    private NoOpByteTextEncryptor() {
+    }
+
+    @Override
+    public byte[] encrypt(final byte[] text) {
+        return text;
+    }
+
+    @Override
+    public byte[] decrypt(final byte[] encryptedText) {
+        return encryptedText;
+    }
+
+    @Override
+    public String encrypt(final String text) {
+        return text;
+    }
+
+    @Override
+    public String decrypt(final String encryptedText) {
+        return encryptedText;
+    }
+}
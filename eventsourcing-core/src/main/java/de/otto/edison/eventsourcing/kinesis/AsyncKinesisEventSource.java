@@ -0,0 +1,79 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.consumer.AsyncEventSource;
+import de.otto.edison.eventsourcing.consumer.Event;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A non-blocking {@link KinesisEventSource}: the shards of the stream are consumed using the {@link KinesisAsyncClient},
+ * and instead of a thread per shard, a small {@link ScheduledExecutorService} is driving all shards. The scheduler
+ * may be shared by many event sources.
+ * <p>
+ *     Events, stream positions and the handling of resharded streams are the same as for the {@link KinesisEventSource};
+ *     {@link #consumeAll(StreamPosition, Predicate, Consumer) consumeAll} is still blocking the calling thread until
+ *     all shards are stopped, while {@link #consumeAllAsync(StreamPosition, Predicate, Consumer) consumeAllAsync} is
+ *     also coordinating the shards using the scheduler. Consumers are called by the threads of the scheduler and
+ *     should not block.
+ * </p>
+ */
+public class AsyncKinesisEventSource<T> extends KinesisEventSource<T> implements AsyncEventSource<T> {
+
+    private final KinesisStream kinesisStream;
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final ScheduledExecutorService scheduler;
+
+    public AsyncKinesisEventSource(final Class<T> payloadType,
+                                   final ObjectMapper objectMapper,
+                                   final KinesisStream kinesisStream,
+                                   final TextEncryptor textEncryptor,
+                                   final KinesisAsyncClient kinesisAsyncClient,
+                                   final ScheduledExecutorService scheduler) {
+        super(payloadType, objectMapper, kinesisStream, textEncryptor, null);
+        this.kinesisStream = kinesisStream;
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletableFuture<StreamPosition> consumeAllAsync(final StreamPosition startFrom,
+                                                             final Predicate<Event<T>> stopCondition,
+                                                             final Consumer<Event<T>> consumer) {
+        return startConsumption(startFrom, stopCondition, consumer, scheduler);
+    }
+
+    @Override
+    CompletableFuture<ShardPosition> startShard(final String shardId,
+                                                final String startPosition,
+                                                final Instant startTimestamp,
+                                                final Duration catchUpTolerance,
+                                                final Predicate<Event<T>> stopCondition,
+                                                final Consumer<Event<T>> consumer) {
+        return createAsyncKinesisShard(shardId).consumeRecords(
+                startPosition,
+                startTimestamp,
+                catchUpTolerance,
+                this::createEvent,
+                stopCondition,
+                consumer);
+    }
+
+    AsyncKinesisShard createAsyncKinesisShard(final String shardId) {
+        return new AsyncKinesisShard(
+                shardId,
+                getStreamName(),
+                kinesisAsyncClient,
+                kinesisStream.createPollScheduler(),
+                scheduler,
+                kinesisStream.getShardMetrics(shardId));
+    }
+}
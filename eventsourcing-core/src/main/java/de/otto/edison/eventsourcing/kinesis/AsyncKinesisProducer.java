@@ -0,0 +1,231 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Sends events to a Kinesis stream without blocking the calling thread on requests to Kinesis.
+ * <p>
+ *     Events are serialized by the calling thread, and handed over to a single sender thread per producer, that adds
+ *     them to the {@link KinesisBatchProducer batch producer} of the stream. Events sent by one thread are therefore
+ *     added to the batch in the order they were sent. Every event is represented by a future, completed with the
+ *     sequence number of the written record, or completed exceptionally if the event could not be serialized or
+ *     written.
+ * </p>
+ * <p>
+ *     The number of events and bytes that are sent, but not yet written, is limited by
+ *     {@link EventSourcingProperties.Producer#getMaxInFlightRecords()} and
+ *     {@link EventSourcingProperties.Producer#getMaxInFlightBytes()}. If a limit is reached,
+ *     {@link #sendEvent(String, Object)} blocks the caller until enough events are written, while
+ *     {@link #trySendEvent(String, Object)} immediately returns a future that is completed with a
+ *     {@link RejectedExecutionException}. Rejected events are counted by {@value #REJECTED_METRIC}; the bytes in flight
+ *     are published as gauge {@value #IN_FLIGHT_BYTES_METRIC}.
+ * </p>
+ */
+public class AsyncKinesisProducer implements AutoCloseable {
+
+    static final String IN_FLIGHT_BYTES_METRIC = "edison.eventsourcing.producer.inflight.bytes";
+    static final String REJECTED_METRIC = "edison.eventsourcing.producer.rejected";
+
+    private final String streamName;
+    private final KinesisStream kinesisStream;
+    private final KinesisBatchProducer batchProducer;
+    private final ExecutorService sender;
+    private final int maxInFlightRecords;
+    private final long maxInFlightBytes;
+    private final Counter rejected;
+
+    private int inFlightRecords = 0;
+    private long inFlightBytes = 0;
+    private boolean closed = false;
+
+    public AsyncKinesisProducer(final KinesisStream kinesisStream,
+                                final EventSourcingProperties.Producer properties,
+                                final MeterRegistry meterRegistry) {
+        this(kinesisStream, kinesisStream.getBatchProducer(), properties, meterRegistry,
+                newSingleThreadExecutor(threadFactory(kinesisStream.getStreamName())));
+    }
+
+    AsyncKinesisProducer(final KinesisStream kinesisStream,
+                         final KinesisBatchProducer batchProducer,
+                         final EventSourcingProperties.Producer properties,
+                         final MeterRegistry meterRegistry,
+                         final ExecutorService sender) {
+        this.streamName = kinesisStream.getStreamName();
+        this.kinesisStream = kinesisStream;
+        this.batchProducer = batchProducer;
+        this.sender = sender;
+        this.maxInFlightRecords = properties.getMaxInFlightRecords();
+        this.maxInFlightBytes = properties.getMaxInFlightBytes();
+        final Tags tags = Tags.of("stream", streamName);
+        meterRegistry.gauge(IN_FLIGHT_BYTES_METRIC, tags, this, AsyncKinesisProducer::getInFlightBytes);
+        this.rejected = meterRegistry.counter(REJECTED_METRIC, tags);
+    }
+
+    /**
+     * Sends an event, waiting while the limit of events or bytes in flight is reached.
+     *
+     * @param key the partition key of the event
+     * @param payload the payload of the event
+     * @param <T> the type of the payload
+     * @return future of the sequence number of the written record
+     */
+    public <T> CompletableFuture<String> sendEvent(final String key, final T payload) {
+        return send(key, payload, true);
+    }
+
+    /**
+     * Sends an event, if the limit of events or bytes in flight is not reached. Otherwise, the returned future is
+     * completed with a {@link RejectedExecutionException}.
+     *
+     * @param key the partition key of the event
+     * @param payload the payload of the event
+     * @param <T> the type of the payload
+     * @return future of the sequence number of the written record
+     */
+    public <T> CompletableFuture<String> trySendEvent(final String key, final T payload) {
+        return send(key, payload, false);
+    }
+
+    /**
+     * Sends the current batch of the stream after all events sent before.
+     *
+     * @return future, completed when the events sent before are written
+     */
+    public CompletableFuture<Void> flush() {
+        try {
+            return CompletableFuture.runAsync(batchProducer::flush, sender);
+        } catch (final RejectedExecutionException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Rejects all further events, and waits until the events sent before are written.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flush().join();
+        } catch (final RuntimeException e) {
+            // failures are reported to the futures of the events
+        }
+        sender.shutdown();
+        try {
+            sender.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of events that were sent, but are not yet written.
+     *
+     * @return number of events
+     */
+    public synchronized int getInFlightRecords() {
+        return inFlightRecords;
+    }
+
+    /**
+     * Returns the size of the events that were sent, but are not yet written.
+     *
+     * @return number of bytes
+     */
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    private <T> CompletableFuture<String> send(final String key, final T payload, final boolean block) {
+        final ByteBuffer data;
+        try {
+            data = kinesisStream.encode(payload);
+        } catch (final JsonProcessingException e) {
+            return failed(e);
+        }
+        final long size = KinesisBatchProducer.sizeOf(key, data);
+        try {
+            if (!acquire(size, block)) {
+                rejected.increment();
+                return failed(new RejectedExecutionException(format(
+                        "Too many events in flight for stream %s: %d events, %d bytes", streamName, getInFlightRecords(), getInFlightBytes())));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(e);
+        } catch (final IllegalStateException e) {
+            return failed(e);
+        }
+        // capacity is released before the result is completed, so callers waiting for the result see it released
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            sender.execute(() -> batchProducer.offer(key, data).whenComplete((sequenceNumber, throwable) -> {
+                release(size);
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(sequenceNumber);
+                }
+            }));
+        } catch (final RejectedExecutionException e) {
+            release(size);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Reserves capacity for an event. A single event exceeding the byte limit is accepted if nothing else is in
+     * flight, so it does not wait forever.
+     */
+    private synchronized boolean acquire(final long size, final boolean block) throws InterruptedException {
+        while (!closed && inFlightRecords > 0
+                && (inFlightRecords >= maxInFlightRecords || inFlightBytes + size > maxInFlightBytes)) {
+            if (!block) {
+                return false;
+            }
+            wait();
+        }
+        if (closed) {
+            throw new IllegalStateException("Producer of stream " + streamName + " is closed");
+        }
+        inFlightRecords++;
+        inFlightBytes += size;
+        return true;
+    }
+
+    private synchronized void release(final long size) {
+        inFlightRecords--;
+        inFlightBytes -= size;
+        notifyAll();
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    private static CustomizableThreadFactory threadFactory(final String streamName) {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("edison-eventsourcing-sender-" + streamName + "-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -0,0 +1,258 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.kinesis.model.InvalidArgumentException;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static de.otto.edison.eventsourcing.kinesis.ShardIteratorRequests.iteratorRequest;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A shard of a Kinesis stream that is consumed without blocking a thread: requests are sent using the
+ * {@link KinesisAsyncClient}, and waiting for the next poll is done by scheduling the next step on a
+ * {@link ScheduledExecutorService} that is shared by many shards.
+ * <p>
+ *     Throttled GetRecords requests are retried after a {@link ThrottlingBackoff back-off}, and expired shard
+ *     iterators are replaced by a new iterator after the last consumed record.
+ * </p>
+ * <p>
+ *     Records are decoded and consumed by the threads of the scheduler, one response after the other.
+ *     Consumers must therefore not block for a long time, otherwise other shards are delayed.
+ * </p>
+ */
+public class AsyncKinesisShard {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncKinesisShard.class);
+
+    private final String shardId;
+    private final String streamName;
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final ShardPollScheduler pollScheduler;
+    private final ScheduledExecutorService scheduler;
+    private final ShardMetrics metrics;
+
+    public AsyncKinesisShard(final String shardId,
+                             final String streamName,
+                             final KinesisAsyncClient kinesisAsyncClient,
+                             final ShardPollScheduler pollScheduler,
+                             final ScheduledExecutorService scheduler) {
+        this(shardId, streamName, kinesisAsyncClient, pollScheduler, scheduler, ShardMetrics.none());
+    }
+
+    public AsyncKinesisShard(final String shardId,
+                             final String streamName,
+                             final KinesisAsyncClient kinesisAsyncClient,
+                             final ShardPollScheduler pollScheduler,
+                             final ScheduledExecutorService scheduler,
+                             final ShardMetrics metrics) {
+        this.metrics = metrics;
+        this.shardId = shardId;
+        this.streamName = streamName;
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.pollScheduler = pollScheduler;
+        this.scheduler = scheduler;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Consumes the records of this shard, starting after {@code startFromSeqNumber}, until the stop condition is met
+     * or the end of a closed shard is reached.
+     * <p>
+     *     The semantics are the same as of {@link KinesisShard#consumeRecordsAndReturnLastSeqNumber(String, BiFunction, Predicate, Consumer)},
+     *     but the method returns immediately. Cancelling the returned future stops the consumption after the
+     *     current response.
+     * </p>
+     *
+     * @param startFromSeqNumber the sequence number to start after, or "0" to start at the trim horizon
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per batch
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return future of the position of the last consumed record
+     */
+    public <E> CompletableFuture<ShardPosition> consumeRecords(final String startFromSeqNumber,
+                                                               final BiFunction<Long, UserRecord, E> decoder,
+                                                               final Predicate<E> stopCondition,
+                                                               final Consumer<E> consumer) {
+        return consumeRecords(startFromSeqNumber, null, null, decoder, stopCondition, consumer);
+    }
+
+    /**
+     * Consumes the records of this shard like {@link #consumeRecords(String, BiFunction, Predicate, Consumer)}, but
+     * starts at {@code startTimestamp} instead of the trim horizon, if {@code startFromSeqNumber} is "0" or not
+     * valid for the shard, and stops when caught up like
+     * {@link KinesisShard#consumeRecordsAndReturnLastSeqNumber(String, Instant, Duration, BiFunction, Predicate, Consumer)}.
+     *
+     * @param startFromSeqNumber the sequence number to start after, or "0"
+     * @param startTimestamp the timestamp to start at, if there is no valid sequence number; may be null
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per batch
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return future of the position of the last consumed record
+     */
+    public <E> CompletableFuture<ShardPosition> consumeRecords(final String startFromSeqNumber,
+                                                               final Instant startTimestamp,
+                                                               final Duration catchUpTolerance,
+                                                               final BiFunction<Long, UserRecord, E> decoder,
+                                                               final Predicate<E> stopCondition,
+                                                               final Consumer<E> consumer) {
+        LOG.info("Reading asynchronously from stream {}, shard {} with starting sequence number {}{}",
+                streamName,
+                shardId,
+                startFromSeqNumber,
+                startTimestamp != null ? " or timestamp " + startTimestamp : "");
+        final Consumption<E> consumption = new Consumption<>(startFromSeqNumber, startTimestamp, catchUpTolerance, decoder, stopCondition, consumer);
+        consumption.start();
+        return consumption.result;
+    }
+
+    private CompletableFuture<String> retrieveIterator(final String sequenceNumber, final Instant timestamp) {
+        return kinesisAsyncClient.getShardIterator(iteratorRequest(streamName, shardId, sequenceNumber, timestamp))
+                .handle((response, failure) -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(response);
+                    } else if (unwrap(failure) instanceof InvalidArgumentException) {
+                        LOG.error(format("invalidShardSequenceNumber in Snapshot %s/%s - reading from %s", streamName, shardId, timestamp != null ? timestamp : "HORIZON"));
+                        return kinesisAsyncClient.getShardIterator(iteratorRequest(streamName, shardId, "0", timestamp));
+                    } else {
+                        throw new CompletionException(unwrap(failure));
+                    }
+                })
+                .thenCompose(future -> future)
+                .thenApply(GetShardIteratorResponse::shardIterator);
+    }
+
+    private static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+    }
+
+    /**
+     * The state of a single consumption of the shard. Every step is scheduled after the previous step is
+     * completed, so the steps of a single consumption never run concurrently.
+     */
+    private final class Consumption<E> {
+        private final ShardRecordProcessor<E> processor;
+        private final CompletableFuture<ShardPosition> result = new CompletableFuture<>();
+        private final ThrottlingBackoff throttlingBackoff = new ThrottlingBackoff();
+        private final Instant startTimestamp;
+
+        private Consumption(final String startFromSeqNumber,
+                            final Instant startTimestamp,
+                            final Duration catchUpTolerance,
+                            final BiFunction<Long, UserRecord, E> decoder,
+                            final Predicate<E> stopCondition,
+                            final Consumer<E> consumer) {
+            this.processor = new ShardRecordProcessor<>(startFromSeqNumber, catchUpTolerance, decoder, stopCondition, consumer);
+            this.startTimestamp = startTimestamp;
+        }
+
+        void start() {
+            retrieveIterator(processor.lastSequenceNumber(), startTimestamp).whenCompleteAsync((iteratorId, failure) -> {
+                if (failure != null) {
+                    fail(failure);
+                } else {
+                    reserveAndFetch(iteratorId);
+                }
+            }, scheduler);
+        }
+
+        private void schedulePoll(final String iteratorId, final GetRecordsResponse previousResponse) {
+            final long waitNanos = pollScheduler.nextWait(previousResponse).toNanos();
+            if (waitNanos > 0) {
+                scheduler.schedule(() -> reserveAndFetch(iteratorId), waitNanos, NANOSECONDS);
+            } else {
+                reserveAndFetch(iteratorId);
+            }
+        }
+
+        private void reserveAndFetch(final String iteratorId) {
+            if (result.isDone()) {
+                return;
+            }
+            final long delayNanos = pollScheduler.reservePoll();
+            if (delayNanos > 0) {
+                scheduler.schedule(() -> fetch(iteratorId), delayNanos, NANOSECONDS);
+            } else {
+                fetch(iteratorId);
+            }
+        }
+
+        private void fetch(final String iteratorId) {
+            if (result.isDone()) {
+                return;
+            }
+            final GetRecordsRequest request = GetRecordsRequest.builder()
+                    .shardIterator(iteratorId)
+                    .limit(KinesisShardIterator.FETCH_RECORDS_LIMIT)
+                    .build();
+            final long startNanos = System.nanoTime();
+            kinesisAsyncClient.getRecords(request).whenCompleteAsync((response, failure) -> {
+                if (failure == null) {
+                    metrics.recordGetRecords(System.nanoTime() - startNanos, response);
+                    throttlingBackoff.reset();
+                    process(response);
+                } else if (unwrap(failure) instanceof ProvisionedThroughputExceededException) {
+                    metrics.recordThrottled();
+                    final long backoffMillis = throttlingBackoff.next().toMillis();
+                    LOG.info("GetRecords throttled for shard {} of stream {}, retrying in {}ms", shardId, streamName, backoffMillis);
+                    scheduler.schedule(() -> reserveAndFetch(iteratorId), backoffMillis, MILLISECONDS);
+                } else if (unwrap(failure) instanceof ExpiredIteratorException) {
+                    LOG.info("Shard iterator of shard {} of stream {} expired, retrieving new iterator after position {}", shardId, streamName, processor.lastSequenceNumber());
+                    start();
+                } else {
+                    fail(failure);
+                }
+            }, scheduler);
+        }
+
+        private void process(final GetRecordsResponse response) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                final boolean stopRetrieval = processor.process(response.records(), response.millisBehindLatest());
+                final boolean shardClosed = response.nextShardIterator() == null;
+                if (stopRetrieval || shardClosed) {
+                    if (shardClosed) {
+                        LOG.info("Reached end of closed shard {} of stream {}", shardId, streamName);
+                    } else {
+                        LOG.info("Terminating event source for stream {}", streamName);
+                    }
+                    result.complete(new ShardPosition(shardId, processor.lastSequenceNumber(), shardClosed));
+                } else {
+                    schedulePoll(response.nextShardIterator(), response);
+                }
+            } catch (final RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(final Throwable failure) {
+            LOG.error("Failed to consume shard {} of stream {}: {}", shardId, streamName, unwrap(failure).getMessage());
+            result.completeExceptionally(unwrap(failure));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import java.time.Duration;
+
+/**
+ * Decides whether the consumer of a shard has caught up with the tip of the shard, using the
+ * {@code millisBehindLatest} of a GetRecords response or fan-out event.
+ * <p>
+ *     In contrast to stopping at the first empty response, this does not stop in front of a gap in a shard that
+ *     is still behind, and it does not depend on the clock of the consumer.
+ * </p>
+ */
+final class CatchUp {
+
+    private CatchUp() {
+    }
+
+    /**
+     * Returns true, if the consumption should stop because the shard is caught up.
+     *
+     * @param millisBehindLatest the millis behind latest of the last response, or null if unknown
+     * @param tolerance the max duration behind latest that is considered to be caught up, or null if the
+     *                  consumption should not stop when caught up
+     * @return boolean
+     */
+    static boolean isCaughtUp(final Long millisBehindLatest, final Duration tolerance) {
+        return tolerance != null
+                && millisBehindLatest != null
+                && millisBehindLatest <= tolerance.toMillis();
+    }
+}
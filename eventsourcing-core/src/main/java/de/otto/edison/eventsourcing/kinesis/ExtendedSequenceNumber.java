@@ -0,0 +1,118 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.util.Objects;
+
+/**
+ * The position of a shard, consisting of the sequence number of a Kinesis record and, for records aggregated by the
+ * KPL, the sub-sequence number of the last consumed user record inside of the aggregated record.
+ * <p>
+ *     Positions inside of an aggregated record are written as {@code <sequenceNumber>:<subSequenceNumber>}, so they
+ *     can be stored in a {@link de.otto.edison.eventsourcing.consumer.StreamPosition} like plain sequence numbers.
+ *     Positions without sub-sequence number point behind the complete Kinesis record.
+ * </p>
+ */
+final class ExtendedSequenceNumber {
+
+    private static final char SEPARATOR = ':';
+
+    private final String sequenceNumber;
+    private final long subSequenceNumber;
+
+    private ExtendedSequenceNumber(final String sequenceNumber, final long subSequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+        this.subSequenceNumber = subSequenceNumber;
+    }
+
+    static ExtendedSequenceNumber of(final String sequenceNumber, final long subSequenceNumber) {
+        return new ExtendedSequenceNumber(sequenceNumber, subSequenceNumber);
+    }
+
+    /**
+     * Parses a shard position.
+     *
+     * @param position a sequence number, an extended sequence number, or "0" or null for the trim horizon
+     * @return ExtendedSequenceNumber
+     */
+    static ExtendedSequenceNumber parse(final String position) {
+        if (position == null || position.equals("0")) {
+            return new ExtendedSequenceNumber("0", UserRecord.NOT_AGGREGATED);
+        }
+        final int separator = position.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return new ExtendedSequenceNumber(position, UserRecord.NOT_AGGREGATED);
+        }
+        try {
+            return new ExtendedSequenceNumber(
+                    position.substring(0, separator),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard position " + position, e);
+        }
+    }
+
+    String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    boolean isTrimHorizon() {
+        return sequenceNumber.equals("0");
+    }
+
+    boolean isInsideAggregate() {
+        return subSequenceNumber != UserRecord.NOT_AGGREGATED;
+    }
+
+    /**
+     * The type of shard iterator used to continue after this position: the Kinesis record containing a position
+     * inside of an aggregated record must be read again.
+     *
+     * @return ShardIteratorType
+     */
+    ShardIteratorType iteratorType() {
+        if (isTrimHorizon()) {
+            return ShardIteratorType.TRIM_HORIZON;
+        }
+        return isInsideAggregate()
+                ? ShardIteratorType.AT_SEQUENCE_NUMBER
+                : ShardIteratorType.AFTER_SEQUENCE_NUMBER;
+    }
+
+    /**
+     * Returns true, if the user record was already consumed when this position was reached.
+     *
+     * @param userRecord the user record
+     * @return boolean
+     */
+    boolean includes(final UserRecord userRecord) {
+        return isInsideAggregate()
+                && sequenceNumber.equals(userRecord.sequenceNumber())
+                && userRecord.subSequenceNumber() <= subSequenceNumber;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ExtendedSequenceNumber that = (ExtendedSequenceNumber) o;
+        return subSequenceNumber == that.subSequenceNumber &&
+                Objects.equals(sequenceNumber, that.sequenceNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sequenceNumber, subSequenceNumber);
+    }
+
+    @Override
+    public String toString() {
+        return isInsideAggregate()
+                ? sequenceNumber + SEPARATOR + subSequenceNumber
+                : sequenceNumber;
+    }
+}
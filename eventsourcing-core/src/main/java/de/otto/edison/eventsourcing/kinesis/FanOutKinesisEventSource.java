@@ -0,0 +1,48 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.consumer.Event;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A {@link KinesisEventSource} that consumes the shards of the stream using enhanced fan-out: records are pushed by
+ * a {@link ShardSubscriptionClient} as soon as they are available, instead of polling the shards using GetRecords.
+ * <p>
+ *     Events, stream positions and the handling of resharded streams are the same as for the {@link KinesisEventSource}.
+ * </p>
+ */
+public class FanOutKinesisEventSource<T> extends KinesisEventSource<T> {
+
+    private final ShardSubscriptionClient subscriptionClient;
+
+    public FanOutKinesisEventSource(final Class<T> payloadType,
+                                    final ObjectMapper objectMapper,
+                                    final KinesisStream kinesisStream,
+                                    final TextEncryptor textEncryptor,
+                                    final ShardExecutor shardExecutor,
+                                    final ShardSubscriptionClient subscriptionClient) {
+        super(payloadType, objectMapper, kinesisStream, textEncryptor, shardExecutor);
+        this.subscriptionClient = subscriptionClient;
+    }
+
+    @Override
+    ShardPosition consumeShard(final String shardId,
+                               final String startPosition,
+                               final Instant startTimestamp,
+                               final Duration catchUpTolerance,
+                               final Predicate<Event<T>> stopCondition,
+                               final Consumer<Event<T>> consumer) {
+        return new FanOutKinesisShard(shardId, getStreamName(), subscriptionClient).consumeRecordsAndReturnLastSeqNumber(
+                startPosition,
+                startTimestamp,
+                catchUpTolerance,
+                this::createEvent,
+                stopCondition,
+                consumer);
+    }
+}
@@ -0,0 +1,280 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.AmazonServiceException;
+import software.amazon.awssdk.core.SdkClientException;
+import software.amazon.awssdk.services.kinesis.model.LimitExceededException;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.ResourceInUseException;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A shard of a Kinesis stream that is consumed using enhanced fan-out: records are pushed by a
+ * {@link ShardSubscriptionClient} instead of being polled using GetRecords.
+ * <p>
+ *     SubscribeToShard is rate-limited per consumer and shard. Subscriptions that completed without records,
+ *     or that failed with a retriable error, like a {@link ResourceInUseException} while the previous subscription
+ *     is still active, or a dropped connection, are renewed after a {@link ThrottlingBackoff back-off}, continuing
+ *     after the last consumed record. Failures of the consumer are not retried.
+ * </p>
+ */
+public class FanOutKinesisShard {
+    private static final Logger LOG = LoggerFactory.getLogger(FanOutKinesisShard.class);
+
+    private final String shardId;
+    private final String streamName;
+    private final ShardSubscriptionClient subscriptionClient;
+    private final ThrottlingBackoff backoff;
+
+    public FanOutKinesisShard(final String shardId,
+                              final String streamName,
+                              final ShardSubscriptionClient subscriptionClient) {
+        this(shardId, streamName, subscriptionClient, new ThrottlingBackoff());
+    }
+
+    FanOutKinesisShard(final String shardId,
+                       final String streamName,
+                       final ShardSubscriptionClient subscriptionClient,
+                       final ThrottlingBackoff backoff) {
+        this.shardId = shardId;
+        this.streamName = streamName;
+        this.subscriptionClient = subscriptionClient;
+        this.backoff = backoff;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Consumes the records of this shard, starting after {@code startFromSeqNumber}, until the stop condition is met,
+     * or the end of a closed shard is reached. Completed subscriptions are renewed, starting after the last
+     * consumed record.
+     * <p>
+     *     The semantics are the same as of {@link KinesisShard#consumeRecordsAndReturnLastSeqNumber(String, BiFunction, Predicate, Consumer)}:
+     *     every record is decoded once, and the stop condition is called with {@code null} once per pushed event.
+     * </p>
+     *
+     * @param startFromSeqNumber the sequence number to start after, or "0" to start at the trim horizon
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per event
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return the position of the last consumed record
+     */
+    public <E> ShardPosition consumeRecordsAndReturnLastSeqNumber(final String startFromSeqNumber,
+                                                                  final BiFunction<Long, UserRecord, E> decoder,
+                                                                  final Predicate<E> stopCondition,
+                                                                  final Consumer<E> consumer) {
+        return consumeRecordsAndReturnLastSeqNumber(startFromSeqNumber, null, null, decoder, stopCondition, consumer);
+    }
+
+    /**
+     * Consumes the records of this shard like {@link #consumeRecordsAndReturnLastSeqNumber(String, BiFunction, Predicate, Consumer)},
+     * but subscribes at {@code startTimestamp} instead of the trim horizon, if {@code startFromSeqNumber} is "0", and
+     * stops after the first event that is at most {@code catchUpTolerance} behind the tip of the shard.
+     *
+     * @param startFromSeqNumber the sequence number to start after, or "0"
+     * @param startTimestamp the timestamp to start at, if {@code startFromSeqNumber} is "0"; may be null
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per event
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return the position of the last consumed record
+     */
+    public <E> ShardPosition consumeRecordsAndReturnLastSeqNumber(final String startFromSeqNumber,
+                                                                  final Instant startTimestamp,
+                                                                  final Duration catchUpTolerance,
+                                                                  final BiFunction<Long, UserRecord, E> decoder,
+                                                                  final Predicate<E> stopCondition,
+                                                                  final Consumer<E> consumer) {
+        LOG.info("Subscribing to stream {}, shard {} with starting sequence number {}", streamName, shardId, startFromSeqNumber);
+        String lastSequenceNumber = startFromSeqNumber;
+        boolean shardClosed = false;
+        boolean stopped = false;
+        while (!stopped && !shardClosed) {
+            final ExtendedSequenceNumber position = ExtendedSequenceNumber.parse(lastSequenceNumber);
+            final ShardSubscriber<E> subscriber = new ShardSubscriber<>(lastSequenceNumber, catchUpTolerance, decoder, stopCondition, consumer);
+            boolean retry = false;
+            try {
+                subscribe(position, startTimestamp).subscribe(subscriber);
+                subscriber.awaitCompletion();
+                retry = !subscriber.receivedRecords;
+            } catch (final InterruptedException e) {
+                LOG.warn("Thread got interrupted");
+                subscriber.cancel();
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } catch (final RuntimeException e) {
+                if (subscriber.consumerFailed || !isRetriable(e)) {
+                    throw e;
+                }
+                LOG.info("Subscription to stream {}, shard {} failed: {}", streamName, shardId, e.toString());
+                retry = true;
+            }
+            lastSequenceNumber = subscriber.processor.lastSequenceNumber();
+            stopped |= subscriber.stopped;
+            shardClosed = subscriber.shardClosed;
+            if (!retry) {
+                backoff.reset();
+            } else if (!stopped && !shardClosed) {
+                stopped = !awaitBackoff();
+            }
+        }
+        if (shardClosed) {
+            LOG.info("Reached end of closed shard {} of stream {}", shardId, streamName);
+        } else {
+            LOG.info("Terminating event source for stream {}", streamName);
+        }
+        return new ShardPosition(shardId, lastSequenceNumber, shardClosed);
+    }
+
+    /**
+     * Waits before a subscription is renewed.
+     *
+     * @return false, if the thread was interrupted while waiting
+     */
+    private boolean awaitBackoff() {
+        final long backoffMillis = backoff.next().toMillis();
+        LOG.debug("Renewing subscription to stream {}, shard {} in {}ms", streamName, shardId, backoffMillis);
+        try {
+            Thread.sleep(backoffMillis);
+            return true;
+        } catch (final InterruptedException e) {
+            LOG.warn("Thread got interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns true, if the subscription failed because of throttling, a concurrent subscription, an internal
+     * failure of Kinesis, or a client side error like a dropped connection.
+     *
+     * @param failure the failure of a subscription
+     * @return true, if the subscription should be renewed
+     */
+    static boolean isRetriable(final Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResourceInUseException
+                    || cause instanceof LimitExceededException
+                    || cause instanceof ProvisionedThroughputExceededException
+                    || cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof AmazonServiceException) {
+                return ((AmazonServiceException) cause).getStatusCode() >= 500;
+            }
+            if (cause instanceof SdkClientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Publisher<ShardSubscriptionEvent> subscribe(final ExtendedSequenceNumber position, final Instant startTimestamp) {
+        if (position.isTrimHorizon() && startTimestamp != null) {
+            try {
+                return subscriptionClient.subscribeToShard(streamName, shardId, ShardIteratorType.AT_TIMESTAMP, null, startTimestamp);
+            } catch (final UnsupportedOperationException e) {
+                LOG.warn("Unable to subscribe to shard {} of stream {} at timestamp {}, subscribing at trim horizon instead: {}",
+                        shardId, streamName, startTimestamp, e.getMessage());
+            }
+        }
+        return subscriptionClient.subscribeToShard(streamName, shardId, position.iteratorType(), position.getSequenceNumber());
+    }
+
+    /**
+     * Subscriber of a single subscription. Events are requested one by one, so a slow consumer is not
+     * flooded with events.
+     */
+    private static final class ShardSubscriber<E> implements Subscriber<ShardSubscriptionEvent> {
+        private final ShardRecordProcessor<E> processor;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private volatile Subscription subscription;
+        private volatile boolean stopped = false;
+        private volatile boolean shardClosed = false;
+        private volatile boolean receivedRecords = false;
+        private volatile boolean consumerFailed = false;
+
+        private ShardSubscriber(final String startFromSeqNumber,
+                                final Duration catchUpTolerance,
+                                final BiFunction<Long, UserRecord, E> decoder,
+                                final Predicate<E> stopCondition,
+                                final Consumer<E> consumer) {
+            this.processor = new ShardRecordProcessor<>(startFromSeqNumber, catchUpTolerance, decoder, stopCondition, consumer);
+        }
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final ShardSubscriptionEvent event) {
+            if (completion.isDone()) {
+                return;
+            }
+            try {
+                receivedRecords |= !event.records().isEmpty();
+                final boolean stopConsumption = processor.process(event.records(), event.millisBehindLatest());
+                shardClosed = event.continuationSequenceNumber() == null;
+                if (stopConsumption || shardClosed) {
+                    stopped = stopConsumption;
+                    cancel();
+                    completion.complete(null);
+                } else {
+                    subscription.request(1);
+                }
+            } catch (final RuntimeException e) {
+                consumerFailed = true;
+                cancel();
+                completion.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            completion.completeExceptionally(t);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+
+        void cancel() {
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        void awaitCompletion() throws InterruptedException {
+            try {
+                completion.get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
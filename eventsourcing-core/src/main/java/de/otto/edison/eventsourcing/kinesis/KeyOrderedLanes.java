@@ -0,0 +1,170 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import de.otto.edison.eventsourcing.consumer.Event;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes the events of a single shard in parallel, using a number of lanes: events are assigned to a lane by
+ * the hash of their {@link Event#key() key}, and every lane processes its events one after the other. Events
+ * having the same key are therefore processed in the order of the shard, while events of different keys are
+ * processed concurrently by the threads of the {@link Executor}.
+ * <p>
+ *     The position of the shard is only advanced after all events up to that position are processed, regardless
+ *     of the lane: the {@code positionListener} is called with the position of the last event that was processed,
+ *     after all of its predecessors were processed, too. If the consumer fails, the position is not advanced
+ *     beyond the failed event, and no further events are processed.
+ * </p>
+ * <p>
+ *     The number of dispatched events that are not yet processed is limited by {@code maxPendingEvents}:
+ *     {@link #accept(Event)} is waiting until a dispatched event was processed if the limit is reached.
+ * </p>
+ *
+ * @param <T> the type of the event payloads
+ */
+final class KeyOrderedLanes<T> implements Consumer<Event<T>> {
+
+    private final Consumer<Event<T>> consumer;
+    private final Function<Event<T>, String> positionOf;
+    private final Consumer<String> positionListener;
+    private final Executor executor;
+    private final Semaphore pendingPermits;
+    private final CompletableFuture<?>[] lanes;
+
+    private final Deque<PendingEvent> pendingEvents = new ArrayDeque<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private CompletableFuture<Void> drained;
+
+    KeyOrderedLanes(final int numberOfLanes,
+                    final int maxPendingEvents,
+                    final Executor executor,
+                    final Consumer<Event<T>> consumer,
+                    final Function<Event<T>, String> positionOf,
+                    final Consumer<String> positionListener) {
+        if (numberOfLanes < 1) {
+            throw new IllegalArgumentException("number of lanes must be positive, but was " + numberOfLanes);
+        }
+        this.consumer = consumer;
+        this.positionOf = positionOf;
+        this.positionListener = positionListener;
+        this.executor = executor;
+        this.pendingPermits = new Semaphore(Math.max(maxPendingEvents, numberOfLanes));
+        this.lanes = new CompletableFuture<?>[numberOfLanes];
+        for (int i = 0; i < numberOfLanes; ++i) {
+            lanes[i] = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Dispatches an event to the lane of its key, waiting while the max number of pending events is reached.
+     *
+     * @param event the event
+     * @throws RuntimeException the failure of the consumer, if processing a previous event has failed
+     * @throws CancellationException if the thread was interrupted while waiting
+     */
+    @Override
+    public void accept(final Event<T> event) {
+        rethrowFailure();
+        try {
+            pendingPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for lanes of shard");
+        }
+        final PendingEvent pendingEvent = new PendingEvent(positionOf.apply(event));
+        synchronized (this) {
+            pendingEvents.addLast(pendingEvent);
+            final int lane = laneOf(event.key());
+            lanes[lane] = lanes[lane].thenRunAsync(() -> process(event, pendingEvent), executor);
+        }
+    }
+
+    /**
+     * Returns a future that is completed, as soon as all dispatched events are processed, or completed exceptionally
+     * with the failure of the consumer.
+     *
+     * @return future
+     */
+    synchronized CompletableFuture<Void> drain() {
+        final Throwable throwable = failure.get();
+        if (throwable != null) {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(throwable);
+            return failed;
+        }
+        if (pendingEvents.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (drained == null) {
+            drained = new CompletableFuture<>();
+        }
+        return drained;
+    }
+
+    int laneOf(final String key) {
+        return key != null ? Math.floorMod(key.hashCode(), lanes.length) : 0;
+    }
+
+    private void process(final Event<T> event, final PendingEvent pendingEvent) {
+        try {
+            if (failure.get() == null) {
+                consumer.accept(event);
+                processed(pendingEvent);
+            }
+        } catch (final RuntimeException | Error e) {
+            failed(e);
+        } finally {
+            pendingPermits.release();
+        }
+    }
+
+    private synchronized void processed(final PendingEvent pendingEvent) {
+        pendingEvent.processed = true;
+        String position = null;
+        while (!pendingEvents.isEmpty() && pendingEvents.peekFirst().processed) {
+            position = pendingEvents.removeFirst().position;
+        }
+        if (position != null) {
+            positionListener.accept(position);
+        }
+        if (pendingEvents.isEmpty() && drained != null) {
+            drained.complete(null);
+            drained = null;
+        }
+    }
+
+    private synchronized void failed(final Throwable throwable) {
+        failure.compareAndSet(null, throwable);
+        if (drained != null) {
+            drained.completeExceptionally(failure.get());
+            drained = null;
+        }
+    }
+
+    private void rethrowFailure() {
+        final Throwable throwable = failure.get();
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+    }
+
+    private static final class PendingEvent {
+        private final String position;
+        private boolean processed = false;
+
+        private PendingEvent(final String position) {
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Sends records to a Kinesis stream in batches, using PutRecords instead of a PutRecord request per record.
+ * <p>
+ *     Records are collected until the batch is full ({@link EventSourcingProperties.Producer#getMaxBatchRecords() records}
+ *     or {@link EventSourcingProperties.Producer#getMaxBatchBytes() bytes}), the
+ *     {@link EventSourcingProperties.Producer#getLingerMillis() linger time} after the first record of the batch has
+ *     elapsed, or {@link #flush()} is called. Batches are sent one after the other, in the order they were filled.
+ * </p>
+ * <p>
+ *     Full batches are sent by the thread adding the record. The linger timer is shared by all producers and only
+ *     hands lingering batches over to the sender thread of this producer, so a stream that is throttled, and backs
+ *     off while retrying, does not delay the linger flushes of other streams. Every batch is numbered when it is
+ *     taken, and waits for the batches taken before, so records of the same partition key are never reordered by
+ *     a linger flush overlapping a size flush.
+ * </p>
+ * <p>
+ *     If Kinesis rejects some of the records of a batch, for example because the throughput of a shard is
+ *     exceeded, only the rejected records are retried with exponential back-off. Retried records may therefore be
+ *     written after records that were added later.
+ * </p>
+ * <p>
+ *     The number of records that are added, but not yet written, is published as gauge {@value #IN_FLIGHT_METRIC};
+ *     sent batches are timed by {@value #FLUSH_METRIC}, tagged with the trigger of the flush (size, linger or
+ *     explicit). Retried and finally failed records are counted by {@value #RETRIES_METRIC} and {@value #FAILED_METRIC}.
+ * </p>
+ */
+public class KinesisBatchProducer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisBatchProducer.class);
+
+    static final String IN_FLIGHT_METRIC = "edison.eventsourcing.producer.inflight";
+    static final String FLUSH_METRIC = "edison.eventsourcing.producer.flush";
+    static final String RETRIES_METRIC = "edison.eventsourcing.producer.retries";
+    static final String FAILED_METRIC = "edison.eventsourcing.producer.failed";
+
+    private static final long SENDER_KEEP_ALIVE_SECONDS = 60;
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = newSingleThreadScheduledExecutor(threadFactory("edison-eventsourcing-producer-"));
+    }
+
+    private final String streamName;
+    private final KinesisClient kinesisClient;
+    private final EventSourcingProperties.Producer properties;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService sender;
+    private final Object sendLock = new Object();
+
+    private final AtomicInteger inFlight;
+    private final Timer sizeFlushes;
+    private final Timer lingerFlushes;
+    private final Timer explicitFlushes;
+    private final Counter retries;
+    private final Counter failures;
+
+    private List<PendingRecord> batch = new ArrayList<>();
+    private long batchBytes = 0;
+    private ScheduledFuture<?> lingerTimer;
+    private boolean closed = false;
+    private long takenBatches = 0;
+    /* guarded by sendLock */
+    private long sentBatches = 0;
+
+    public KinesisBatchProducer(final String streamName,
+                                final KinesisClient kinesisClient,
+                                final EventSourcingProperties.Producer properties,
+                                final MeterRegistry meterRegistry) {
+        this(streamName, kinesisClient, properties, meterRegistry, SharedScheduler.INSTANCE);
+    }
+
+    KinesisBatchProducer(final String streamName,
+                         final KinesisClient kinesisClient,
+                         final EventSourcingProperties.Producer properties,
+                         final MeterRegistry meterRegistry,
+                         final ScheduledExecutorService scheduler) {
+        this(streamName, kinesisClient, properties, meterRegistry, scheduler, senderOf(streamName));
+    }
+
+    KinesisBatchProducer(final String streamName,
+                         final KinesisClient kinesisClient,
+                         final EventSourcingProperties.Producer properties,
+                         final MeterRegistry meterRegistry,
+                         final ScheduledExecutorService scheduler,
+                         final ExecutorService sender) {
+        this.streamName = streamName;
+        this.kinesisClient = kinesisClient;
+        this.properties = properties;
+        this.scheduler = scheduler;
+        this.sender = sender;
+        final Tags tags = Tags.of("stream", streamName);
+        this.inFlight = meterRegistry.gauge(IN_FLIGHT_METRIC, tags, new AtomicInteger());
+        this.sizeFlushes = meterRegistry.timer(FLUSH_METRIC, tags.and("trigger", "size"));
+        this.lingerFlushes = meterRegistry.timer(FLUSH_METRIC, tags.and("trigger", "linger"));
+        this.explicitFlushes = meterRegistry.timer(FLUSH_METRIC, tags.and("trigger", "explicit"));
+        this.retries = meterRegistry.counter(RETRIES_METRIC, tags);
+        this.failures = meterRegistry.counter(FAILED_METRIC, tags);
+    }
+
+    /**
+     * Adds a record to the current batch. If the batch is full, it is sent by the calling thread.
+     *
+     * @param partitionKey the partition key of the record
+     * @param data the data of the record
+     * @return future of the sequence number of the written record; completed exceptionally, if the record
+     *         could not be written
+     * @throws IllegalStateException if the producer is closed, or if records of a full batch could not be written
+     */
+    public CompletableFuture<String> add(final String partitionKey, final ByteBuffer data) {
+        final PendingRecord record = new PendingRecord(partitionKey, data);
+        RuntimeException failure = null;
+        for (final Batch fullBatch : enqueue(record)) {
+            try {
+                send(fullBatch, sizeFlushes);
+            } catch (final RuntimeException e) {
+                // every taken batch must be sent, or the following batches would wait forever
+                failure = failure != null ? failure : e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return record.written;
+    }
+
+    /**
+     * Adds a record like {@link #add(String, ByteBuffer)}, but never throws: all failures, including a closed
+     * producer, are only reported by the returned future.
+     *
+     * @param partitionKey the partition key of the record
+     * @param data the data of the record
+     * @return future of the sequence number of the written record
+     */
+    CompletableFuture<String> offer(final String partitionKey, final ByteBuffer data) {
+        final PendingRecord record = new PendingRecord(partitionKey, data);
+        final List<Batch> fullBatches;
+        try {
+            fullBatches = enqueue(record);
+        } catch (final IllegalStateException e) {
+            record.written.completeExceptionally(e);
+            return record.written;
+        }
+        for (final Batch fullBatch : fullBatches) {
+            try {
+                send(fullBatch, sizeFlushes);
+            } catch (final RuntimeException e) {
+                // already reported to the futures of the records in the batch
+                LOG.debug("Failed to send batch of records to stream {}: {}", streamName, e.getMessage());
+            }
+        }
+        return record.written;
+    }
+
+    /**
+     * Sends the current batch, and waits until all batches filled before are written.
+     *
+     * @throws IllegalStateException if records could not be written
+     */
+    public void flush() {
+        send(takeBatch(), explicitFlushes);
+    }
+
+    /**
+     * Sends the current batch and rejects all further records.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of records that were added, but are not yet written.
+     *
+     * @return number of records
+     */
+    public int getInFlightRecords() {
+        return inFlight.get();
+    }
+
+    static long sizeOf(final String partitionKey, final ByteBuffer data) {
+        return data.remaining() + partitionKey.getBytes(UTF_8).length;
+    }
+
+    /**
+     * Adds the record to the current batch, and returns the batches that are full and must be sent.
+     */
+    private synchronized List<Batch> enqueue(final PendingRecord record) {
+        if (closed) {
+            throw new IllegalStateException("Producer of stream " + streamName + " is closed");
+        }
+        final List<Batch> fullBatches = new ArrayList<>(2);
+        if (!batch.isEmpty() && batchBytes + record.size > properties.getMaxBatchBytes()) {
+            fullBatches.add(takeBatch());
+        }
+        batch.add(record);
+        batchBytes += record.size;
+        inFlight.incrementAndGet();
+        if (batch.size() >= properties.getMaxBatchRecords() || batchBytes >= properties.getMaxBatchBytes()) {
+            fullBatches.add(takeBatch());
+        } else if (lingerTimer == null) {
+            lingerTimer = scheduler.schedule(this::flushAfterLinger, properties.getLingerMillis(), MILLISECONDS);
+        }
+        return fullBatches;
+    }
+
+    /**
+     * Takes the current batch and numbers it. An empty batch gets the number of the next batch, so sending it waits
+     * until all batches taken before are sent.
+     */
+    private synchronized Batch takeBatch() {
+        if (lingerTimer != null) {
+            lingerTimer.cancel(false);
+            lingerTimer = null;
+        }
+        if (batch.isEmpty()) {
+            return new Batch(emptyList(), takenBatches);
+        }
+        final Batch full = new Batch(batch, takenBatches++);
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        return full;
+    }
+
+    /**
+     * Called by the shared linger timer: hands the current batch over to the sender thread, without waiting for it.
+     */
+    private void flushAfterLinger() {
+        final Batch lingering = takeBatch();
+        if (lingering.records.isEmpty()) {
+            return;
+        }
+        try {
+            sender.execute(() -> {
+                try {
+                    send(lingering, lingerFlushes);
+                } catch (final RuntimeException e) {
+                    LOG.error("Failed to send batch of records to stream {}: {}", streamName, e.getMessage());
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // the producer is closed and the sender is shut down; close() already flushed all other batches
+            send(lingering, lingerFlushes);
+        }
+    }
+
+    /**
+     * Sends a batch after all batches taken before it are sent.
+     */
+    private void send(final Batch taken, final Timer timer) {
+        final List<PendingRecord> records = taken.records;
+        synchronized (sendLock) {
+            awaitTurnOf(taken);
+            if (records.isEmpty()) {
+                return;
+            }
+            try {
+                timer.record(() -> putRecordsWithRetries(records));
+            } catch (final RuntimeException e) {
+                records.forEach(record -> record.written.completeExceptionally(e));
+                throw e;
+            } finally {
+                inFlight.addAndGet(-records.size());
+                ++sentBatches;
+                sendLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits, holding the sendLock, until all batches taken before the given batch are sent. The wait is not
+     * interruptible, because a batch that is skipped would block all following batches.
+     */
+    private void awaitTurnOf(final Batch taken) {
+        boolean interrupted = false;
+        while (sentBatches < taken.number) {
+            try {
+                sendLock.wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void putRecordsWithRetries(final List<PendingRecord> records) {
+        List<PendingRecord> pending = records;
+        long backoffMillis = properties.getRetryBackoffMillis();
+        for (int retry = 0; ; ++retry) {
+            final PutRecordsResponse response = kinesisClient.putRecords(PutRecordsRequest.builder()
+                    .streamName(streamName)
+                    .records(pending.stream().map(record -> record.entry).toArray(PutRecordsRequestEntry[]::new))
+                    .build());
+            final List<PendingRecord> failed = new ArrayList<>();
+            String errorCode = null;
+            final List<PutRecordsResultEntry> results = response.records() != null ? response.records() : emptyList();
+            for (int i = 0; i < pending.size(); ++i) {
+                final PutRecordsResultEntry result = i < results.size() ? results.get(i) : null;
+                if (result != null && result.errorCode() != null) {
+                    failed.add(pending.get(i));
+                    errorCode = result.errorCode();
+                } else {
+                    pending.get(i).written.complete(result != null ? result.sequenceNumber() : null);
+                }
+            }
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (retry >= properties.getMaxRetries()) {
+                failures.increment(failed.size());
+                final IllegalStateException e = new IllegalStateException(format("Failed to put %d records to stream %s after %d retries: %s",
+                        failed.size(), streamName, retry, errorCode));
+                failed.forEach(record -> record.written.completeExceptionally(e));
+                throw e;
+            }
+            LOG.info("{} records rejected by stream {} ({}), retrying in {}ms", failed.size(), streamName, errorCode, backoffMillis);
+            retries.increment(failed.size());
+            try {
+                Thread.sleep(backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.increment(failed.size());
+                throw new IllegalStateException("Interrupted while retrying records of stream " + streamName, e);
+            }
+            backoffMillis *= 2;
+            pending = failed;
+        }
+    }
+
+    private static ExecutorService senderOf(final String streamName) {
+        final ThreadPoolExecutor sender = new ThreadPoolExecutor(1, 1, SENDER_KEEP_ALIVE_SECONDS, SECONDS, new LinkedBlockingQueue<>(),
+                threadFactory("edison-eventsourcing-producer-" + streamName + "-"));
+        sender.allowCoreThreadTimeOut(true);
+        return sender;
+    }
+
+    private static CustomizableThreadFactory threadFactory(final String threadNamePrefix) {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private static final class Batch {
+        private final List<PendingRecord> records;
+        private final long number;
+
+        private Batch(final List<PendingRecord> records, final long number) {
+            this.records = records;
+            this.number = number;
+        }
+    }
+
+    private static final class PendingRecord {
+        private final PutRecordsRequestEntry entry;
+        private final long size;
+        private final CompletableFuture<String> written = new CompletableFuture<>();
+
+        private PendingRecord(final String partitionKey, final ByteBuffer data) {
+            this.size = sizeOf(partitionKey, data);
+            this.entry = PutRecordsRequestEntry.builder()
+                    .partitionKey(partitionKey)
+                    .data(data)
+                    .build();
+        }
+    }
+}
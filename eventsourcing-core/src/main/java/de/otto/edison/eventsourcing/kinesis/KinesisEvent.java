@@ -5,14 +5,27 @@ import software.amazon.awssdk.services.kinesis.model.Record;
 
 import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Optional;
 import java.util.function.Function;
 
+/**
+ * An event consumed from a Kinesis stream.
+ * <p>
+ *     The payload is decoded lazily: the {@code decoder} is applied to the data of the record when the payload is
+ *     first accessed, so events skipped by their key are neither decrypted nor deserialized.
+ * </p>
+ *
+ * @param <T> the type of the payload
+ */
 public class KinesisEvent<T> extends Event<T> {
 
+    private final long subSequenceNumber;
+    private final String position;
+
     public static <T> Event<T> kinesisEvent(final Record record,
                                             final Function<ByteBuffer, T> decoder) {
         return new KinesisEvent<>(
-                record,
+                UserRecord.of(record),
                 null,
                 decoder);
     }
@@ -21,20 +34,53 @@ public class KinesisEvent<T> extends Event<T> {
                                             final Record record,
                                             final Function<ByteBuffer, T> decoder) {
         return new KinesisEvent<>(
-                record,
+                UserRecord.of(record),
                 durationBehind,
                 decoder);
     }
 
-    private KinesisEvent(final Record record,
+    public static <T> Event<T> kinesisEvent(final Duration durationBehind,
+                                            final UserRecord userRecord,
+                                            final Function<ByteBuffer, T> decoder) {
+        return new KinesisEvent<>(
+                userRecord,
+                durationBehind,
+                decoder);
+    }
+
+    private KinesisEvent(final UserRecord userRecord,
                          final Duration durationBehind,
                          final Function<ByteBuffer, T> decoder) {
         super(
-                record.partitionKey(),
-                decoder.apply(record.data()),
-                record.sequenceNumber(),
-                record.approximateArrivalTimestamp(),
-                durationBehind);
+                userRecord.partitionKey(),
+                userRecord.sequenceNumber(),
+                userRecord.approximateArrivalTimestamp(),
+                durationBehind,
+                () -> decoder.apply(userRecord.data()));
+        this.subSequenceNumber = userRecord.subSequenceNumber();
+        this.position = userRecord.position();
+    }
+
+    /**
+     * Returns the index of the event inside of a Kinesis record aggregated by the KPL, or empty, if the
+     * Kinesis record is not aggregated.
+     *
+     * @return sub-sequence number
+     */
+    public Optional<Long> subSequenceNumber() {
+        return subSequenceNumber != UserRecord.NOT_AGGREGATED
+                ? Optional.of(subSequenceNumber)
+                : Optional.empty();
+    }
+
+    /**
+     * Returns the position of the shard after this event was consumed.
+     *
+     * @return shard position
+     * @see UserRecord#position()
+     */
+    String position() {
+        return position;
     }
 
 }
@@ -1,45 +1,149 @@
 package de.otto.edison.eventsourcing.kinesis;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
+import de.otto.edison.eventsourcing.checkpoint.Checkpointer;
 import de.otto.edison.eventsourcing.consumer.Event;
 import de.otto.edison.eventsourcing.consumer.EventSource;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import de.otto.edison.eventsourcing.lease.ShardLeaseCoordinator;
+import de.otto.edison.eventsourcing.lease.ShardLeaseCoordinator.LeaseAssignment;
+import de.otto.edison.eventsourcing.serialization.PayloadCodec;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
-import software.amazon.awssdk.services.kinesis.model.Record;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.function.*;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static de.otto.edison.eventsourcing.kinesis.KinesisEvent.kinesisEvent;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.Duration.ofMillis;
-import static java.util.stream.Collectors.toMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class KinesisEventSource<T> implements EventSource<T> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisEventSource.class);
+
     private KinesisStream kinesisStream;
-    private Function<String, T> deserializer;
+    private Function<ByteBuffer, T> deserializer;
+    private ShardExecutor shardExecutor;
+    private CheckpointStore checkpointStore;
+    private int checkpointRecords;
+    private Duration checkpointInterval;
+    private int lanesPerShard = 1;
+    private int maxPendingEventsPerShard;
+    private Executor laneExecutor;
+    private ShardLeaseCoordinator leaseCoordinator;
 
     public KinesisEventSource(final Class<T> payloadType,
                               final ObjectMapper objectMapper,
                               final KinesisStream kinesisStream,
                               final TextEncryptor textEncryptor)
     {
-        this.deserializer = in -> {
-            try {
-                if (payloadType == String.class) {
-                    return (T)textEncryptor.decrypt(in);
-                } else {
-                    return objectMapper.readValue(textEncryptor.decrypt(in), payloadType);
-                }
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        };
+        this(payloadType, objectMapper, kinesisStream, textEncryptor,
+                new ShardExecutor(kinesisStream.getStreamName(), false, Metrics.globalRegistry));
+    }
+
+    public KinesisEventSource(final Class<T> payloadType,
+                              final ObjectMapper objectMapper,
+                              final KinesisStream kinesisStream,
+                              final TextEncryptor textEncryptor,
+                              final ShardExecutor shardExecutor)
+    {
+        final PayloadCodec payloadCodec = new PayloadCodec(objectMapper, textEncryptor, kinesisStream.getPayloadCompressor());
+        this.deserializer = data -> payloadCodec.decode(data, payloadType);
         this.kinesisStream = kinesisStream;
+        this.shardExecutor = shardExecutor;
+    }
+
+    /**
+     * Enables checkpointing: while the stream is consumed, the positions of the shards are saved to the
+     * {@link CheckpointStore} every {@code maxRecords} events or {@code maxInterval}, and after the consumption
+     * has finished.
+     *
+     * @param checkpointStore the store used to save the positions
+     * @param maxRecords the maximum number of events between two checkpoints
+     * @param maxInterval the maximum duration between two checkpoints
+     * @return this
+     */
+    public KinesisEventSource<T> withCheckpointing(final CheckpointStore checkpointStore,
+                                                   final int maxRecords,
+                                                   final Duration maxInterval) {
+        this.checkpointStore = checkpointStore;
+        this.checkpointRecords = maxRecords;
+        this.checkpointInterval = maxInterval;
+        return this;
+    }
+
+    /**
+     * Enables parallel processing of the events of every shard using {@link KeyOrderedLanes key-ordered lanes}:
+     * events are assigned to one of {@code lanesPerShard} lanes by the hash of their key, and the lanes are processed
+     * concurrently by the threads of the {@code laneExecutor}. Events with the same key are processed in the order
+     * of the shard.
+     * <p>
+     *     The consumer must be thread-safe. The position of a shard, including checkpoints, is only advanced after all
+     *     events up to that position are processed. If the consumer fails, the consumption of the stream fails, as
+     *     it does without lanes.
+     * </p>
+     *
+     * @param lanesPerShard the number of lanes per shard; 1 disables parallel processing
+     * @param maxPendingEventsPerShard the max number of events of a shard that are dispatched, but not yet processed
+     * @param laneExecutor the executor processing the lanes
+     * @return this
+     */
+    public KinesisEventSource<T> withKeyOrderedLanes(final int lanesPerShard,
+                                                     final int maxPendingEventsPerShard,
+                                                     final Executor laneExecutor) {
+        this.lanesPerShard = lanesPerShard;
+        this.maxPendingEventsPerShard = maxPendingEventsPerShard;
+        this.laneExecutor = laneExecutor;
+        return this;
+    }
+
+    /**
+     * Enables lease-based shard assignment: the shards of the stream are split between all instances sharing the
+     * {@link de.otto.edison.eventsourcing.lease.ShardLeaseTable lease table} of the coordinator, and this event source
+     * only consumes the shards it holds the lease of.
+     * <p>
+     *     Leases are renewed while consuming, using the positions of the last processed events as checkpoints. Shards
+     *     requested by other instances are stopped after the current batch, and their leases are handed off at the
+     *     last processed position. Shards are started at the checkpoint of their lease, if there is one, otherwise
+     *     at their position in {@code startFrom}. When the consumption stops, all leases are released.
+     * </p>
+     * <p>
+     *     While leasing, {@link #consumeAll(StreamPosition, Predicate, Consumer) consumeAll} keeps waiting for leases
+     *     until the stop condition, that is called with {@code null}, is met, even if no shard is assigned to this
+     *     instance.
+     * </p>
+     *
+     * @param leaseCoordinator the coordinator of the leases
+     * @return this
+     */
+    public KinesisEventSource<T> withShardLeasing(final ShardLeaseCoordinator leaseCoordinator) {
+        this.leaseCoordinator = leaseCoordinator;
+        return this;
     }
 
     @Override
@@ -47,56 +151,543 @@ public class KinesisEventSource<T> implements EventSource<T> {
         return kinesisStream.getStreamName();
     }
 
+    /**
+     * Consumes the records of all shards of the stream until the stop condition is met.
+     * <p>
+     *     Every shard is consumed in a thread of its own. Shards are consumed in the order given by the resharding
+     *     history of the stream: a child shard is only consumed after all of its parents are consumed up to the
+     *     end of the shard. Closed shards that are ancestors of shards contained in {@code startFrom} are
+     *     skipped. The topology of the stream is refreshed whenever a shard was consumed completely, and in the
+     *     background using the {@link KinesisStream#getShardDiscoveryInterval() shard discovery interval}.
+     * </p>
+     * <p>
+     *     Shards without position in {@code startFrom}, or with a position that is no longer valid, are consumed
+     *     from the {@link StreamPosition#timestamp() timestamp} of {@code startFrom}, if there is one, otherwise
+     *     from the trim horizon.
+     * </p>
+     *
+     * @param startFrom the positions to start from
+     * @param stopCondition predicate used to stop the consumption of a shard
+     * @param consumer consumer of the events
+     * @return the positions of all consumed shards
+     */
     @Override
     public StreamPosition consumeAll(final StreamPosition startFrom,
                                      final Predicate<Event<T>> stopCondition,
                                      final Consumer<Event<T>> consumer) {
-        Map<String, String> result = kinesisStream.retrieveAllOpenShards()
-                .stream()
-                .parallel()
-                .map(shard -> shard.consumeRecordsAndReturnLastSeqNumber(
-                        startFrom.positionOf(shard.getShardId()),
-                        new RecordStopCondition(stopCondition),
-                        new RecordConsumer(consumer)))
-                .collect(toMap(
-                        ShardPosition::getShardId,
-                        ShardPosition::getSequenceNumber));
-        return StreamPosition.of(result);
+        return new StreamConsumption(startFrom, stopCondition, null, consumer).run();
     }
 
-    private Event<T> createEvent(Duration durationBehind, Record record) {
-        return kinesisEvent(durationBehind, record, byteBuffer -> {
-            final String json = UTF_8.decode(record.data()).toString();
-            return deserializer.apply(json);
+    /**
+     * Consumes the records of all shards of the stream like {@link #consumeAll(StreamPosition, Predicate, Consumer)},
+     * until every shard has caught up with the tip of the shard, or the end of a closed shard is reached.
+     * <p>
+     *     A shard is caught up after a GetRecords response, or fan-out event, with {@code millisBehindLatest}
+     *     of at most {@code tolerance}. All records of that response are consumed before the shard is stopped.
+     *     Empty responses of shards that are still behind, for example because of a gap in the shard, do not stop
+     *     the consumption. While behind, shards are polled without waiting.
+     * </p>
+     *
+     * @param startFrom the positions to start from
+     * @param tolerance the max duration behind latest that is considered to be caught up
+     * @param consumer consumer of the events
+     * @return the positions of all consumed shards
+     */
+    @Override
+    public StreamPosition consumeUntilCaughtUp(final StreamPosition startFrom,
+                                               final Duration tolerance,
+                                               final Consumer<Event<T>> consumer) {
+        return new StreamConsumption(startFrom, event -> false, tolerance, consumer).run();
+    }
+
+    /**
+     * Consumes the records of all shards of the stream like {@link #consumeAll(StreamPosition, Predicate, Consumer)},
+     * without blocking the calling thread: the consumption is coordinated by tasks of the {@code executor}.
+     *
+     * @param startFrom the positions to start from
+     * @param stopCondition predicate used to stop the consumption of a shard
+     * @param consumer consumer of the events
+     * @param executor the executor coordinating the consumption
+     * @return future of the positions of all consumed shards; cancelling it stops the consumption
+     */
+    CompletableFuture<StreamPosition> startConsumption(final StreamPosition startFrom,
+                                                       final Predicate<Event<T>> stopCondition,
+                                                       final Consumer<Event<T>> consumer,
+                                                       final ScheduledExecutorService executor) {
+        return new StreamConsumption(startFrom, stopCondition, null, consumer).runAsync(executor);
+    }
+
+    /**
+     * Starts the consumption of a single shard, using {@link #consumeShard(String, String, Instant, Duration, Predicate, Consumer)}
+     * in a thread of the {@link ShardExecutor}.
+     * <p>
+     *     Cancelling the returned future interrupts the consuming thread.
+     * </p>
+     *
+     * @param shardId the id of the shard
+     * @param startPosition the sequence number to start after, or "0" to start at the start timestamp
+     * @param startTimestamp the timestamp to start at, if there is no valid start position, or null to start at the
+     *                       trim horizon
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param stopCondition predicate used to stop the consumption of the shard
+     * @param consumer consumer of the events
+     * @return future of the position of the last consumed record
+     */
+    CompletableFuture<ShardPosition> startShard(final String shardId,
+                                                final String startPosition,
+                                                final Instant startTimestamp,
+                                                final Duration catchUpTolerance,
+                                                final Predicate<Event<T>> stopCondition,
+                                                final Consumer<Event<T>> consumer) {
+        final CompletableFuture<ShardPosition> result = new CompletableFuture<>();
+        final Future<?> task = shardExecutor.submit(() -> {
+            try {
+                return result.complete(consumeShard(shardId, startPosition, startTimestamp, catchUpTolerance, stopCondition, consumer));
+            } catch (final RuntimeException | Error e) {
+                return result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((position, failure) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
         });
+        return result;
     }
 
-    private class RecordStopCondition implements BiFunction<Long, Record, Boolean> {
+    /**
+     * Consumes a single shard, starting after {@code startPosition}, until the stop condition is met or the end of
+     * the closed shard is reached.
+     *
+     * @param shardId the id of the shard
+     * @param startPosition the sequence number to start after, or "0" to start at the start timestamp
+     * @param startTimestamp the timestamp to start at, if there is no valid start position, or null to start at the
+     *                       trim horizon
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param stopCondition predicate used to stop the consumption of the shard
+     * @param consumer consumer of the events
+     * @return the position of the last consumed record
+     */
+    ShardPosition consumeShard(final String shardId,
+                               final String startPosition,
+                               final Instant startTimestamp,
+                               final Duration catchUpTolerance,
+                               final Predicate<Event<T>> stopCondition,
+                               final Consumer<Event<T>> consumer) {
+        return kinesisStream.createKinesisShard(shardId).consumeRecordsAndReturnLastSeqNumber(
+                startPosition,
+                startTimestamp,
+                catchUpTolerance,
+                this::createEvent,
+                stopCondition,
+                consumer);
+    }
+
+    Event<T> createEvent(Long millisBehindLatest, UserRecord record) {
+        return kinesisEvent(ofMillis(millisBehindLatest), record, deserializer);
+    }
+
+    /**
+     * The state of a single call of {@link #consumeAll(StreamPosition, Predicate, Consumer)} or
+     * {@link #consumeUntilCaughtUp(StreamPosition, Duration, Consumer)}.
+     */
+    private final class StreamConsumption {
+        private final StreamPosition startFrom;
         private final Predicate<Event<T>> stopCondition;
+        private final Duration catchUpTolerance;
+        private final Consumer<Event<T>> consumer;
+        private final Checkpointer checkpointer;
+
+        private final Map<String, String> positions = new LinkedHashMap<>();
+        private final Set<String> finishedShards = new HashSet<>();
+        private final Set<String> stoppedShards = new HashSet<>();
+        private final Map<String, CompletableFuture<ShardPosition>> runningShards = new HashMap<>();
+        private final BlockingQueue<String> terminatedShards = new LinkedBlockingQueue<>();
+        private final Map<String, String> processedPositions = new ConcurrentHashMap<>();
+        private final Set<String> handoffShards = ConcurrentHashMap.newKeySet();
+        private final Set<String> lostShards = new HashSet<>();
+        private final Set<String> unfinishedLeases = new HashSet<>();
+        private LeaseAssignment leases;
+        private volatile boolean stopped = false;
+        private Runnable terminationListener = () -> {};
+        private ScheduledExecutorService asyncExecutor;
+        private CompletableFuture<StreamPosition> asyncResult;
+        private ScheduledFuture<?> nextAsyncStep;
 
-        RecordStopCondition(Predicate<Event<T>> stopCondition) {
+        private StreamConsumption(final StreamPosition startFrom,
+                                  final Predicate<Event<T>> stopCondition,
+                                  final Duration catchUpTolerance,
+                                  final Consumer<Event<T>> consumer) {
+            this.startFrom = startFrom;
             this.stopCondition = stopCondition;
+            this.catchUpTolerance = catchUpTolerance;
+            this.consumer = consumer;
+            this.checkpointer = checkpointStore != null
+                    ? new Checkpointer(checkpointStore, kinesisStream.getStreamName(), startFrom, checkpointRecords, checkpointInterval)
+                    : null;
         }
 
-        @Override
-        public Boolean apply(Long millis, Record record) {
-            if (record == null) {
-                return stopCondition.test(null);
+        StreamPosition run() {
+            final ShardTopology topology = begin();
+            try {
+                advance(topology);
+                while (isRunning()) {
+                    advance(topologyAfter(awaitTerminatedShards()));
+                }
+            } catch (final InterruptedException e) {
+                LOG.warn("Thread got interrupted while consuming stream {}", kinesisStream.getStreamName());
+                Thread.currentThread().interrupt();
+            } finally {
+                stop();
             }
-            return stopCondition.test(createEvent(ofMillis(millis), record));
+            return streamPosition();
         }
-    }
 
-    private class RecordConsumer implements BiConsumer<Long, Record> {
-        private final Consumer<Event<T>> consumer;
+        /**
+         * Runs the consumption without blocking the calling thread: the shards are coordinated and started by tasks of
+         * the {@code executor}, executed whenever a shard terminates, and at least once per poll interval.
+         * Cancelling the returned future stops the consumption.
+         */
+        CompletableFuture<StreamPosition> runAsync(final ScheduledExecutorService executor) {
+            asyncExecutor = executor;
+            asyncResult = new CompletableFuture<>();
+            asyncResult.whenComplete((position, failure) -> {
+                if (asyncResult.isCancelled()) {
+                    cancelAsync();
+                }
+            });
+            terminationListener = () -> executeAsync(() -> asyncStep(false));
+            executeAsync(() -> asyncStep(true));
+            return asyncResult;
+        }
 
-        RecordConsumer(Consumer<Event<T>> consumer) {
-            this.consumer = consumer;
+        private ShardTopology begin() {
+            final ShardTopology topology = kinesisStream.retrieveShardTopology();
+            finishedShards.addAll(topology.ancestorsOf(startFrom.shards()));
+            kinesisStream.startShardDiscovery();
+            return topology;
+        }
+
+        private void advance(final ShardTopology topology) {
+            coordinateLeases(topology);
+            startReadyShards(topology);
+        }
+
+        private ShardTopology topologyAfter(final boolean shardClosed) {
+            return shardClosed
+                    ? kinesisStream.refreshShardTopology()
+                    : kinesisStream.retrieveShardTopology();
+        }
+
+        private boolean isRunning() {
+            return !runningShards.isEmpty() || isAwaitingLeases();
+        }
+
+        private void stop() {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            kinesisStream.stopShardDiscovery();
+            runningShards.values().forEach(future -> future.cancel(true));
+            commitCheckpoint();
+            releaseLeases();
+        }
+
+        private StreamPosition streamPosition() {
+            return StreamPosition.of(positions, startFrom.timestamp().orElse(null));
+        }
+
+        private void executeAsync(final Runnable step) {
+            if (stopped) {
+                return;
+            }
+            try {
+                asyncExecutor.execute(step);
+            } catch (final RejectedExecutionException e) {
+                failAsync(e);
+            }
+        }
+
+        /**
+         * A single step of an asynchronous consumption: handles the terminated shards, coordinates the leases and
+         * starts the shards that are ready. Steps are executed one after the other.
+         *
+         * @param first true, if this is the first step, starting the consumption
+         */
+        private synchronized void asyncStep(final boolean first) {
+            if (stopped) {
+                return;
+            }
+            if (nextAsyncStep != null) {
+                nextAsyncStep.cancel(false);
+            }
+            try {
+                advance(first ? begin() : topologyAfter(handleTerminatedShards(terminatedShards.poll())));
+                if (isRunning()) {
+                    nextAsyncStep = asyncExecutor.schedule(() -> asyncStep(false), pollIntervalMillis(), MILLISECONDS);
+                } else {
+                    stop();
+                    asyncResult.complete(streamPosition());
+                }
+            } catch (final RuntimeException | Error e) {
+                failAsync(e);
+            }
+        }
+
+        private synchronized void failAsync(final Throwable failure) {
+            stop();
+            asyncResult.completeExceptionally(failure);
+        }
+
+        private synchronized void cancelAsync() {
+            if (nextAsyncStep != null) {
+                nextAsyncStep.cancel(false);
+            }
+            stop();
+        }
+
+        private Consumer<Event<T>> tracking(final String shardId) {
+            if (checkpointer == null && leaseCoordinator == null) {
+                return consumer;
+            }
+            return event -> {
+                consumer.accept(event);
+                processed(shardId, positionOf(event));
+            };
+        }
+
+        private void processed(final String shardId, final String position) {
+            if (checkpointer != null) {
+                checkpointer.update(shardId, position);
+            }
+            if (leaseCoordinator != null) {
+                processedPositions.put(shardId, position);
+            }
+        }
+
+        private KeyOrderedLanes<T> keyOrderedLanes(final String shardId) {
+            return new KeyOrderedLanes<>(
+                    lanesPerShard,
+                    maxPendingEventsPerShard,
+                    laneExecutor,
+                    consumer,
+                    this::positionOf,
+                    position -> processed(shardId, position));
+        }
+
+        private String positionOf(final Event<T> event) {
+            return event instanceof KinesisEvent
+                    ? ((KinesisEvent<T>) event).position()
+                    : event.sequenceNumber();
+        }
+
+        /**
+         * Starts the consumption of a shard. If key-ordered lanes are enabled, the returned future is only completed
+         * after all events of the shard are processed by the lanes.
+         */
+        private CompletableFuture<ShardPosition> startShard(final String shardId, final String startPosition) {
+            final Instant startTimestamp = startFrom.timestamp().orElse(null);
+            final Predicate<Event<T>> shardStopCondition = leaseCoordinator != null
+                    ? event -> handoffShards.contains(shardId) || stopCondition.test(event)
+                    : stopCondition;
+            if (lanesPerShard <= 1) {
+                return KinesisEventSource.this.startShard(shardId, startPosition, startTimestamp, catchUpTolerance, shardStopCondition, tracking(shardId));
+            }
+            final KeyOrderedLanes<T> lanes = keyOrderedLanes(shardId);
+            final CompletableFuture<ShardPosition> shardFuture = KinesisEventSource.this.startShard(shardId, startPosition, startTimestamp, catchUpTolerance, shardStopCondition, lanes);
+            final CompletableFuture<ShardPosition> future = shardFuture.thenCompose(position -> lanes.drain().thenApply(drained -> position));
+            future.whenComplete((position, failure) -> {
+                if (future.isCancelled()) {
+                    shardFuture.cancel(true);
+                }
+            });
+            return future;
         }
 
-        @Override
-        public void accept(Long millis, Record record) {
-            consumer.accept(createEvent(ofMillis(millis), record));
+        private void commitCheckpoint() {
+            if (checkpointer != null) {
+                try {
+                    checkpointer.commit();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to save checkpoint of stream {}: {}", kinesisStream.getStreamName(), e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Renews and acquires the leases of the shards that are ready to be consumed, if leasing is enabled. Running
+         * shards whose lease was lost are cancelled; shards requested by other instances are stopped after the
+         * current batch.
+         */
+        private void coordinateLeases(final ShardTopology topology) {
+            if (leaseCoordinator == null) {
+                return;
+            }
+            final Set<String> candidates = new HashSet<>(topology.readyToConsume(finishedShards, stoppedShards));
+            candidates.addAll(runningShards.keySet());
+            new ArrayList<>(unfinishedLeases).forEach(this::finishLease);
+            try {
+                leases = leaseCoordinator.coordinate(kinesisStream.getStreamName(), candidates, processedPositions);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to coordinate leases of stream {}: {}", kinesisStream.getStreamName(), e.getMessage());
+                return;
+            }
+            finishedShards.addAll(leases.finishedShards());
+            handoffShards.addAll(leases.handoffShards());
+            runningShards.forEach((shardId, future) -> {
+                if (!leases.ownedShards().contains(shardId) && lostShards.add(shardId)) {
+                    LOG.warn("Lost lease of shard {} of stream {}", shardId, kinesisStream.getStreamName());
+                    future.cancel(true);
+                }
+            });
+        }
+
+        private boolean isAwaitingLeases() {
+            return leaseCoordinator != null && catchUpTolerance == null && !stopCondition.test(null);
+        }
+
+        private boolean isAssigned(final String shardId) {
+            return leaseCoordinator == null
+                    || leases != null && leases.ownedShards().contains(shardId) && !handoffShards.contains(shardId);
+        }
+
+        private String startPositionOf(final String shardId) {
+            final String position = positions.getOrDefault(shardId, startFrom.positionOf(shardId));
+            return leaseCoordinator != null && leases != null
+                    ? leases.checkpointOf(shardId).orElse(position)
+                    : position;
+        }
+
+        private void releaseLeases() {
+            if (leaseCoordinator == null) {
+                return;
+            }
+            new ArrayList<>(unfinishedLeases).forEach(this::finishLease);
+            if (leases == null) {
+                return;
+            }
+            for (final String shardId : leases.ownedShards()) {
+                if (!finishedShards.contains(shardId)) {
+                    releaseLease(shardId, processedPositions.getOrDefault(shardId, startPositionOf(shardId)));
+                }
+            }
+        }
+
+        private void releaseLease(final String shardId, final String position) {
+            try {
+                leaseCoordinator.release(kinesisStream.getStreamName(), shardId, position);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to release lease of shard {} of stream {}: {}", shardId, kinesisStream.getStreamName(), e.getMessage());
+            }
+        }
+
+        /**
+         * Marks the lease of a closed shard as finished. If this fails, the shard is still treated as finished by
+         * this instance, and marking the lease is retried on the next coordination of the leases.
+         */
+        private void finishLease(final String shardId) {
+            try {
+                if (leaseCoordinator.finish(kinesisStream.getStreamName(), shardId)) {
+                    unfinishedLeases.remove(shardId);
+                    return;
+                }
+                LOG.warn("Failed to finish lease of shard {} of stream {}: the lease was modified concurrently", shardId, kinesisStream.getStreamName());
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to finish lease of shard {} of stream {}: {}", shardId, kinesisStream.getStreamName(), e.getMessage());
+            }
+            unfinishedLeases.add(shardId);
+        }
+
+        private void startReadyShards(final ShardTopology topology) {
+            final Set<String> excludedShards = new HashSet<>(stoppedShards);
+            excludedShards.addAll(runningShards.keySet());
+            for (final String shardId : topology.readyToConsume(finishedShards, excludedShards)) {
+                if (!isAssigned(shardId)) {
+                    continue;
+                }
+                final String startPosition = startPositionOf(shardId);
+                processedPositions.remove(shardId);
+                positions.put(shardId, startPosition);
+                final CompletableFuture<ShardPosition> future = startShard(shardId, startPosition);
+                runningShards.put(shardId, future);
+                future.whenComplete((position, failure) -> {
+                    terminatedShards.add(shardId);
+                    terminationListener.run();
+                });
+            }
+        }
+
+        /**
+         * Waits until at least one shard has terminated, or the shard discovery interval has elapsed.
+         *
+         * @return true, if a shard was closed, so the cached topology of the stream must be refreshed
+         * @throws InterruptedException if the thread was interrupted
+         */
+        private boolean awaitTerminatedShards() throws InterruptedException {
+            return handleTerminatedShards(terminatedShards.poll(pollIntervalMillis(), MILLISECONDS));
+        }
+
+        private long pollIntervalMillis() {
+            final long discoveryIntervalMillis = kinesisStream.getShardDiscoveryInterval().toMillis();
+            return leaseCoordinator != null
+                    ? Math.min(discoveryIntervalMillis, leaseCoordinator.getRenewInterval().toMillis())
+                    : discoveryIntervalMillis;
+        }
+
+        /**
+         * Updates the positions, checkpoints and leases of the terminated shards, starting with {@code shardId}.
+         *
+         * @param shardId the first terminated shard, or null if no shard has terminated
+         * @return true, if a shard was closed, so the cached topology of the stream must be refreshed
+         */
+        private boolean handleTerminatedShards(String shardId) {
+            boolean refreshTopology = false;
+            while (shardId != null) {
+                if (lostShards.remove(shardId)) {
+                    runningShards.remove(shardId);
+                    shardId = terminatedShards.poll();
+                    continue;
+                }
+                final ShardPosition shardPosition = resultOf(runningShards.remove(shardId));
+                positions.put(shardId, shardPosition.getSequenceNumber());
+                if (checkpointer != null) {
+                    checkpointer.update(shardId, shardPosition.getSequenceNumber());
+                }
+                if (shardPosition.isShardClosed()) {
+                    finishedShards.add(shardId);
+                    refreshTopology = true;
+                    if (leaseCoordinator != null) {
+                        finishLease(shardId);
+                    }
+                } else if (handoffShards.remove(shardId)) {
+                    releaseLease(shardId, shardPosition.getSequenceNumber());
+                } else {
+                    stoppedShards.add(shardId);
+                    if (leaseCoordinator != null) {
+                        releaseLease(shardId, shardPosition.getSequenceNumber());
+                    }
+                }
+                shardId = terminatedShards.poll();
+            }
+            return refreshTopology;
+        }
+
+        private ShardPosition resultOf(final CompletableFuture<ShardPosition> future) {
+            try {
+                return future.join();
+            } catch (final CompletionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (final CancellationException e) {
+                throw new CancellationException("Cancelled consumption of stream " + kinesisStream.getStreamName());
+            }
         }
     }
 }
@@ -6,11 +6,14 @@ import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.*;
 
 import java.time.Duration;
-import java.util.function.BiConsumer;
+import java.time.Instant;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import static de.otto.edison.eventsourcing.kinesis.ShardIteratorRequests.iteratorRequest;
 import static java.lang.String.format;
-import static java.time.Duration.ofMillis;
 
 public class KinesisShard {
     private static final Logger LOG = LoggerFactory.getLogger(KinesisShard.class);
@@ -18,11 +21,30 @@ public class KinesisShard {
     private final String shardId;
     private final KinesisClient kinesisClient;
     private final KinesisStream kinesisStream;
+    private final ShardPollScheduler pollScheduler;
+    private final int prefetchQueueDepth;
+    private final long prefetchMaxBytes;
+    private final ShardMetrics metrics;
 
     public KinesisShard(String shardId, KinesisStream kinesisStream, KinesisClient kinesisClient) {
-        this.shardId = shardId;
-        this.kinesisStream = kinesisStream;
-        this.kinesisClient = kinesisClient;
+        this(builder()
+                .withShardId(shardId)
+                .withKinesisStream(kinesisStream)
+                .withKinesisClient(kinesisClient));
+    }
+
+    private KinesisShard(Builder builder) {
+        this.shardId = builder.shardId;
+        this.kinesisStream = builder.kinesisStream;
+        this.kinesisClient = builder.kinesisClient;
+        this.pollScheduler = builder.pollScheduler;
+        this.prefetchQueueDepth = builder.prefetchQueueDepth;
+        this.prefetchMaxBytes = builder.prefetchMaxBytes;
+        this.metrics = builder.metrics;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     public String getShardId() {
@@ -30,86 +52,180 @@ public class KinesisShard {
     }
 
     public KinesisShardIterator retrieveIterator(String sequenceNumber) {
-        GetShardIteratorResponse shardIteratorResponse;
-        try {
-            shardIteratorResponse = kinesisClient.getShardIterator(buildIteratorShardRequest(sequenceNumber));
-        } catch (final InvalidArgumentException e) {
-            LOG.error(format("invalidShardSequenceNumber in Snapshot %s/%s - reading from HORIZON", kinesisStream.getStreamName(), shardId));
-            shardIteratorResponse = kinesisClient.getShardIterator(buildIteratorShardRequest("0"));
-        }
-        return new KinesisShardIterator(kinesisClient, shardIteratorResponse.shardIterator());
+        return retrieveIterator(sequenceNumber, null);
     }
 
-    private GetShardIteratorRequest buildIteratorShardRequest(String sequenceNumber) {
-        GetShardIteratorRequest.Builder shardRequestBuilder = GetShardIteratorRequest
-                .builder()
-                .shardId(shardId)
-                .streamName(kinesisStream.getStreamName());
-
-        if (sequenceNumber == null || sequenceNumber.equals("0")) {
-            shardRequestBuilder.shardIteratorType(ShardIteratorType.TRIM_HORIZON);
+    /**
+     * Retrieves an iterator starting after {@code sequenceNumber}.
+     * <p>
+     *     If the sequence number is "0", or not valid for the shard, the iterator starts at the {@code timestamp}
+     *     using an {@code AT_TIMESTAMP} iterator, or at the trim horizon if no timestamp is given.
+     * </p>
+     *
+     * @param sequenceNumber the sequence number to start after, or "0"
+     * @param timestamp the timestamp to start at, if there is no valid sequence number; may be null
+     * @return KinesisShardIterator
+     */
+    public KinesisShardIterator retrieveIterator(String sequenceNumber, Instant timestamp) {
+        final String iteratorId = retrieveIteratorId(sequenceNumber, timestamp);
+        final Function<String, String> iteratorFactory = lastSequenceNumber -> retrieveIteratorId(lastSequenceNumber, timestamp);
+        if (prefetchQueueDepth > 0) {
+            return new PrefetchingKinesisShardIterator(kinesisClient, iteratorId, pollScheduler, sequenceNumber, iteratorFactory, metrics, prefetchQueueDepth, prefetchMaxBytes);
         } else {
-            shardRequestBuilder.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER);
-            shardRequestBuilder.startingSequenceNumber(sequenceNumber);
+            return new KinesisShardIterator(kinesisClient, iteratorId, pollScheduler, sequenceNumber, iteratorFactory, metrics);
         }
-
-        return shardRequestBuilder.build();
     }
 
-    public ShardPosition consumeRecordsAndReturnLastSeqNumber(String startFromSeqNumber,
-                                                       BiFunction<Long, Record, Boolean> stopCondition,
-                                                       BiConsumer<Long, Record> consumer) {
-        LOG.info("Reading from stream {}, shard {} with starting sequence number {}",
-                kinesisStream.getStreamName(),
-                shardId,
-                startFromSeqNumber);
-
-        KinesisShardIterator shardIterator = retrieveIterator(startFromSeqNumber);
-        String lastSequenceNumber = startFromSeqNumber;
-        boolean stopRetrieval;
-        do {
-            GetRecordsResponse recordsResponse = shardIterator.next();
-
-            stopRetrieval = stopCondition.apply(null, null);
-            if (!isEmptyStream(recordsResponse)) {
-                Long millisBehindLatest = recordsResponse.millisBehindLatest();
-                for (final Record record : recordsResponse.records()) {
-                    consumer.accept(millisBehindLatest, record);
-                    stopRetrieval = stopCondition.apply(millisBehindLatest, record);
-                    lastSequenceNumber = record.sequenceNumber();
-                }
-
-                logInfo(kinesisStream.getStreamName(), recordsResponse, ofMillis(millisBehindLatest));
-            }
-            if (!stopRetrieval) {
-                stopRetrieval = waitABit();
+    private String retrieveIteratorId(String sequenceNumber, Instant timestamp) {
+        GetShardIteratorResponse shardIteratorResponse;
+        try {
+            shardIteratorResponse = kinesisClient.getShardIterator(iteratorRequest(kinesisStream.getStreamName(), shardId, sequenceNumber, timestamp));
+        } catch (final InvalidArgumentException e) {
+            if (timestamp != null) {
+                LOG.error(format("invalidShardSequenceNumber in Snapshot %s/%s - reading from %s", kinesisStream.getStreamName(), shardId, timestamp));
+            } else {
+                LOG.error(format("invalidShardSequenceNumber in Snapshot %s/%s - reading from HORIZON", kinesisStream.getStreamName(), shardId));
             }
-        } while (!stopRetrieval);
-        LOG.info("Terminating event source for stream {}", kinesisStream.getStreamName());
-        return new ShardPosition(shardId, lastSequenceNumber);
+            shardIteratorResponse = kinesisClient.getShardIterator(iteratorRequest(kinesisStream.getStreamName(), shardId, "0", timestamp));
+        }
+        return shardIteratorResponse.shardIterator();
     }
 
-    private void logInfo(String streamName, GetRecordsResponse recordsResponse, Duration durationBehind) {
-        final String durationString = format("%s days %s hrs %s min %s sec", durationBehind.toDays(), durationBehind.toHours() % 24, durationBehind.toMinutes() % 60, durationBehind.getSeconds() % 60);
-        LOG.info("Consumed {} records from kinesis {}; behind latest: {}",
-                recordsResponse.records().size(),
-                streamName,
-                durationString);
+    /**
+     * Consumes the records of this shard, starting after {@code startFromSeqNumber}, until the stop condition is met.
+     * <p>
+     *     Every record is decoded exactly once using the {@code decoder}. The decoded value is then passed to the
+     *     {@code consumer} and to the {@code stopCondition}, so both see the same instance. Records aggregated by
+     *     the KPL are unpacked, and every contained {@link UserRecord} is decoded separately.
+     * </p>
+     * <p>
+     *     If the shard is closed, because the stream was resharded, the consumption is also terminated after the last
+     *     record of the shard was consumed. The returned position is then marked as {@link ShardPosition#isShardClosed() closed}.
+     * </p>
+     *
+     * @param startFromSeqNumber the sequence number to start after, an {@link ExtendedSequenceNumber} to continue
+     *                           inside of an aggregated record, or "0" to start at the trim horizon
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per batch
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return the position of the last consumed record
+     */
+    public <E> ShardPosition consumeRecordsAndReturnLastSeqNumber(String startFromSeqNumber,
+                                                                  BiFunction<Long, UserRecord, E> decoder,
+                                                                  Predicate<E> stopCondition,
+                                                                  Consumer<E> consumer) {
+        return consumeRecordsAndReturnLastSeqNumber(startFromSeqNumber, null, null, decoder, stopCondition, consumer);
     }
 
-    private boolean waitABit() {
-        try {
-            /* See DECISIONS.md - Question #1 */
-            Thread.sleep(100);
+    /**
+     * Consumes the records of this shard like {@link #consumeRecordsAndReturnLastSeqNumber(String, BiFunction, Predicate, Consumer)},
+     * but starts at {@code startTimestamp} instead of the trim horizon, if {@code startFromSeqNumber} is "0" or not
+     * valid for the shard.
+     * <p>
+     *     If a {@code catchUpTolerance} is given, the consumption is also stopped after the first response that is
+     *     at most {@code catchUpTolerance} behind the tip of the shard, after all records of the response were consumed.
+     * </p>
+     *
+     * @param startFromSeqNumber the sequence number to start after, or "0"
+     * @param startTimestamp the timestamp to start at, if there is no valid sequence number; may be null
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per batch
+     * @param consumer consumer of the decoded records
+     * @param <E> the type of the decoded records
+     * @return the position of the last consumed record
+     */
+    public <E> ShardPosition consumeRecordsAndReturnLastSeqNumber(String startFromSeqNumber,
+                                                                  Instant startTimestamp,
+                                                                  Duration catchUpTolerance,
+                                                                  BiFunction<Long, UserRecord, E> decoder,
+                                                                  Predicate<E> stopCondition,
+                                                                  Consumer<E> consumer) {
+        LOG.info("Reading from stream {}, shard {} with starting sequence number {}{}",
+                kinesisStream.getStreamName(),
+                shardId,
+                startFromSeqNumber,
+                startTimestamp != null ? " or timestamp " + startTimestamp : "");
+
+        final ShardRecordProcessor<E> processor = new ShardRecordProcessor<>(startFromSeqNumber, catchUpTolerance, decoder, stopCondition, consumer);
+        boolean shardClosed = false;
+        try (KinesisShardIterator shardIterator = retrieveIterator(startFromSeqNumber, startTimestamp)) {
+            boolean stopRetrieval;
+            do {
+                GetRecordsResponse recordsResponse = shardIterator.next();
+                stopRetrieval = processor.process(recordsResponse.records(), recordsResponse.millisBehindLatest());
+                shardClosed = recordsResponse.nextShardIterator() == null;
+            } while (!stopRetrieval && !shardClosed);
         } catch (InterruptedException e) {
             LOG.warn("Thread got interrupted");
-            return true;
         }
-        return false;
+        if (shardClosed) {
+            LOG.info("Reached end of closed shard {} of stream {}", shardId, kinesisStream.getStreamName());
+        } else {
+            LOG.info("Terminating event source for stream {}", kinesisStream.getStreamName());
+        }
+        return new ShardPosition(shardId, processor.lastSequenceNumber(), shardClosed);
     }
 
-    private boolean isEmptyStream(GetRecordsResponse recordsResponse) {
-        return recordsResponse.records().isEmpty();
-    }
+    public static final class Builder {
+        private String shardId;
+        private KinesisStream kinesisStream;
+        private KinesisClient kinesisClient;
+        private ShardPollScheduler pollScheduler = new ShardPollScheduler();
+        private int prefetchQueueDepth = 0;
+        private long prefetchMaxBytes = 0;
+        private ShardMetrics metrics = ShardMetrics.none();
+
+        private Builder() {
+        }
 
+        public Builder withShardId(String val) {
+            shardId = val;
+            return this;
+        }
+
+        public Builder withKinesisStream(KinesisStream val) {
+            kinesisStream = val;
+            return this;
+        }
+
+        public Builder withKinesisClient(KinesisClient val) {
+            kinesisClient = val;
+            return this;
+        }
+
+        public Builder withPollScheduler(ShardPollScheduler val) {
+            pollScheduler = val;
+            return this;
+        }
+
+        /**
+         * Sets the metrics of the GetRecords requests of the shard.
+         *
+         * @param val the metrics of the shard
+         * @return builder
+         */
+        public Builder withMetrics(ShardMetrics val) {
+            metrics = val;
+            return this;
+        }
+
+        /**
+         * Enables prefetching of GetRecords responses while the current batch is consumed.
+         *
+         * @param queueDepth max number of prefetched responses; 0 disables prefetching
+         * @param maxBytes max number of bytes of prefetched records
+         * @return builder
+         */
+        public Builder withPrefetching(int queueDepth, long maxBytes) {
+            prefetchQueueDepth = queueDepth;
+            prefetchMaxBytes = maxBytes;
+            return this;
+        }
+
+        public KinesisShard build() {
+            return new KinesisShard(this);
+        }
+    }
 }
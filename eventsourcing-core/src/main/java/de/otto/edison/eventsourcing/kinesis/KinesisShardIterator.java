@@ -1,31 +1,150 @@
 package de.otto.edison.eventsourcing.kinesis;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
 import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.Record;
 
-public class KinesisShardIterator {
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Iterates over the GetRecordsResponses of a single shard.
+ * <p>
+ *     Requests throttled by Kinesis are retried after a {@link ThrottlingBackoff back-off}, so a throttled shard is
+ *     consumed more slowly instead of failing. Like every other GetRecords request, each retry takes a poll of the
+ *     {@link ShardPollScheduler}, so retries do not exceed the rate limit of the shard. If an {@code iteratorFactory} is given, an expired shard iterator is
+ *     replaced by a new iterator, positioned after the last record returned by this iterator, or at the start
+ *     position if no record was returned yet. Without {@code iteratorFactory}, the {@link ExpiredIteratorException}
+ *     is thrown to the caller.
+ * </p>
+ */
+public class KinesisShardIterator implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisShardIterator.class);
 
     static final int FETCH_RECORDS_LIMIT = 10000;
 
     private final KinesisClient kinesisClient;
-    private String id;
+    private final ShardPollScheduler pollScheduler;
+    private final Function<String, String> iteratorFactory;
+    private final ThrottlingBackoff throttlingBackoff;
+    private final ShardMetrics metrics;
+    private volatile String id;
+    private volatile String lastSequenceNumber;
+    private GetRecordsResponse previousResponse;
 
     public KinesisShardIterator(KinesisClient kinesisClient, String firstId) {
+        this(kinesisClient, firstId, new ShardPollScheduler());
+    }
+
+    public KinesisShardIterator(KinesisClient kinesisClient, String firstId, ShardPollScheduler pollScheduler) {
+        this(kinesisClient, firstId, pollScheduler, null, null);
+    }
+
+    /**
+     * Creates a KinesisShardIterator that replaces expired shard iterators.
+     *
+     * @param kinesisClient the client used to fetch records
+     * @param firstId the id of the first shard iterator
+     * @param pollScheduler the scheduler of GetRecords requests
+     * @param startPosition the position the first shard iterator was created for
+     * @param iteratorFactory function used to create a new shard iterator, given the position to start after
+     */
+    public KinesisShardIterator(KinesisClient kinesisClient,
+                                String firstId,
+                                ShardPollScheduler pollScheduler,
+                                String startPosition,
+                                Function<String, String> iteratorFactory) {
+        this(kinesisClient, firstId, pollScheduler, startPosition, iteratorFactory, ShardMetrics.none());
+    }
+
+    /**
+     * Creates a KinesisShardIterator that replaces expired shard iterators, and records its GetRecords requests.
+     *
+     * @param kinesisClient the client used to fetch records
+     * @param firstId the id of the first shard iterator
+     * @param pollScheduler the scheduler of GetRecords requests
+     * @param startPosition the position the first shard iterator was created for
+     * @param iteratorFactory function used to create a new shard iterator, given the position to start after
+     * @param metrics the metrics of the shard
+     */
+    public KinesisShardIterator(KinesisClient kinesisClient,
+                                String firstId,
+                                ShardPollScheduler pollScheduler,
+                                String startPosition,
+                                Function<String, String> iteratorFactory,
+                                ShardMetrics metrics) {
+        this(kinesisClient, firstId, pollScheduler, startPosition, iteratorFactory, metrics, new ThrottlingBackoff());
+    }
+
+    KinesisShardIterator(KinesisClient kinesisClient,
+                         String firstId,
+                         ShardPollScheduler pollScheduler,
+                         String startPosition,
+                         Function<String, String> iteratorFactory,
+                         ShardMetrics metrics,
+                         ThrottlingBackoff throttlingBackoff) {
         this.kinesisClient = kinesisClient;
+        this.pollScheduler = pollScheduler;
         this.id = firstId;
+        this.lastSequenceNumber = startPosition;
+        this.iteratorFactory = iteratorFactory;
+        this.metrics = metrics;
+        this.throttlingBackoff = throttlingBackoff;
     }
 
     public String getId() {
         return this.id;
     }
 
-    public GetRecordsResponse next() {
-        GetRecordsResponse response = kinesisClient.getRecords(GetRecordsRequest.builder()
-                .shardIterator(id)
-                .limit(FETCH_RECORDS_LIMIT)
-                .build());
+    /**
+     * Fetches the next batch of records, after waiting as long as the {@link ShardPollScheduler} requires.
+     *
+     * @return GetRecordsResponse
+     * @throws InterruptedException if the thread is interrupted while waiting for the next poll
+     */
+    public GetRecordsResponse next() throws InterruptedException {
+        /* See DECISIONS.md - Question #1 */
+        pollScheduler.awaitNextPoll(previousResponse);
+        GetRecordsResponse response = null;
+        while (response == null) {
+            try {
+                final long startNanos = System.nanoTime();
+                response = kinesisClient.getRecords(GetRecordsRequest.builder()
+                        .shardIterator(id)
+                        .limit(FETCH_RECORDS_LIMIT)
+                        .build());
+                metrics.recordGetRecords(System.nanoTime() - startNanos, response);
+            } catch (final ProvisionedThroughputExceededException e) {
+                metrics.recordThrottled();
+                final long backoffMillis = throttlingBackoff.next().toMillis();
+                LOG.info("GetRecords throttled for shard iterator {}, retrying in {}ms", id, backoffMillis);
+                Thread.sleep(backoffMillis);
+                pollScheduler.awaitNextPoll(null);
+            } catch (final ExpiredIteratorException e) {
+                if (iteratorFactory == null) {
+                    throw e;
+                }
+                LOG.info("Shard iterator expired, retrieving new iterator after position {}", lastSequenceNumber);
+                this.id = iteratorFactory.apply(lastSequenceNumber);
+            }
+        }
+        throttlingBackoff.reset();
         this.id = response.nextShardIterator();
+        this.previousResponse = response;
+        final List<Record> records = response.records();
+        if (records != null && !records.isEmpty()) {
+            this.lastSequenceNumber = records.get(records.size() - 1).sequenceNumber();
+        }
         return response;
     }
+
+    @Override
+    public void close() {
+    }
 }
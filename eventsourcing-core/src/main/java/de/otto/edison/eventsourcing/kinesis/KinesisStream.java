@@ -2,62 +2,243 @@ package de.otto.edison.eventsourcing.kinesis;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Charsets;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import de.otto.edison.eventsourcing.serialization.PayloadCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.kinesis.model.LimitExceededException;
 import software.amazon.awssdk.services.kinesis.model.PutRecordRequest;
 import software.amazon.awssdk.services.kinesis.model.Shard;
 
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.time.Duration.ofMillis;
 
 public class KinesisStream {
 
     private static final Logger LOG = LoggerFactory.getLogger(KinesisStream.class);
 
+    private static final int DESCRIBE_STREAM_MAX_ATTEMPTS = 5;
+    private static final long DESCRIBE_STREAM_INITIAL_BACKOFF_MILLIS = 100;
+
     private final KinesisClient kinesisClient;
     private final String streamName;
-    private final ObjectMapper objectMapper;
-    private final TextEncryptor textEncryptor;
+    private final EventSourcingProperties.Kinesis properties;
+    private final PayloadCompressor payloadCompressor;
+    private final PayloadCodec payloadCodec;
+    private final ShardTopologyCache shardTopologyCache;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, ShardMetrics> shardMetrics = new ConcurrentHashMap<>();
+    private KinesisBatchProducer batchProducer;
+    private AsyncKinesisProducer asyncProducer;
 
     public KinesisStream(KinesisClient kinesisClient, String streamName,
                          ObjectMapper objectMapper, TextEncryptor textEncryptor) {
+        this(kinesisClient, streamName, objectMapper, textEncryptor, new EventSourcingProperties());
+    }
+
+    public KinesisStream(KinesisClient kinesisClient, String streamName,
+                         ObjectMapper objectMapper, TextEncryptor textEncryptor,
+                         EventSourcingProperties properties) {
+        this(kinesisClient, streamName, objectMapper, textEncryptor, properties, Metrics.globalRegistry);
+    }
+
+    public KinesisStream(KinesisClient kinesisClient, String streamName,
+                         ObjectMapper objectMapper, TextEncryptor textEncryptor,
+                         EventSourcingProperties properties, MeterRegistry meterRegistry) {
         this.kinesisClient = kinesisClient;
         this.streamName = streamName;
-        this.objectMapper = objectMapper;
-        this.textEncryptor = textEncryptor;
+        this.properties = properties.getKinesis();
+        this.payloadCompressor = PayloadCompressor.of(properties.getCompression());
+        this.payloadCodec = new PayloadCodec(objectMapper, textEncryptor, payloadCompressor);
+        this.meterRegistry = meterRegistry;
+        this.shardTopologyCache = new ShardTopologyCache(
+                () -> new ShardTopology(retrieveAllShards()),
+                getShardDiscoveryInterval());
     }
 
     public List<KinesisShard> retrieveAllOpenShards() {
-        List<Shard> shardList = retrieveAllShards();
-
-        return shardList.stream()
-                .filter(this::isShardOpen)
-                .map(shard -> new KinesisShard(shard.shardId(), this, kinesisClient))
+        return retrieveShardTopology().getOpenShardIds()
+                .stream()
+                .map(this::createKinesisShard)
                 .collect(toImmutableList());
     }
 
+    /**
+     * Returns all shards of the stream, including closed shards and their parent/child relationships.
+     * <p>
+     *     The topology is cached for the {@link #getShardDiscoveryInterval() shard discovery interval}.
+     * </p>
+     *
+     * @return ShardTopology
+     */
+    public ShardTopology retrieveShardTopology() {
+        return shardTopologyCache.get();
+    }
+
+    /**
+     * Retrieves the current topology of the stream, bypassing the cache. Used after the end of a closed shard
+     * was reached, because the children of the shard must be consumed next.
+     *
+     * @return ShardTopology
+     */
+    public ShardTopology refreshShardTopology() {
+        return shardTopologyCache.refresh();
+    }
+
+    /**
+     * Discards the cached shard topology, for example after the stream was resharded by the application.
+     */
+    public void invalidateShardTopology() {
+        shardTopologyCache.invalidate();
+    }
+
+    /**
+     * Starts refreshing the shard topology in the background, until {@link #stopShardDiscovery()} is called.
+     * Calls may be nested, if the stream is consumed by more than one consumer.
+     */
+    public void startShardDiscovery() {
+        shardTopologyCache.startBackgroundRefresh();
+    }
+
+    public void stopShardDiscovery() {
+        shardTopologyCache.stopBackgroundRefresh();
+    }
+
+    /**
+     * The interval used to look for new shards, while the stream is consumed.
+     *
+     * @return shard discovery interval
+     */
+    public Duration getShardDiscoveryInterval() {
+        return ofMillis(properties.getShardDiscovery().getIntervalMillis());
+    }
+
+    KinesisShard createKinesisShard(String shardId) {
+        final EventSourcingProperties.Prefetch prefetch = properties.getPrefetch();
+        return KinesisShard.builder()
+                .withShardId(shardId)
+                .withKinesisStream(this)
+                .withKinesisClient(kinesisClient)
+                .withPollScheduler(createPollScheduler())
+                .withMetrics(getShardMetrics(shardId))
+                .withPrefetching(prefetch.isEnabled() ? prefetch.getQueueDepth() : 0, prefetch.getMaxBytes())
+                .build();
+    }
+
+    /**
+     * Returns the metrics of a shard. The metrics are created once per shard and reused by all consumers of the
+     * shard, so the gauges of the shard stay registered.
+     */
+    ShardMetrics getShardMetrics(String shardId) {
+        return shardMetrics.computeIfAbsent(shardId, id -> new ShardMetrics(meterRegistry, streamName, id));
+    }
+
+    ShardPollScheduler createPollScheduler() {
+        final EventSourcingProperties.Polling polling = properties.getPolling();
+        return new ShardPollScheduler(
+                ofMillis(polling.getMinIdleWaitMillis()),
+                ofMillis(polling.getMaxIdleWaitMillis()),
+                polling.getMaxPollsPerSecond());
+    }
+
     public <T> void sendEvent(String key, T payload) throws JsonProcessingException {
-        String jsonData = objectMapper.writeValueAsString(payload);
         PutRecordRequest putRecordRequest = PutRecordRequest.builder()
                 .streamName(streamName)
                 .partitionKey(key)
-                .data(convertToEncryptedByteBuffer(jsonData))
+                .data(encode(payload))
                 .build();
         kinesisClient.putRecord(putRecordRequest);
     }
 
-    private ByteBuffer convertToEncryptedByteBuffer(String data) {
-        return ByteBuffer.wrap(textEncryptor
-                .encrypt(data)
-                .getBytes(Charsets.UTF_8));
+    /**
+     * Sends many events using PutRecords requests, and waits until all events are written.
+     * <p>
+     *     Events are sent in batches of up to 500 events or 5 MB; events rejected by Kinesis are retried.
+     * </p>
+     *
+     * @param payloads the payloads of the events
+     * @param keyFunction function used to determine the partition key of an event
+     * @param <T> the type of the payloads
+     * @throws JsonProcessingException if a payload could not be serialized
+     * @throws IllegalStateException if some events could not be written
+     */
+    public <T> void sendEvents(Collection<T> payloads, Function<? super T, String> keyFunction) throws JsonProcessingException {
+        final KinesisBatchProducer producer = getBatchProducer();
+        for (final T payload : payloads) {
+            producer.add(keyFunction.apply(payload), encode(payload));
+        }
+        producer.flush();
+    }
+
+    /**
+     * Adds an event to the current batch of events, without waiting until the event is written. The batch is sent
+     * if it is full, or after the {@link EventSourcingProperties.Producer#getLingerMillis() linger time}.
+     *
+     * @param key the partition key of the event
+     * @param payload the payload of the event
+     * @param <T> the type of the payload
+     * @throws JsonProcessingException if the payload could not be serialized
+     */
+    public <T> void sendEventBatched(String key, T payload) throws JsonProcessingException {
+        getBatchProducer().add(key, encode(payload));
+    }
+
+    /**
+     * Returns an asynchronous producer for this stream. Events are sent using the
+     * {@link #getBatchProducer() batch producer} of the stream.
+     *
+     * @return AsyncKinesisProducer
+     */
+    public synchronized AsyncKinesisProducer getAsyncProducer() {
+        if (asyncProducer == null) {
+            asyncProducer = new AsyncKinesisProducer(this, properties.getProducer(), meterRegistry);
+        }
+        return asyncProducer;
+    }
+
+    /**
+     * Returns the producer used to send batches of events to this stream.
+     *
+     * @return KinesisBatchProducer
+     */
+    public synchronized KinesisBatchProducer getBatchProducer() {
+        if (batchProducer == null) {
+            batchProducer = new KinesisBatchProducer(streamName, kinesisClient, properties.getProducer(), meterRegistry);
+        }
+        return batchProducer;
+    }
+
+    /**
+     * Serializes and encrypts the payload of an event the same way as {@link #sendEvent(String, Object)}.
+     */
+    <T> ByteBuffer encode(T payload) throws JsonProcessingException {
+        return ByteBuffer.wrap(payloadCodec.encode(payload));
+    }
+
+    /**
+     * The compressor used for the payloads of events written to, and read from this stream.
+     *
+     * @return PayloadCompressor
+     */
+    public PayloadCompressor getPayloadCompressor() {
+        return payloadCompressor;
     }
 
     private List<Shard> retrieveAllShards() {
@@ -75,15 +256,40 @@ public class KinesisStream {
                 .builder()
                 .streamName(streamName)
                 .exclusiveStartShardId(getLastSeenShardId(shardList))
-                .limit(10)
+                .limit(properties.getShardDiscovery().getPageSize())
                 .build();
 
-        DescribeStreamResponse describeStreamResult = kinesisClient.describeStream(describeStreamRequest);
+        DescribeStreamResponse describeStreamResult = describeStream(describeStreamRequest);
         shardList.addAll(describeStreamResult.streamDescription().shards());
 
         return describeStreamResult.streamDescription().hasMoreShards();
     }
 
+    /**
+     * Calls DescribeStream, retrying with exponential back-off if the (low) rate limit of DescribeStream
+     * is exceeded, for example because many services are starting at the same time.
+     */
+    private DescribeStreamResponse describeStream(DescribeStreamRequest describeStreamRequest) {
+        long backoffMillis = DESCRIBE_STREAM_INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return kinesisClient.describeStream(describeStreamRequest);
+            } catch (final LimitExceededException e) {
+                if (attempt >= DESCRIBE_STREAM_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.info("DescribeStream limit exceeded for stream {}, retrying in {}ms", streamName, backoffMillis);
+                try {
+                    Thread.sleep(backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis));
+                } catch (final InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoffMillis *= 2;
+            }
+        }
+    }
+
     private String getLastSeenShardId(List<Shard> shardList) {
         if (!shardList.isEmpty()) {
             return shardList.get(shardList.size() - 1).shardId();
@@ -92,15 +298,6 @@ public class KinesisStream {
         }
     }
 
-    private boolean isShardOpen(Shard shard) {
-        if (shard.sequenceNumberRange().endingSequenceNumber() == null) {
-            return true;
-        } else {
-            LOG.warn("Shard with id {} is closed. Cannot retrieve data.", shard.shardId());
-            return false;
-        }
-    }
-
     public String getStreamName() {
         return streamName;
     }
@@ -0,0 +1,167 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * A {@link KinesisShardIterator} that fetches the next GetRecordsResponses in a background thread, while the
+ * current batch of records is consumed.
+ * <p>
+ *     The number of prefetched responses is limited by {@code queueDepth}, the size of the prefetched records
+ *     by {@code maxBytes}. A single response is always accepted, even if it is larger than {@code maxBytes}.
+ * </p>
+ * <p>
+ *     The background thread is started on the first call of {@link #next()} and stopped by {@link #close()}.
+ * </p>
+ */
+public class PrefetchingKinesisShardIterator extends KinesisShardIterator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingKinesisShardIterator.class);
+    private static final String THREAD_NAME_PREFIX = "edison-eventsourcing-prefetch-";
+
+    private final int queueDepth;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Deque<GetRecordsResponse> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private Throwable failure;
+
+    private ExecutorService executorService;
+
+    public PrefetchingKinesisShardIterator(final KinesisClient kinesisClient,
+                                           final String firstId,
+                                           final ShardPollScheduler pollScheduler,
+                                           final int queueDepth,
+                                           final long maxBytes) {
+        this(kinesisClient, firstId, pollScheduler, null, null, ShardMetrics.none(), queueDepth, maxBytes);
+    }
+
+    public PrefetchingKinesisShardIterator(final KinesisClient kinesisClient,
+                                           final String firstId,
+                                           final ShardPollScheduler pollScheduler,
+                                           final String startPosition,
+                                           final Function<String, String> iteratorFactory,
+                                           final ShardMetrics metrics,
+                                           final int queueDepth,
+                                           final long maxBytes) {
+        super(kinesisClient, firstId, pollScheduler, startPosition, iteratorFactory, metrics);
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("queueDepth must be at least 1");
+        }
+        this.queueDepth = queueDepth;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public GetRecordsResponse next() throws InterruptedException {
+        startPrefetching();
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty() && failure == null) {
+                notEmpty.await();
+            }
+            if (queue.isEmpty()) {
+                throw rethrown(failure);
+            }
+            final GetRecordsResponse response = queue.poll();
+            queuedBytes -= sizeOf(response);
+            notFull.signal();
+            return response;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private synchronized void startPrefetching() {
+        if (executorService == null) {
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+            threadFactory.setDaemon(true);
+            executorService = newSingleThreadExecutor(threadFactory);
+            executorService.submit(this::prefetch);
+        }
+    }
+
+    private void prefetch() {
+        try {
+            boolean shardClosed = false;
+            while (!shardClosed && !Thread.currentThread().isInterrupted()) {
+                final GetRecordsResponse response = super.next();
+                enqueue(response);
+                shardClosed = response.nextShardIterator() == null;
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Prefetching stopped");
+        } catch (Throwable e) {
+            LOG.error("Prefetching failed: " + e.getMessage(), e);
+            fail(e);
+        }
+    }
+
+    private void enqueue(final GetRecordsResponse response) throws InterruptedException {
+        final long size = sizeOf(response);
+        lock.lockInterruptibly();
+        try {
+            while (!queue.isEmpty() && (queue.size() >= queueDepth || queuedBytes + size > maxBytes)) {
+                notFull.await();
+            }
+            queue.add(response);
+            queuedBytes += size;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(final Throwable e) {
+        lock.lock();
+        try {
+            failure = e;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static RuntimeException rethrown(final Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new IllegalStateException(failure);
+    }
+
+    static long sizeOf(final GetRecordsResponse response) {
+        long size = 0;
+        for (final Record record : response.records()) {
+            if (record.data() != null) {
+                size += record.data().remaining();
+            }
+        }
+        return size;
+    }
+}
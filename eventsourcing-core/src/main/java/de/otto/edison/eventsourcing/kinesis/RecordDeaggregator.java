@@ -0,0 +1,253 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+
+/**
+ * Unpacks Kinesis records that were aggregated by the Kinesis Producer Library (KPL) into the contained user records.
+ * <p>
+ *     An aggregated record consists of the magic bytes {@code F3 89 9A C2}, a protobuf message {@code AggregatedRecord},
+ *     and the MD5 checksum of the protobuf message. Records without magic bytes or with a wrong checksum are returned
+ *     as a single user record, the same way as the KPL consumer libraries do.
+ * </p>
+ * <p>
+ *     The protobuf message is parsed directly from the data of the record, without generated code: the data of the
+ *     user records are read-only views of the data of the Kinesis record.
+ * </p>
+ */
+final class RecordDeaggregator {
+
+    private static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+    private static final int DIGEST_LENGTH = 16;
+
+    // AggregatedRecord:
+    private static final int PARTITION_KEY_TABLE = 1;
+    private static final int RECORDS = 3;
+    // AggregatedRecord.Record:
+    private static final int PARTITION_KEY_INDEX = 1;
+    private static final int DATA = 3;
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_FIXED64 = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRETYPE_FIXED32 = 5;
+
+    private RecordDeaggregator() {
+    }
+
+    /**
+     * Returns the user records of a Kinesis record.
+     *
+     * @param record the Kinesis record
+     * @return list of user records; a single user record, if the record is not aggregated.
+     */
+    static List<UserRecord> deaggregate(final Record record) {
+        final ByteBuffer data = record.data();
+        if (data == null || !isAggregated(data)) {
+            return singletonList(UserRecord.of(record));
+        }
+        final int start = data.position() + MAGIC.length;
+        final int end = data.limit() - DIGEST_LENGTH;
+        try {
+            return parseAggregatedRecord(record, data, start, end);
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Unable to de-aggregate KPL record " + record.sequenceNumber() + ": truncated message", e);
+        }
+    }
+
+    static boolean isAggregated(final ByteBuffer data) {
+        if (data.remaining() <= MAGIC.length + DIGEST_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (data.get(data.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return hasValidDigest(data);
+    }
+
+    private static boolean hasValidDigest(final ByteBuffer data) {
+        final int digestStart = data.limit() - DIGEST_LENGTH;
+        final ByteBuffer message = data.duplicate();
+        message.position(data.position() + MAGIC.length).limit(digestStart);
+        final MessageDigest md5 = md5();
+        md5.update(message);
+        final byte[] digest = md5.digest();
+        for (int i = 0; i < DIGEST_LENGTH; ++i) {
+            if (data.get(digestStart + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<UserRecord> parseAggregatedRecord(final Record record,
+                                                          final ByteBuffer data,
+                                                          final int start,
+                                                          final int end) {
+        final List<String> partitionKeys = new ArrayList<>();
+        final List<int[]> records = new ArrayList<>();
+        final Reader reader = new Reader(data, start, end);
+        while (reader.hasRemaining()) {
+            final long tag = reader.readVarint();
+            final int fieldNumber = (int) (tag >>> 3);
+            final int wireType = (int) (tag & 0x7);
+            if (fieldNumber == PARTITION_KEY_TABLE && wireType == WIRETYPE_LENGTH_DELIMITED) {
+                final int length = reader.readLength();
+                partitionKeys.add(reader.readString(length));
+            } else if (fieldNumber == RECORDS && wireType == WIRETYPE_LENGTH_DELIMITED) {
+                final int length = reader.readLength();
+                records.add(new int[]{reader.position(), reader.position() + length});
+                reader.skip(length);
+            } else {
+                reader.skipField(wireType);
+            }
+        }
+
+        final List<UserRecord> userRecords = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); ++i) {
+            final int[] range = records.get(i);
+            userRecords.add(parseUserRecord(record, data, range[0], range[1], partitionKeys, i, i == records.size() - 1));
+        }
+        return userRecords;
+    }
+
+    private static UserRecord parseUserRecord(final Record record,
+                                              final ByteBuffer data,
+                                              final int start,
+                                              final int end,
+                                              final List<String> partitionKeys,
+                                              final int subSequenceNumber,
+                                              final boolean last) {
+        final Reader reader = new Reader(data, start, end);
+        long partitionKeyIndex = 0;
+        ByteBuffer userData = null;
+        while (reader.hasRemaining()) {
+            final long tag = reader.readVarint();
+            final int fieldNumber = (int) (tag >>> 3);
+            final int wireType = (int) (tag & 0x7);
+            if (fieldNumber == PARTITION_KEY_INDEX && wireType == WIRETYPE_VARINT) {
+                partitionKeyIndex = reader.readVarint();
+            } else if (fieldNumber == DATA && wireType == WIRETYPE_LENGTH_DELIMITED) {
+                final int length = reader.readLength();
+                userData = reader.slice(length);
+            } else {
+                reader.skipField(wireType);
+            }
+        }
+        if (userData == null || partitionKeyIndex < 0 || partitionKeyIndex >= partitionKeys.size()) {
+            throw new IllegalStateException("Unable to de-aggregate KPL record " + record.sequenceNumber() + ": invalid user record " + subSequenceNumber);
+        }
+        return new UserRecord(
+                partitionKeys.get((int) partitionKeyIndex),
+                userData,
+                record.sequenceNumber(),
+                subSequenceNumber,
+                last,
+                record.approximateArrivalTimestamp());
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads protobuf fields from a range of a ByteBuffer, using absolute positions.
+     */
+    private static final class Reader {
+        private final ByteBuffer data;
+        private final int end;
+        private int position;
+
+        private Reader(final ByteBuffer data, final int start, final int end) {
+            this.data = data;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean hasRemaining() {
+            return position < end;
+        }
+
+        int position() {
+            return position;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalStateException("Malformed varint in KPL record");
+        }
+
+        int readLength() {
+            final long length = readVarint();
+            if (length < 0 || length > end - position) {
+                throw new IndexOutOfBoundsException("length " + length + " exceeds message");
+            }
+            return (int) length;
+        }
+
+        String readString(final int length) {
+            return UTF_8.decode(slice(length)).toString();
+        }
+
+        ByteBuffer slice(final int length) {
+            final ByteBuffer slice = data.duplicate();
+            slice.limit(position + length).position(position);
+            skip(length);
+            return slice.slice();
+        }
+
+        void skip(final int length) {
+            if (length > end - position) {
+                throw new IndexOutOfBoundsException("length " + length + " exceeds message");
+            }
+            position += length;
+        }
+
+        void skipField(final int wireType) {
+            switch (wireType) {
+                case WIRETYPE_VARINT:
+                    readVarint();
+                    break;
+                case WIRETYPE_FIXED64:
+                    skip(8);
+                    break;
+                case WIRETYPE_LENGTH_DELIMITED:
+                    skip(readLength());
+                    break;
+                case WIRETYPE_FIXED32:
+                    skip(4);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported wire type " + wireType + " in KPL record");
+            }
+        }
+
+        private byte readByte() {
+            if (position >= end) {
+                throw new IndexOutOfBoundsException("unexpected end of message");
+            }
+            return data.get(position++);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Executes the consumer loops of the shards of a single Kinesis stream.
+ * <p>
+ *     Every shard loop gets a thread of its own, because the loops are blocking while waiting for the next
+ *     poll or for responses of the Kinesis service. By default, a pool of daemon platform threads is used that
+ *     grows with the number of shards; idle threads are released after a minute. If virtual threads are
+ *     requested and supported by the JVM, a virtual thread per shard is used instead.
+ * </p>
+ * <p>
+ *     The number of running shard loops is published as gauge {@value #ACTIVE_SHARDS_METRIC}, the
+ *     usage of the thread pool using the {@link ExecutorServiceMetrics executor metrics} of Micrometer,
+ *     both tagged with the name of the stream.
+ * </p>
+ */
+public class ShardExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardExecutor.class);
+
+    static final String ACTIVE_SHARDS_METRIC = "edison.eventsourcing.shards.active";
+    static final String EXECUTOR_METRICS_NAME = "edison.eventsourcing.shards";
+
+    private final AtomicInteger activeShards;
+    private final ExecutorService executorService;
+    private final ThreadPoolExecutor threadPool;
+    private int reservedThreads = 0;
+
+    public ShardExecutor(final String streamName,
+                         final boolean virtualThreads,
+                         final MeterRegistry meterRegistry) {
+        final Tags tags = Tags.of("stream", streamName);
+        final ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            this.threadPool = null;
+            this.executorService = ExecutorServiceMetrics.monitor(meterRegistry, virtualThreadExecutor, EXECUTOR_METRICS_NAME, tags);
+        } else {
+            this.threadPool = newThreadPool(streamName);
+            this.executorService = ExecutorServiceMetrics.monitor(meterRegistry, threadPool, EXECUTOR_METRICS_NAME, tags);
+        }
+        this.activeShards = meterRegistry.gauge(ACTIVE_SHARDS_METRIC, tags, new AtomicInteger());
+    }
+
+    /**
+     * Submits a single task that is executed in a thread of its own.
+     *
+     * @param task the task, typically consuming a single shard
+     * @param <T> the result type of the task
+     * @return Future of the result
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        final FutureTask<T> future = new FutureTask<T>(() -> {
+            activeShards.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                activeShards.decrementAndGet();
+            }
+        }) {
+            @Override
+            protected void done() {
+                releaseThreads(1);
+            }
+        };
+        reserveThreads(1);
+        try {
+            executorService.execute(future);
+        } catch (final RuntimeException e) {
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    int getActiveShards() {
+        return activeShards.get();
+    }
+
+    boolean isUsingVirtualThreads() {
+        return threadPool == null;
+    }
+
+    /**
+     * Grows the thread pool, so every submitted task has a thread of its own.
+     * The pool is never shrinking, idle threads are timing out instead.
+     */
+    private synchronized void reserveThreads(final int numberOfShards) {
+        reservedThreads += numberOfShards;
+        if (threadPool != null && threadPool.getCorePoolSize() < reservedThreads) {
+            threadPool.setMaximumPoolSize(reservedThreads);
+            threadPool.setCorePoolSize(reservedThreads);
+        }
+    }
+
+    private synchronized void releaseThreads(final int numberOfShards) {
+        reservedThreads -= numberOfShards;
+    }
+
+    private static ThreadPoolExecutor newThreadPool(final String streamName) {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("edison-eventsourcing-" + streamName + "-shard-");
+        threadFactory.setDaemon(true);
+        final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, 60, SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    /**
+     * Creates an executor using virtual threads, if supported by the JVM. The library is compiled against Java 8,
+     * so the factory method is looked up by reflection.
+     *
+     * @return ExecutorService or null, if virtual threads are not supported.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads are not supported by this JVM, falling back to platform threads");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.time.Instant;
+
+/**
+ * Builds the GetShardIterator requests of the polling shards, {@link KinesisShard} and {@link AsyncKinesisShard}.
+ */
+final class ShardIteratorRequests {
+
+    private ShardIteratorRequests() {
+    }
+
+    /**
+     * Builds a request of an iterator starting after a shard position.
+     * <p>
+     *     The iterator starts at the trim horizon if the position is "0", or at the {@code timestamp} using an
+     *     {@code AT_TIMESTAMP} iterator, if a timestamp is given. Positions inside of an aggregated record start
+     *     at the aggregated record, so the remaining user records can be consumed.
+     * </p>
+     *
+     * @param streamName the name of the stream
+     * @param shardId the id of the shard
+     * @param sequenceNumber the position to start after, or "0"
+     * @param timestamp the timestamp to start at, if the position is "0"; may be null
+     * @return GetShardIteratorRequest
+     */
+    static GetShardIteratorRequest iteratorRequest(final String streamName,
+                                                   final String shardId,
+                                                   final String sequenceNumber,
+                                                   final Instant timestamp) {
+        final GetShardIteratorRequest.Builder shardRequestBuilder = GetShardIteratorRequest
+                .builder()
+                .shardId(shardId)
+                .streamName(streamName);
+
+        final ExtendedSequenceNumber position = ExtendedSequenceNumber.parse(sequenceNumber);
+        if (position.isTrimHorizon() && timestamp != null) {
+            shardRequestBuilder
+                    .shardIteratorType(ShardIteratorType.AT_TIMESTAMP)
+                    .timestamp(timestamp);
+        } else {
+            shardRequestBuilder.shardIteratorType(position.iteratorType());
+            if (!position.isTrimHorizon()) {
+                shardRequestBuilder.startingSequenceNumber(position.getSequenceNumber());
+            }
+        }
+
+        return shardRequestBuilder.build();
+    }
+}
@@ -0,0 +1,89 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the GetRecords requests of a single shard, tagged with the names of the stream and the shard:
+ * <ul>
+ *     <li>{@value #GET_RECORDS_METRIC}: timer of successful GetRecords requests</li>
+ *     <li>{@value #RECORDS_METRIC}: distribution of the number of records per response</li>
+ *     <li>{@value #BYTES_METRIC}: distribution of the size of the records per response</li>
+ *     <li>{@value #EMPTY_POLLS_METRIC}: counter of responses without records</li>
+ *     <li>{@value #THROTTLED_METRIC}: counter of GetRecords requests throttled by Kinesis</li>
+ *     <li>{@value #MILLIS_BEHIND_LATEST_METRIC}: gauge of the millis behind latest of the last response, used
+ *     to alert on consumer lag</li>
+ * </ul>
+ */
+public class ShardMetrics {
+
+    static final String GET_RECORDS_METRIC = "edison.eventsourcing.consumer.getrecords";
+    static final String RECORDS_METRIC = "edison.eventsourcing.consumer.records";
+    static final String BYTES_METRIC = "edison.eventsourcing.consumer.bytes";
+    static final String EMPTY_POLLS_METRIC = "edison.eventsourcing.consumer.polls.empty";
+    static final String THROTTLED_METRIC = "edison.eventsourcing.consumer.throttled";
+    static final String MILLIS_BEHIND_LATEST_METRIC = "edison.eventsourcing.consumer.millis.behind.latest";
+
+    private final Timer getRecords;
+    private final DistributionSummary records;
+    private final DistributionSummary bytes;
+    private final Counter emptyPolls;
+    private final Counter throttled;
+    private final AtomicLong millisBehindLatest;
+
+    public ShardMetrics(final MeterRegistry meterRegistry,
+                        final String streamName,
+                        final String shardId) {
+        final Tags tags = Tags.of("stream", streamName, "shard", shardId);
+        this.getRecords = meterRegistry.timer(GET_RECORDS_METRIC, tags);
+        this.records = DistributionSummary.builder(RECORDS_METRIC).tags(tags).register(meterRegistry);
+        this.bytes = DistributionSummary.builder(BYTES_METRIC).baseUnit("bytes").tags(tags).register(meterRegistry);
+        this.emptyPolls = meterRegistry.counter(EMPTY_POLLS_METRIC, tags);
+        this.throttled = meterRegistry.counter(THROTTLED_METRIC, tags);
+        this.millisBehindLatest = meterRegistry.gauge(MILLIS_BEHIND_LATEST_METRIC, tags, new AtomicLong());
+    }
+
+    /**
+     * Returns ShardMetrics that are not published.
+     *
+     * @return ShardMetrics
+     */
+    public static ShardMetrics none() {
+        return new ShardMetrics(new CompositeMeterRegistry(), "", "");
+    }
+
+    /**
+     * Records a successful GetRecords request.
+     *
+     * @param durationNanos the duration of the request
+     * @param response the response
+     */
+    public void recordGetRecords(final long durationNanos, final GetRecordsResponse response) {
+        getRecords.record(durationNanos, TimeUnit.NANOSECONDS);
+        final int recordCount = response.records() != null ? response.records().size() : 0;
+        records.record(recordCount);
+        if (recordCount == 0) {
+            emptyPolls.increment();
+        } else {
+            bytes.record(PrefetchingKinesisShardIterator.sizeOf(response));
+        }
+        if (response.millisBehindLatest() != null) {
+            millisBehindLatest.set(response.millisBehindLatest());
+        }
+    }
+
+    /**
+     * Records a GetRecords request throttled by Kinesis.
+     */
+    public void recordThrottled() {
+        throttled.increment();
+    }
+}
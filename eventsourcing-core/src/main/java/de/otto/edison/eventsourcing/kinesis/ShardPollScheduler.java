@@ -0,0 +1,104 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+
+import java.time.Duration;
+
+/**
+ * Decides when the next GetRecords request for a single shard is sent.
+ * <p>
+ *     While the shard is behind the latest record, the next request is sent immediately. Once the shard has
+ *     caught up, the wait time is doubled with every empty response, starting at {@code minIdleWait} up to
+ *     {@code maxIdleWait}.
+ * </p>
+ * <p>
+ *     Independent of the wait time, a token bucket makes sure that no more than {@code maxPollsPerSecond}
+ *     requests are sent to the shard. See DECISIONS.md - Question #1
+ * </p>
+ * <p>
+ *     Instances are stateful and must not be shared between shards.
+ * </p>
+ */
+public class ShardPollScheduler {
+
+    public static final Duration DEFAULT_MIN_IDLE_WAIT = Duration.ofMillis(100);
+    public static final Duration DEFAULT_MAX_IDLE_WAIT = Duration.ofSeconds(1);
+    public static final double DEFAULT_MAX_POLLS_PER_SECOND = 5.0;
+
+    private final long minIdleWaitMillis;
+    private final long maxIdleWaitMillis;
+    private final TokenBucket tokenBucket;
+
+    private long idleWaitMillis;
+
+    public ShardPollScheduler() {
+        this(DEFAULT_MIN_IDLE_WAIT, DEFAULT_MAX_IDLE_WAIT, DEFAULT_MAX_POLLS_PER_SECOND);
+    }
+
+    public ShardPollScheduler(final Duration minIdleWait,
+                              final Duration maxIdleWait,
+                              final double maxPollsPerSecond) {
+        // A capacity of a single token prevents bursts, so the limit holds for every one-second window.
+        this(minIdleWait, maxIdleWait, new TokenBucket(maxPollsPerSecond, 1));
+    }
+
+    ShardPollScheduler(final Duration minIdleWait,
+                       final Duration maxIdleWait,
+                       final TokenBucket tokenBucket) {
+        if (minIdleWait.compareTo(maxIdleWait) > 0) {
+            throw new IllegalArgumentException("minIdleWait must not be greater than maxIdleWait");
+        }
+        this.minIdleWaitMillis = minIdleWait.toMillis();
+        this.maxIdleWaitMillis = maxIdleWait.toMillis();
+        this.tokenBucket = tokenBucket;
+        this.idleWaitMillis = minIdleWaitMillis;
+    }
+
+    /**
+     * Blocks until the next GetRecords request may be sent.
+     *
+     * @param previousResponse the response of the last GetRecords request, or null for the first request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitNextPoll(final GetRecordsResponse previousResponse) throws InterruptedException {
+        if (previousResponse != null) {
+            final long waitMillis = nextWait(previousResponse).toMillis();
+            if (waitMillis > 0) {
+                Thread.sleep(waitMillis);
+            }
+        }
+        tokenBucket.acquire();
+    }
+
+    /**
+     * Non-blocking variant of the rate limit of {@link #awaitNextPoll(GetRecordsResponse)}, used by
+     * asynchronous consumers: the poll is reserved and may be sent after the returned delay.
+     * <p>
+     *     The wait time after the previous response must be awaited before, using {@link #nextWait(GetRecordsResponse)}.
+     * </p>
+     *
+     * @return delay in nanoseconds until the reserved GetRecords request may be sent.
+     */
+    long reservePoll() {
+        return tokenBucket.reserve();
+    }
+
+    Duration nextWait(final GetRecordsResponse previousResponse) {
+        if (isBehindLatest(previousResponse)) {
+            idleWaitMillis = minIdleWaitMillis;
+            return Duration.ZERO;
+        }
+        if (!previousResponse.records().isEmpty()) {
+            idleWaitMillis = minIdleWaitMillis;
+            return Duration.ofMillis(minIdleWaitMillis);
+        }
+        final long waitMillis = idleWaitMillis;
+        idleWaitMillis = Math.min(idleWaitMillis * 2, maxIdleWaitMillis);
+        return Duration.ofMillis(waitMillis);
+    }
+
+    private boolean isBehindLatest(final GetRecordsResponse response) {
+        final Long millisBehindLatest = response.millisBehindLatest();
+        return millisBehindLatest != null && millisBehindLatest > 0;
+    }
+}
@@ -6,15 +6,22 @@ class ShardPosition {
 
     private String shardId;
     private String sequenceNumber;
+    private boolean shardClosed;
 
     public ShardPosition(String shardId, String sequenceNumber) {
+        this(shardId, sequenceNumber, false);
+    }
+
+    public ShardPosition(String shardId, String sequenceNumber, boolean shardClosed) {
         this.shardId = shardId;
         this.sequenceNumber = sequenceNumber;
+        this.shardClosed = shardClosed;
     }
 
     private ShardPosition(Builder builder) {
         setSequenceNumber(builder.sequenceNumber);
         setShardId(builder.shardId);
+        setShardClosed(builder.shardClosed);
     }
 
     public static Builder builder() {
@@ -37,18 +44,30 @@ class ShardPosition {
         this.shardId = shardId;
     }
 
+    /**
+     * @return true, if the shard is closed and all records of the shard are consumed.
+     */
+    public boolean isShardClosed() {
+        return shardClosed;
+    }
+
+    public void setShardClosed(boolean shardClosed) {
+        this.shardClosed = shardClosed;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ShardPosition that = (ShardPosition) o;
-        return Objects.equals(sequenceNumber, that.sequenceNumber) &&
+        return shardClosed == that.shardClosed &&
+                Objects.equals(sequenceNumber, that.sequenceNumber) &&
                 Objects.equals(shardId, that.shardId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sequenceNumber, shardId);
+        return Objects.hash(sequenceNumber, shardId, shardClosed);
     }
 
     @Override
@@ -56,6 +75,7 @@ class ShardPosition {
         return "SequenceNumberOfShard{" +
                 "sequenceNumber='" + sequenceNumber + '\'' +
                 ", shardId='" + shardId + '\'' +
+                ", shardClosed=" + shardClosed +
                 '}';
     }
 
@@ -63,6 +83,7 @@ class ShardPosition {
     public static final class Builder {
         private String sequenceNumber;
         private String shardId;
+        private boolean shardClosed;
 
         private Builder() {
         }
@@ -77,6 +98,11 @@ class ShardPosition {
             return this;
         }
 
+        public Builder withShardClosed(boolean val) {
+            shardClosed = val;
+            return this;
+        }
+
         public ShardPosition build() {
             return new ShardPosition(this);
         }
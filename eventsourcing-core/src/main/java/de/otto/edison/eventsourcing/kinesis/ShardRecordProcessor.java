@@ -0,0 +1,88 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static de.otto.edison.eventsourcing.kinesis.CatchUp.isCaughtUp;
+import static de.otto.edison.eventsourcing.kinesis.RecordDeaggregator.deaggregate;
+
+/**
+ * Processes the batches of records of a single shard, as returned by GetRecords or pushed by a fan-out subscription.
+ * Used by {@link KinesisShard}, {@link AsyncKinesisShard} and {@link FanOutKinesisShard}, so all of them share the
+ * same position and stop semantics:
+ * <ul>
+ *     <li>aggregated records are unpacked, and every {@link UserRecord} is decoded exactly once; the decoded value is
+ *     passed to the consumer and to the stop condition,</li>
+ *     <li>user records up to the start position are skipped, so a position inside of an aggregated record continues
+ *     with the next user record,</li>
+ *     <li>the stop condition is called with {@code null} once per batch, and</li>
+ *     <li>the consumption stops after a batch that is at most {@code catchUpTolerance} behind the tip of the shard.</li>
+ * </ul>
+ *
+ * @param <E> the type of the decoded records
+ */
+final class ShardRecordProcessor<E> {
+
+    private final ExtendedSequenceNumber startPosition;
+    private final Duration catchUpTolerance;
+    private final BiFunction<Long, UserRecord, E> decoder;
+    private final Predicate<E> stopCondition;
+    private final Consumer<E> consumer;
+    private volatile String lastSequenceNumber;
+
+    /**
+     * @param startFromSeqNumber the position to start after, or "0"
+     * @param catchUpTolerance the max duration behind latest to stop at, or null to not stop when caught up
+     * @param decoder function used to decode a record, given the millis behind latest and the record
+     * @param stopCondition predicate used as a stop condition; called with {@code null} once per batch
+     * @param consumer consumer of the decoded records
+     */
+    ShardRecordProcessor(final String startFromSeqNumber,
+                         final Duration catchUpTolerance,
+                         final BiFunction<Long, UserRecord, E> decoder,
+                         final Predicate<E> stopCondition,
+                         final Consumer<E> consumer) {
+        this.startPosition = ExtendedSequenceNumber.parse(startFromSeqNumber);
+        this.lastSequenceNumber = startFromSeqNumber;
+        this.catchUpTolerance = catchUpTolerance;
+        this.decoder = decoder;
+        this.stopCondition = stopCondition;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Consumes a batch of records.
+     *
+     * @param records the records of the batch; may be null or empty
+     * @param millisBehindLatest the millis behind latest of the batch, or null if unknown
+     * @return true, if the consumption should stop after this batch
+     */
+    boolean process(final List<Record> records, final Long millisBehindLatest) {
+        boolean stop = stopCondition.test(null);
+        if (records != null) {
+            for (final Record record : records) {
+                for (final UserRecord userRecord : deaggregate(record)) {
+                    if (!startPosition.includes(userRecord)) {
+                        final E decoded = decoder.apply(millisBehindLatest, userRecord);
+                        consumer.accept(decoded);
+                        stop = stopCondition.test(decoded);
+                        lastSequenceNumber = userRecord.position();
+                    }
+                }
+            }
+        }
+        return stop | isCaughtUp(millisBehindLatest, catchUpTolerance);
+    }
+
+    /**
+     * @return the position of the last consumed user record, or the start position if no record was consumed
+     */
+    String lastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+}
@@ -0,0 +1,68 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.reactivestreams.Publisher;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.time.Instant;
+
+/**
+ * Client used to subscribe to a shard of a Kinesis stream using enhanced fan-out ({@code SubscribeToShard}).
+ * <p>
+ *     In contrast to {@code GetRecords}, records are pushed to the subscriber as soon as they are written to the
+ *     shard, and every registered stream consumer gets a dedicated throughput of 2 MB/s per shard.
+ * </p>
+ * <p>
+ *     A subscription is completed after some time (five minutes for Kinesis), so subscribers must subscribe
+ *     again, starting after the last received record. The end of a closed shard is signalled by an event
+ *     without {@link ShardSubscriptionEvent#continuationSequenceNumber() continuation sequence number}.
+ * </p>
+ */
+public interface ShardSubscriptionClient {
+
+    /**
+     * Subscribes to a single shard.
+     * <p>
+     *     Like the {@code StartingPosition} of {@code SubscribeToShard}, the position is given by a type and a
+     *     sequence number: {@code TRIM_HORIZON}, {@code AFTER_SEQUENCE_NUMBER}, or {@code AT_SEQUENCE_NUMBER}. The
+     *     latter is used to continue inside of a record aggregated by the KPL.
+     * </p>
+     *
+     * @param streamName the name of the Kinesis stream
+     * @param shardId the id of the shard
+     * @param startingPositionType the type of the starting position
+     * @param sequenceNumber the sequence number of the starting position; ignored for {@code TRIM_HORIZON}
+     * @return publisher of the events of the shard
+     */
+    Publisher<ShardSubscriptionEvent> subscribeToShard(String streamName,
+                                                       String shardId,
+                                                       ShardIteratorType startingPositionType,
+                                                       String sequenceNumber);
+
+    /**
+     * Subscribes to a single shard, supporting {@code AT_TIMESTAMP} as additional type of the starting position.
+     * <p>
+     *     The default implementation does not support timestamps: it throws an {@link UnsupportedOperationException}
+     *     for {@code AT_TIMESTAMP}, and subscribes using {@link #subscribeToShard(String, String, ShardIteratorType, String)}
+     *     otherwise. Clients supporting timestamps should override this method.
+     * </p>
+     *
+     * @param streamName the name of the Kinesis stream
+     * @param shardId the id of the shard
+     * @param startingPositionType the type of the starting position
+     * @param sequenceNumber the sequence number of the starting position; ignored for {@code TRIM_HORIZON} and {@code AT_TIMESTAMP}
+     * @param timestamp the timestamp of the starting position; only used for {@code AT_TIMESTAMP}
+     * @return publisher of the events of the shard
+     * @throws UnsupportedOperationException if the starting position is {@code AT_TIMESTAMP}, and the client does not
+     *                                       support timestamps
+     */
+    default Publisher<ShardSubscriptionEvent> subscribeToShard(String streamName,
+                                                               String shardId,
+                                                               ShardIteratorType startingPositionType,
+                                                               String sequenceNumber,
+                                                               Instant timestamp) {
+        if (startingPositionType == ShardIteratorType.AT_TIMESTAMP) {
+            throw new UnsupportedOperationException("Subscribing at a timestamp is not supported by " + getClass().getName());
+        }
+        return subscribeToShard(streamName, shardId, startingPositionType, sequenceNumber);
+    }
+}
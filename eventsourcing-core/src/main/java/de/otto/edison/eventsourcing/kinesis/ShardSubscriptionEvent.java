@@ -0,0 +1,72 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * An event pushed to the subscriber of a {@link ShardSubscriptionClient shard subscription}, containing zero or
+ * more records of the shard.
+ */
+public final class ShardSubscriptionEvent {
+
+    private final List<Record> records;
+    private final Long millisBehindLatest;
+    private final String continuationSequenceNumber;
+
+    private ShardSubscriptionEvent(final List<Record> records,
+                                   final Long millisBehindLatest,
+                                   final String continuationSequenceNumber) {
+        this.records = unmodifiableList(records);
+        this.millisBehindLatest = millisBehindLatest;
+        this.continuationSequenceNumber = continuationSequenceNumber;
+    }
+
+    public static ShardSubscriptionEvent shardSubscriptionEvent(final List<Record> records,
+                                                                final Long millisBehindLatest,
+                                                                final String continuationSequenceNumber) {
+        return new ShardSubscriptionEvent(records, millisBehindLatest, continuationSequenceNumber);
+    }
+
+    public List<Record> records() {
+        return records;
+    }
+
+    public Long millisBehindLatest() {
+        return millisBehindLatest;
+    }
+
+    /**
+     * @return the sequence number to continue with, or null if the end of a closed shard is reached.
+     */
+    public String continuationSequenceNumber() {
+        return continuationSequenceNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShardSubscriptionEvent that = (ShardSubscriptionEvent) o;
+        return Objects.equals(records, that.records) &&
+                Objects.equals(millisBehindLatest, that.millisBehindLatest) &&
+                Objects.equals(continuationSequenceNumber, that.continuationSequenceNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(records, millisBehindLatest, continuationSequenceNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "ShardSubscriptionEvent{" +
+                "records=" + records.size() +
+                ", millisBehindLatest=" + millisBehindLatest +
+                ", continuationSequenceNumber='" + continuationSequenceNumber + '\'' +
+                '}';
+    }
+}
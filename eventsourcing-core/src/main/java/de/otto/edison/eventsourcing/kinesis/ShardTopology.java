@@ -0,0 +1,113 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The shards of a Kinesis stream, including closed shards, together with their parent/child relationships.
+ * <p>
+ *     After a split, a closed parent shard has two children; after a merge, a child has a parent and an
+ *     adjacent parent. The records of a child shard must not be consumed before the records of its parents
+ *     are completely consumed, otherwise the order of events having the same partition key is lost.
+ * </p>
+ */
+public final class ShardTopology {
+
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+
+    public ShardTopology(final List<Shard> shards) {
+        shards.forEach(shard -> this.shards.put(shard.shardId(), shard));
+    }
+
+    public List<String> getShardIds() {
+        return shards.values().stream().map(Shard::shardId).collect(toList());
+    }
+
+    public List<String> getOpenShardIds() {
+        return shards.values().stream()
+                .filter(ShardTopology::isOpen)
+                .map(Shard::shardId)
+                .collect(toList());
+    }
+
+    public boolean contains(final String shardId) {
+        return shards.containsKey(shardId);
+    }
+
+    public boolean isClosed(final String shardId) {
+        final Shard shard = shards.get(shardId);
+        return shard != null && !isOpen(shard);
+    }
+
+    /**
+     * Returns the ids of the parents of a shard that are still part of the stream. Parents that are already
+     * expired because of the retention period of the stream are ignored.
+     *
+     * @param shardId the id of the child shard
+     * @return parent shard ids
+     */
+    public Set<String> parentsOf(final String shardId) {
+        final Set<String> parents = new HashSet<>();
+        final Shard shard = shards.get(shardId);
+        if (shard != null) {
+            if (shard.parentShardId() != null && shards.containsKey(shard.parentShardId())) {
+                parents.add(shard.parentShardId());
+            }
+            if (shard.adjacentParentShardId() != null && shards.containsKey(shard.adjacentParentShardId())) {
+                parents.add(shard.adjacentParentShardId());
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Returns all ancestors of the given shards, which are the parents, the parents of the parents, and so on.
+     * <p>
+     *     If a stream position contains a shard, all ancestors of the shard have already been consumed completely.
+     * </p>
+     *
+     * @param shardIds ids of the shards
+     * @return ancestor shard ids
+     */
+    public Set<String> ancestorsOf(final Collection<String> shardIds) {
+        final Set<String> ancestors = new HashSet<>();
+        final Deque<String> pending = new ArrayDeque<>(shardIds);
+        while (!pending.isEmpty()) {
+            for (final String parent : parentsOf(pending.pop())) {
+                if (ancestors.add(parent)) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * Returns the shards that can be consumed now: shards that are neither finished nor excluded, and whose
+     * parents are all finished.
+     *
+     * @param finishedShards shards that are completely consumed up to the end of the shard
+     * @param excludedShards shards that must not be returned, for example because they are already consumed
+     * @return ids of the shards that are ready for consumption, in the order of the shards of the stream
+     */
+    public List<String> readyToConsume(final Set<String> finishedShards, final Set<String> excludedShards) {
+        return shards.keySet().stream()
+                .filter(shardId -> !finishedShards.contains(shardId) && !excludedShards.contains(shardId))
+                .filter(shardId -> finishedShards.containsAll(parentsOf(shardId)))
+                .collect(toList());
+    }
+
+    private static boolean isOpen(final Shard shard) {
+        return shard.sequenceNumberRange() == null || shard.sequenceNumberRange().endingSequenceNumber() == null;
+    }
+}
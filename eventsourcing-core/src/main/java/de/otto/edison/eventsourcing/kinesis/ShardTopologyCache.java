@@ -0,0 +1,157 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Caches the {@link ShardTopology} of a single Kinesis stream.
+ * <p>
+ *     A cached topology is used until it is older than the refresh interval, or until it is
+ *     {@link #invalidate() invalidated}. Concurrent callers of {@link #get()} share a single retrieval.
+ * </p>
+ * <p>
+ *     While the stream is consumed, the topology is refreshed in the background, so consumers looking for
+ *     new shards do not have to wait for the control plane of Kinesis. The background refresh is started
+ *     by {@link #startBackgroundRefresh()} and stopped after the last consumer called {@link #stopBackgroundRefresh()}.
+ *     All caches share a single daemon thread for the background refresh.
+ * </p>
+ */
+public class ShardTopologyCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardTopologyCache.class);
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = newSingleThreadScheduledExecutor(threadFactory());
+
+        private static CustomizableThreadFactory threadFactory() {
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("edison-eventsourcing-shard-discovery-");
+            threadFactory.setDaemon(true);
+            return threadFactory;
+        }
+    }
+
+    private final Supplier<ShardTopology> loader;
+    private final long refreshIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final ScheduledExecutorService scheduler;
+
+    private ShardTopology topology;
+    private long loadedAtNanos;
+    private long startedLoads = 0;
+    private long appliedLoad = 0;
+    private int backgroundRefreshUsers = 0;
+    private ScheduledFuture<?> backgroundRefresh;
+
+    public ShardTopologyCache(final Supplier<ShardTopology> loader, final Duration refreshInterval) {
+        this(loader, refreshInterval, System::nanoTime, null);
+    }
+
+    ShardTopologyCache(final Supplier<ShardTopology> loader,
+                       final Duration refreshInterval,
+                       final LongSupplier nanoClock,
+                       final ScheduledExecutorService scheduler) {
+        this.loader = loader;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.nanoClock = nanoClock;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the cached topology, or retrieves the topology if there is no cached topology, or if it is outdated.
+     * <p>
+     *     While the topology is refreshed in the background, it is only outdated if the background refresh
+     *     failed, so {@code get()} does not compete with the background refresh.
+     * </p>
+     *
+     * @return ShardTopology
+     */
+    public synchronized ShardTopology get() {
+        final long maxAgeNanos = backgroundRefresh != null ? 2 * refreshIntervalNanos : refreshIntervalNanos;
+        if (topology == null || nanoClock.getAsLong() - loadedAtNanos >= maxAgeNanos) {
+            final long load = ++startedLoads;
+            update(load, loader.get());
+        }
+        return topology;
+    }
+
+    /**
+     * Retrieves the topology, regardless of the age of the cached topology.
+     * <p>
+     *     The topology is retrieved without holding the lock of the cache, so callers of {@link #get()} are
+     *     not blocked by a refresh, as long as the cached topology is up to date. If a retrieval that was
+     *     started later has already finished, for example a refresh after a shard was closed, the result of
+     *     this retrieval is outdated: it is discarded, and the newer topology is returned.
+     * </p>
+     *
+     * @return ShardTopology
+     */
+    public ShardTopology refresh() {
+        final long load = startLoad();
+        return update(load, loader.get());
+    }
+
+    private synchronized long startLoad() {
+        return ++startedLoads;
+    }
+
+    private synchronized ShardTopology update(final long load, final ShardTopology loaded) {
+        if (load > appliedLoad) {
+            appliedLoad = load;
+            topology = loaded;
+            loadedAtNanos = nanoClock.getAsLong();
+        } else {
+            LOG.debug("Discarding outdated shard topology");
+        }
+        return topology != null ? topology : loaded;
+    }
+
+    /**
+     * Discards the cached topology, so the next call of {@link #get()} is retrieving the topology. Retrievals
+     * that are still running are discarded, too.
+     */
+    public synchronized void invalidate() {
+        topology = null;
+        appliedLoad = startedLoads;
+    }
+
+    public synchronized void startBackgroundRefresh() {
+        if (backgroundRefreshUsers++ == 0) {
+            final long intervalMillis = Math.max(1, refreshIntervalNanos / 1_000_000);
+            backgroundRefresh = scheduler().scheduleWithFixedDelay(this::refreshInBackground, intervalMillis, intervalMillis, MILLISECONDS);
+        }
+    }
+
+    public synchronized void stopBackgroundRefresh() {
+        if (backgroundRefreshUsers > 0 && --backgroundRefreshUsers == 0) {
+            backgroundRefresh.cancel(false);
+            backgroundRefresh = null;
+        }
+    }
+
+    synchronized boolean isRefreshingInBackground() {
+        return backgroundRefresh != null;
+    }
+
+    private void refreshInBackground() {
+        try {
+            refresh();
+        } catch (final RuntimeException e) {
+            // keep the cached topology; the next refresh will try again:
+            LOG.warn("Failed to refresh shard topology: {}", e.getMessage());
+        }
+    }
+
+    private ScheduledExecutorService scheduler() {
+        return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+    }
+}
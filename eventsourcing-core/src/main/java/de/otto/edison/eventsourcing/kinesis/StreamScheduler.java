@@ -0,0 +1,414 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.callable;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Executes the tasks of the shards of many streams using a bounded pool of worker threads, giving every stream a
+ * fair share of the workers.
+ * <p>
+ *     Tasks are queued per stream. The workers take the streams having queued tasks in round-robin order and execute
+ *     a single task of a stream before continuing with the next stream, so a stream with many busy shards does not
+ *     delay the shards of other streams. If no other stream has queued tasks, the tasks of a stream are executed
+ *     concurrently by all workers. Delayed tasks are queued by a single timer thread after their delay has elapsed.
+ * </p>
+ * <p>
+ *     The scheduler is used by {@link AsyncKinesisEventSource async event sources}, using the
+ *     {@link #forStream(String) executor of their stream}. The following metrics are published per stream, tagged
+ *     with the name of the stream:
+ * </p>
+ * <ul>
+ *     <li>{@value #TASKS_METRIC}: timer of the execution of the tasks</li>
+ *     <li>{@value #WAIT_METRIC}: timer of the time tasks were queued until a worker was available</li>
+ *     <li>{@value #QUEUED_METRIC}: gauge of the number of queued tasks</li>
+ * </ul>
+ */
+public class StreamScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamScheduler.class);
+
+    static final String TASKS_METRIC = "edison.eventsourcing.scheduler.tasks";
+    static final String WAIT_METRIC = "edison.eventsourcing.scheduler.wait";
+    static final String QUEUED_METRIC = "edison.eventsourcing.scheduler.queued";
+
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final BlockingQueue<StreamExecutor> readyStreams = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<String, StreamExecutor> streams = new ConcurrentHashMap<>();
+
+    public StreamScheduler(final int workerThreads,
+                           final MeterRegistry meterRegistry) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("number of worker threads must be positive, but was " + workerThreads);
+        }
+        this.meterRegistry = meterRegistry;
+        this.workers = newFixedThreadPool(workerThreads, daemonThreadFactory("edison-eventsourcing-scheduler-"));
+        this.timer = newSingleThreadScheduledExecutor(daemonThreadFactory("edison-eventsourcing-scheduler-timer-"));
+        for (int i = 0; i < workerThreads; ++i) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Returns the executor of the tasks of a single stream.
+     * <p>
+     *     Delayed and periodic tasks are queued by the timer of the scheduler after their delay, and executed like all
+     *     other tasks of the stream; executions of a periodic task never overlap. Shutting down the executor of a
+     *     stream rejects further tasks of the stream and cancels its delayed and periodic tasks, but does not affect
+     *     other streams.
+     * </p>
+     *
+     * @param streamName the name of the stream
+     * @return executor of the stream
+     */
+    public ScheduledExecutorService forStream(final String streamName) {
+        return streams.computeIfAbsent(streamName, StreamExecutor::new);
+    }
+
+    /**
+     * Shuts down the executors of all streams, and stops the workers and the timer. Queued, delayed and periodic
+     * tasks are not executed: their futures are cancelled.
+     */
+    public void shutdown() {
+        streams.values().forEach(stream -> stream.shutdownNow().forEach(StreamScheduler::cancel));
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    int queuedTasks(final String streamName) {
+        final StreamExecutor stream = streams.get(streamName);
+        return stream != null ? stream.queuedTasks.get() : 0;
+    }
+
+    private void work() {
+        while (!workers.isShutdown()) {
+            try {
+                readyStreams.take().executeNext();
+            } catch (final InterruptedException e) {
+                // interrupted by shutdown(), or by a task interrupting its worker: only the former stops the worker
+            }
+        }
+    }
+
+    private static void cancel(final Runnable task) {
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory(final String threadNamePrefix) {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private final class StreamExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+        private final String streamName;
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+        private final Set<DelayedTask<?>> delayedTasks = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger queuedTasks;
+        private final AtomicInteger runningTasks = new AtomicInteger();
+        private final Timer taskTimer;
+        private final Timer waitTimer;
+        private volatile boolean shutdown = false;
+        private boolean ready = false;
+
+        private StreamExecutor(final String streamName) {
+            final Tags tags = Tags.of("stream", streamName);
+            this.streamName = streamName;
+            this.taskTimer = meterRegistry.timer(TASKS_METRIC, tags);
+            this.waitTimer = meterRegistry.timer(WAIT_METRIC, tags);
+            this.queuedTasks = meterRegistry.gauge(QUEUED_METRIC, tags, new AtomicInteger());
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor of stream " + streamName + " is shut down");
+            }
+            tasks.add(new QueuedTask(command, System.nanoTime()));
+            queuedTasks.incrementAndGet();
+            synchronized (this) {
+                if (ready) {
+                    return;
+                }
+                ready = true;
+            }
+            readyStreams.add(this);
+        }
+
+        /**
+         * Executes the next task of the stream. Before the task is executed, the stream is queued again if it has
+         * more tasks, so other workers may continue with the stream after all other ready streams.
+         */
+        private void executeNext() {
+            final QueuedTask task = tasks.poll();
+            final boolean moreTasks;
+            synchronized (this) {
+                moreTasks = !tasks.isEmpty();
+                ready = moreTasks;
+            }
+            if (moreTasks) {
+                readyStreams.add(this);
+            }
+            if (task != null) {
+                queuedTasks.decrementAndGet();
+                runningTasks.incrementAndGet();
+                try {
+                    final long startNanos = System.nanoTime();
+                    waitTimer.record(startNanos - task.queuedNanos, NANOSECONDS);
+                    task.command.run();
+                    taskTimer.record(System.nanoTime() - startNanos, NANOSECONDS);
+                } catch (final Throwable e) {
+                    LOG.error("Task of stream {} failed: {}", streamName, e.getMessage(), e);
+                } finally {
+                    if (runningTasks.decrementAndGet() == 0 && shutdown) {
+                        signalTermination();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            return schedule(callable(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+            return new DelayedTask<>(this, callable, unit.toNanos(delay), 0).start();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit) {
+            if (period <= 0) {
+                throw new IllegalArgumentException("period must be positive, but was " + period);
+            }
+            return new DelayedTask<>(this, callable(command), unit.toNanos(initialDelay), unit.toNanos(period)).start();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay, final TimeUnit unit) {
+            if (delay <= 0) {
+                throw new IllegalArgumentException("delay must be positive, but was " + delay);
+            }
+            return new DelayedTask<>(this, callable(command), unit.toNanos(initialDelay), -unit.toNanos(delay)).start();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            cancelDelayedTasks();
+            signalTermination();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            cancelDelayedTasks();
+            final List<Runnable> notExecuted = new ArrayList<>();
+            QueuedTask task;
+            while ((task = tasks.poll()) != null) {
+                queuedTasks.decrementAndGet();
+                notExecuted.add(task.command);
+            }
+            signalTermination();
+            return notExecuted;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && tasks.isEmpty() && runningTasks.get() == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                final long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                NANOSECONDS.timedWait(this, remainingNanos);
+            }
+            return true;
+        }
+
+        /**
+         * Cancels the delayed and periodic tasks that are waiting for their delay. Tasks already queued are returned
+         * by {@link #shutdownNow()}, or executed after {@link #shutdown()}, but their next execution is rejected.
+         */
+        private void cancelDelayedTasks() {
+            delayedTasks.forEach(task -> task.cancel(false));
+        }
+
+        /**
+         * Wakes up the threads waiting in {@link #awaitTermination(long, TimeUnit)}. Called after the executor is shut
+         * down, and whenever the last running task of a shut down executor is finished.
+         */
+        private synchronized void signalTermination() {
+            notifyAll();
+        }
+    }
+
+    /**
+     * A delayed or periodic task of a stream. The task is queued by the timer after its delay, and executed by the
+     * workers like all other tasks of the stream. Periodic tasks are queued again after each execution, so executions
+     * never overlap; an execution that is late is queued immediately.
+     */
+    private final class DelayedTask<V> implements ScheduledFuture<V>, Runnable {
+        private final StreamExecutor stream;
+        private final Callable<V> callable;
+        /* zero for tasks executed once, positive for a fixed rate, negative for a fixed delay */
+        private final long periodNanos;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long dueNanos;
+        private volatile ScheduledFuture<?> timerFuture;
+
+        private DelayedTask(final StreamExecutor stream,
+                            final Callable<V> callable,
+                            final long delayNanos,
+                            final long periodNanos) {
+            this.stream = stream;
+            this.callable = callable;
+            this.periodNanos = periodNanos;
+            this.dueNanos = System.nanoTime() + delayNanos;
+            stream.delayedTasks.add(this);
+            result.whenComplete((value, failure) -> stream.delayedTasks.remove(this));
+        }
+
+        private DelayedTask<V> start() {
+            if (stream.shutdown) {
+                result.cancel(false);
+                throw new RejectedExecutionException("Executor of stream " + stream.streamName + " is shut down");
+            }
+            timerFuture = timer.schedule(this::queue, dueNanos - System.nanoTime(), NANOSECONDS);
+            return this;
+        }
+
+        private void queue() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                stream.execute(this);
+            } catch (final RejectedExecutionException e) {
+                result.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                final V value = callable.call();
+                if (periodNanos == 0) {
+                    result.complete(value);
+                    return;
+                }
+            } catch (final Throwable e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            dueNanos = periodNanos > 0 ? dueNanos + periodNanos : System.nanoTime() - periodNanos;
+            try {
+                start();
+            } catch (final RejectedExecutionException e) {
+                result.cancel(false);
+            }
+        }
+
+        /**
+         * Cancels the task. A running execution is not interrupted, so {@code mayInterruptIfRunning} is ignored.
+         */
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = result.cancel(false);
+            final ScheduledFuture<?> pending = timerFuture;
+            if (cancelled && pending != null) {
+                pending.cancel(false);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public V get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return result.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed other) {
+            return Long.compare(getDelay(NANOSECONDS), other.getDelay(NANOSECONDS));
+        }
+    }
+
+    private static final class QueuedTask {
+        private final Runnable command;
+        private final long queuedNanos;
+
+        private QueuedTask(final Runnable command, final long queuedNanos) {
+            this.command = command;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
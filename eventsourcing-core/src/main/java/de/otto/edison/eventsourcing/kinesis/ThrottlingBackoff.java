@@ -0,0 +1,53 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential back-off with jitter, used to retry requests that were throttled by Kinesis.
+ * <p>
+ *     The back-off starts at {@code initialBackoff} and is doubled with every throttled request, up to
+ *     {@code maxBackoff}. The returned wait time is randomized between half and all of the current back-off, so
+ *     consumers of shards throttled at the same time do not retry at the same time. A successful request
+ *     {@link #reset() resets} the back-off.
+ * </p>
+ * <p>
+ *     Instances are stateful and must not be shared between shards.
+ * </p>
+ */
+class ThrottlingBackoff {
+
+    static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100);
+    static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private long backoffMillis;
+
+    ThrottlingBackoff() {
+        this(DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    ThrottlingBackoff(final Duration initialBackoff, final Duration maxBackoff) {
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.backoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Returns the time to wait before the throttled request is retried, and increases the back-off.
+     *
+     * @return wait time
+     */
+    synchronized Duration next() {
+        final long currentMillis = backoffMillis;
+        backoffMillis = Math.min(currentMillis * 2, maxBackoffMillis);
+        final long halfMillis = currentMillis / 2;
+        return Duration.ofMillis(halfMillis + ThreadLocalRandom.current().nextLong(currentMillis - halfMillis + 1));
+    }
+
+    synchronized void reset() {
+        backoffMillis = initialBackoffMillis;
+    }
+}
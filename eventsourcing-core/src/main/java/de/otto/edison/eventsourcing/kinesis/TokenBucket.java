@@ -0,0 +1,64 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A simple token bucket used to limit the rate of requests sent to a single shard.
+ * <p>
+ *     Tokens are refilled continuously with {@code tokensPerSecond}, up to {@code capacity}. If no token is
+ *     available, {@link #acquire()} blocks until the next token is refilled.
+ * </p>
+ */
+class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerToken;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    TokenBucket(final double tokensPerSecond, final double capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(final double tokensPerSecond, final double capacity, final LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("tokensPerSecond must be positive and capacity must be at least 1");
+        }
+        this.nanosPerToken = NANOS_PER_SECOND / tokensPerSecond;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.availableTokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    void acquire() throws InterruptedException {
+        final long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket and returns the time to wait until the token is actually available.
+     *
+     * @return nanos to wait, or 0 if a token was available
+     */
+    synchronized long reserve() {
+        refill();
+        availableTokens -= 1;
+        return availableTokens >= 0
+                ? 0
+                : (long) (-availableTokens * nanosPerToken);
+    }
+
+    private void refill() {
+        final long now = nanoClock.getAsLong();
+        availableTokens = Math.min(capacity, availableTokens + (now - lastRefillNanos) / nanosPerToken);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,113 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * A single record written by a producer. This is either a plain Kinesis {@link Record}, or one of the records
+ * contained in a record aggregated by the Kinesis Producer Library (KPL).
+ * <p>
+ *     The {@link #data() data} of a user record is a read-only view of the data of the Kinesis record; it is never
+ *     copied.
+ * </p>
+ */
+public final class UserRecord {
+
+    static final long NOT_AGGREGATED = -1L;
+
+    private final String partitionKey;
+    private final ByteBuffer data;
+    private final String sequenceNumber;
+    private final long subSequenceNumber;
+    private final boolean lastOfRecord;
+    private final Instant approximateArrivalTimestamp;
+
+    UserRecord(final String partitionKey,
+               final ByteBuffer data,
+               final String sequenceNumber,
+               final long subSequenceNumber,
+               final boolean lastOfRecord,
+               final Instant approximateArrivalTimestamp) {
+        this.partitionKey = partitionKey;
+        this.data = data;
+        this.sequenceNumber = sequenceNumber;
+        this.subSequenceNumber = subSequenceNumber;
+        this.lastOfRecord = lastOfRecord;
+        this.approximateArrivalTimestamp = approximateArrivalTimestamp;
+    }
+
+    static UserRecord of(final Record record) {
+        return new UserRecord(
+                record.partitionKey(),
+                record.data(),
+                record.sequenceNumber(),
+                NOT_AGGREGATED,
+                true,
+                record.approximateArrivalTimestamp());
+    }
+
+    public String partitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Returns a read-only view of the data of the user record.
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer data() {
+        return data != null ? data.duplicate() : null;
+    }
+
+    /**
+     * Returns the sequence number of the Kinesis record containing this user record.
+     *
+     * @return sequence number
+     */
+    public String sequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the index of this user record inside of the aggregated Kinesis record, or -1 if the Kinesis record is
+     * not aggregated.
+     *
+     * @return sub-sequence number
+     */
+    public long subSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    public boolean isAggregated() {
+        return subSequenceNumber != NOT_AGGREGATED;
+    }
+
+    public Instant approximateArrivalTimestamp() {
+        return approximateArrivalTimestamp;
+    }
+
+    /**
+     * Returns the position of the shard after this user record was consumed. After the last user record of a Kinesis
+     * record, this is the sequence number of the Kinesis record; otherwise, it is an {@link ExtendedSequenceNumber}
+     * pointing into the aggregated record.
+     *
+     * @return shard position
+     */
+    public String position() {
+        return lastOfRecord
+                ? sequenceNumber
+                : ExtendedSequenceNumber.of(sequenceNumber, subSequenceNumber).toString();
+    }
+
+    @Override
+    public String toString() {
+        return "UserRecord{" +
+                "partitionKey='" + partitionKey + '\'' +
+                ", sequenceNumber='" + sequenceNumber + '\'' +
+                ", subSequenceNumber=" + subSequenceNumber +
+                ", approximateArrivalTimestamp=" + approximateArrivalTimestamp +
+                '}';
+    }
+}
@@ -0,0 +1,465 @@
+package de.otto.edison.eventsourcing.kinesis.local;
+
+import software.amazon.awssdk.core.SdkBaseException;
+import software.amazon.awssdk.core.SdkClientException;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * An in-process stand-in for the {@link KinesisClient}, used to test and benchmark consumers and producers without
+ * a Kinesis or localstack instance.
+ * <p>
+ *     Streams consist of shards having hash key ranges like real Kinesis streams: records are assigned to shards by
+ *     the MD5 hash of their partition key, or by their explicit hash key. Sequence numbers are 56-digit decimal
+ *     numbers, increasing across all shards of the client. Shard iterators of all types are supported and expire
+ *     after five minutes; GetRecords responses contain {@code millisBehindLatest}. Shards may be split and merged,
+ *     closing the parent shards.
+ * </p>
+ * <p>
+ *     Optionally, GetRecords calls and put records per shard and second are {@link #withShardRateLimits(int, int)
+ *     limited}, failing with {@link ProvisionedThroughputExceededException} like Kinesis. Retention of records is
+ *     not simulated.
+ * </p>
+ */
+public class LocalKinesisClient implements KinesisClient {
+
+    private static final BigInteger MAX_HASH_KEY = BigInteger.valueOf(2).pow(128).subtract(BigInteger.ONE);
+    private static final Duration ITERATOR_EXPIRY = Duration.ofMinutes(5);
+    private static final int DEFAULT_GET_RECORDS_LIMIT = 10000;
+
+    private final Clock clock;
+    private final Map<String, LocalStream> streams = new LinkedHashMap<>();
+    private BigInteger lastSequenceNumber = BigInteger.valueOf(49_000_000_000L);
+    private int getRecordsPerSecond = 0;
+    private int putRecordsPerSecond = 0;
+
+    public LocalKinesisClient() {
+        this(Clock.systemUTC());
+    }
+
+    public LocalKinesisClient(final Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Limits the calls of GetRecords and the number of put records per shard and second. Kinesis allows 5 GetRecords
+     * calls and 1000 put records per shard and second.
+     *
+     * @param getRecordsPerSecond max GetRecords calls per shard and second, or 0 for no limit
+     * @param putRecordsPerSecond max put records per shard and second, or 0 for no limit
+     * @return this
+     */
+    public synchronized LocalKinesisClient withShardRateLimits(final int getRecordsPerSecond, final int putRecordsPerSecond) {
+        this.getRecordsPerSecond = getRecordsPerSecond;
+        this.putRecordsPerSecond = putRecordsPerSecond;
+        return this;
+    }
+
+    @Override
+    public synchronized CreateStreamResponse createStream(final CreateStreamRequest createStreamRequest) throws ResourceInUseException, LimitExceededException, InvalidArgumentException, SdkBaseException, SdkClientException, KinesisException {
+        final String streamName = createStreamRequest.streamName();
+        if (streams.containsKey(streamName)) {
+            throw ResourceInUseException.builder().message("Stream " + streamName + " already exists").build();
+        }
+        final int shardCount = createStreamRequest.shardCount() != null ? createStreamRequest.shardCount() : 1;
+        if (shardCount < 1) {
+            throw InvalidArgumentException.builder().message("Shard count must be positive").build();
+        }
+        final LocalStream stream = new LocalStream(streamName, clock.instant());
+        final BigInteger shardWidth = MAX_HASH_KEY.add(BigInteger.ONE).divide(BigInteger.valueOf(shardCount));
+        for (int i = 0; i < shardCount; ++i) {
+            final BigInteger startingHashKey = shardWidth.multiply(BigInteger.valueOf(i));
+            final BigInteger endingHashKey = i == shardCount - 1 ? MAX_HASH_KEY : startingHashKey.add(shardWidth).subtract(BigInteger.ONE);
+            stream.addShard(null, null, startingHashKey, endingHashKey);
+        }
+        streams.put(streamName, stream);
+        return CreateStreamResponse.builder().build();
+    }
+
+    @Override
+    public synchronized DescribeStreamResponse describeStream(final DescribeStreamRequest describeStreamRequest) throws ResourceNotFoundException, LimitExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(describeStreamRequest.streamName());
+        final int limit = describeStreamRequest.limit() != null ? describeStreamRequest.limit() : 100;
+        final String exclusiveStartShardId = describeStreamRequest.exclusiveStartShardId();
+        final List<LocalShard> shards = new ArrayList<>(stream.shards.values());
+        int from = 0;
+        if (exclusiveStartShardId != null) {
+            while (from < shards.size() && shards.get(from).shardId.compareTo(exclusiveStartShardId) <= 0) {
+                ++from;
+            }
+        }
+        final int to = Math.min(shards.size(), from + limit);
+        return DescribeStreamResponse.builder()
+                .streamDescription(StreamDescription.builder()
+                        .streamName(stream.streamName)
+                        .streamStatus(StreamStatus.ACTIVE)
+                        .streamCreationTimestamp(stream.creationTimestamp)
+                        .retentionPeriodHours(24)
+                        .shards(shards.subList(from, to).stream().map(LocalShard::toShard).collect(Collectors.toList()))
+                        .hasMoreShards(to < shards.size())
+                        .build())
+                .build();
+    }
+
+    @Override
+    public synchronized PutRecordResponse putRecord(final PutRecordRequest putRecordRequest) throws ResourceNotFoundException, InvalidArgumentException, ProvisionedThroughputExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(putRecordRequest.streamName());
+        final LocalShard shard = stream.shardOf(hashKeyOf(putRecordRequest.partitionKey(), putRecordRequest.explicitHashKey()));
+        if (!shard.putPermits.tryAcquire(putRecordsPerSecond, clock.millis())) {
+            throw ProvisionedThroughputExceededException.builder().message("Rate exceeded for shard " + shard.shardId).build();
+        }
+        final LocalRecord record = shard.append(putRecordRequest.partitionKey(), putRecordRequest.data());
+        return PutRecordResponse.builder()
+                .shardId(shard.shardId)
+                .sequenceNumber(record.sequenceNumber)
+                .build();
+    }
+
+    @Override
+    public synchronized PutRecordsResponse putRecords(final PutRecordsRequest putRecordsRequest) throws ResourceNotFoundException, InvalidArgumentException, ProvisionedThroughputExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(putRecordsRequest.streamName());
+        final List<PutRecordsResultEntry> results = new ArrayList<>();
+        int failedRecordCount = 0;
+        for (final PutRecordsRequestEntry entry : putRecordsRequest.records()) {
+            final LocalShard shard = stream.shardOf(hashKeyOf(entry.partitionKey(), entry.explicitHashKey()));
+            if (shard.putPermits.tryAcquire(putRecordsPerSecond, clock.millis())) {
+                final LocalRecord record = shard.append(entry.partitionKey(), entry.data());
+                results.add(PutRecordsResultEntry.builder()
+                        .shardId(shard.shardId)
+                        .sequenceNumber(record.sequenceNumber)
+                        .build());
+            } else {
+                ++failedRecordCount;
+                results.add(PutRecordsResultEntry.builder()
+                        .errorCode("ProvisionedThroughputExceededException")
+                        .errorMessage("Rate exceeded for shard " + shard.shardId)
+                        .build());
+            }
+        }
+        return PutRecordsResponse.builder()
+                .failedRecordCount(failedRecordCount)
+                .records(results)
+                .build();
+    }
+
+    @Override
+    public synchronized GetShardIteratorResponse getShardIterator(final GetShardIteratorRequest getShardIteratorRequest) throws ResourceNotFoundException, InvalidArgumentException, ProvisionedThroughputExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(getShardIteratorRequest.streamName());
+        final LocalShard shard = stream.shardById(getShardIteratorRequest.shardId());
+        final ShardIteratorType iteratorType = getShardIteratorRequest.shardIteratorType();
+        if (iteratorType == null) {
+            throw InvalidArgumentException.builder().message("Missing shard iterator type").build();
+        }
+        final int position;
+        switch (iteratorType) {
+            case TRIM_HORIZON:
+                position = 0;
+                break;
+            case LATEST:
+                position = shard.records.size();
+                break;
+            case AT_SEQUENCE_NUMBER:
+                position = shard.indexOf(getShardIteratorRequest.startingSequenceNumber());
+                break;
+            case AFTER_SEQUENCE_NUMBER:
+                position = shard.indexOf(getShardIteratorRequest.startingSequenceNumber()) + 1;
+                break;
+            case AT_TIMESTAMP:
+                position = shard.indexAt(getShardIteratorRequest.timestamp());
+                break;
+            default:
+                throw InvalidArgumentException.builder().message("Unsupported shard iterator type " + iteratorType).build();
+        }
+        return GetShardIteratorResponse.builder()
+                .shardIterator(new LocalShardIterator(stream.streamName, shard.shardId, position, clock.millis()).encode())
+                .build();
+    }
+
+    @Override
+    public synchronized GetRecordsResponse getRecords(final GetRecordsRequest getRecordsRequest) throws ResourceNotFoundException, InvalidArgumentException, ProvisionedThroughputExceededException, ExpiredIteratorException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalShardIterator iterator = LocalShardIterator.decode(getRecordsRequest.shardIterator());
+        final long now = clock.millis();
+        if (now - iterator.issuedAtMillis > ITERATOR_EXPIRY.toMillis()) {
+            throw ExpiredIteratorException.builder().message("Iterator expired").build();
+        }
+        final LocalShard shard = streamOf(iterator.streamName).shardById(iterator.shardId);
+        if (!shard.getRecordsPermits.tryAcquire(getRecordsPerSecond, now)) {
+            throw ProvisionedThroughputExceededException.builder().message("Rate exceeded for shard " + shard.shardId).build();
+        }
+        final int limit = getRecordsRequest.limit() != null ? getRecordsRequest.limit() : DEFAULT_GET_RECORDS_LIMIT;
+        final int from = Math.min(iterator.position, shard.records.size());
+        final int to = Math.min(shard.records.size(), from + limit);
+        final List<Record> records = shard.records.subList(from, to).stream()
+                .map(LocalRecord::toRecord)
+                .collect(Collectors.toList());
+        final boolean endOfShard = shard.closed && to == shard.records.size();
+        final long millisBehindLatest = to == shard.records.size() || records.isEmpty()
+                ? 0
+                : Math.max(0, now - shard.records.get(to - 1).arrivalTimestamp.toEpochMilli());
+        return GetRecordsResponse.builder()
+                .records(records)
+                .millisBehindLatest(millisBehindLatest)
+                .nextShardIterator(endOfShard ? null : new LocalShardIterator(iterator.streamName, shard.shardId, to, now).encode())
+                .build();
+    }
+
+    @Override
+    public synchronized SplitShardResponse splitShard(final SplitShardRequest splitShardRequest) throws ResourceNotFoundException, ResourceInUseException, InvalidArgumentException, LimitExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(splitShardRequest.streamName());
+        final LocalShard parent = stream.openShardById(splitShardRequest.shardToSplit());
+        final BigInteger newStartingHashKey = new BigInteger(splitShardRequest.newStartingHashKey());
+        if (newStartingHashKey.compareTo(parent.startingHashKey) <= 0 || newStartingHashKey.compareTo(parent.endingHashKey) > 0) {
+            throw InvalidArgumentException.builder().message("New starting hash key is not inside the hash key range of " + parent.shardId).build();
+        }
+        parent.close();
+        stream.addShard(parent.shardId, null, parent.startingHashKey, newStartingHashKey.subtract(BigInteger.ONE));
+        stream.addShard(parent.shardId, null, newStartingHashKey, parent.endingHashKey);
+        return SplitShardResponse.builder().build();
+    }
+
+    @Override
+    public synchronized MergeShardsResponse mergeShards(final MergeShardsRequest mergeShardsRequest) throws ResourceNotFoundException, ResourceInUseException, InvalidArgumentException, LimitExceededException, SdkBaseException, SdkClientException, KinesisException {
+        final LocalStream stream = streamOf(mergeShardsRequest.streamName());
+        final LocalShard shard = stream.openShardById(mergeShardsRequest.shardToMerge());
+        final LocalShard adjacentShard = stream.openShardById(mergeShardsRequest.adjacentShardToMerge());
+        final LocalShard lower = shard.startingHashKey.compareTo(adjacentShard.startingHashKey) < 0 ? shard : adjacentShard;
+        final LocalShard upper = lower == shard ? adjacentShard : shard;
+        if (!lower.endingHashKey.add(BigInteger.ONE).equals(upper.startingHashKey)) {
+            throw InvalidArgumentException.builder().message("Shards " + shard.shardId + " and " + adjacentShard.shardId + " are not adjacent").build();
+        }
+        shard.close();
+        adjacentShard.close();
+        stream.addShard(shard.shardId, adjacentShard.shardId, lower.startingHashKey, upper.endingHashKey);
+        return MergeShardsResponse.builder().build();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private LocalStream streamOf(final String streamName) {
+        final LocalStream stream = streams.get(streamName);
+        if (stream == null) {
+            throw ResourceNotFoundException.builder().message("Stream " + streamName + " not found").build();
+        }
+        return stream;
+    }
+
+    private String nextSequenceNumber() {
+        lastSequenceNumber = lastSequenceNumber.add(BigInteger.ONE);
+        return String.format("%056d", lastSequenceNumber);
+    }
+
+    private static BigInteger hashKeyOf(final String partitionKey, final String explicitHashKey) {
+        if (explicitHashKey != null) {
+            return new BigInteger(explicitHashKey);
+        }
+        if (partitionKey == null) {
+            throw InvalidArgumentException.builder().message("Missing partition key").build();
+        }
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("MD5").digest(partitionKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class LocalStream {
+        private final String streamName;
+        private final Instant creationTimestamp;
+        private final Map<String, LocalShard> shards = new LinkedHashMap<>();
+
+        private LocalStream(final String streamName, final Instant creationTimestamp) {
+            this.streamName = streamName;
+            this.creationTimestamp = creationTimestamp;
+        }
+
+        private void addShard(final String parentShardId,
+                              final String adjacentParentShardId,
+                              final BigInteger startingHashKey,
+                              final BigInteger endingHashKey) {
+            final String shardId = String.format("shardId-%012d", shards.size());
+            shards.put(shardId, new LocalShard(shardId, parentShardId, adjacentParentShardId, startingHashKey, endingHashKey, nextSequenceNumber()));
+        }
+
+        private LocalShard shardById(final String shardId) {
+            final LocalShard shard = shards.get(shardId);
+            if (shard == null) {
+                throw ResourceNotFoundException.builder().message("Shard " + shardId + " in stream " + streamName + " not found").build();
+            }
+            return shard;
+        }
+
+        private LocalShard openShardById(final String shardId) {
+            final LocalShard shard = shardById(shardId);
+            if (shard.closed) {
+                throw ResourceInUseException.builder().message("Shard " + shardId + " is closed").build();
+            }
+            return shard;
+        }
+
+        private LocalShard shardOf(final BigInteger hashKey) {
+            return shards.values().stream()
+                    .filter(shard -> !shard.closed && shard.contains(hashKey))
+                    .findFirst()
+                    .orElseThrow(() -> InvalidArgumentException.builder().message("Hash key " + hashKey + " out of range").build());
+        }
+    }
+
+    private final class LocalShard {
+        private final String shardId;
+        private final String parentShardId;
+        private final String adjacentParentShardId;
+        private final BigInteger startingHashKey;
+        private final BigInteger endingHashKey;
+        private final String startingSequenceNumber;
+        private final List<LocalRecord> records = new ArrayList<>();
+        private final RateLimit getRecordsPermits = new RateLimit();
+        private final RateLimit putPermits = new RateLimit();
+        private String endingSequenceNumber;
+        private boolean closed = false;
+
+        private LocalShard(final String shardId,
+                           final String parentShardId,
+                           final String adjacentParentShardId,
+                           final BigInteger startingHashKey,
+                           final BigInteger endingHashKey,
+                           final String startingSequenceNumber) {
+            this.shardId = shardId;
+            this.parentShardId = parentShardId;
+            this.adjacentParentShardId = adjacentParentShardId;
+            this.startingHashKey = startingHashKey;
+            this.endingHashKey = endingHashKey;
+            this.startingSequenceNumber = startingSequenceNumber;
+        }
+
+        private boolean contains(final BigInteger hashKey) {
+            return hashKey.compareTo(startingHashKey) >= 0 && hashKey.compareTo(endingHashKey) <= 0;
+        }
+
+        private LocalRecord append(final String partitionKey, final ByteBuffer data) {
+            final ByteBuffer buffer = data.asReadOnlyBuffer();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            final LocalRecord record = new LocalRecord(nextSequenceNumber(), partitionKey, bytes, clock.instant());
+            records.add(record);
+            return record;
+        }
+
+        private void close() {
+            closed = true;
+            endingSequenceNumber = nextSequenceNumber();
+        }
+
+        /**
+         * Returns the index of the record having the given sequence number.
+         */
+        private int indexOf(final String sequenceNumber) {
+            if (sequenceNumber == null || !sequenceNumber.matches("\\d+")) {
+                throw InvalidArgumentException.builder().message("Invalid sequence number " + sequenceNumber).build();
+            }
+            final BigInteger value = new BigInteger(sequenceNumber);
+            for (int i = 0; i < records.size(); ++i) {
+                if (new BigInteger(records.get(i).sequenceNumber).equals(value)) {
+                    return i;
+                }
+            }
+            throw InvalidArgumentException.builder().message("Sequence number " + sequenceNumber + " is not a record of shard " + shardId).build();
+        }
+
+        /**
+         * Returns the index of the first record that arrived at or after the timestamp.
+         */
+        private int indexAt(final Instant timestamp) {
+            if (timestamp == null) {
+                throw InvalidArgumentException.builder().message("Missing timestamp").build();
+            }
+            for (int i = 0; i < records.size(); ++i) {
+                if (!records.get(i).arrivalTimestamp.isBefore(timestamp)) {
+                    return i;
+                }
+            }
+            return records.size();
+        }
+
+        private Shard toShard() {
+            return Shard.builder()
+                    .shardId(shardId)
+                    .parentShardId(parentShardId)
+                    .adjacentParentShardId(adjacentParentShardId)
+                    .hashKeyRange(HashKeyRange.builder()
+                            .startingHashKey(startingHashKey.toString())
+                            .endingHashKey(endingHashKey.toString())
+                            .build())
+                    .sequenceNumberRange(SequenceNumberRange.builder()
+                            .startingSequenceNumber(startingSequenceNumber)
+                            .endingSequenceNumber(endingSequenceNumber)
+                            .build())
+                    .build();
+        }
+    }
+
+    private static final class LocalRecord {
+        private final String sequenceNumber;
+        private final String partitionKey;
+        private final byte[] data;
+        private final Instant arrivalTimestamp;
+
+        private LocalRecord(final String sequenceNumber,
+                            final String partitionKey,
+                            final byte[] data,
+                            final Instant arrivalTimestamp) {
+            this.sequenceNumber = sequenceNumber;
+            this.partitionKey = partitionKey;
+            this.data = data;
+            this.arrivalTimestamp = arrivalTimestamp;
+        }
+
+        private Record toRecord() {
+            return Record.builder()
+                    .sequenceNumber(sequenceNumber)
+                    .partitionKey(partitionKey)
+                    .data(ByteBuffer.wrap(data).asReadOnlyBuffer())
+                    .approximateArrivalTimestamp(arrivalTimestamp)
+                    .build();
+        }
+    }
+
+    /**
+     * Counts the permits acquired in the current second.
+     */
+    private static final class RateLimit {
+        private long currentSecond = -1;
+        private int acquired = 0;
+
+        private boolean tryAcquire(final int permitsPerSecond, final long nowMillis) {
+            if (permitsPerSecond <= 0) {
+                return true;
+            }
+            final long second = nowMillis / 1000;
+            if (second != currentSecond) {
+                currentSecond = second;
+                acquired = 0;
+            }
+            if (acquired >= permitsPerSecond) {
+                return false;
+            }
+            ++acquired;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package de.otto.edison.eventsourcing.kinesis.local;
+
+import software.amazon.awssdk.services.kinesis.model.InvalidArgumentException;
+
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The state of a shard iterator of the {@link LocalKinesisClient}, encoded into the opaque iterator string, so
+ * iterators need not be stored by the client.
+ */
+final class LocalShardIterator {
+
+    final String streamName;
+    final String shardId;
+    final int position;
+    final long issuedAtMillis;
+
+    LocalShardIterator(final String streamName, final String shardId, final int position, final long issuedAtMillis) {
+        this.streamName = streamName;
+        this.shardId = shardId;
+        this.position = position;
+        this.issuedAtMillis = issuedAtMillis;
+    }
+
+    String encode() {
+        final String state = String.join("\n", streamName, shardId, String.valueOf(position), String.valueOf(issuedAtMillis));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(state.getBytes(UTF_8));
+    }
+
+    static LocalShardIterator decode(final String shardIterator) {
+        try {
+            final String[] state = new String(Base64.getUrlDecoder().decode(shardIterator), UTF_8).split("\n");
+            return new LocalShardIterator(state[0], state[1], Integer.parseInt(state[2]), Long.parseLong(state[3]));
+        } catch (final RuntimeException e) {
+            throw InvalidArgumentException.builder().message("Invalid shard iterator " + shardIterator).build();
+        }
+    }
+}
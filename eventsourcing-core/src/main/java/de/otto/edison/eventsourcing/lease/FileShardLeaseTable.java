@@ -0,0 +1,146 @@
+package de.otto.edison.eventsourcing.lease;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Stores the leases of a stream in a properties file {@code <streamName>.leases} in a local or shared directory.
+ * <p>
+ *     Updates are serialized using a file lock on {@code <streamName>.lock}, so several processes on the same host
+ *     may share the table. The leases file is replaced atomically. Intended for tests and local development; the file
+ *     locks of network file systems are usually not reliable enough to share leases between hosts.
+ * </p>
+ */
+public class FileShardLeaseTable implements ShardLeaseTable {
+
+    private static final String FILE_EXTENSION = ".leases";
+    private static final String LOCK_FILE_EXTENSION = ".lock";
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+
+    public FileShardLeaseTable(final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public List<ShardLease> leasesOf(final String streamName) {
+        return new ArrayList<>(locked(streamName, this::read).values());
+    }
+
+    @Override
+    public Optional<ShardLease> update(final String streamName, final ShardLease lease) {
+        return locked(streamName, name -> {
+            final Map<String, ShardLease> leases = read(name);
+            final ShardLease stored = leases.get(lease.getShardId());
+            final long storedVersion = stored != null ? stored.getVersion() : 0;
+            if (storedVersion != lease.getVersion()) {
+                return Optional.empty();
+            }
+            final ShardLease updated = lease.withVersion(storedVersion + 1);
+            leases.put(updated.getShardId(), updated);
+            write(name, leases);
+            return Optional.of(updated);
+        });
+    }
+
+    private <R> R locked(final String streamName, final Function<String, R> action) {
+        synchronized (JVM_LOCK) {
+            try {
+                Files.createDirectories(directory);
+                try (FileChannel channel = FileChannel.open(directory.resolve(streamName + LOCK_FILE_EXTENSION), CREATE, WRITE)) {
+                    final FileLock lock = channel.lock();
+                    try {
+                        return action.apply(streamName);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Map<String, ShardLease> read(final String streamName) {
+        final Map<String, ShardLease> leases = new TreeMap<>();
+        final Path file = fileOf(streamName);
+        if (!Files.exists(file)) {
+            return leases;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        properties.stringPropertyNames().stream()
+                .filter(key -> key.endsWith(".version"))
+                .map(key -> key.substring(0, key.length() - ".version".length()))
+                .forEach(shardId -> {
+                    final String expiresAt = properties.getProperty(shardId + ".expiresAt");
+                    leases.put(shardId, new ShardLease(
+                            shardId,
+                            properties.getProperty(shardId + ".owner"),
+                            expiresAt != null ? Instant.ofEpochMilli(Long.parseLong(expiresAt)) : null,
+                            properties.getProperty(shardId + ".checkpoint"),
+                            properties.getProperty(shardId + ".handoffTo"),
+                            Long.parseLong(properties.getProperty(shardId + ".version"))));
+                });
+        return leases;
+    }
+
+    private void write(final String streamName, final Map<String, ShardLease> leases) {
+        final Properties properties = new Properties();
+        leases.values().forEach(lease -> {
+            final String shardId = lease.getShardId();
+            setIfNotNull(properties, shardId + ".owner", lease.getOwner());
+            setIfNotNull(properties, shardId + ".expiresAt", lease.getExpiresAt() != null ? String.valueOf(lease.getExpiresAt().toEpochMilli()) : null);
+            setIfNotNull(properties, shardId + ".checkpoint", lease.getCheckpoint());
+            setIfNotNull(properties, shardId + ".handoffTo", lease.getHandoffTo());
+            properties.setProperty(shardId + ".version", String.valueOf(lease.getVersion()));
+        });
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, null);
+            final Path tempFile = Files.createTempFile(directory, streamName, ".tmp");
+            try {
+                Files.write(tempFile, out.toByteArray());
+                Files.move(tempFile, fileOf(streamName), REPLACE_EXISTING, ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void setIfNotNull(final Properties properties, final String key, final String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private Path fileOf(final String streamName) {
+        return directory.resolve(streamName + FILE_EXTENSION);
+    }
+}
@@ -0,0 +1,168 @@
+package de.otto.edison.eventsourcing.lease;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The lease of a single shard of a stream, as stored in the {@link ShardLeaseTable}.
+ * <p>
+ *     A lease is held by its {@code owner} until it {@code expiresAt}, unless it is renewed. The {@code checkpoint}
+ *     is the position of the last record of the shard that was processed by an owner, or {@link #SHARD_END} if the
+ *     shard is closed and was consumed completely. If another instance requested the lease, {@code handoffTo} is
+ *     the owner that will get the lease as soon as the current owner has stopped consuming the shard.
+ * </p>
+ * <p>
+ *     The {@code version} is used for optimistic locking: it is incremented by the table on every update.
+ * </p>
+ */
+public final class ShardLease {
+
+    /**
+     * Checkpoint of closed shards that were consumed to their end.
+     */
+    public static final String SHARD_END = "SHARD_END";
+
+    private final String shardId;
+    private final String owner;
+    private final Instant expiresAt;
+    private final String checkpoint;
+    private final String handoffTo;
+    private final long version;
+
+    public ShardLease(final String shardId,
+                      final String owner,
+                      final Instant expiresAt,
+                      final String checkpoint,
+                      final String handoffTo,
+                      final long version) {
+        this.shardId = Objects.requireNonNull(shardId, "shard id must not be null");
+        this.owner = owner;
+        this.expiresAt = expiresAt;
+        this.checkpoint = checkpoint;
+        this.handoffTo = handoffTo;
+        this.version = version;
+    }
+
+    /**
+     * Creates a lease of a shard that is not yet contained in the lease table.
+     *
+     * @param shardId the id of the shard
+     * @return lease without owner, having version 0
+     */
+    public static ShardLease newLease(final String shardId) {
+        return new ShardLease(shardId, null, null, null, null, 0);
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * @return the owner of the lease, or null, if the lease was released
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return the position of the last processed record, {@link #SHARD_END}, or null, if no record was processed
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return the owner that requested the lease, or null
+     */
+    public String getHandoffTo() {
+        return handoffTo;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isOwnedBy(final String owner) {
+        return owner.equals(this.owner);
+    }
+
+    /**
+     * Returns true, if the lease has no owner, or the owner did not renew it in time.
+     *
+     * @param now the current time
+     * @return true, if the lease may be acquired by any instance
+     */
+    public boolean isAvailable(final Instant now) {
+        return owner == null || expiresAt == null || !now.isBefore(expiresAt);
+    }
+
+    public boolean isShardEnd() {
+        return SHARD_END.equals(checkpoint);
+    }
+
+    public ShardLease ownedBy(final String owner, final Instant expiresAt) {
+        return new ShardLease(shardId, owner, expiresAt, checkpoint, owner.equals(handoffTo) ? null : handoffTo, version);
+    }
+
+    public ShardLease withCheckpoint(final String checkpoint) {
+        return new ShardLease(shardId, owner, expiresAt, checkpoint, handoffTo, version);
+    }
+
+    public ShardLease withHandoffTo(final String handoffTo) {
+        return new ShardLease(shardId, owner, expiresAt, checkpoint, handoffTo, version);
+    }
+
+    public ShardLease withVersion(final long version) {
+        return new ShardLease(shardId, owner, expiresAt, checkpoint, handoffTo, version);
+    }
+
+    /**
+     * Returns the lease after the owner stopped consuming the shard: if the lease was requested by another instance,
+     * it is handed off to that instance, otherwise it has no owner.
+     *
+     * @param checkpoint the position of the last processed record
+     * @param now the current time
+     * @param leaseDuration the duration of leases
+     * @return released lease
+     */
+    public ShardLease released(final String checkpoint, final Instant now, final Duration leaseDuration) {
+        return handoffTo != null
+                ? new ShardLease(shardId, handoffTo, now.plus(leaseDuration), checkpoint, null, version)
+                : new ShardLease(shardId, null, null, checkpoint, null, version);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ShardLease that = (ShardLease) o;
+        return version == that.version &&
+                Objects.equals(shardId, that.shardId) &&
+                Objects.equals(owner, that.owner) &&
+                Objects.equals(expiresAt, that.expiresAt) &&
+                Objects.equals(checkpoint, that.checkpoint) &&
+                Objects.equals(handoffTo, that.handoffTo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(shardId, owner, expiresAt, checkpoint, handoffTo, version);
+    }
+
+    @Override
+    public String toString() {
+        return "ShardLease{" +
+                "shardId='" + shardId + '\'' +
+                ", owner='" + owner + '\'' +
+                ", expiresAt=" + expiresAt +
+                ", checkpoint='" + checkpoint + '\'' +
+                ", handoffTo='" + handoffTo + '\'' +
+                ", version=" + version +
+                '}';
+    }
+}
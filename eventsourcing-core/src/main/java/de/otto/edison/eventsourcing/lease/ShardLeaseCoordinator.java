@@ -0,0 +1,282 @@
+package de.otto.edison.eventsourcing.lease;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Assigns the shards of streams to the instances consuming the streams, using the leases of a
+ * {@link ShardLeaseTable}.
+ * <p>
+ *     Every instance periodically calls {@link #coordinate(String, Collection, Map)}, at least every
+ *     {@link #getRenewInterval() renew interval}. Every call
+ * </p>
+ * <ol>
+ *     <li>renews the leases held by this instance, storing the current positions of the shards as checkpoints,</li>
+ *     <li>acquires leases that have no owner or were not renewed in time, until this instance holds its fair share
+ *     of the shards, and</li>
+ *     <li>if there are no such leases, requests a single lease of the instance holding the most leases, if that
+ *     instance holds more than its fair share.</li>
+ * </ol>
+ * <p>
+ *     A requested lease is not taken away from its owner: the owner sees the request in the
+ *     {@link LeaseAssignment#handoffShards() assignment}, stops consuming the shard, and {@link #release(String,
+ *     String, String) releases} the lease at the last processed position. Released leases are handed off to the
+ *     requesting instance, which continues after that position. If an owner crashes, its leases expire, and are
+ *     acquired by other instances continuing at the last renewed checkpoint.
+ * </p>
+ */
+public class ShardLeaseCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardLeaseCoordinator.class);
+
+    private final ShardLeaseTable leaseTable;
+    private final String owner;
+    private final Duration leaseDuration;
+    private final Clock clock;
+
+    public ShardLeaseCoordinator(final ShardLeaseTable leaseTable,
+                                 final String owner,
+                                 final Duration leaseDuration) {
+        this(leaseTable, owner, leaseDuration, Clock.systemUTC());
+    }
+
+    ShardLeaseCoordinator(final ShardLeaseTable leaseTable,
+                          final String owner,
+                          final Duration leaseDuration,
+                          final Clock clock) {
+        this.leaseTable = leaseTable;
+        this.owner = owner;
+        this.leaseDuration = leaseDuration;
+        this.clock = clock;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns the max interval between two calls of {@link #coordinate(String, Collection, Map)}, so leases are
+     * renewed well before they expire.
+     *
+     * @return a third of the lease duration
+     */
+    public Duration getRenewInterval() {
+        return leaseDuration.dividedBy(3);
+    }
+
+    /**
+     * Renews, acquires and requests the leases of the shards of a stream.
+     *
+     * @param streamName the name of the stream
+     * @param shardIds the shards that are ready to be consumed, including the shards consumed by this instance
+     * @param positions the positions of the last processed records of the shards consumed by this instance
+     * @return the shards assigned to this instance
+     */
+    public LeaseAssignment coordinate(final String streamName,
+                                      final Collection<String> shardIds,
+                                      final Map<String, String> positions) {
+        final Instant now = clock.instant();
+        final Map<String, ShardLease> leases = new LinkedHashMap<>();
+        leaseTable.leasesOf(streamName).forEach(lease -> leases.put(lease.getShardId(), lease));
+
+        final Set<String> finishedShards = leases.values().stream()
+                .filter(ShardLease::isShardEnd)
+                .map(ShardLease::getShardId)
+                .collect(Collectors.toSet());
+        final Map<String, ShardLease> ownedLeases = new LinkedHashMap<>();
+        final List<ShardLease> candidates = shardIds.stream()
+                .filter(shardId -> !finishedShards.contains(shardId))
+                .map(shardId -> leases.getOrDefault(shardId, ShardLease.newLease(shardId)))
+                .collect(Collectors.toList());
+
+        for (final ShardLease lease : candidates) {
+            if (lease.isOwnedBy(owner)) {
+                final String checkpoint = positions.getOrDefault(lease.getShardId(), lease.getCheckpoint());
+                renew(streamName, lease, checkpoint, now)
+                        .ifPresent(renewed -> ownedLeases.put(renewed.getShardId(), renewed));
+            }
+        }
+
+        final Map<String, Integer> leasesPerOwner = new HashMap<>();
+        candidates.stream()
+                .filter(lease -> !lease.isAvailable(now) && !lease.isOwnedBy(owner))
+                .forEach(lease -> leasesPerOwner.merge(lease.getOwner(), 1, Integer::sum));
+        final int fairShare = (candidates.size() + leasesPerOwner.size()) / (leasesPerOwner.size() + 1);
+
+        candidates.stream()
+                .filter(lease -> lease.isAvailable(now) && !lease.isOwnedBy(owner))
+                .sorted(Comparator.comparing((ShardLease lease) -> !owner.equals(lease.getHandoffTo())))
+                .forEach(lease -> {
+                    if (ownedLeases.size() < fairShare) {
+                        leaseTable.update(streamName, lease.ownedBy(owner, now.plus(leaseDuration)).withHandoffTo(null))
+                                .ifPresent(acquired -> {
+                                    LOG.info("Acquired lease of shard {} of stream {}", acquired.getShardId(), streamName);
+                                    ownedLeases.put(acquired.getShardId(), acquired);
+                                });
+                    }
+                });
+
+        final boolean requestPending = candidates.stream().anyMatch(lease -> owner.equals(lease.getHandoffTo()));
+        if (ownedLeases.size() < fairShare && !requestPending) {
+            requestLease(streamName, candidates, leasesPerOwner, fairShare, now);
+        }
+
+        final Map<String, String> checkpoints = new HashMap<>();
+        final Set<String> handoffShards = new HashSet<>();
+        ownedLeases.values().forEach(lease -> {
+            if (lease.getCheckpoint() != null) {
+                checkpoints.put(lease.getShardId(), lease.getCheckpoint());
+            }
+            if (lease.getHandoffTo() != null) {
+                handoffShards.add(lease.getShardId());
+            }
+        });
+        return new LeaseAssignment(ownedLeases.keySet(), checkpoints, handoffShards, finishedShards);
+    }
+
+    /**
+     * Releases the lease of a shard after this instance has stopped consuming it. If the lease was requested by
+     * another instance, it is handed off to that instance.
+     *
+     * @param streamName the name of the stream
+     * @param shardId the id of the shard
+     * @param position the position of the last processed record of the shard
+     */
+    public void release(final String streamName, final String shardId, final String position) {
+        currentLease(streamName, shardId)
+                .filter(lease -> lease.isOwnedBy(owner))
+                .ifPresent(lease -> {
+                    final ShardLease released = lease.released(position, clock.instant(), leaseDuration);
+                    if (leaseTable.update(streamName, released).isPresent()) {
+                        LOG.info("Released lease of shard {} of stream {} at position {} to {}",
+                                shardId, streamName, position, released.getOwner() != null ? released.getOwner() : "any instance");
+                    }
+                });
+    }
+
+    /**
+     * Marks a closed shard as consumed to its end, so the child shards may be consumed by any instance.
+     *
+     * @param streamName the name of the stream
+     * @param shardId the id of the closed shard
+     * @return true, if the shard was marked as finished, false if the lease was modified concurrently
+     */
+    public boolean finish(final String streamName, final String shardId) {
+        final long version = currentLease(streamName, shardId).map(ShardLease::getVersion).orElse(0L);
+        return leaseTable.update(streamName, new ShardLease(shardId, null, null, ShardLease.SHARD_END, null, version)).isPresent();
+    }
+
+    /**
+     * Renews a lease of this instance. If the lease was modified concurrently, for example because another instance
+     * requested it, the current lease is read again, and the renewal is retried once if it is still owned by this
+     * instance.
+     */
+    private Optional<ShardLease> renew(final String streamName,
+                                       final ShardLease lease,
+                                       final String checkpoint,
+                                       final Instant now) {
+        final Optional<ShardLease> renewed = leaseTable.update(streamName, lease.ownedBy(owner, now.plus(leaseDuration)).withCheckpoint(checkpoint));
+        if (renewed.isPresent()) {
+            return renewed;
+        }
+        final Optional<ShardLease> retried = currentLease(streamName, lease.getShardId())
+                .filter(current -> current.isOwnedBy(owner) && !current.isShardEnd())
+                .flatMap(current -> leaseTable.update(streamName, current.ownedBy(owner, now.plus(leaseDuration)).withCheckpoint(checkpoint)));
+        if (!retried.isPresent()) {
+            LOG.warn("Lost lease of shard {} of stream {}: the lease was modified by another instance", lease.getShardId(), streamName);
+        }
+        return retried;
+    }
+
+    private void requestLease(final String streamName,
+                              final List<ShardLease> candidates,
+                              final Map<String, Integer> leasesPerOwner,
+                              final int fairShare,
+                              final Instant now) {
+        leasesPerOwner.entrySet().stream()
+                .filter(entry -> entry.getValue() > fairShare)
+                .max(Map.Entry.comparingByValue())
+                .flatMap(busiestOwner -> candidates.stream()
+                        .filter(lease -> !lease.isAvailable(now) && lease.isOwnedBy(busiestOwner.getKey()) && lease.getHandoffTo() == null)
+                        .findFirst())
+                .ifPresent(lease -> {
+                    if (leaseTable.update(streamName, lease.withHandoffTo(owner)).isPresent()) {
+                        LOG.info("Requested lease of shard {} of stream {} from {}", lease.getShardId(), streamName, lease.getOwner());
+                    }
+                });
+    }
+
+    private Optional<ShardLease> currentLease(final String streamName, final String shardId) {
+        return leaseTable.leasesOf(streamName).stream()
+                .filter(lease -> lease.getShardId().equals(shardId))
+                .findFirst();
+    }
+
+    /**
+     * The result of a single call of {@link #coordinate(String, Collection, Map)}.
+     */
+    public static final class LeaseAssignment {
+        private final Set<String> ownedShards;
+        private final Map<String, String> checkpoints;
+        private final Set<String> handoffShards;
+        private final Set<String> finishedShards;
+
+        LeaseAssignment(final Set<String> ownedShards,
+                        final Map<String, String> checkpoints,
+                        final Set<String> handoffShards,
+                        final Set<String> finishedShards) {
+            this.ownedShards = unmodifiableSet(new HashSet<>(ownedShards));
+            this.checkpoints = unmodifiableMap(checkpoints);
+            this.handoffShards = unmodifiableSet(handoffShards);
+            this.finishedShards = unmodifiableSet(finishedShards);
+        }
+
+        /**
+         * @return the shards this instance holds the lease of, including shards requested by other instances
+         */
+        public Set<String> ownedShards() {
+            return ownedShards;
+        }
+
+        /**
+         * Returns the checkpoint of an owned shard, as stored in the lease.
+         *
+         * @param shardId the id of the shard
+         * @return position of the last record processed by any instance, or empty
+         */
+        public Optional<String> checkpointOf(final String shardId) {
+            return Optional.ofNullable(checkpoints.get(shardId));
+        }
+
+        /**
+         * @return owned shards that were requested by other instances and should be released
+         */
+        public Set<String> handoffShards() {
+            return handoffShards;
+        }
+
+        /**
+         * @return closed shards that were consumed to their end, by any instance
+         */
+        public Set<String> finishedShards() {
+            return finishedShards;
+        }
+    }
+}
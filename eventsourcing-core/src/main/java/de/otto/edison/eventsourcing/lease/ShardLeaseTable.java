@@ -0,0 +1,32 @@
+package de.otto.edison.eventsourcing.lease;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores the {@link ShardLease leases} of the shards of streams, shared by all instances consuming a stream.
+ * <p>
+ *     Implementations must update leases atomically, using the {@link ShardLease#getVersion() version} of the lease
+ *     for optimistic locking, so two instances never acquire the same lease.
+ * </p>
+ */
+public interface ShardLeaseTable {
+
+    /**
+     * Returns all leases of a stream.
+     *
+     * @param streamName the name of the stream
+     * @return leases, or an empty list if there are none
+     */
+    List<ShardLease> leasesOf(String streamName);
+
+    /**
+     * Creates or updates a lease, if the stored lease still has the version of the given lease. Leases having
+     * version 0 are only created if there is no lease of the shard.
+     *
+     * @param streamName the name of the stream
+     * @param lease the updated lease, having the version of the lease it was derived from
+     * @return the stored lease with incremented version, or empty, if the lease was modified concurrently
+     */
+    Optional<ShardLease> update(String streamName, ShardLease lease);
+}
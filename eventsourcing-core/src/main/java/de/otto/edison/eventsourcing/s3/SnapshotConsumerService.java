@@ -4,8 +4,10 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
 import de.otto.edison.eventsourcing.consumer.Event;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import de.otto.edison.eventsourcing.serialization.PayloadCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.stereotype.Service;
@@ -19,19 +21,22 @@ import java.util.function.Predicate;
 import java.util.zip.ZipInputStream;
 
 import static de.otto.edison.eventsourcing.consumer.Event.event;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Service
 public class SnapshotConsumerService {
 
-    private final ObjectMapper objectMapper;
-    private final TextEncryptor textEncryptor;
+    private final PayloadCodec payloadCodec;
     private final JsonFactory jsonFactory = new JsonFactory();
 
 
     @Autowired
     public SnapshotConsumerService(ObjectMapper objectMapper, TextEncryptor textEncryptor) {
-        this.objectMapper = objectMapper;
-        this.textEncryptor = textEncryptor;
+        this(objectMapper, textEncryptor, PayloadCompressor.none());
+    }
+
+    public SnapshotConsumerService(ObjectMapper objectMapper, TextEncryptor textEncryptor, PayloadCompressor payloadCompressor) {
+        this.payloadCodec = new PayloadCodec(objectMapper, textEncryptor, payloadCompressor);
     }
 
     public <T> StreamPosition consumeSnapshot(final File latestSnapshot,
@@ -74,7 +79,6 @@ public class SnapshotConsumerService {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private <T> void processSnapshotData(final JsonParser parser,
                                          final String sequenceNumber,
                                          final Predicate<Event<T>> stopCondition,
@@ -87,12 +91,7 @@ public class SnapshotConsumerService {
             JsonToken currentToken = parser.currentToken();
             if (currentToken == JsonToken.FIELD_NAME) {
                 String key = parser.getValueAsString();
-                T readValue;
-                if (payloadType == String.class) {
-                    readValue = (T) textEncryptor.decrypt(parser.nextTextValue());
-                } else {
-                    readValue = objectMapper.readValue(textEncryptor.decrypt(parser.nextTextValue()), payloadType);
-                }
+                final T readValue = payloadCodec.decode(parser.nextTextValue().getBytes(UTF_8), payloadType);
                 final Event<T> event = event(
                         key,
                         readValue,
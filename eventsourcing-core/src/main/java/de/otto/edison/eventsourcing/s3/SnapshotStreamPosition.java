@@ -3,6 +3,7 @@ package de.otto.edison.eventsourcing.s3;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
 
 import java.time.Instant;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -23,6 +24,17 @@ public class SnapshotStreamPosition extends StreamPosition {
         return new SnapshotStreamPosition(streamPosition, snapshotTimestamp);
     }
 
+    /**
+     * Returns the timestamp of the snapshot, so shards that are not contained in the snapshot, or whose position is
+     * no longer valid, are consumed starting at the time the snapshot was created.
+     *
+     * @return snapshot timestamp
+     */
+    @Override
+    public Optional<Instant> timestamp() {
+        return Optional.ofNullable(snapshotTimestamp);
+    }
+
     public Instant getSnapshotTimestamp() {
         return snapshotTimestamp;
     }
@@ -95,8 +95,7 @@ public class LocalS3Client implements S3Client {
 
     @Override
     public GetObjectResponse getObject(GetObjectRequest getObjectRequest, Path filePath) throws NoSuchKeyException, SdkBaseException, SdkClientException, S3Exception {
-        Map<String, BucketItem> bucketItemMap = bucketsWithContents.get(getObjectRequest.bucket());
-        BucketItem bucketItem = bucketItemMap.get(getObjectRequest.key());
+        BucketItem bucketItem = getBucketItem(getObjectRequest);
 
         try {
             Files.write(filePath, bucketItem.getData());
@@ -110,8 +109,7 @@ public class LocalS3Client implements S3Client {
     @SuppressWarnings("unchecked")
     @Override
     public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest getObjectRequest) throws NoSuchKeyException, SdkBaseException, SdkClientException, S3Exception {
-        Map<String, BucketItem> bucketItemMap = bucketsWithContents.get(getObjectRequest.bucket());
-        BucketItem bucketItem = bucketItemMap.get(getObjectRequest.key());
+        BucketItem bucketItem = getBucketItem(getObjectRequest);
 
         AbortableInputStream in = new AbortableInputStream(new ByteArrayInputStream(bucketItem.getData()), () -> {});
         try {
@@ -125,6 +123,15 @@ public class LocalS3Client implements S3Client {
 
     }
 
+    private BucketItem getBucketItem(GetObjectRequest getObjectRequest) {
+        Map<String, BucketItem> bucketItemMap = bucketsWithContents.get(getObjectRequest.bucket());
+        BucketItem bucketItem = bucketItemMap != null ? bucketItemMap.get(getObjectRequest.key()) : null;
+        if (bucketItem == null) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist.").build();
+        }
+        return bucketItem;
+    }
+
     @Override
     public void close() {
         System.out.println("s3 closing...");
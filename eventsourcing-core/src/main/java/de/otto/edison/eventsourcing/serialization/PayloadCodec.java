@@ -0,0 +1,89 @@
+package de.otto.edison.eventsourcing.serialization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.encryption.ByteTextEncryptor;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes, compresses and encrypts the payloads of events, and decodes them again.
+ * <p>
+ *     Payloads are processed as UTF-8 encoded bytes: JSON is written to and parsed from byte arrays, and
+ *     encrypted using a {@link ByteTextEncryptor}, so no intermediate Strings are created. The encoded bytes are
+ *     the same as {@code textEncryptor.encrypt(payloadCompressor.compress(objectMapper.writeValueAsString(payload)))}.
+ * </p>
+ * <p>
+ *     Payloads of type String are not parsed when they are decoded: the decrypted and decompressed text is returned
+ *     unchanged.
+ * </p>
+ */
+public class PayloadCodec {
+
+    private final ObjectMapper objectMapper;
+    private final ByteTextEncryptor encryptor;
+    private final PayloadCompressor payloadCompressor;
+
+    public PayloadCodec(final ObjectMapper objectMapper,
+                        final TextEncryptor textEncryptor,
+                        final PayloadCompressor payloadCompressor) {
+        this.objectMapper = objectMapper;
+        this.encryptor = ByteTextEncryptor.of(textEncryptor);
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    /**
+     * Serializes, compresses and encrypts a payload.
+     *
+     * @param payload the payload
+     * @return encoded payload
+     * @throws JsonProcessingException if the payload could not be serialized
+     */
+    public byte[] encode(final Object payload) throws JsonProcessingException {
+        return encryptor.encrypt(payloadCompressor.compress(objectMapper.writeValueAsBytes(payload)));
+    }
+
+    /**
+     * Decrypts, decompresses and deserializes the remaining bytes of a buffer. The position of the buffer is not
+     * changed.
+     *
+     * @param data the encoded payload
+     * @param payloadType the type of the payload
+     * @param <T> the type of the payload
+     * @return decoded payload
+     * @throws UncheckedIOException if the payload could not be deserialized
+     */
+    public <T> T decode(final ByteBuffer data, final Class<T> payloadType) {
+        final byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return decode(bytes, payloadType);
+    }
+
+    /**
+     * Decrypts, decompresses and deserializes a payload.
+     *
+     * @param data the encoded payload
+     * @param payloadType the type of the payload
+     * @param <T> the type of the payload
+     * @return decoded payload
+     * @throws UncheckedIOException if the payload could not be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(final byte[] data, final Class<T> payloadType) {
+        final byte[] json = payloadCompressor.decompress(encryptor.decrypt(data));
+        if (payloadType == String.class) {
+            return (T) new String(json, UTF_8);
+        }
+        try {
+            return objectMapper.readValue(json, payloadType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CheckpointerTest {
+
+    private static final Instant NOW = Instant.parse("2018-01-01T10:00:00Z");
+
+    @Mock
+    private CheckpointStore checkpointStore;
+
+    @Test
+    public void shouldSaveCheckpointEveryMaxRecords() throws Exception {
+        // given
+        Checkpointer checkpointer = checkpointer(StreamPosition.of(), 2, Duration.ofHours(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        checkpointer.update("shard1", "1");
+        checkpointer.update("shard2", "2");
+        checkpointer.update("shard1", "3");
+
+        // then
+        verify(checkpointStore, times(1)).save(anyString(), any(StreamPosition.class));
+        verify(checkpointStore).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "1", "shard2", "2")));
+    }
+
+    @Test
+    public void shouldSaveCheckpointAfterMaxInterval() throws Exception {
+        // given
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW, NOW, NOW.plusSeconds(10));
+        Checkpointer checkpointer = checkpointer(StreamPosition.of(), 1000, Duration.ofSeconds(10), clock);
+
+        // when
+        checkpointer.update("shard1", "1");
+        checkpointer.update("shard1", "2");
+
+        // then
+        verify(checkpointStore).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "2")));
+    }
+
+    @Test
+    public void shouldKeepPositionsOfUnchangedShards() throws Exception {
+        // given
+        Checkpointer checkpointer = checkpointer(StreamPosition.of(ImmutableMap.of("shard1", "1", "shard2", "2")), 1, Duration.ofHours(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        checkpointer.update("shard1", "3");
+
+        // then
+        verify(checkpointStore).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "3", "shard2", "2")));
+    }
+
+    @Test
+    public void shouldOnlyCommitChangedPositions() throws Exception {
+        // given
+        Checkpointer checkpointer = checkpointer(StreamPosition.of(), 1000, Duration.ofHours(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        checkpointer.commit();
+
+        // then
+        verify(checkpointStore, never()).save(anyString(), any(StreamPosition.class));
+    }
+
+    @Test
+    public void shouldContinueIfCheckpointCannotBeSaved() throws Exception {
+        // given
+        doThrow(new IllegalStateException("forced test exception")).when(checkpointStore).save(anyString(), any(StreamPosition.class));
+        Checkpointer checkpointer = checkpointer(StreamPosition.of(), 1, Duration.ofHours(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        checkpointer.update("shard1", "1");
+        checkpointer.update("shard1", "2");
+
+        // then
+        verify(checkpointStore).save(eq("someStream"), eq(StreamPosition.of(ImmutableMap.of("shard1", "2"))));
+    }
+
+    private Checkpointer checkpointer(StreamPosition startFrom, int maxRecords, Duration maxInterval, Clock clock) {
+        return new Checkpointer(checkpointStore, "someStream", startFrom, maxRecords, maxInterval, clock);
+    }
+}
@@ -0,0 +1,59 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FileCheckpointStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldLoadSavedCheckpoint() throws Exception {
+        // given
+        FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath().resolve("checkpoints"));
+        StreamPosition position = StreamPosition.of(ImmutableMap.of("shard1", "4711", "shard2", "42:3"));
+
+        // when
+        checkpointStore.save("someStream", position);
+
+        // then
+        assertThat(checkpointStore.load("someStream"), is(Optional.of(position)));
+    }
+
+    @Test
+    public void shouldReplaceCheckpoint() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        FileCheckpointStore checkpointStore = new FileCheckpointStore(directory);
+        checkpointStore.save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "1")));
+
+        // when
+        checkpointStore.save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "2")));
+
+        // then
+        assertThat(checkpointStore.load("someStream"), is(Optional.of(StreamPosition.of(ImmutableMap.of("shard1", "2")))));
+        assertThat(directory.toFile().list().length, is(1));
+    }
+
+    @Test
+    public void shouldReturnEmptyCheckpointForUnknownStream() throws Exception {
+        // given
+        FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath());
+
+        // when
+        Optional<StreamPosition> checkpoint = checkpointStore.load("unknownStream");
+
+        // then
+        assertThat(checkpoint, is(Optional.empty()));
+    }
+}
@@ -0,0 +1,50 @@
+package de.otto.edison.eventsourcing.checkpoint;
+
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import de.otto.edison.eventsourcing.s3.local.LocalS3Client;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+
+import java.util.Optional;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class S3CheckpointStoreTest {
+
+    private LocalS3Client s3Client;
+    private S3CheckpointStore checkpointStore;
+
+    @Before
+    public void setUp() throws Exception {
+        s3Client = new LocalS3Client();
+        s3Client.createBucket(CreateBucketRequest.builder().bucket("someBucket").build());
+        checkpointStore = new S3CheckpointStore(s3Client, "someBucket", "checkpoints/");
+    }
+
+    @Test
+    public void shouldLoadSavedCheckpoint() throws Exception {
+        // given
+        StreamPosition position = StreamPosition.of(ImmutableMap.of("shard1", "4711", "shard2", "42:3"));
+
+        // when
+        checkpointStore.save("someStream", position);
+
+        // then
+        assertThat(checkpointStore.load("someStream"), is(Optional.of(position)));
+        assertThat(s3Client.listObjectsV2(ListObjectsV2Request.builder().bucket("someBucket").build()).contents().get(0).key(),
+                is("checkpoints/someStream.checkpoint"));
+    }
+
+    @Test
+    public void shouldReturnEmptyCheckpointForUnknownStream() throws Exception {
+        // when
+        Optional<StreamPosition> checkpoint = checkpointStore.load("unknownStream");
+
+        // then
+        assertThat(checkpoint, is(Optional.empty()));
+    }
+}
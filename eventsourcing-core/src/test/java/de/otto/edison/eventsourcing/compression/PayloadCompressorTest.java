@@ -0,0 +1,147 @@
+package de.otto.edison.eventsourcing.compression;
+
+import com.google.common.base.Strings;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PayloadCompressorTest {
+
+    private static final String PAYLOAD = "{\"values\":[" + Strings.repeat("{\"name\":\"banana\",\"price\":42},", 50) + "{}]}";
+
+    @Test
+    public void shouldCompressAndDecompressUsingLz4() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4CompressionCodec(), 0);
+
+        // when
+        String compressed = compressor.compress(PAYLOAD);
+
+        // then
+        assertThat(compressed, startsWith("\u0000L"));
+        assertThat(compressed.length(), is(lessThan(PAYLOAD.length())));
+        assertThat(compressor.decompress(compressed), is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldCompressAndDecompressUsingGzip() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new GzipCompressionCodec(), 0);
+
+        // when
+        String compressed = compressor.compress(PAYLOAD);
+
+        // then
+        assertThat(compressed, startsWith("\u0000G"));
+        assertThat(compressed.length(), is(lessThan(PAYLOAD.length())));
+        assertThat(compressor.decompress(compressed), is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldDecompressPayloadsOfOtherCodecs() throws Exception {
+        // given
+        String compressed = new PayloadCompressor(new GzipCompressionCodec(), 0).compress(PAYLOAD);
+
+        // when
+        String decompressed = PayloadCompressor.none().decompress(compressed);
+
+        // then
+        assertThat(decompressed, is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldReturnUncompressedPayloadsUnchanged() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4CompressionCodec(), 0);
+
+        // when
+        String decompressed = compressor.decompress("{\"value\":\"legacy\"}");
+
+        // then
+        assertThat(decompressed, is("{\"value\":\"legacy\"}"));
+    }
+
+    @Test
+    public void shouldNotCompressSmallPayloads() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4CompressionCodec(), PAYLOAD.length() + 1);
+
+        // when
+        String compressed = compressor.compress(PAYLOAD);
+
+        // then
+        assertThat(compressed, is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldNotCompressPayloadsThatWouldNotGetShorter() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4CompressionCodec(), 0);
+
+        // when
+        String compressed = compressor.compress("{\"a\":1}");
+
+        // then
+        assertThat(compressed, is("{\"a\":1}"));
+    }
+
+    @Test
+    public void shouldCompressBytesLikeText() throws Exception {
+        // given
+        PayloadCompressor compressor = new PayloadCompressor(new Lz4CompressionCodec(), 0);
+
+        // when
+        byte[] compressed = compressor.compress(PAYLOAD.getBytes(UTF_8));
+
+        // then
+        assertThat(new String(compressed, UTF_8), is(compressor.compress(PAYLOAD)));
+        assertThat(new String(compressor.decompress(compressed), UTF_8), is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldReturnUncompressedBytesUnchanged() throws Exception {
+        // given
+        byte[] payload = "{\"value\":\"legacy\"}".getBytes(UTF_8);
+
+        // when
+        byte[] decompressed = PayloadCompressor.none().decompress(payload);
+
+        // then
+        assertThat(decompressed, is(sameInstance(payload)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressPayloadOfUnknownCodec() throws Exception {
+        PayloadCompressor.none().decompress("\u0000Xabc");
+    }
+
+    @Test
+    public void shouldCreateConfiguredCompressor() throws Exception {
+        // given
+        EventSourcingProperties.Compression properties = new EventSourcingProperties.Compression();
+        properties.setCodec("gzip");
+        properties.setMinBytes(0);
+
+        // when
+        String compressed = PayloadCompressor.of(properties).compress(PAYLOAD);
+
+        // then
+        assertThat(compressed, startsWith("\u0000G"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownCodec() throws Exception {
+        // given
+        EventSourcingProperties.Compression properties = new EventSourcingProperties.Compression();
+        properties.setCodec("snappy");
+
+        // when
+        PayloadCompressor.of(properties);
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Primary;
 import software.amazon.awssdk.core.auth.AwsCredentials;
 import software.amazon.awssdk.core.auth.AwsCredentialsProvider;
 import software.amazon.awssdk.core.auth.StaticCredentialsProvider;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
 import java.net.URI;
@@ -40,4 +41,22 @@ public class KinesisTestConfiguration {
         }
     }
 
+    @Bean
+    @Primary
+    public KinesisAsyncClient kinesisAsyncClient(final @Value("${test.environment:local}") String testEnvironment,
+                                                 final AwsCredentialsProvider credentialsProvider) {
+        System.setProperty("aws.cborEnabled", "false");
+        if (testEnvironment.equals("local")) {
+            return KinesisAsyncClient.builder()
+                    .endpointOverride(URI.create("http://localhost:4568"))
+                    .credentialsProvider(new StaticCredentialsProvider(
+                            new AwsCredentials("foobar", "foobar")))
+                    .build();
+        } else {
+            return KinesisAsyncClient.builder()
+                    .credentialsProvider(credentialsProvider)
+                    .build();
+        }
+    }
+
 }
\ No newline at end of file
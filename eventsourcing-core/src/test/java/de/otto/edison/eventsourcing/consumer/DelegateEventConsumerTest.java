@@ -4,9 +4,15 @@ import org.junit.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -52,6 +58,59 @@ public class DelegateEventConsumerTest {
         verify(eventConsumerC, never()).accept(any(Event.class));
     }
 
+    @Test
+    public void shouldNotDecodePayloadOfEventsWithoutMatchingConsumer() throws Exception {
+        // given
+        TestEventConsumer eventConsumerA = spy(new TestEventConsumer().setKeyPattern("apple.*"));
+        DelegateEventConsumer<Object> delegateConsumer = new DelegateEventConsumer<>(
+                asList(eventConsumerA));
+        AtomicInteger decoded = new AtomicInteger();
+
+        // when
+        Event<Object> someEvent = new Event<>("banana.456", "0", Instant.now(), Duration.ZERO, () -> {
+            decoded.incrementAndGet();
+            return new Object();
+        });
+        delegateConsumer.consumerFunction().accept(someEvent);
+
+        // then
+        verify(eventConsumerA, never()).accept(any(Event.class));
+        assertThat(decoded.get(), is(0));
+    }
+
+    @Test
+    public void shouldDelegateEventsInOrderOfRegistration() throws Exception {
+        // given
+        List<String> calls = new ArrayList<>();
+        DelegateEventConsumer<Object> delegateConsumer = new DelegateEventConsumer<>(asList(
+                new RecordingEventConsumer("regex", "apple-[0-9]+", calls),
+                new RecordingEventConsumer("prefix", "apple.*", calls),
+                new RecordingEventConsumer("literal", "apple-1", calls),
+                new RecordingEventConsumer("all", ".*", calls)));
+
+        // when
+        delegateConsumer.consumerFunction().accept(new Event<>("apple-1", new Object(), "0", Instant.now(), Duration.ZERO));
+
+        // then
+        assertThat(calls, contains("regex", "prefix", "literal", "all"));
+    }
+
+    @Test
+    public void shouldContinueWithNextConsumerIfConsumerFails() throws Exception {
+        // given
+        TestEventConsumer eventConsumerA = spy(new TestEventConsumer());
+        TestEventConsumer eventConsumerB = spy(new TestEventConsumer());
+        doThrow(new IllegalStateException("boom")).when(eventConsumerA).accept(any(Event.class));
+        DelegateEventConsumer<Object> delegateConsumer = new DelegateEventConsumer<>(asList(eventConsumerA, eventConsumerB));
+
+        // when
+        Event<Object> someEvent = new Event<>("someKey", new Object(), "0", Instant.now(), Duration.ZERO);
+        delegateConsumer.consumerFunction().accept(someEvent);
+
+        // then
+        verify(eventConsumerB).accept(someEvent);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void shouldThrowIllegalArgumentExceptionWhenListOfConsumersIsEmpty() {
         new DelegateEventConsumer<>(Collections.emptyList());
@@ -65,4 +124,19 @@ public class DelegateEventConsumerTest {
         ));
     }
 
-}
\ No newline at end of file
+    private static class RecordingEventConsumer extends TestEventConsumer<Object> {
+        private final String name;
+        private final List<String> calls;
+
+        private RecordingEventConsumer(String name, String keyPattern, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+            setKeyPattern(keyPattern);
+        }
+
+        @Override
+        public void accept(Event<Object> event) {
+            calls.add(name);
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package de.otto.edison.eventsourcing.consumer;
 
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
 import org.junit.Test;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class EventSourceConsumerProcessTest {
 
@@ -35,6 +45,64 @@ public class EventSourceConsumerProcessTest {
         verify(eventConsumerB).accept(any());
     }
 
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+        EventSource<MyPayload> eventSource = spy(new TestEventSource());
+        TestEventConsumer eventConsumer = spy(new TestEventConsumer());
+        StreamPosition checkpoint = StreamPosition.of(ImmutableMap.of("shard1", "42"));
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load(TEST_STREAM_NAME)).thenReturn(Optional.of(checkpoint));
+
+        EventSourceConsumerProcess process = new EventSourceConsumerProcess(
+                asList(eventSource),
+                asList(eventConsumer),
+                checkpointStore);
+
+        process.init();
+        Thread.sleep(100L);
+
+        verify(eventSource).consumeAll(eq(checkpoint), any(Predicate.class), any(Consumer.class));
+    }
+
+    @Test
+    public void shouldConsumeAsyncEventSourceWithoutThreadOfItsOwn() throws Exception {
+        CompletableFuture<StreamPosition> consumption = new CompletableFuture<>();
+        TestAsyncEventSource eventSource = spy(new TestAsyncEventSource(consumption));
+        TestEventConsumer eventConsumer = spy(new TestEventConsumer());
+        StreamPosition checkpoint = StreamPosition.of(ImmutableMap.of("shard1", "42"));
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load(TEST_STREAM_NAME)).thenReturn(Optional.of(checkpoint));
+
+        EventSourceConsumerProcess process = new EventSourceConsumerProcess(
+                asList(eventSource),
+                asList(eventConsumer),
+                checkpointStore);
+
+        process.init();
+        Thread.sleep(100L);
+
+        verify(eventSource).consumeAllAsync(eq(checkpoint), any(Predicate.class), any(Consumer.class));
+        verify(eventSource, never()).consumeAll(any(StreamPosition.class), any(Predicate.class), any(Consumer.class));
+        verify(eventConsumer).accept(any());
+        assertThat(consumption.isDone(), is(false));
+    }
+
+    @Test
+    public void shouldCancelAsyncConsumptionOnShutdown() throws Exception {
+        CompletableFuture<StreamPosition> consumption = new CompletableFuture<>();
+        TestAsyncEventSource eventSource = new TestAsyncEventSource(consumption);
+
+        EventSourceConsumerProcess process = new EventSourceConsumerProcess(
+                asList(eventSource),
+                asList(new TestEventConsumer()));
+        process.init();
+        Thread.sleep(100L);
+
+        process.shutdown();
+
+        assertThat(consumption.isCancelled(), is(true));
+    }
+
     class MyPayload {
         // dummy class for tests
     }
@@ -53,4 +121,18 @@ public class EventSourceConsumerProcessTest {
         }
     }
 
+    class TestAsyncEventSource extends TestEventSource implements AsyncEventSource<MyPayload> {
+        private final CompletableFuture<StreamPosition> consumption;
+
+        TestAsyncEventSource(CompletableFuture<StreamPosition> consumption) {
+            this.consumption = consumption;
+        }
+
+        @Override
+        public CompletableFuture<StreamPosition> consumeAllAsync(StreamPosition startFrom, Predicate<Event<MyPayload>> stopCondition, Consumer<Event<MyPayload>> consumer) {
+            consumer.accept(new Event<>("someKey", new MyPayload(), "0", Instant.now(), Duration.ZERO));
+            return consumption;
+        }
+    }
+
 }
\ No newline at end of file
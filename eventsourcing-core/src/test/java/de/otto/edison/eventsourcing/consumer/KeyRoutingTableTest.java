@@ -0,0 +1,105 @@
+package de.otto.edison.eventsourcing.consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class KeyRoutingTableTest {
+
+    @Test
+    public void shouldRouteLiteralPrefixAndMatchAllPatterns() {
+        // given
+        KeyRoutingTable routingTable = new KeyRoutingTable(asList("apple\\.123", "apple\\..*", ".*", "banana.*", "apple.*"));
+
+        // then
+        assertThat(indexesOf(routingTable.routesOf("apple.123")), contains(0, 1, 2, 4));
+        assertThat(indexesOf(routingTable.routesOf("apple.456")), contains(1, 2, 4));
+        assertThat(indexesOf(routingTable.routesOf("applex")), contains(2, 4));
+        assertThat(indexesOf(routingTable.routesOf("banana")), contains(2, 3));
+        assertThat(indexesOf(routingTable.routesOf("cherry")), contains(2));
+    }
+
+    @Test
+    public void shouldNotRouteKeysWithoutMatchingPattern() {
+        // given
+        KeyRoutingTable routingTable = new KeyRoutingTable(asList("apple", "banana.*"));
+
+        // then
+        assertThat(indexesOf(routingTable.routesOf("apple2")), is(empty()));
+        assertThat(indexesOf(routingTable.routesOf("appl")), is(empty()));
+        assertThat(indexesOf(routingTable.routesOf("")), is(empty()));
+    }
+
+    @Test
+    public void shouldRouteRegexPatternsAndCacheDecision() {
+        // given
+        KeyRoutingTable routingTable = new KeyRoutingTable(asList("apple-[0-9]+", "apple.*", "(apple|banana)"));
+
+        // when
+        long[] routes = routingTable.routesOf("apple-42");
+
+        // then
+        assertThat(indexesOf(routes), contains(0, 1));
+        assertThat(routingTable.routesOf("apple-42"), is(sameInstance(routes)));
+        assertThat(indexesOf(routingTable.routesOf("banana")), contains(2));
+        assertThat(indexesOf(routingTable.routesOf("apple-x")), contains(1));
+    }
+
+    @Test
+    public void shouldRouteEqualToRegexForKeysWithLineTerminators() {
+        // given
+        KeyRoutingTable routingTable = new KeyRoutingTable(asList(".*", "apple.*", "apple\nbanana"));
+
+        // then
+        assertThat(indexesOf(routingTable.routesOf("apple\nbanana")), contains(2));
+        assertThat(indexesOf(routingTable.routesOf("apple\u2028")), is(empty()));
+    }
+
+    @Test
+    public void shouldRouteMoreThan64Patterns() {
+        // given
+        List<String> keyPatterns = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            keyPatterns.add(i % 2 == 0 ? "key-" + i : "other");
+        }
+        keyPatterns.add("key-.*");
+        KeyRoutingTable routingTable = new KeyRoutingTable(keyPatterns);
+
+        // then
+        assertThat(indexesOf(routingTable.routesOf("key-98")), contains(98, 100));
+        assertThat(indexesOf(routingTable.routesOf("other")).size(), is(50));
+    }
+
+    @Test
+    public void shouldParseLiteralsAndPrefixes() {
+        assertThat(KeyRoutingTable.Literal.parse("apple\\.1\\-2").value, is("apple.1-2"));
+        assertThat(KeyRoutingTable.Literal.parse("apple\\.1\\-2").isPrefix, is(false));
+        assertThat(KeyRoutingTable.Literal.parse("\\Qa.b*\\E.*").value, is("a.b*"));
+        assertThat(KeyRoutingTable.Literal.parse("\\Qa.b*\\E.*").isPrefix, is(true));
+        assertThat(KeyRoutingTable.Literal.parse(".*").value, is(""));
+        assertThat(KeyRoutingTable.Literal.parse("apple\\.*"), is(nullValue()));
+        assertThat(KeyRoutingTable.Literal.parse("a.*b"), is(nullValue()));
+        assertThat(KeyRoutingTable.Literal.parse("apple\\d"), is(nullValue()));
+        assertThat(KeyRoutingTable.Literal.parse("apple.*?"), is(nullValue()));
+        assertThat(KeyRoutingTable.Literal.parse("apple|banana"), is(nullValue()));
+    }
+
+    private static List<Integer> indexesOf(long[] routes) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < routes.length * 64; ++i) {
+            if ((routes[i >> 6] & 1L << i) != 0) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
+    }
+}
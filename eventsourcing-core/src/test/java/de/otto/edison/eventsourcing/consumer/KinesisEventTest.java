@@ -5,6 +5,7 @@ import software.amazon.awssdk.services.kinesis.model.Record;
 
 import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.otto.edison.eventsourcing.kinesis.KinesisEvent.kinesisEvent;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -30,4 +31,31 @@ public class KinesisEventTest {
         assertThat(event.arrivalTimestamp(), is(now));
         assertThat(event.sequenceNumber(), is("00001"));
     }
+
+    @Test
+    public void shouldDecodePayloadLazilyAndOnlyOnce() {
+        // given
+        final Record record = Record.builder()
+                .partitionKey("42")
+                .data(ByteBuffer.wrap("some data".getBytes(UTF_8)))
+                .approximateArrivalTimestamp(Instant.now())
+                .sequenceNumber("00001")
+                .build();
+        final AtomicInteger decoded = new AtomicInteger();
+
+        // when
+        final Event<String> event = kinesisEvent(
+                record,
+                (bb) -> {
+                    decoded.incrementAndGet();
+                    return UTF_8.decode(bb).toString();
+                });
+
+        // then
+        assertThat(event.key(), is("42"));
+        assertThat(decoded.get(), is(0));
+        assertThat(event.payload(), is("some data"));
+        assertThat(event.payload(), is("some data"));
+        assertThat(decoded.get(), is(1));
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.aop.support.AopUtils;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,6 +33,14 @@ public class MethodInvokingEventConsumerTest {
         eventReceived = true;
     }
 
+    public void methodThrowingCheckedException(final Event<String> event) throws IOException {
+        throw new IOException("boom");
+    }
+
+    void nonPublicMethod(final Event<String> event) {
+        eventReceived = true;
+    }
+
     @Before
     public void setup() {
         eventReceived = false;
@@ -56,6 +65,48 @@ public class MethodInvokingEventConsumerTest {
         assertThat(eventReceived).isTrue();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldBuildEventConsumerForNonPublicMethod() throws NoSuchMethodException {
+        final Method method = MethodInvokingEventConsumerTest.class.getDeclaredMethod("nonPublicMethod", Event.class);
+        final MethodInvokingEventConsumer eventConsumer = new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, this, method);
+        eventConsumer.consumerFunction().accept(mock(Event.class));
+        assertThat(eventReceived).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldBuildEventConsumerForMethodOfNonPublicClass() throws NoSuchMethodException {
+        final NonPublicConsumer instance = new NonPublicConsumer();
+        final Method method = NonPublicConsumer.class.getMethod("consume", Event.class);
+        final MethodInvokingEventConsumer eventConsumer = new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, instance, method);
+        eventConsumer.consumerFunction().accept(mock(Event.class));
+        assertThat(instance.eventReceived).isTrue();
+    }
+
+    @Test(expected = IOException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldPropagateExceptionsOfMethodUnchanged() throws NoSuchMethodException {
+        final Method method = MethodInvokingEventConsumerTest.class.getMethod("methodThrowingCheckedException", Event.class);
+        final MethodInvokingEventConsumer eventConsumer = new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, this, method);
+        eventConsumer.consumerFunction().accept(mock(Event.class));
+    }
+
+    @Test(expected = IOException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldPropagateExceptionsOfNonPublicMethodUnchanged() throws NoSuchMethodException {
+        final Method method = NonPublicConsumer.class.getMethod("fail", Event.class);
+        final MethodInvokingEventConsumer eventConsumer = new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, new NonPublicConsumer(), method);
+        eventConsumer.consumerFunction().accept(mock(Event.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldFailBuildingEventConsumerForInstanceOfOtherClass() throws NoSuchMethodException {
+        final Method method = MethodInvokingEventConsumerTest.class.getMethod("validMethod", Event.class);
+        new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, new NonPublicConsumer(), method);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     @SuppressWarnings("unchecked")
     public void shouldFailBuildingEventConsumerWithTooManyArgs() throws NoSuchMethodException {
@@ -76,5 +127,16 @@ public class MethodInvokingEventConsumerTest {
         new MethodInvokingEventConsumer("stream-name", KEY_PATTERN, this,null);
     }
 
-}
+    static class NonPublicConsumer {
+        private boolean eventReceived;
 
+        public void consume(final Event<String> event) {
+            eventReceived = true;
+        }
+
+        public void fail(final Event<String> event) throws IOException {
+            throw new IOException("boom");
+        }
+    }
+
+}
@@ -6,7 +6,9 @@ import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.security.crypto.codec.Base64;
 import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.encrypt.BytesEncryptor;
 import org.springframework.security.crypto.encrypt.Encryptors;
 
 
@@ -27,6 +29,32 @@ public class Base64EncodingTextEncryptorTest {
         Assert.assertEquals(givenText, decryptedText);
     }
 
+    @Test
+    @UseDataProvider("provideTextToBeEncoded")
+    public void shouldEncryptBytesLikeText(String givenText) throws Exception {
+        String hexEncodedSalt = new String(Hex.encode("test".getBytes("UTF-8")));
+        Base64EncodingTextEncryptor encryptor = new Base64EncodingTextEncryptor(Encryptors.standard("test", hexEncodedSalt));
+
+        byte[] encryptedBytes = encryptor.encrypt(givenText.getBytes("UTF-8"));
+        String decryptedText = encryptor.decrypt(new String(encryptedBytes, "UTF-8"));
+        byte[] decryptedBytes = encryptor.decrypt(encryptor.encrypt(givenText).getBytes("UTF-8"));
+
+        Assert.assertEquals(givenText, decryptedText);
+        Assert.assertEquals(givenText, new String(decryptedBytes, "UTF-8"));
+    }
+
+    @Test
+    public void shouldDecryptTextEncodedBySpringBase64() throws Exception {
+        String hexEncodedSalt = new String(Hex.encode("test".getBytes("UTF-8")));
+        BytesEncryptor bytesEncryptor = Encryptors.standard("test", hexEncodedSalt);
+        Base64EncodingTextEncryptor encryptor = new Base64EncodingTextEncryptor(bytesEncryptor);
+        String encryptedText = new String(Base64.encode(bytesEncryptor.encrypt("Hällo Wörld".getBytes("UTF-8"))), "UTF-8");
+
+        String decryptedText = encryptor.decrypt(encryptedText);
+
+        Assert.assertEquals("Hällo Wörld", decryptedText);
+    }
+
     @DataProvider
     public static Object[][] provideTextToBeEncoded() {
         return new Object[][]{
@@ -0,0 +1,62 @@
+package de.otto.edison.eventsourcing.encryption;
+
+import org.junit.Test;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ByteTextEncryptorTest {
+
+    @Test
+    public void shouldReturnByteTextEncryptorsUnchanged() throws Exception {
+        // given
+        Base64EncodingTextEncryptor encryptor = new Base64EncodingTextEncryptor(Encryptors.standard("test", "deadbeef"));
+
+        // when
+        ByteTextEncryptor byteTextEncryptor = ByteTextEncryptor.of(encryptor);
+
+        // then
+        assertThat(byteTextEncryptor, is(sameInstance(encryptor)));
+    }
+
+    @Test
+    public void shouldNotCopyBytesIfNoOpTextEncryptorIsUsed() throws Exception {
+        // given
+        byte[] text = "Hällo Wörld".getBytes(UTF_8);
+
+        // when
+        ByteTextEncryptor byteTextEncryptor = ByteTextEncryptor.of(Encryptors.noOpText());
+
+        // then
+        assertThat(byteTextEncryptor.encrypt(text), is(sameInstance(text)));
+        assertThat(byteTextEncryptor.decrypt(text), is(sameInstance(text)));
+    }
+
+    @Test
+    public void shouldAdaptOtherTextEncryptors() throws Exception {
+        // given
+        TextEncryptor reversing = new TextEncryptor() {
+            @Override
+            public String encrypt(String text) {
+                return new StringBuilder(text).reverse().toString();
+            }
+
+            @Override
+            public String decrypt(String encryptedText) {
+                return new StringBuilder(encryptedText).reverse().toString();
+            }
+        };
+
+        // when
+        ByteTextEncryptor byteTextEncryptor = ByteTextEncryptor.of(reversing);
+
+        // then
+        byte[] encrypted = byteTextEncryptor.encrypt("Hällo".getBytes(UTF_8));
+        assertThat(new String(encrypted, UTF_8), is("olläH"));
+        assertThat(new String(byteTextEncryptor.decrypt(encrypted), UTF_8), is("Hällo"));
+    }
+}
@@ -0,0 +1,243 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.consumer.Event;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import org.hamcrest.Matcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncKinesisEventSourceTest {
+
+    @Mock
+    private KinesisStream kinesisStream;
+    @Mock
+    private KinesisAsyncClient kinesisAsyncClient;
+
+    private ScheduledExecutorService scheduler;
+    private List<String> events = synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = newScheduledThreadPool(1);
+        when(kinesisStream.getStreamName()).thenReturn("someStream");
+        when(kinesisStream.getPayloadCompressor()).thenReturn(PayloadCompressor.none());
+        when(kinesisStream.getShardDiscoveryInterval()).thenReturn(Duration.ofSeconds(1));
+        when(kinesisStream.createPollScheduler()).thenAnswer(invocation ->
+                new ShardPollScheduler(Duration.ofMillis(1), Duration.ofMillis(10), 1000.0));
+        when(kinesisStream.getShardMetrics(anyString())).thenReturn(ShardMetrics.none());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldConsumeAllShardsOnSingleSchedulerThread() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true), someShard("shard2", null, true));
+        givenRecords("shard1", response("next", record("1", "blue"), record("2", "green")));
+        givenRecords("shard2", response("next", record("3", "red"), record("4", "green")));
+
+        // when
+        StreamPosition streamPosition = eventSource().consumeAll(StreamPosition.of(), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, containsInAnyOrder("blue", "green", "red", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("2"));
+        assertThat(streamPosition.positionOf("shard2"), is("4"));
+    }
+
+    @Test
+    public void shouldConsumeClosedParentShardBeforeChildShard() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("parent", null, false),
+                someShard("child", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        givenRecords("parent", response(null, record("1", "red"), record("2", "blue")));
+        givenRecords("child", response("next", record("3", "green")));
+
+        // when
+        StreamPosition streamPosition = eventSource().consumeAll(
+                StreamPosition.of(ImmutableMap.of()), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("red", "blue", "green"));
+        assertThat(streamPosition.positionOf("parent"), is("2"));
+        assertThat(streamPosition.positionOf("child"), is("3"));
+    }
+
+    @Test
+    public void shouldConsumeAllShardsWithoutBlockingCallingThread() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true), someShard("shard2", null, true));
+        givenRecords("shard1", response("next", record("1", "blue"), record("2", "green")));
+        givenRecords("shard2", response("next", record("3", "red"), record("4", "green")));
+
+        // when
+        CompletableFuture<StreamPosition> consumption = eventSource().consumeAllAsync(StreamPosition.of(), this::stopIfGreen, this::collect);
+
+        // then
+        StreamPosition streamPosition = consumption.get(5, SECONDS);
+        assertThat(events, containsInAnyOrder("blue", "green", "red", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("2"));
+        assertThat(streamPosition.positionOf("shard2"), is("4"));
+        verify(kinesisStream).stopShardDiscovery();
+    }
+
+    @Test
+    public void shouldConsumeClosedParentShardBeforeChildShardWithoutBlockingCallingThread() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("parent", null, false),
+                someShard("child", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        givenRecords("parent", response(null, record("1", "red"), record("2", "blue")));
+        givenRecords("child", response("next", record("3", "green")));
+
+        // when
+        StreamPosition streamPosition = eventSource().consumeAllAsync(StreamPosition.of(), this::stopIfGreen, this::collect)
+                .get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("red", "blue", "green"));
+        assertThat(streamPosition.positionOf("parent"), is("2"));
+        assertThat(streamPosition.positionOf("child"), is("3"));
+    }
+
+    @Test
+    public void shouldStopAsyncConsumptionWhenCancelled() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true));
+        givenRecords("shard1", response("shard1", record("1", "blue")));
+        CompletableFuture<StreamPosition> consumption = eventSource().consumeAllAsync(StreamPosition.of(), event -> false, this::collect);
+        await().atMost(5, SECONDS).until(() -> !events.isEmpty());
+
+        // when
+        consumption.cancel(true);
+
+        // then
+        verify(kinesisStream).stopShardDiscovery();
+        Thread.sleep(20);
+        int consumedEvents = events.size();
+        Thread.sleep(50);
+        assertThat(events.size(), is(consumedEvents));
+    }
+
+    private AsyncKinesisEventSource<String> eventSource() {
+        return new AsyncKinesisEventSource<>(
+                String.class,
+                new ObjectMapper(),
+                kinesisStream,
+                Encryptors.noOpText(),
+                kinesisAsyncClient,
+                scheduler);
+    }
+
+    private void givenTopology(Shard... shards) {
+        when(kinesisStream.retrieveShardTopology()).thenReturn(new ShardTopology(ImmutableList.copyOf(shards)));
+    }
+
+    private void givenRecords(String shardId, GetRecordsResponse response) {
+        when(kinesisAsyncClient.getShardIterator(argThat(shardIteratorRequestFor(shardId))))
+                .thenReturn(completedFuture(GetShardIteratorResponse.builder().shardIterator(shardId).build()));
+        when(kinesisAsyncClient.getRecords(argThat(getRecordsRequestFor(shardId))))
+                .thenReturn(completedFuture(response));
+    }
+
+    private Matcher<GetShardIteratorRequest> shardIteratorRequestFor(String shardId) {
+        return new ArgumentMatcher<GetShardIteratorRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument != null && shardId.equals(((GetShardIteratorRequest) argument).shardId());
+            }
+        };
+    }
+
+    private Matcher<GetRecordsRequest> getRecordsRequestFor(String shardId) {
+        return new ArgumentMatcher<GetRecordsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument != null && shardId.equals(((GetRecordsRequest) argument).shardIterator());
+            }
+        };
+    }
+
+    private void collect(Event<String> event) {
+        events.add(event.payload());
+    }
+
+    private boolean stopIfGreen(Event<String> event) {
+        return event != null && event.payload().equals("green");
+    }
+
+    private GetRecordsResponse response(String nextShardIterator, Record... records) {
+        return GetRecordsResponse.builder()
+                .records(records)
+                .nextShardIterator(nextShardIterator)
+                .millisBehindLatest(0L)
+                .build();
+    }
+
+    private Record record(String sequenceNumber, String data) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .data(ByteBuffer.wrap(data.getBytes(UTF_8)))
+                .build();
+    }
+
+    private Shard someShard(String shardId, String parentShardId, boolean open) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(open ? null : "1111")
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,185 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncKinesisProducerTest {
+
+    @Mock
+    private KinesisClient kinesisClient;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService sender;
+    private SimpleMeterRegistry meterRegistry;
+    private EventSourcingProperties properties;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = newSingleThreadScheduledExecutor();
+        sender = newSingleThreadExecutor();
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new EventSourcingProperties();
+        properties.getKinesis().getProducer().setLingerMillis(60000);
+        properties.getKinesis().getProducer().setRetryBackoffMillis(1);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(response("42"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    @Test
+    public void shouldCompleteFutureWithSequenceNumber() throws Exception {
+        // given
+        properties.getKinesis().getProducer().setMaxBatchRecords(1);
+        AsyncKinesisProducer producer = producer();
+
+        // when
+        CompletableFuture<String> result = producer.sendEvent("a", "someEvent");
+
+        // then
+        assertThat(result.get(5, SECONDS), is("42"));
+        assertThat(producer.getInFlightRecords(), is(0));
+        assertThat(producer.getInFlightBytes(), is(0L));
+    }
+
+    @Test
+    public void shouldRejectEventIfInFlightLimitIsReached() throws Exception {
+        // given
+        properties.getKinesis().getProducer().setMaxInFlightRecords(1);
+        AsyncKinesisProducer producer = producer();
+        CompletableFuture<String> first = producer.trySendEvent("a", "first");
+
+        // when
+        CompletableFuture<String> second = producer.trySendEvent("b", "second");
+
+        // then
+        assertThat(first.isDone(), is(false));
+        assertFailedWith(second, RejectedExecutionException.class);
+        assertThat(meterRegistry.get(AsyncKinesisProducer.REJECTED_METRIC).counter().count(), is(1.0));
+    }
+
+    @Test
+    public void shouldBlockUntilInFlightEventsAreWritten() throws Exception {
+        // given
+        properties.getKinesis().getProducer().setMaxInFlightRecords(1);
+        AsyncKinesisProducer producer = producer();
+        CompletableFuture<String> first = producer.sendEvent("a", "first");
+        AtomicReference<CompletableFuture<String>> second = new AtomicReference<>();
+        Thread caller = new Thread(() -> second.set(producer.sendEvent("b", "second")));
+
+        // when
+        caller.start();
+        await().atMost(5, SECONDS).until(() -> caller.getState() == Thread.State.WAITING);
+        producer.flush().get(5, SECONDS);
+
+        // then
+        assertThat(first.get(5, SECONDS), is("42"));
+        caller.join(5000);
+        producer.flush().get(5, SECONDS);
+        assertThat(second.get().get(5, SECONDS), is("42"));
+    }
+
+    @Test
+    public void shouldFailFutureIfPayloadCannotBeSerialized() throws Exception {
+        // given
+        AsyncKinesisProducer producer = producer();
+
+        // when
+        CompletableFuture<String> result = producer.sendEvent("a", new Object());
+
+        // then
+        assertFailedWith(result, JsonProcessingException.class);
+        assertThat(producer.getInFlightRecords(), is(0));
+    }
+
+    @Test
+    public void shouldFailFutureIfEventCannotBeWritten() throws Exception {
+        // given
+        properties.getKinesis().getProducer().setMaxRetries(0);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(1)
+                .records(PutRecordsResultEntry.builder().errorCode("InternalFailure").build())
+                .build());
+        AsyncKinesisProducer producer = producer();
+
+        // when
+        CompletableFuture<String> result = producer.sendEvent("a", "someEvent");
+        producer.flush();
+
+        // then
+        assertFailedWith(result, IllegalStateException.class);
+        await().atMost(5, SECONDS).until(() -> producer.getInFlightRecords() == 0);
+    }
+
+    @Test
+    public void shouldRejectEventsAfterClose() throws Exception {
+        // given
+        AsyncKinesisProducer producer = producer();
+        CompletableFuture<String> first = producer.sendEvent("a", "first");
+
+        // when
+        producer.close();
+        CompletableFuture<String> second = producer.sendEvent("b", "second");
+
+        // then
+        assertThat(first.get(5, SECONDS), is("42"));
+        assertFailedWith(second, IllegalStateException.class);
+    }
+
+    private AsyncKinesisProducer producer() {
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, "someStream", new ObjectMapper(), Encryptors.noOpText(), properties);
+        KinesisBatchProducer batchProducer = new KinesisBatchProducer("someStream", kinesisClient, properties.getKinesis().getProducer(), meterRegistry, scheduler);
+        return new AsyncKinesisProducer(kinesisStream, batchProducer, properties.getKinesis().getProducer(), meterRegistry, sender);
+    }
+
+    private void assertFailedWith(CompletableFuture<String> future, Class<? extends Throwable> expected) throws Exception {
+        try {
+            future.get(5, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(expected));
+        }
+    }
+
+    private PutRecordsResponse response(String sequenceNumber) {
+        return PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().sequenceNumber(sequenceNumber).build())
+                .build();
+    }
+}
@@ -0,0 +1,266 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.kinesis.model.InvalidArgumentException;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncKinesisShardTest {
+
+    @Mock
+    private KinesisAsyncClient kinesisAsyncClient;
+
+    private ScheduledExecutorService scheduler;
+    private AsyncKinesisShard shard;
+    private List<String> events = synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = newScheduledThreadPool(1);
+        shard = new AsyncKinesisShard(
+                "someShard",
+                "someStream",
+                kinesisAsyncClient,
+                new ShardPollScheduler(Duration.ofMillis(1), Duration.ofMillis(10), 1000.0),
+                scheduler);
+        when(kinesisAsyncClient.getShardIterator(any(GetShardIteratorRequest.class)))
+                .thenReturn(completedFuture(GetShardIteratorResponse.builder().shardIterator("someIterator").build()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldConsumeRecordsUntilStopConditionIsMet() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response("nextIterator", record("1", "blue"))),
+                completedFuture(response("nextIterator")),
+                completedFuture(response("nextIterator", record("2", "red"), record("3", "green"))));
+
+        // when
+        ShardPosition position = shard.consumeRecords("0", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("blue", "red", "green"));
+        assertThat(position.getSequenceNumber(), is("3"));
+        assertThat(position.isShardClosed(), is(false));
+        verify(kinesisAsyncClient, times(3)).getRecords(any(GetRecordsRequest.class));
+    }
+
+    @Test
+    public void shouldStopAtEndOfClosedShard() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response("nextIterator", record("1", "blue"))),
+                completedFuture(response(null, record("2", "red"))));
+
+        // when
+        ShardPosition position = shard.consumeRecords("0", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("blue", "red"));
+        assertThat(position.getSequenceNumber(), is("2"));
+        assertThat(position.isShardClosed(), is(true));
+    }
+
+    @Test
+    public void shouldStartAfterSequenceNumber() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response(null)));
+
+        // when
+        shard.consumeRecords("42", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisAsyncClient).getShardIterator(request.capture());
+        assertThat(request.getValue().shardIteratorType(), is(ShardIteratorType.AFTER_SEQUENCE_NUMBER));
+        assertThat(request.getValue().startingSequenceNumber(), is("42"));
+    }
+
+    @Test
+    public void shouldFallBackToTrimHorizonForInvalidSequenceNumber() throws Exception {
+        // given
+        when(kinesisAsyncClient.getShardIterator(any(GetShardIteratorRequest.class))).thenReturn(
+                failedFuture(InvalidArgumentException.builder().message("invalid").build()),
+                completedFuture(GetShardIteratorResponse.builder().shardIterator("someIterator").build()));
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response(null, record("1", "blue"))));
+
+        // when
+        shard.consumeRecords("42", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisAsyncClient, times(2)).getShardIterator(request.capture());
+        assertThat(request.getAllValues().get(1).shardIteratorType(), is(ShardIteratorType.TRIM_HORIZON));
+        assertThat(events, contains("blue"));
+    }
+
+    @Test
+    public void shouldFallBackToStartTimestampForInvalidSequenceNumber() throws Exception {
+        // given
+        Instant snapshotTimestamp = Instant.parse("2018-06-01T10:00:00Z");
+        when(kinesisAsyncClient.getShardIterator(any(GetShardIteratorRequest.class))).thenReturn(
+                failedFuture(InvalidArgumentException.builder().message("invalid").build()),
+                completedFuture(GetShardIteratorResponse.builder().shardIterator("someIterator").build()));
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response(null, record("1", "blue"))));
+
+        // when
+        shard.consumeRecords("42", snapshotTimestamp, null, this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisAsyncClient, times(2)).getShardIterator(request.capture());
+        assertThat(request.getAllValues().get(1).shardIteratorType(), is(ShardIteratorType.AT_TIMESTAMP));
+        assertThat(request.getAllValues().get(1).timestamp(), is(snapshotTimestamp));
+        assertThat(events, contains("blue"));
+    }
+
+    @Test
+    public void shouldRetryThrottledGetRecords() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                failedFuture(ProvisionedThroughputExceededException.builder().message("throttled").build()),
+                completedFuture(response(null, record("1", "blue"))));
+
+        // when
+        ShardPosition position = shard.consumeRecords("0", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("blue"));
+        assertThat(position.getSequenceNumber(), is("1"));
+        verify(kinesisAsyncClient, times(2)).getRecords(any(GetRecordsRequest.class));
+    }
+
+    @Test
+    public void shouldRetrieveNewIteratorAfterLastConsumedRecordIfIteratorExpired() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response("nextIterator", record("1", "blue"))),
+                failedFuture(ExpiredIteratorException.builder().message("expired").build()),
+                completedFuture(response(null, record("2", "red"))));
+
+        // when
+        shard.consumeRecords("0", this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("blue", "red"));
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisAsyncClient, times(2)).getShardIterator(request.capture());
+        assertThat(request.getAllValues().get(1).shardIteratorType(), is(ShardIteratorType.AFTER_SEQUENCE_NUMBER));
+        assertThat(request.getAllValues().get(1).startingSequenceNumber(), is("1"));
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyIfGetRecordsFails() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                failedFuture(new IllegalStateException("boom")));
+
+        // when
+        CompletableFuture<ShardPosition> result = shard.consumeRecords("0", this::decode, this::isGreen, events::add);
+
+        // then
+        try {
+            result.get(5, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    public void shouldStopWhenCaughtUpWithTipOfShard() throws Exception {
+        // given
+        when(kinesisAsyncClient.getRecords(any(GetRecordsRequest.class))).thenReturn(
+                completedFuture(response("i1", 5000L, record("1", "blue"))),
+                completedFuture(response("i2", 3000L)),
+                completedFuture(response("i3", 0L, record("2", "red"), record("3", "yellow"))),
+                completedFuture(response("i4", 0L, record("4", "black"))));
+
+        // when
+        ShardPosition position = shard.consumeRecords("0", null, Duration.ZERO, this::decode, this::isGreen, events::add).get(5, SECONDS);
+
+        // then
+        assertThat(events, contains("blue", "red", "yellow"));
+        assertThat(position.getSequenceNumber(), is("3"));
+        assertThat(position.isShardClosed(), is(false));
+    }
+
+    private String decode(Long millisBehindLatest, UserRecord record) {
+        return UTF_8.decode(record.data()).toString();
+    }
+
+    private boolean isGreen(String event) {
+        return "green".equals(event);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable failure) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    private GetRecordsResponse response(String nextShardIterator, Record... records) {
+        return response(nextShardIterator, 0L, records);
+    }
+
+    private GetRecordsResponse response(String nextShardIterator, long millisBehindLatest, Record... records) {
+        return GetRecordsResponse.builder()
+                .records(records)
+                .nextShardIterator(nextShardIterator)
+                .millisBehindLatest(millisBehindLatest)
+                .build();
+    }
+
+    private Record record(String sequenceNumber, String data) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .data(ByteBuffer.wrap(data.getBytes(UTF_8)))
+                .build();
+    }
+}
@@ -0,0 +1,173 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.consumer.Event;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.otto.edison.eventsourcing.kinesis.KplAggregatedRecords.aggregate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.synchronizedList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FanOutKinesisEventSourceTest {
+
+    @Mock
+    private KinesisStream kinesisStream;
+
+    private List<String> events = synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        when(kinesisStream.getStreamName()).thenReturn("someStream");
+        when(kinesisStream.getPayloadCompressor()).thenReturn(PayloadCompressor.none());
+        when(kinesisStream.getShardDiscoveryInterval()).thenReturn(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void shouldConsumePushedEventsUntilStopConditionIsMet() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true));
+        LocalShardSubscriptionClient subscriptionClient = new LocalShardSubscriptionClient(10)
+                .withRecords("shard1", ImmutableList.of(record("1", "blue"), record("2", "green"), record("3", "red")));
+
+        // when
+        StreamPosition streamPosition = eventSource(subscriptionClient).consumeAll(StreamPosition.of(), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("blue", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("2"));
+    }
+
+    @Test
+    public void shouldStartAfterStreamPosition() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true));
+        LocalShardSubscriptionClient subscriptionClient = new LocalShardSubscriptionClient(10)
+                .withRecords("shard1", ImmutableList.of(record("1", "blue"), record("2", "green"), record("3", "red")));
+
+        // when
+        eventSource(subscriptionClient).consumeAll(StreamPosition.of(ImmutableMap.of("shard1", "1")), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("green"));
+    }
+
+    @Test
+    public void shouldContinueInsideOfAggregatedRecord() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true));
+        LocalShardSubscriptionClient subscriptionClient = new LocalShardSubscriptionClient(10)
+                .withRecords("shard1", ImmutableList.of(
+                        record("1", "red"),
+                        aggregate().withUserRecord("a", "blue").withUserRecord("b", "yellow").withUserRecord("a", "green").build("2")));
+
+        // when
+        StreamPosition streamPosition = eventSource(subscriptionClient).consumeAll(StreamPosition.of(ImmutableMap.of("shard1", "2:0")), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("yellow", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("2"));
+    }
+
+    @Test
+    public void shouldRenewCompletedSubscriptions() throws Exception {
+        // given
+        givenTopology(someShard("shard1", null, true));
+        LocalShardSubscriptionClient subscriptionClient = new LocalShardSubscriptionClient(1)
+                .withRecords("shard1", ImmutableList.of(record("1", "red"), record("2", "blue"), record("3", "green")));
+
+        // when
+        StreamPosition streamPosition = eventSource(subscriptionClient).consumeAll(StreamPosition.of(), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("red", "blue", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("3"));
+        assertThat(subscriptionClient.getSubscriptions(), greaterThan(2));
+    }
+
+    @Test
+    public void shouldConsumeClosedParentShardBeforeChildShard() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("parent", null, false),
+                someShard("child", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        LocalShardSubscriptionClient subscriptionClient = new LocalShardSubscriptionClient(10)
+                .withClosedShard("parent", ImmutableList.of(record("1", "red"), record("2", "blue")))
+                .withRecords("child", ImmutableList.of(record("3", "green")));
+
+        // when
+        StreamPosition streamPosition = eventSource(subscriptionClient).consumeAll(StreamPosition.of(), this::stopIfGreen, this::collect);
+
+        // then
+        assertThat(events, contains("red", "blue", "green"));
+        assertThat(streamPosition.shards(), containsInAnyOrder("parent", "child"));
+        assertThat(streamPosition.positionOf("parent"), is("2"));
+        assertThat(streamPosition.positionOf("child"), is("3"));
+    }
+
+    private FanOutKinesisEventSource<String> eventSource(ShardSubscriptionClient subscriptionClient) {
+        return new FanOutKinesisEventSource<>(
+                String.class,
+                new ObjectMapper(),
+                kinesisStream,
+                Encryptors.noOpText(),
+                new ShardExecutor("someStream", false, new SimpleMeterRegistry()),
+                subscriptionClient);
+    }
+
+    private void givenTopology(Shard... shards) {
+        when(kinesisStream.retrieveShardTopology()).thenReturn(new ShardTopology(ImmutableList.copyOf(shards)));
+    }
+
+    private void collect(Event<String> event) {
+        events.add(event.payload());
+    }
+
+    private boolean stopIfGreen(Event<String> event) {
+        return event != null && event.payload().equals("green");
+    }
+
+    private Record record(String sequenceNumber, String data) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .data(ByteBuffer.wrap(data.getBytes(UTF_8)))
+                .build();
+    }
+
+    private Shard someShard(String shardId, String parentShardId, boolean open) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(open ? null : "1111")
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,222 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkClientException;
+import software.amazon.awssdk.services.kinesis.model.InvalidArgumentException;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ResourceInUseException;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.otto.edison.eventsourcing.kinesis.ShardSubscriptionEvent.shardSubscriptionEvent;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FanOutKinesisShardTest {
+
+    private final CountingBackoff backoff = new CountingBackoff();
+    private final List<String> subscribedAfter = new ArrayList<>();
+    private final Queue<Publisher<ShardSubscriptionEvent>> publishers = new LinkedList<>();
+    private final List<String> consumed = new ArrayList<>();
+
+    @Test
+    public void shouldBackOffBeforeRenewingSubscriptionCompletedWithoutRecords() {
+        // given
+        publishers.add(completing(emptyList()));
+        publishers.add(completing(emptyList()));
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("1")), 0L, null))));
+
+        // when
+        ShardPosition position = consume("0");
+
+        // then
+        assertThat(consumed, contains("1"));
+        assertThat(position.isShardClosed(), is(true));
+        assertThat(backoff.backoffs.get(), is(2));
+        assertThat(backoff.resets.get(), is(1));
+    }
+
+    @Test
+    public void shouldRetryRetriableErrorsAfterLastConsumedRecord() {
+        // given
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("1")), 0L, "1"))));
+        publishers.add(failing(ResourceInUseException.builder().message("still subscribed").build()));
+        publishers.add(failing(new SdkClientException("connection reset")));
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("2")), 0L, null))));
+
+        // when
+        ShardPosition position = consume("0");
+
+        // then
+        assertThat(consumed, contains("1", "2"));
+        assertThat(subscribedAfter, contains("0", "1", "1", "1"));
+        assertThat(position.getSequenceNumber(), is("2"));
+        assertThat(backoff.backoffs.get(), is(2));
+    }
+
+    @Test(expected = InvalidArgumentException.class)
+    public void shouldNotRetryOtherErrors() {
+        // given
+        publishers.add(failing(InvalidArgumentException.builder().message("invalid").build()));
+
+        // when
+        consume("0");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotRetryFailuresOfConsumer() {
+        // given
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("1")), 0L, "1"))));
+        FanOutKinesisShard shard = new FanOutKinesisShard("shard1", "someStream", this::subscribe, backoff);
+
+        // when
+        shard.consumeRecordsAndReturnLastSeqNumber("0", (millis, userRecord) -> userRecord, userRecord -> false, userRecord -> {
+            throw new IllegalStateException(new SdkClientException("failed to write"));
+        });
+    }
+
+    @Test
+    public void shouldSubscribeAtTimestampIfSupportedByClient() {
+        // given
+        Instant timestamp = Instant.parse("2018-01-01T00:00:00Z");
+        List<Instant> subscribedAt = new ArrayList<>();
+        ShardSubscriptionClient client = new ShardSubscriptionClient() {
+            @Override
+            public Publisher<ShardSubscriptionEvent> subscribeToShard(String streamName, String shardId, ShardIteratorType type, String sequenceNumber) {
+                return subscribe(streamName, shardId, type, sequenceNumber);
+            }
+
+            @Override
+            public Publisher<ShardSubscriptionEvent> subscribeToShard(String streamName, String shardId, ShardIteratorType type, String sequenceNumber, Instant timestamp) {
+                subscribedAt.add(timestamp);
+                return publishers.remove();
+            }
+        };
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("1")), 0L, null))));
+
+        // when
+        consume(client, timestamp);
+
+        // then
+        assertThat(subscribedAt, contains(timestamp));
+        assertThat(subscribedAfter, is(empty()));
+    }
+
+    @Test
+    public void shouldFallBackToTrimHorizonIfClientDoesNotSupportTimestamps() {
+        // given
+        publishers.add(completing(singletonList(shardSubscriptionEvent(singletonList(record("1")), 0L, null))));
+
+        // when
+        ShardPosition position = consume(this::subscribe, Instant.parse("2018-01-01T00:00:00Z"));
+
+        // then
+        assertThat(subscribedAfter, contains("0"));
+        assertThat(consumed, contains("1"));
+        assertThat(position.getSequenceNumber(), is("1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotSilentlyIgnoreTimestampByDefault() {
+        // given
+        ShardSubscriptionClient client = this::subscribe;
+
+        // when
+        client.subscribeToShard("someStream", "shard1", ShardIteratorType.AT_TIMESTAMP, null, Instant.now());
+    }
+
+    private ShardPosition consume(ShardSubscriptionClient client, Instant startTimestamp) {
+        FanOutKinesisShard shard = new FanOutKinesisShard("shard1", "someStream", client, backoff);
+        return shard.consumeRecordsAndReturnLastSeqNumber("0", startTimestamp, null,
+                (millis, userRecord) -> userRecord,
+                userRecord -> false,
+                userRecord -> consumed.add(userRecord.position()));
+    }
+
+    private ShardPosition consume(String startFrom) {
+        FanOutKinesisShard shard = new FanOutKinesisShard("shard1", "someStream", this::subscribe, backoff);
+        return shard.consumeRecordsAndReturnLastSeqNumber(startFrom,
+                (millis, userRecord) -> userRecord,
+                userRecord -> false,
+                userRecord -> consumed.add(userRecord.position()));
+    }
+
+    private Publisher<ShardSubscriptionEvent> subscribe(String streamName, String shardId, ShardIteratorType type, String sequenceNumber) {
+        subscribedAfter.add(type == ShardIteratorType.TRIM_HORIZON ? "0" : sequenceNumber);
+        return publishers.remove();
+    }
+
+    private static Publisher<ShardSubscriptionEvent> completing(List<ShardSubscriptionEvent> events) {
+        return subscriber -> {
+            Queue<ShardSubscriptionEvent> remaining = new LinkedList<>(events);
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    if (remaining.isEmpty()) {
+                        subscriber.onComplete();
+                    } else {
+                        subscriber.onNext(remaining.remove());
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    remaining.clear();
+                }
+            });
+        };
+    }
+
+    private static Publisher<ShardSubscriptionEvent> failing(Throwable error) {
+        return subscriber -> {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(error);
+        };
+    }
+
+    private static Record record(String sequenceNumber) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .data(ByteBuffer.wrap(sequenceNumber.getBytes(UTF_8)))
+                .build();
+    }
+
+    private static class CountingBackoff extends ThrottlingBackoff {
+        private final AtomicInteger backoffs = new AtomicInteger();
+        private final AtomicInteger resets = new AtomicInteger();
+
+        @Override
+        Duration next() {
+            backoffs.incrementAndGet();
+            return Duration.ZERO;
+        }
+
+        @Override
+        void reset() {
+            resets.incrementAndGet();
+        }
+    }
+}
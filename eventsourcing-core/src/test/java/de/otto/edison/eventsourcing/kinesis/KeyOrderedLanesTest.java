@@ -0,0 +1,180 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import de.otto.edison.eventsourcing.consumer.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import static de.otto.edison.eventsourcing.consumer.Event.event;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class KeyOrderedLanesTest {
+
+    private ExecutorService executor;
+    private List<String> positions = synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        executor = newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldProcessEventsOfSameKeyInOrder() throws Exception {
+        // given
+        List<Event<String>> processed = synchronizedList(new ArrayList<>());
+        KeyOrderedLanes<String> lanes = lanes(4, processed::add);
+
+        // when
+        for (int i = 0; i < 100; ++i) {
+            lanes.accept(someEvent("key-" + (i % 7), String.valueOf(i)));
+        }
+        lanes.drain().get(5, SECONDS);
+
+        // then
+        for (int k = 0; k < 7; ++k) {
+            final String key = "key-" + k;
+            final List<Integer> sequenceNumbers = processed.stream()
+                    .filter(event -> event.key().equals(key))
+                    .map(event -> Integer.valueOf(event.sequenceNumber()))
+                    .collect(toList());
+            assertThat(sequenceNumbers, is(sequenceNumbers.stream().sorted().collect(toList())));
+        }
+        assertThat(processed.size(), is(100));
+        assertThat(positions.get(positions.size() - 1), is("99"));
+    }
+
+    @Test
+    public void shouldOnlyAdvancePositionAfterAllPredecessorsAreProcessed() throws Exception {
+        // given
+        CountDownLatch slowEventStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowEvent = new CountDownLatch(1);
+        CountDownLatch fastEventProcessed = new CountDownLatch(1);
+        KeyOrderedLanes<String> lanes = lanes(2, event -> {
+            if (event.key().equals("slow")) {
+                slowEventStarted.countDown();
+                await(releaseSlowEvent);
+            } else {
+                fastEventProcessed.countDown();
+            }
+        });
+        String slowKey = "slow";
+        String fastKey = otherLaneThan(lanes, slowKey);
+
+        // when
+        lanes.accept(someEvent(slowKey, "1"));
+        lanes.accept(someEvent(fastKey, "2"));
+        slowEventStarted.await(5, SECONDS);
+        fastEventProcessed.await(5, SECONDS);
+
+        // then
+        assertThat(positions, is(empty()));
+
+        // when
+        releaseSlowEvent.countDown();
+        lanes.drain().get(5, SECONDS);
+
+        // then
+        assertThat(positions.get(positions.size() - 1), is("2"));
+    }
+
+    @Test
+    public void shouldNotAdvancePositionBeyondFailedEvent() throws Exception {
+        // given
+        KeyOrderedLanes<String> lanes = lanes(1, event -> {
+            if (event.sequenceNumber().equals("2")) {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        // when
+        lanes.accept(someEvent("someKey", "1"));
+        lanes.accept(someEvent("someKey", "2"));
+        try {
+            lanes.accept(someEvent("someKey", "3"));
+        } catch (final IllegalStateException e) {
+            // the failure of event 2 is rethrown if it happened before event 3 was dispatched
+        }
+
+        // then
+        try {
+            lanes.drain().get(5, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        assertThat(positions, contains("1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRethrowFailureWhenDispatchingNextEvent() throws Exception {
+        // given
+        KeyOrderedLanes<String> lanes = lanes(1, event -> {
+            throw new IllegalStateException("boom");
+        });
+        lanes.accept(someEvent("someKey", "1"));
+        try {
+            lanes.drain().get(5, SECONDS);
+        } catch (final ExecutionException e) {
+            // expected
+        }
+
+        // when
+        lanes.accept(someEvent("someKey", "2"));
+    }
+
+    @Test
+    public void shouldCompleteDrainImmediatelyIfNothingIsPending() throws Exception {
+        // given
+        KeyOrderedLanes<String> lanes = lanes(2, event -> {});
+
+        // then
+        assertThat(lanes.drain().isDone(), is(true));
+    }
+
+    private KeyOrderedLanes<String> lanes(int numberOfLanes, Consumer<Event<String>> consumer) {
+        return new KeyOrderedLanes<>(numberOfLanes, 10, executor, consumer, Event::sequenceNumber, positions::add);
+    }
+
+    private String otherLaneThan(KeyOrderedLanes<String> lanes, String key) {
+        for (int i = 0; ; ++i) {
+            final String otherKey = "key-" + i;
+            if (lanes.laneOf(otherKey) != lanes.laneOf(key)) {
+                return otherKey;
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Event<String> someEvent(String key, String sequenceNumber) {
+        return event(key, "payload", sequenceNumber, Instant.now());
+    }
+}
@@ -0,0 +1,309 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KinesisBatchProducerTest {
+
+    @Mock
+    private KinesisClient kinesisClient;
+
+    private ScheduledExecutorService scheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private EventSourcingProperties.Producer properties;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = newSingleThreadScheduledExecutor();
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new EventSourcingProperties.Producer();
+        properties.setMaxBatchRecords(3);
+        properties.setLingerMillis(60000);
+        properties.setRetryBackoffMillis(1);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(success());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldSendFullBatch() throws Exception {
+        // given
+        KinesisBatchProducer producer = producer();
+
+        // when
+        producer.add("a", data("1"));
+        producer.add("b", data("2"));
+        verify(kinesisClient, never()).putRecords(any(PutRecordsRequest.class));
+        producer.add("c", data("3"));
+
+        // then
+        assertThat(dataOf(sentRequests().get(0)), contains("1", "2", "3"));
+        assertThat(producer.getInFlightRecords(), is(0));
+    }
+
+    @Test
+    public void shouldStartNewBatchIfMaxBytesWouldBeExceeded() throws Exception {
+        // given
+        properties.setMaxBatchBytes(8);
+        KinesisBatchProducer producer = producer();
+
+        // when
+        producer.add("a", data("1234"));
+        producer.add("b", data("5678"));
+        producer.flush();
+
+        // then
+        List<PutRecordsRequest> requests = sentRequests();
+        assertThat(dataOf(requests.get(0)), contains("1234"));
+        assertThat(dataOf(requests.get(1)), contains("5678"));
+    }
+
+    @Test
+    public void shouldSendBatchAfterLingerTime() throws Exception {
+        // given
+        properties.setLingerMillis(10);
+        KinesisBatchProducer producer = producer();
+
+        // when
+        producer.add("a", data("1"));
+
+        // then
+        await().atMost(5, SECONDS).until(() -> producer.getInFlightRecords() == 0);
+        assertThat(dataOf(sentRequests().get(0)), contains("1"));
+        assertThat(meterRegistry.get(KinesisBatchProducer.FLUSH_METRIC).tag("trigger", "linger").timer().count(), is(1L));
+    }
+
+    @Test
+    public void shouldNotDelayLingerFlushesOfOtherStreamsWhileSending() throws Exception {
+        // given
+        properties.setLingerMillis(10);
+        final CountDownLatch blockedStreamSending = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation -> {
+            final PutRecordsRequest request = (PutRecordsRequest) invocation.getArguments()[0];
+            if (request.streamName().equals("blockedStream")) {
+                blockedStreamSending.countDown();
+                unblock.await();
+            }
+            return success();
+        });
+        KinesisBatchProducer blockedProducer = new KinesisBatchProducer("blockedStream", kinesisClient, properties, meterRegistry, scheduler);
+        KinesisBatchProducer producer = producer();
+
+        try {
+            // when
+            blockedProducer.add("a", data("1"));
+            assertThat(blockedStreamSending.await(5, SECONDS), is(true));
+            producer.add("b", data("2"));
+
+            // then
+            await().atMost(5, SECONDS).until(() -> producer.getInFlightRecords() == 0);
+            assertThat(blockedProducer.getInFlightRecords(), is(1));
+        } finally {
+            unblock.countDown();
+        }
+    }
+
+    @Test
+    public void shouldSendFullBatchAfterLingeringBatchFilledBefore() throws Exception {
+        // given
+        properties.setLingerMillis(1);
+        final ThreadPoolExecutor sender = new ThreadPoolExecutor(1, 1, 0, SECONDS, new LinkedBlockingQueue<>());
+        final CountDownLatch blockSender = new CountDownLatch(1);
+        sender.execute(() -> awaitUninterruptibly(blockSender));
+        KinesisBatchProducer producer = new KinesisBatchProducer("someStream", kinesisClient, properties, meterRegistry, scheduler, sender);
+        producer.add("a", data("1"));
+        await().atMost(5, SECONDS).until(() -> sender.getQueue().size() == 1);
+
+        try {
+            // when
+            final CompletableFuture<Void> sizeFlush = CompletableFuture.runAsync(() -> {
+                producer.add("a", data("2"));
+                producer.add("a", data("3"));
+                producer.add("a", data("4"));
+            });
+            try {
+                sizeFlush.get(100, MILLISECONDS);
+                fail("full batch must not be sent before the lingering batch");
+            } catch (final TimeoutException e) {
+                // expected
+            }
+            blockSender.countDown();
+            sizeFlush.get(5, SECONDS);
+
+            // then
+            List<PutRecordsRequest> requests = sentRequests();
+            assertThat(dataOf(requests.get(0)), contains("1"));
+            assertThat(dataOf(requests.get(1)), contains("2", "3", "4"));
+        } finally {
+            blockSender.countDown();
+            sender.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldWaitForLingeringBatchOnFlush() throws Exception {
+        // given
+        properties.setLingerMillis(1);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation -> {
+            sending.countDown();
+            unblock.await();
+            return success();
+        });
+        KinesisBatchProducer producer = producer();
+        producer.add("a", data("1"));
+        assertThat(sending.await(5, SECONDS), is(true));
+
+        // when
+        final CompletableFuture<Void> flushed = CompletableFuture.runAsync(producer::flush);
+        Thread.sleep(50);
+        final boolean flushedBeforeWritten = flushed.isDone();
+        unblock.countDown();
+        flushed.get(5, SECONDS);
+
+        // then
+        assertThat(flushedBeforeWritten, is(false));
+        assertThat(producer.getInFlightRecords(), is(0));
+    }
+
+    @Test
+    public void shouldRetryOnlyFailedRecords() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(
+                response(null, "ProvisionedThroughputExceededException", null),
+                success());
+        KinesisBatchProducer producer = producer();
+
+        // when
+        producer.add("a", data("1"));
+        producer.add("b", data("2"));
+        producer.add("c", data("3"));
+
+        // then
+        List<PutRecordsRequest> requests = sentRequests();
+        assertThat(dataOf(requests.get(0)), contains("1", "2", "3"));
+        assertThat(dataOf(requests.get(1)), contains("2"));
+        assertThat(meterRegistry.get(KinesisBatchProducer.RETRIES_METRIC).counter().count(), is(1.0));
+    }
+
+    @Test
+    public void shouldFailAfterMaxRetries() throws Exception {
+        // given
+        properties.setMaxRetries(2);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(
+                response("InternalFailure"));
+        KinesisBatchProducer producer = producer();
+        producer.add("a", data("1"));
+
+        // when
+        try {
+            producer.flush();
+            fail("expected exception");
+        } catch (final IllegalStateException e) {
+            // then
+            verify(kinesisClient, times(3)).putRecords(any(PutRecordsRequest.class));
+            assertThat(meterRegistry.get(KinesisBatchProducer.FAILED_METRIC).counter().count(), is(1.0));
+            assertThat(producer.getInFlightRecords(), is(0));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectRecordsAfterClose() throws Exception {
+        // given
+        KinesisBatchProducer producer = producer();
+        producer.add("a", data("1"));
+        producer.close();
+
+        // when
+        producer.add("b", data("2"));
+    }
+
+    private KinesisBatchProducer producer() {
+        return new KinesisBatchProducer("someStream", kinesisClient, properties, meterRegistry, scheduler);
+    }
+
+    private List<PutRecordsRequest> sentRequests() {
+        ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient, atLeastOnce()).putRecords(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private List<String> dataOf(PutRecordsRequest request) {
+        return request.records().stream()
+                .map(PutRecordsRequestEntry::data)
+                .map(buffer -> UTF_8.decode(buffer).toString())
+                .collect(toList());
+    }
+
+    private ByteBuffer data(String data) {
+        return ByteBuffer.wrap(data.getBytes(UTF_8));
+    }
+
+    private PutRecordsResponse success() {
+        return PutRecordsResponse.builder().failedRecordCount(0).build();
+    }
+
+    private PutRecordsResponse response(String... errorCodes) {
+        int failed = 0;
+        PutRecordsResultEntry[] entries = new PutRecordsResultEntry[errorCodes.length];
+        for (int i = 0; i < errorCodes.length; ++i) {
+            entries[i] = errorCodes[i] == null
+                    ? PutRecordsResultEntry.builder().sequenceNumber(String.valueOf(i)).build()
+                    : PutRecordsResultEntry.builder().errorCode(errorCodes[i]).build();
+            failed += errorCodes[i] == null ? 0 : 1;
+        }
+        return PutRecordsResponse.builder().failedRecordCount(failed).records(entries).build();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,30 +3,62 @@ package de.otto.edison.eventsourcing.kinesis;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.checkpoint.CheckpointStore;
+import de.otto.edison.eventsourcing.compression.Lz4CompressionCodec;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
 import de.otto.edison.eventsourcing.consumer.Event;
 import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import de.otto.edison.eventsourcing.lease.FileShardLeaseTable;
+import de.otto.edison.eventsourcing.lease.ShardLease;
+import de.otto.edison.eventsourcing.lease.ShardLeaseCoordinator;
+import de.otto.edison.eventsourcing.lease.ShardLeaseTable;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
 import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
 import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static com.google.common.collect.ImmutableList.of;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.synchronizedList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -38,12 +70,19 @@ public class KinesisEventSourceTest {
     @Mock
     private KinesisClient kinesisClient;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private ObjectMapper objectMapper = new ObjectMapper();
 
     @Before
     public void setUp() throws Exception {
         KinesisShard shard1 = new KinesisShard("shard1", kinesisStream, kinesisClient);
-        when(kinesisStream.retrieveAllOpenShards()).thenReturn(of(shard1));
+        when(kinesisStream.getStreamName()).thenReturn("someStream");
+        when(kinesisStream.getPayloadCompressor()).thenReturn(PayloadCompressor.none());
+        when(kinesisStream.retrieveShardTopology()).thenReturn(new ShardTopology(of(someShard("shard1", null, true))));
+        when(kinesisStream.createKinesisShard("shard1")).thenReturn(shard1);
+        when(kinesisStream.getShardDiscoveryInterval()).thenReturn(Duration.ofSeconds(1));
         when(kinesisClient.getShardIterator(any())).thenReturn(GetShardIteratorResponse.builder()
                 .shardIterator("someIterator")
                 .build());
@@ -107,6 +146,325 @@ public class KinesisEventSourceTest {
         assertThat(events.get(1).payload(), is(objectMapper.writeValueAsString(new TestData("green"))));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDecodeEachRecordOnlyOnce() throws Exception {
+        // given
+        StreamPosition initialPositions = StreamPosition.of(ImmutableMap.of("shard1", "xyz"));
+
+        Consumer<Event<TestData>> consumer = mock(Consumer.class);
+        CountingTextEncryptor textEncryptor = new CountingTextEncryptor();
+
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, textEncryptor);
+
+        // when
+        eventSource.consumeAll(initialPositions, this::stopIfGreen, consumer);
+
+        // then
+        verify(consumer, times(2)).accept(any(Event.class));
+        assertThat(textEncryptor.decryptCount, is(2));
+    }
+
+    @Test
+    public void shouldDecompressCompressedAndPlainEvents() throws Exception {
+        // given
+        byte[] green = "{\"data\":\"green\"}".getBytes(StandardCharsets.UTF_8);
+        String compressedGreen = "\u0000L" + Base64.getEncoder().encodeToString(new Lz4CompressionCodec().compress(green));
+        when(kinesisClient.getRecords(any())).thenReturn(GetRecordsResponse.builder()
+                .records(createRecord("blue"), Record.builder()
+                        .data(ByteBuffer.wrap(compressedGreen.getBytes(StandardCharsets.UTF_8)))
+                        .sequenceNumber("sequence-green")
+                        .build())
+                .millisBehindLatest(0L)
+                .nextShardIterator("nextIterator")
+                .build());
+        List<String> events = synchronizedList(new ArrayList<>());
+
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText());
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(), this::stopIfGreen, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, contains("blue", "green"));
+    }
+
+    @Test
+    public void shouldSaveCheckpointOfConsumedEvents() throws Exception {
+        // given
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withCheckpointing(checkpointStore, 1, Duration.ofHours(1));
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(), this::stopIfGreen, event -> {});
+
+        // then
+        verify(checkpointStore).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "sequence-blue")));
+        verify(checkpointStore, atLeastOnce()).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "sequence-green")));
+    }
+
+    @Test
+    public void shouldStartShardsWithoutPositionAtTimestampOfStreamPosition() throws Exception {
+        // given
+        Instant timestamp = Instant.parse("2018-06-01T10:00:00Z");
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText());
+
+        // when
+        StreamPosition streamPosition = eventSource.consumeAll(StreamPosition.at(timestamp), this::stopIfGreen, event -> {});
+
+        // then
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisClient).getShardIterator(request.capture());
+        assertThat(request.getValue().shardIteratorType(), is(ShardIteratorType.AT_TIMESTAMP));
+        assertThat(request.getValue().timestamp(), is(timestamp));
+        assertThat(streamPosition.timestamp(), is(Optional.of(timestamp)));
+    }
+
+    @Test
+    public void shouldConsumeUntilCaughtUp() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any())).thenReturn(
+                GetRecordsResponse.builder().records(createRecord("blue")).millisBehindLatest(1234L).nextShardIterator("i1").build(),
+                GetRecordsResponse.builder().records(emptyList()).millisBehindLatest(500L).nextShardIterator("i2").build(),
+                GetRecordsResponse.builder().records(createRecord("green")).millisBehindLatest(0L).nextShardIterator("i3").build(),
+                GetRecordsResponse.builder().records(createRecord("red")).millisBehindLatest(0L).nextShardIterator("i4").build());
+        List<String> events = synchronizedList(new ArrayList<>());
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText());
+
+        // when
+        StreamPosition streamPosition = eventSource.consumeUntilCaughtUp(StreamPosition.of(), Duration.ZERO, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, contains("blue", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("sequence-green"));
+    }
+
+    @Test
+    public void shouldProcessEventsUsingKeyOrderedLanes() throws Exception {
+        // given
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        ExecutorService laneExecutor = Executors.newCachedThreadPool();
+        List<String> events = synchronizedList(new ArrayList<>());
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withCheckpointing(checkpointStore, 1, Duration.ofHours(1))
+                .withKeyOrderedLanes(4, 10, laneExecutor);
+
+        // when
+        StreamPosition streamPosition = eventSource.consumeAll(StreamPosition.of(), this::stopIfGreen, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, containsInAnyOrder("blue", "green"));
+        assertThat(streamPosition.positionOf("shard1"), is("sequence-green"));
+        verify(checkpointStore, atLeastOnce()).save("someStream", StreamPosition.of(ImmutableMap.of("shard1", "sequence-green")));
+        laneExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldConsumeLeasedShardAndReleaseLeaseAtLastProcessedPosition() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withShardLeasing(new ShardLeaseCoordinator(leaseTable, "me", Duration.ofSeconds(30)));
+        AtomicBoolean greenConsumed = new AtomicBoolean(false);
+        List<String> events = synchronizedList(new ArrayList<>());
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(), event -> {
+            if (stopIfGreen(event)) {
+                greenConsumed.set(true);
+            }
+            return greenConsumed.get();
+        }, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, contains("blue", "green"));
+        ShardLease lease = leaseTable.leasesOf("someStream").get(0);
+        assertThat(lease.getOwner(), is(nullValue()));
+        assertThat(lease.getCheckpoint(), is("sequence-green"));
+    }
+
+    @Test
+    public void shouldStartLeasedShardAtCheckpointOfLease() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        leaseTable.update("someStream", ShardLease.newLease("shard1").withCheckpoint("sequence-yellow"));
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withShardLeasing(new ShardLeaseCoordinator(leaseTable, "me", Duration.ofSeconds(30)));
+        AtomicBoolean greenConsumed = new AtomicBoolean(false);
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(ImmutableMap.of("shard1", "xyz")), event -> {
+            if (stopIfGreen(event)) {
+                greenConsumed.set(true);
+            }
+            return greenConsumed.get();
+        }, event -> {});
+
+        // then
+        ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(kinesisClient).getShardIterator(request.capture());
+        assertThat(request.getValue().startingSequenceNumber(), is("sequence-yellow"));
+    }
+
+    @Test
+    public void shouldNotConsumeShardLeasedByOtherInstance() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        leaseTable.update("someStream", ShardLease.newLease("shard1").ownedBy("other", Instant.now().plusSeconds(60)));
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withShardLeasing(new ShardLeaseCoordinator(leaseTable, "me", Duration.ofSeconds(30)));
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(), event -> true, event -> {});
+
+        // then
+        verify(kinesisClient, never()).getShardIterator(any(GetShardIteratorRequest.class));
+        assertThat(leaseTable.leasesOf("someStream").get(0).getOwner(), is("other"));
+    }
+
+    @Test
+    public void shouldRetryFinishingLeaseOfClosedShardIfUpdateFails() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(of(
+                someShard("parent", null, false),
+                someShard("child1", "parent", true),
+                someShard("child2", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        when(kinesisStream.createKinesisShard(anyString())).thenAnswer(invocation ->
+                new KinesisShard((String) invocation.getArguments()[0], kinesisStream, kinesisClient));
+        reshardedStream();
+
+        FileShardLeaseTable fileLeaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        AtomicInteger shardEndUpdates = new AtomicInteger();
+        ShardLeaseTable leaseTable = new ShardLeaseTable() {
+            @Override
+            public List<ShardLease> leasesOf(String streamName) {
+                return fileLeaseTable.leasesOf(streamName);
+            }
+
+            @Override
+            public Optional<ShardLease> update(String streamName, ShardLease lease) {
+                if (lease.isShardEnd() && shardEndUpdates.incrementAndGet() == 1) {
+                    throw new IllegalStateException("lease table unavailable");
+                }
+                return fileLeaseTable.update(streamName, lease);
+            }
+        };
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText())
+                .withShardLeasing(new ShardLeaseCoordinator(leaseTable, "me", Duration.ofSeconds(30)));
+        Set<String> consumedChildren = ConcurrentHashMap.newKeySet();
+        List<String> events = synchronizedList(new ArrayList<>());
+
+        // when
+        eventSource.consumeAll(StreamPosition.of(), event -> {
+            if (stopIfChild(event)) {
+                consumedChildren.add(event.payload().data);
+                return true;
+            }
+            return consumedChildren.size() == 2;
+        }, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, containsInAnyOrder("parent", "child1", "child2"));
+        assertThat(shardEndUpdates.get(), is(2));
+        ShardLease parentLease = fileLeaseTable.leasesOf("someStream").stream()
+                .filter(lease -> lease.getShardId().equals("parent"))
+                .findFirst()
+                .get();
+        assertThat(parentLease.isShardEnd(), is(true));
+    }
+
+    @Test
+    public void shouldConsumeParentShardBeforeChildShards() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(of(
+                someShard("parent", null, false),
+                someShard("child1", "parent", true),
+                someShard("child2", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        when(kinesisStream.createKinesisShard(anyString())).thenAnswer(invocation ->
+                new KinesisShard((String) invocation.getArguments()[0], kinesisStream, kinesisClient));
+        reshardedStream();
+
+        List<String> events = synchronizedList(new ArrayList<>());
+
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText());
+
+        // when
+        StreamPosition streamPosition = eventSource.consumeAll(StreamPosition.of(), this::stopIfChild, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events.get(0), is("parent"));
+        assertThat(events, containsInAnyOrder("parent", "child1", "child2"));
+        assertThat(streamPosition.positionOf("parent"), is("sequence-parent"));
+        assertThat(streamPosition.positionOf("child1"), is("sequence-child1"));
+        assertThat(streamPosition.positionOf("child2"), is("sequence-child2"));
+        verify(kinesisStream).refreshShardTopology();
+        verify(kinesisStream).startShardDiscovery();
+        verify(kinesisStream).stopShardDiscovery();
+    }
+
+    @Test
+    public void shouldSkipParentShardIfStreamPositionContainsChildShards() throws Exception {
+        // given
+        ShardTopology topology = new ShardTopology(of(
+                someShard("parent", null, false),
+                someShard("child1", "parent", true),
+                someShard("child2", "parent", true)));
+        when(kinesisStream.retrieveShardTopology()).thenReturn(topology);
+        when(kinesisStream.refreshShardTopology()).thenReturn(topology);
+        when(kinesisStream.createKinesisShard(anyString())).thenAnswer(invocation ->
+                new KinesisShard((String) invocation.getArguments()[0], kinesisStream, kinesisClient));
+        reshardedStream();
+
+        List<String> events = synchronizedList(new ArrayList<>());
+        StreamPosition initialPositions = StreamPosition.of(ImmutableMap.of("child1", "0", "child2", "0"));
+
+        KinesisEventSource<TestData> eventSource = new KinesisEventSource<>(TestData.class, objectMapper, kinesisStream, Encryptors.noOpText());
+
+        // when
+        StreamPosition streamPosition = eventSource.consumeAll(initialPositions, this::stopIfChild, event -> events.add(event.payload().data));
+
+        // then
+        assertThat(events, containsInAnyOrder("child1", "child2"));
+        assertThat(streamPosition.shards(), containsInAnyOrder("child1", "child2"));
+    }
+
+    private void reshardedStream() {
+        when(kinesisClient.getShardIterator(any(GetShardIteratorRequest.class))).thenAnswer(invocation -> {
+            GetShardIteratorRequest request = (GetShardIteratorRequest) invocation.getArguments()[0];
+            return GetShardIteratorResponse.builder().shardIterator("iterator-" + request.shardId()).build();
+        });
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenAnswer(invocation -> {
+            GetRecordsRequest request = (GetRecordsRequest) invocation.getArguments()[0];
+            String shardId = request.shardIterator().substring("iterator-".length());
+            return GetRecordsResponse.builder()
+                    .records(createRecord(shardId))
+                    .millisBehindLatest(0L)
+                    // the parent shard is closed:
+                    .nextShardIterator(shardId.equals("parent") ? null : request.shardIterator())
+                    .build();
+        });
+    }
+
+    private Shard someShard(String shardId, String parentShardId, boolean open) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(open ? null : "1111")
+                        .build())
+                .build();
+    }
+
+    private boolean stopIfChild(Event<TestData> event) {
+        return event != null && event.payload().data.startsWith("child");
+    }
+
     private boolean stopIfGreen(Event<TestData> event) {
         if (event == null) {
             return false;
@@ -129,6 +487,21 @@ public class KinesisEventSourceTest {
                 .build();
     }
 
+    private static class CountingTextEncryptor implements TextEncryptor {
+        private int decryptCount = 0;
+
+        @Override
+        public String encrypt(String text) {
+            return text;
+        }
+
+        @Override
+        public String decrypt(String encryptedText) {
+            decryptCount++;
+            return encryptedText;
+        }
+    }
+
     public static class TestData {
 
         TestData() {
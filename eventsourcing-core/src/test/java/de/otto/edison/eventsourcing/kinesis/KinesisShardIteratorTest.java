@@ -1,18 +1,30 @@
 package de.otto.edison.eventsourcing.kinesis;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
 import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.kinesis.model.Record;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -68,4 +80,120 @@ public class KinesisShardIteratorTest {
         // then
         assertThat(kinesisShardIterator.getId(), is("nextIteratorId"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRetryThrottledRequests() throws Exception {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records()
+                .nextShardIterator("nextIteratorId")
+                .build();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build())
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build())
+                .thenReturn(response);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        kinesisShardIterator = new KinesisShardIterator(kinesisClient, "someId", new ShardPollScheduler(), "0", null,
+                new ShardMetrics(meterRegistry, "someStream", "someShard"),
+                new ThrottlingBackoff(Duration.ofMillis(1), Duration.ofMillis(2)));
+
+        // when
+        GetRecordsResponse fetchedResponse = kinesisShardIterator.next();
+
+        // then
+        assertThat(fetchedResponse, is(response));
+        verify(kinesisClient, times(3)).getRecords(any(GetRecordsRequest.class));
+        assertThat(meterRegistry.get(ShardMetrics.THROTTLED_METRIC).tag("shard", "someShard").counter().count(), is(2.0));
+        assertThat(meterRegistry.get(ShardMetrics.GET_RECORDS_METRIC).tag("shard", "someShard").timer().count(), is(1L));
+    }
+
+    @Test
+    public void shouldAwaitNextPollBeforeRetryingThrottledRequest() throws Exception {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records()
+                .nextShardIterator("nextIteratorId")
+                .build();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build())
+                .thenReturn(response);
+        ShardPollScheduler pollScheduler = mock(ShardPollScheduler.class);
+        kinesisShardIterator = new KinesisShardIterator(kinesisClient, "someId", pollScheduler, "0", null,
+                ShardMetrics.none(),
+                new ThrottlingBackoff(Duration.ofMillis(1), Duration.ofMillis(2)));
+
+        // when
+        kinesisShardIterator.next();
+
+        // then
+        InOrder inOrder = inOrder(pollScheduler, kinesisClient);
+        inOrder.verify(pollScheduler).awaitNextPoll(null);
+        inOrder.verify(kinesisClient).getRecords(any(GetRecordsRequest.class));
+        inOrder.verify(pollScheduler).awaitNextPoll(null);
+        inOrder.verify(kinesisClient).getRecords(any(GetRecordsRequest.class));
+    }
+
+    @Test
+    public void shouldReplaceExpiredIteratorWithIteratorAfterLastRecord() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenReturn(GetRecordsResponse.builder()
+                        .records(Record.builder().sequenceNumber("42").build())
+                        .nextShardIterator("expiredId")
+                        .build())
+                .thenThrow(ExpiredIteratorException.builder().message("expired").build())
+                .thenReturn(GetRecordsResponse.builder()
+                        .records()
+                        .nextShardIterator("nextIteratorId")
+                        .build());
+        List<String> positions = new ArrayList<>();
+        kinesisShardIterator = new KinesisShardIterator(kinesisClient, "someId", new ShardPollScheduler(), "0", position -> {
+            positions.add(position);
+            return "freshId";
+        });
+
+        // when
+        kinesisShardIterator.next();
+        kinesisShardIterator.next();
+
+        // then
+        assertThat(positions, contains("42"));
+        verify(kinesisClient).getRecords(GetRecordsRequest.builder()
+                .shardIterator("freshId")
+                .limit(KinesisShardIterator.FETCH_RECORDS_LIMIT)
+                .build());
+        assertThat(kinesisShardIterator.getId(), is("nextIteratorId"));
+    }
+
+    @Test
+    public void shouldReplaceExpiredIteratorWithIteratorAtStartPositionIfNoRecordWasReturned() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ExpiredIteratorException.builder().message("expired").build())
+                .thenReturn(GetRecordsResponse.builder()
+                        .records()
+                        .nextShardIterator("nextIteratorId")
+                        .build());
+        List<String> positions = new ArrayList<>();
+        kinesisShardIterator = new KinesisShardIterator(kinesisClient, "someId", new ShardPollScheduler(), "4711", position -> {
+            positions.add(position);
+            return "freshId";
+        });
+
+        // when
+        kinesisShardIterator.next();
+
+        // then
+        assertThat(positions, contains("4711"));
+    }
+
+    @Test(expected = ExpiredIteratorException.class)
+    public void shouldThrowExpiredIteratorExceptionWithoutIteratorFactory() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ExpiredIteratorException.builder().message("expired").build());
+
+        // when
+        kinesisShardIterator.next();
+    }
+}
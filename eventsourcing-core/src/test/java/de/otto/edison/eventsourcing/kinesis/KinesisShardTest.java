@@ -10,13 +10,23 @@ import org.springframework.security.crypto.encrypt.TextEncryptor;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.*;
 
-import java.util.function.BiConsumer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import static de.otto.edison.eventsourcing.kinesis.KplAggregatedRecords.aggregate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class KinesisShardTest {
@@ -25,7 +35,7 @@ public class KinesisShardTest {
     private KinesisClient kinesisClient;
 
     @Mock
-    private BiConsumer<Long, Record> consumer;
+    private Consumer<String> consumer;
 
     @Mock
     private TextEncryptor textEncryptor;
@@ -77,6 +87,91 @@ public class KinesisShardTest {
         verify(kinesisClient).getShardIterator(expectedRequest);
     }
 
+    @Test
+    public void shouldReturnAtSequenceNumberIteratorForPositionInsideOfAggregatedRecord() throws Exception {
+        // when
+        kinesisShard.retrieveIterator("1:2");
+
+        // then
+        GetShardIteratorRequest expectedRequest = GetShardIteratorRequest.builder()
+                .streamName("someStream")
+                .shardId("someShard")
+                .shardIteratorType(ShardIteratorType.AT_SEQUENCE_NUMBER)
+                .startingSequenceNumber("1")
+                .build();
+        verify(kinesisClient).getShardIterator(expectedRequest);
+    }
+
+    @Test
+    public void shouldReturnAtTimestampIteratorWhenStartPositionIsZeroAndTimestampIsGiven() throws Exception {
+        // when
+        kinesisShard.retrieveIterator("0", Instant.parse("2018-06-01T10:00:00Z"));
+
+        // then
+        GetShardIteratorRequest expectedRequest = GetShardIteratorRequest.builder()
+                .streamName("someStream")
+                .shardId("someShard")
+                .shardIteratorType(ShardIteratorType.AT_TIMESTAMP)
+                .timestamp(Instant.parse("2018-06-01T10:00:00Z"))
+                .build();
+        verify(kinesisClient).getShardIterator(expectedRequest);
+    }
+
+    @Test
+    public void shouldIgnoreTimestampIfSequenceNumberIsGiven() throws Exception {
+        // when
+        kinesisShard.retrieveIterator("1", Instant.parse("2018-06-01T10:00:00Z"));
+
+        // then
+        GetShardIteratorRequest expectedRequest = GetShardIteratorRequest.builder()
+                .streamName("someStream")
+                .shardId("someShard")
+                .shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                .startingSequenceNumber("1")
+                .build();
+        verify(kinesisClient).getShardIterator(expectedRequest);
+    }
+
+    @Test
+    public void shouldFallBackToTimestampForInvalidSequenceNumber() throws Exception {
+        // given
+        when(kinesisClient.getShardIterator(any()))
+                .thenThrow(InvalidArgumentException.builder().message("invalid").build())
+                .thenReturn(GetShardIteratorResponse.builder().shardIterator("someShardIterator").build());
+
+        // when
+        KinesisShardIterator iterator = kinesisShard.retrieveIterator("1", Instant.parse("2018-06-01T10:00:00Z"));
+
+        // then
+        assertThat(iterator.getId(), is("someShardIterator"));
+        GetShardIteratorRequest expectedRequest = GetShardIteratorRequest.builder()
+                .streamName("someStream")
+                .shardId("someShard")
+                .shardIteratorType(ShardIteratorType.AT_TIMESTAMP)
+                .timestamp(Instant.parse("2018-06-01T10:00:00Z"))
+                .build();
+        verify(kinesisClient).getShardIterator(expectedRequest);
+    }
+
+    @Test
+    public void shouldReturnPrefetchingIteratorIfPrefetchingIsEnabled() throws Exception {
+        // given
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, "someStream", new ObjectMapper(), textEncryptor);
+        KinesisShard prefetchingShard = KinesisShard.builder()
+                .withShardId("someShard")
+                .withKinesisStream(kinesisStream)
+                .withKinesisClient(kinesisClient)
+                .withPrefetching(2, 1024)
+                .build();
+
+        // when
+        KinesisShardIterator iterator = prefetchingShard.retrieveIterator("0");
+
+        // then
+        assertThat(iterator, instanceOf(PrefetchingKinesisShardIterator.class));
+        assertThat(iterator.getId(), is("someShardIterator"));
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void shouldConsumeSingleRecordSetForStopAlwaysCondition() throws Exception {
@@ -95,10 +190,156 @@ public class KinesisShardTest {
         when(kinesisClient.getRecords(any())).thenReturn(response);
 
         // when
-        kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", (x, y) -> true, consumer);
+        kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", this::decode, x -> true, consumer);
 
         // then
-        verify(consumer).accept(1234L, record1);
-        verify(consumer).accept(1234L, record2);
+        verify(consumer).accept("1234:1");
+        verify(consumer).accept("1234:2");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldPassSameDecodedRecordToConsumerAndStopCondition() throws Exception {
+        // given
+        Record record = Record.builder()
+                .sequenceNumber("1")
+                .build();
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(record)
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(0L)
+                .build();
+        when(kinesisClient.getRecords(any())).thenReturn(response);
+        BiFunction<Long, UserRecord, Object> decoder = mock(BiFunction.class);
+        Object decoded = new Object();
+        when(decoder.apply(eq(0L), any(UserRecord.class))).thenReturn(decoded);
+        List<Object> testedByStopCondition = new ArrayList<>();
+
+        // when
+        kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", decoder, x -> {
+            testedByStopCondition.add(x);
+            return x != null;
+        }, x -> {});
+
+        // then
+        verify(decoder, times(1)).apply(eq(0L), any(UserRecord.class));
+        assertThat(testedByStopCondition, contains(null, decoded));
+    }
+
+    @Test
+    public void shouldStopAtEndOfClosedShard() throws Exception {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(Record.builder().sequenceNumber("1").build())
+                .millisBehindLatest(0L)
+                .build();
+        when(kinesisClient.getRecords(any())).thenReturn(response);
+
+        // when
+        ShardPosition shardPosition = kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", this::decode, x -> false, consumer);
+
+        // then
+        assertThat(shardPosition.isShardClosed(), is(true));
+        assertThat(shardPosition.getSequenceNumber(), is("1"));
+        verify(kinesisClient, times(1)).getRecords(any());
+    }
+
+    @Test
+    public void shouldConsumeUserRecordsOfAggregatedRecord() throws Exception {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(aggregate()
+                        .withUserRecord("someKey", "blue")
+                        .withUserRecord("otherKey", "green")
+                        .withUserRecord("someKey", "red")
+                        .build("1"))
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(0L)
+                .build();
+        when(kinesisClient.getRecords(any())).thenReturn(response);
+        List<String> consumed = new ArrayList<>();
+
+        // when
+        ShardPosition shardPosition = kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", this::dataOf, "red"::equals, consumed::add);
+
+        // then
+        assertThat(consumed, contains("blue", "green", "red"));
+        assertThat(shardPosition.getSequenceNumber(), is("1"));
+    }
+
+    @Test
+    public void shouldContinueInsideOfAggregatedRecord() throws Exception {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(aggregate()
+                        .withUserRecord("someKey", "blue")
+                        .withUserRecord("otherKey", "green")
+                        .withUserRecord("someKey", "red")
+                        .build("1"))
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(0L)
+                .build();
+        when(kinesisClient.getRecords(any())).thenReturn(response);
+        List<String> consumed = new ArrayList<>();
+
+        // when
+        ShardPosition shardPosition = kinesisShard.consumeRecordsAndReturnLastSeqNumber("1:1", this::dataOf, "red"::equals, consumed::add);
+
+        // then
+        assertThat(consumed, contains("red"));
+        assertThat(shardPosition.getSequenceNumber(), is("1"));
+    }
+
+    @Test
+    public void shouldConsumeUntilCaughtUpWithTipOfShard() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any())).thenReturn(
+                recordsResponse(5000L, "1"),
+                recordsResponse(3000L),
+                recordsResponse(0L, "2", "3"),
+                recordsResponse(0L, "4"));
+        List<String> consumed = new ArrayList<>();
+
+        // when
+        ShardPosition shardPosition = kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", null, Duration.ZERO, this::decode, x -> false, consumed::add);
+
+        // then
+        assertThat(consumed, contains("5000:1", "0:2", "0:3"));
+        assertThat(shardPosition.getSequenceNumber(), is("3"));
+        verify(kinesisClient, times(3)).getRecords(any());
+    }
+
+    @Test
+    public void shouldStopIfWithinCatchUpTolerance() throws Exception {
+        // given
+        when(kinesisClient.getRecords(any())).thenReturn(
+                recordsResponse(5000L, "1"),
+                recordsResponse(800L, "2"),
+                recordsResponse(0L, "3"));
+        List<String> consumed = new ArrayList<>();
+
+        // when
+        kinesisShard.consumeRecordsAndReturnLastSeqNumber("0", null, Duration.ofSeconds(1), this::decode, x -> false, consumed::add);
+
+        // then
+        assertThat(consumed, contains("5000:1", "800:2"));
+    }
+
+    private String dataOf(Long millisBehindLatest, UserRecord record) {
+        return UTF_8.decode(record.data()).toString();
+    }
+
+    private String decode(Long millisBehindLatest, UserRecord record) {
+        return millisBehindLatest + ":" + record.sequenceNumber();
+    }
+
+    private GetRecordsResponse recordsResponse(long millisBehindLatest, String... sequenceNumbers) {
+        return GetRecordsResponse.builder()
+                .records(Stream.of(sequenceNumbers)
+                        .map(sequenceNumber -> Record.builder().sequenceNumber(sequenceNumber).build())
+                        .collect(toList()))
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(millisBehindLatest)
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -3,7 +3,9 @@ package de.otto.edison.eventsourcing.kinesis;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import de.otto.edison.eventsourcing.configuration.EventSourcingProperties;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,10 +19,14 @@ import software.amazon.awssdk.services.kinesis.model.*;
 
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -125,6 +131,77 @@ public class KinesisStreamTest {
         assertThat(shards.get(1).getShardId(), is("shard4"));
     }
 
+    @Test
+    public void shouldRetrieveTopologyIncludingClosedShards() throws Exception {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", false),
+                        someShard("shard2", true)));
+
+        // when
+        ShardTopology topology = kinesisStream.retrieveShardTopology();
+
+        // then
+        assertThat(topology.getShardIds(), contains("shard1", "shard2"));
+        assertThat(topology.isClosed("shard1"), is(true));
+    }
+
+    @Test
+    public void shouldCacheShardTopology() throws Exception {
+        // given
+        describeStreamResponse(ImmutableList.of(someShard("shard1", true)));
+
+        // when
+        kinesisStream.retrieveShardTopology();
+        kinesisStream.retrieveShardTopology();
+
+        // then
+        verify(kinesisClient, times(1)).describeStream(any(DescribeStreamRequest.class));
+    }
+
+    @Test
+    public void shouldRetrieveInvalidatedShardTopology() throws Exception {
+        // given
+        describeStreamResponse(ImmutableList.of(someShard("shard1", true)));
+        kinesisStream.retrieveShardTopology();
+
+        // when
+        kinesisStream.invalidateShardTopology();
+        kinesisStream.retrieveShardTopology();
+
+        // then
+        verify(kinesisClient, times(2)).describeStream(any(DescribeStreamRequest.class));
+    }
+
+    @Test
+    public void shouldRetryDescribeStreamIfLimitIsExceeded() throws Exception {
+        // given
+        when(kinesisClient.describeStream(any(DescribeStreamRequest.class)))
+                .thenThrow(LimitExceededException.builder().message("forced test exception").build())
+                .thenReturn(createResponseForShards(ImmutableList.of(someShard("shard1", true)), false));
+
+        // when
+        ShardTopology topology = kinesisStream.retrieveShardTopology();
+
+        // then
+        assertThat(topology.getShardIds(), contains("shard1"));
+    }
+
+    @Test
+    public void shouldRequestPagesOfHundredShards() throws Exception {
+        // given
+        describeStreamResponse(ImmutableList.of(someShard("shard1", true)));
+
+        // when
+        kinesisStream.retrieveShardTopology();
+
+        // then
+        ArgumentCaptor<DescribeStreamRequest> captor = ArgumentCaptor.forClass(DescribeStreamRequest.class);
+        verify(kinesisClient).describeStream(captor.capture());
+        assertThat(captor.getValue().limit(), is(100));
+    }
+
     @Test
     public void shouldSendEvent() throws Exception {
         // when
@@ -142,6 +219,49 @@ public class KinesisStreamTest {
         assertThat(exampleJsonObject.value, is("banana"));
     }
 
+    @Test
+    public void shouldSendEventsInBatches() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder().failedRecordCount(0).build());
+
+        // when
+        kinesisStream.sendEvents(ImmutableList.of(new ExampleJsonObject("banana"), new ExampleJsonObject("apple")), object -> object.value);
+
+        // then
+        ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient).putRecords(captor.capture());
+        PutRecordsRequest putRecordsRequest = captor.getValue();
+
+        assertThat(putRecordsRequest.streamName(), is("streamName"));
+        assertThat(putRecordsRequest.records(), hasSize(2));
+        assertThat(putRecordsRequest.records().get(1).partitionKey(), is("apple"));
+        ExampleJsonObject exampleJsonObject = objectMapper.readValue(new ByteBufferBackedInputStream(putRecordsRequest.records().get(0).data()), ExampleJsonObject.class);
+        assertThat(exampleJsonObject.value, is("banana"));
+        assertThat(kinesisStream.getBatchProducer().getInFlightRecords(), is(0));
+    }
+
+    @Test
+    public void shouldCompressPayloadBeforeEncryption() throws Exception {
+        // given
+        EventSourcingProperties properties = new EventSourcingProperties();
+        properties.getCompression().setCodec("lz4");
+        properties.getCompression().setMinBytes(0);
+        kinesisStream = new KinesisStream(kinesisClient, "streamName", objectMapper, textEncryptor, properties);
+        String value = Strings.repeat("banana", 100);
+
+        // when
+        kinesisStream.sendEvent("someKey", new ExampleJsonObject(value));
+
+        // then
+        ArgumentCaptor<PutRecordRequest> captor = ArgumentCaptor.forClass(PutRecordRequest.class);
+        verify(kinesisClient).putRecord(captor.capture());
+        String data = UTF_8.decode(captor.getValue().data()).toString();
+
+        assertThat(data.length(), is(lessThan(value.length())));
+        ExampleJsonObject exampleJsonObject = objectMapper.readValue(kinesisStream.getPayloadCompressor().decompress(data), ExampleJsonObject.class);
+        assertThat(exampleJsonObject.value, is(value));
+    }
+
     private Shard someShard(String shardId, boolean open) {
         return Shard.builder()
                 .shardId(shardId)
@@ -0,0 +1,77 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Builds Kinesis records in the aggregation format of the Kinesis Producer Library, used to test the de-aggregation.
+ */
+class KplAggregatedRecords {
+
+    private final List<String> partitionKeys = new ArrayList<>();
+    private final List<String> data = new ArrayList<>();
+
+    static KplAggregatedRecords aggregate() {
+        return new KplAggregatedRecords();
+    }
+
+    KplAggregatedRecords withUserRecord(String partitionKey, String userData) {
+        partitionKeys.add(partitionKey);
+        data.add(userData);
+        return this;
+    }
+
+    Record build(String sequenceNumber) throws Exception {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .partitionKey(partitionKeys.get(0))
+                .data(ByteBuffer.wrap(bytes()))
+                .build();
+    }
+
+    byte[] bytes() throws Exception {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        final List<String> keyTable = new ArrayList<>();
+        for (String partitionKey : partitionKeys) {
+            if (!keyTable.contains(partitionKey)) {
+                keyTable.add(partitionKey);
+                writeLengthDelimited(message, 1, partitionKey.getBytes(UTF_8));
+            }
+        }
+        for (int i = 0; i < data.size(); ++i) {
+            final ByteArrayOutputStream userRecord = new ByteArrayOutputStream();
+            writeVarint(userRecord, 1 << 3);
+            writeVarint(userRecord, keyTable.indexOf(partitionKeys.get(i)));
+            writeLengthDelimited(userRecord, 3, data.get(i).getBytes(UTF_8));
+            writeLengthDelimited(message, 3, userRecord.toByteArray());
+        }
+        final byte[] protobuf = message.toByteArray();
+
+        final ByteArrayOutputStream aggregated = new ByteArrayOutputStream();
+        aggregated.write(new byte[]{(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2});
+        aggregated.write(protobuf);
+        aggregated.write(MessageDigest.getInstance("MD5").digest(protobuf));
+        return aggregated.toByteArray();
+    }
+
+    private static void writeLengthDelimited(ByteArrayOutputStream out, int fieldNumber, byte[] bytes) {
+        writeVarint(out, fieldNumber << 3 | 2);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,126 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.otto.edison.eventsourcing.kinesis.ShardSubscriptionEvent.shardSubscriptionEvent;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+/**
+ * Local stand-in for the SubscribeToShard API of Kinesis, used to test fan-out event sources.
+ * <p>
+ *     Every event contains a single record. Like the real API, a subscription is completed after
+ *     {@code eventsPerSubscription} events, and the end of a closed shard is signalled by an event
+ *     without continuation sequence number. Events are pushed from a thread of the stand-in.
+ * </p>
+ */
+class LocalShardSubscriptionClient implements ShardSubscriptionClient {
+
+    private final Map<String, List<Record>> shards = new ConcurrentHashMap<>();
+    private final Set<String> closedShards = new HashSet<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final ExecutorService pushExecutor = Executors.newCachedThreadPool();
+    private final int eventsPerSubscription;
+
+    LocalShardSubscriptionClient(final int eventsPerSubscription) {
+        this.eventsPerSubscription = eventsPerSubscription;
+    }
+
+    LocalShardSubscriptionClient withRecords(final String shardId, final List<Record> records) {
+        shards.put(shardId, records);
+        return this;
+    }
+
+    LocalShardSubscriptionClient withClosedShard(final String shardId, final List<Record> records) {
+        closedShards.add(shardId);
+        return withRecords(shardId, records);
+    }
+
+    int getSubscriptions() {
+        return subscriptions.get();
+    }
+
+    @Override
+    public Publisher<ShardSubscriptionEvent> subscribeToShard(final String streamName,
+                                                              final String shardId,
+                                                              final ShardIteratorType startingPositionType,
+                                                              final String sequenceNumber) {
+        subscriptions.incrementAndGet();
+        final List<ShardSubscriptionEvent> events = eventsOf(shardId, startingPositionType, sequenceNumber);
+        return subscriber -> subscriber.onSubscribe(new LocalSubscription(subscriber, events));
+    }
+
+    private List<ShardSubscriptionEvent> eventsOf(final String shardId,
+                                                  final ShardIteratorType startingPositionType,
+                                                  final String sequenceNumber) {
+        final List<Record> records = shards.getOrDefault(shardId, emptyList());
+        int start = 0;
+        if (startingPositionType != ShardIteratorType.TRIM_HORIZON) {
+            for (int i = 0; i < records.size(); ++i) {
+                if (records.get(i).sequenceNumber().equals(sequenceNumber)) {
+                    start = startingPositionType == ShardIteratorType.AT_SEQUENCE_NUMBER ? i : i + 1;
+                }
+            }
+        }
+        final boolean closed = closedShards.contains(shardId);
+        final List<ShardSubscriptionEvent> events = new ArrayList<>();
+        for (int i = start; i < records.size() && events.size() < eventsPerSubscription; ++i) {
+            final Record record = records.get(i);
+            final boolean last = i == records.size() - 1;
+            events.add(shardSubscriptionEvent(singletonList(record), (long) (records.size() - i - 1), closed && last ? null : record.sequenceNumber()));
+        }
+        if (events.isEmpty()) {
+            events.add(shardSubscriptionEvent(emptyList(), 0L, closed ? null : sequenceNumber));
+        }
+        return events;
+    }
+
+    private class LocalSubscription implements Subscription {
+        private final Subscriber<? super ShardSubscriptionEvent> subscriber;
+        private final List<ShardSubscriptionEvent> events;
+        private int next = 0;
+        private volatile boolean cancelled = false;
+
+        private LocalSubscription(final Subscriber<? super ShardSubscriptionEvent> subscriber,
+                                  final List<ShardSubscriptionEvent> events) {
+            this.subscriber = subscriber;
+            this.events = events;
+        }
+
+        @Override
+        public void request(final long n) {
+            pushExecutor.execute(() -> {
+                synchronized (this) {
+                    for (long i = 0; i < n && !cancelled; ++i) {
+                        if (next < events.size()) {
+                            subscriber.onNext(events.get(next++));
+                        }
+                        if (next == events.size() && !cancelled) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
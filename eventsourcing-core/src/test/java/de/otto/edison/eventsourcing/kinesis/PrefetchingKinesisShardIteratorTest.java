@@ -0,0 +1,176 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PrefetchingKinesisShardIteratorTest {
+
+    @Mock
+    private KinesisClient kinesisClient;
+
+    private ShardPollScheduler pollScheduler = new ShardPollScheduler(Duration.ZERO, Duration.ZERO, 1000.0);
+
+    private PrefetchingKinesisShardIterator iterator;
+
+    @Before
+    public void setUp() throws Exception {
+        when(kinesisClient.getRecords(any()))
+                .thenReturn(response("1", 10), response("2", 10), response("3", 10), response("4", 10), response("5", 10));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (iterator != null) {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void shouldReturnResponsesInOrder() throws Exception {
+        // given
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 2, 1024);
+
+        // when
+        GetRecordsResponse first = iterator.next();
+        GetRecordsResponse second = iterator.next();
+        GetRecordsResponse third = iterator.next();
+
+        // then
+        assertThat(first.records().get(0).sequenceNumber(), is("1"));
+        assertThat(second.records().get(0).sequenceNumber(), is("2"));
+        assertThat(third.records().get(0).sequenceNumber(), is("3"));
+    }
+
+    @Test
+    public void shouldPrefetchWhileCurrentBatchIsConsumed() throws Exception {
+        // given
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 2, 1024);
+
+        // when
+        iterator.next();
+
+        // then
+        await().atMost(1, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(kinesisClient, times(4)).getRecords(any()));
+    }
+
+    @Test
+    public void shouldNotPrefetchMoreThanQueueDepth() throws Exception {
+        // given
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 1, 1024);
+
+        // when
+        iterator.next();
+        Thread.sleep(200);
+
+        // then
+        // one response is queued, one is waiting to be queued:
+        verify(kinesisClient, times(3)).getRecords(any());
+    }
+
+    @Test
+    public void shouldNotPrefetchMoreThanMaxBytes() throws Exception {
+        // given
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 10, 15);
+
+        // when
+        iterator.next();
+        Thread.sleep(200);
+
+        // then
+        // one response is queued, one is waiting to be queued:
+        verify(kinesisClient, times(3)).getRecords(any());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldPropagateFailureOfBackgroundFetch() throws Exception {
+        // given
+        reset(kinesisClient);
+        when(kinesisClient.getRecords(any())).thenThrow(new IllegalStateException("forced test exception"));
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 2, 1024);
+
+        // when
+        iterator.next();
+    }
+
+    @Test(expected = OutOfMemoryError.class)
+    public void shouldPropagateErrorOfBackgroundFetch() throws Exception {
+        // given
+        reset(kinesisClient);
+        when(kinesisClient.getRecords(any())).thenThrow(new OutOfMemoryError("forced test error"));
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 2, 1024);
+
+        // when
+        iterator.next();
+    }
+
+    @Test
+    public void shouldPrefetchInDaemonThread() throws Exception {
+        // given
+        AtomicBoolean daemon = new AtomicBoolean(false);
+        reset(kinesisClient);
+        when(kinesisClient.getRecords(any())).thenAnswer(invocation -> {
+            daemon.set(Thread.currentThread().isDaemon());
+            return response("1", 10);
+        });
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 1, 1024);
+
+        // when
+        iterator.next();
+
+        // then
+        assertThat(daemon.get(), is(true));
+    }
+
+    @Test
+    public void shouldStopPrefetchingAtEndOfClosedShard() throws Exception {
+        // given
+        reset(kinesisClient);
+        when(kinesisClient.getRecords(any())).thenReturn(GetRecordsResponse.builder()
+                .records(record("1", 10))
+                .millisBehindLatest(0L)
+                .build());
+        iterator = new PrefetchingKinesisShardIterator(kinesisClient, "someId", pollScheduler, 2, 1024);
+
+        // when
+        iterator.next();
+        Thread.sleep(200);
+
+        // then
+        verify(kinesisClient, times(1)).getRecords(any());
+    }
+
+    private GetRecordsResponse response(String sequenceNumber, int size) {
+        return GetRecordsResponse.builder()
+                .records(record(sequenceNumber, size))
+                .millisBehindLatest(1000L)
+                .nextShardIterator("nextIterator-" + sequenceNumber)
+                .build();
+    }
+
+    private Record record(String sequenceNumber, int size) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .data(ByteBuffer.wrap(new byte[size]))
+                .build();
+    }
+}
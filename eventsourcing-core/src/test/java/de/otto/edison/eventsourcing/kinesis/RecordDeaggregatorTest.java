@@ -0,0 +1,110 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.otto.edison.eventsourcing.kinesis.KplAggregatedRecords.aggregate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RecordDeaggregatorTest {
+
+    @Test
+    public void shouldReturnPlainRecordAsSingleUserRecord() {
+        // given
+        Record record = record("1", "someKey", "{}".getBytes(UTF_8));
+
+        // when
+        List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record);
+
+        // then
+        assertThat(userRecords, hasSize(1));
+        assertThat(userRecords.get(0).isAggregated(), is(false));
+        assertThat(userRecords.get(0).partitionKey(), is("someKey"));
+        assertThat(dataOf(userRecords.get(0)), is("{}"));
+        assertThat(userRecords.get(0).position(), is("1"));
+    }
+
+    @Test
+    public void shouldUnpackAggregatedRecord() throws Exception {
+        // given
+        Record record = aggregate()
+                .withUserRecord("first", "blue")
+                .withUserRecord("second", "green")
+                .withUserRecord("first", "red")
+                .build("42");
+
+        // when
+        List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record);
+
+        // then
+        assertThat(userRecords.stream().map(this::dataOf).collect(toList()), contains("blue", "green", "red"));
+        assertThat(userRecords.stream().map(UserRecord::partitionKey).collect(toList()), contains("first", "second", "first"));
+        assertThat(userRecords.stream().map(UserRecord::subSequenceNumber).collect(toList()), contains(0L, 1L, 2L));
+        assertThat(userRecords.stream().map(UserRecord::position).collect(toList()), contains("42:0", "42:1", "42"));
+        assertThat(userRecords.get(0).sequenceNumber(), is("42"));
+    }
+
+    @Test
+    public void shouldTreatRecordWithInvalidChecksumAsPlainRecord() throws Exception {
+        // given
+        byte[] bytes = aggregate()
+                .withUserRecord("first", "blue")
+                .withUserRecord("second", "green")
+                .bytes();
+        bytes[bytes.length - 1] ^= 0x01;
+
+        // when
+        List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("1", "someKey", bytes));
+
+        // then
+        assertThat(userRecords, hasSize(1));
+        assertThat(userRecords.get(0).isAggregated(), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailForTruncatedAggregatedRecord() throws Exception {
+        // given
+        byte[] bytes = aggregate()
+                .withUserRecord("first", "blue")
+                .bytes();
+        byte[] protobuf = Arrays.copyOfRange(bytes, 4, bytes.length - 16 - 2);
+        byte[] truncated = new byte[4 + protobuf.length + 16];
+        System.arraycopy(bytes, 0, truncated, 0, 4);
+        System.arraycopy(protobuf, 0, truncated, 4, protobuf.length);
+        System.arraycopy(MessageDigest.getInstance("MD5").digest(protobuf), 0, truncated, 4 + protobuf.length, 16);
+
+        // when
+        RecordDeaggregator.deaggregate(record("1", "first", truncated));
+    }
+
+    @Test
+    public void shouldParseExtendedSequenceNumbers() {
+        assertThat(ExtendedSequenceNumber.parse("0").isTrimHorizon(), is(true));
+        assertThat(ExtendedSequenceNumber.parse("42").isInsideAggregate(), is(false));
+        assertThat(ExtendedSequenceNumber.parse("42:3").getSequenceNumber(), is("42"));
+        assertThat(ExtendedSequenceNumber.parse("42:3").getSubSequenceNumber(), is(3L));
+        assertThat(ExtendedSequenceNumber.parse("42:3").toString(), is("42:3"));
+    }
+
+    private Record record(String sequenceNumber, String partitionKey, byte[] data) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .partitionKey(partitionKey)
+                .data(ByteBuffer.wrap(data))
+                .build();
+    }
+
+    private String dataOf(UserRecord userRecord) {
+        return UTF_8.decode(userRecord.data()).toString();
+    }
+}
@@ -0,0 +1,123 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardExecutorTest {
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldRunAllTasksConcurrently() throws Exception {
+        // given
+        ShardExecutor shardExecutor = new ShardExecutor("someStream", false, meterRegistry);
+        // every task is blocked until all tasks are running:
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        Callable<String> task = () -> {
+            barrier.await(5, SECONDS);
+            return "done";
+        };
+
+        // when
+        List<Future<String>> futures = asList(shardExecutor.submit(task), shardExecutor.submit(task), shardExecutor.submit(task));
+
+        // then
+        for (Future<String> future : futures) {
+            assertThat(future.get(5, SECONDS), is("done"));
+        }
+    }
+
+    @Test
+    public void shouldUseNamedThreads() throws Exception {
+        // given
+        ShardExecutor shardExecutor = new ShardExecutor("someStream", false, meterRegistry);
+
+        // when
+        String threadName = shardExecutor.submit(() -> Thread.currentThread().getName()).get(5, SECONDS);
+
+        // then
+        assertThat(threadName, startsWith("edison-eventsourcing-someStream-shard-"));
+    }
+
+    @Test
+    public void shouldReportFailureOfTask() throws Exception {
+        // given
+        ShardExecutor shardExecutor = new ShardExecutor("someStream", false, meterRegistry);
+
+        // when
+        Future<String> future = shardExecutor.submit(() -> {
+            throw new IllegalStateException("forced test exception");
+        });
+
+        // then
+        try {
+            future.get(5, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    public void shouldPublishNumberOfActiveShards() throws Exception {
+        // given
+        ShardExecutor shardExecutor = new ShardExecutor("someStream", false, meterRegistry);
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> task = () -> {
+            running.countDown();
+            release.await(5, SECONDS);
+            return "done";
+        };
+
+        // when
+        List<Future<String>> futures = asList(shardExecutor.submit(task), shardExecutor.submit(task));
+        running.await(5, SECONDS);
+
+        // then
+        assertThat(meterRegistry.get(ShardExecutor.ACTIVE_SHARDS_METRIC).tag("stream", "someStream").gauge().value(), is(2.0));
+        release.countDown();
+        for (Future<String> future : futures) {
+            future.get(5, SECONDS);
+        }
+        assertThat(shardExecutor.getActiveShards(), is(0));
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreadsIfVirtualThreadsAreNotSupported() throws Exception {
+        // given
+        boolean virtualThreadsSupported = hasVirtualThreads();
+
+        // when
+        ShardExecutor shardExecutor = new ShardExecutor("someStream", true, meterRegistry);
+
+        // then
+        assertThat(shardExecutor.isUsingVirtualThreads(), is(virtualThreadsSupported));
+        assertThat(shardExecutor.submit(() -> "done").get(5, SECONDS), is("done"));
+    }
+
+    private boolean hasVirtualThreads() {
+        try {
+            java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldRecordGetRecordsResponse() {
+        // given
+        ShardMetrics metrics = new ShardMetrics(meterRegistry, "someStream", "someShard");
+
+        // when
+        metrics.recordGetRecords(MILLISECONDS.toNanos(20), GetRecordsResponse.builder()
+                .records(record("foo"), record("barbaz"))
+                .millisBehindLatest(4711L)
+                .build());
+
+        // then
+        assertThat(meterRegistry.get(ShardMetrics.GET_RECORDS_METRIC).tags("stream", "someStream", "shard", "someShard").timer().totalTime(MILLISECONDS), is(20.0));
+        assertThat(meterRegistry.get(ShardMetrics.RECORDS_METRIC).summary().totalAmount(), is(2.0));
+        assertThat(meterRegistry.get(ShardMetrics.BYTES_METRIC).summary().totalAmount(), is(9.0));
+        assertThat(meterRegistry.get(ShardMetrics.EMPTY_POLLS_METRIC).counter().count(), is(0.0));
+        assertThat(meterRegistry.get(ShardMetrics.MILLIS_BEHIND_LATEST_METRIC).gauge().value(), is(4711.0));
+    }
+
+    @Test
+    public void shouldCountEmptyPolls() {
+        // given
+        ShardMetrics metrics = new ShardMetrics(meterRegistry, "someStream", "someShard");
+
+        // when
+        metrics.recordGetRecords(0, GetRecordsResponse.builder().records().millisBehindLatest(0L).build());
+        metrics.recordGetRecords(0, GetRecordsResponse.builder().records().millisBehindLatest(0L).build());
+
+        // then
+        assertThat(meterRegistry.get(ShardMetrics.EMPTY_POLLS_METRIC).counter().count(), is(2.0));
+        assertThat(meterRegistry.get(ShardMetrics.RECORDS_METRIC).summary().count(), is(2L));
+        assertThat(meterRegistry.get(ShardMetrics.MILLIS_BEHIND_LATEST_METRIC).gauge().value(), is(0.0));
+    }
+
+    @Test
+    public void shouldCountThrottledRequests() {
+        // given
+        ShardMetrics metrics = new ShardMetrics(meterRegistry, "someStream", "someShard");
+
+        // when
+        metrics.recordThrottled();
+
+        // then
+        assertThat(meterRegistry.get(ShardMetrics.THROTTLED_METRIC).counter().count(), is(1.0));
+    }
+
+    private Record record(String data) {
+        return Record.builder()
+                .sequenceNumber("1")
+                .data(ByteBuffer.wrap(data.getBytes(UTF_8)))
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.time.Duration;
+
+import static java.time.Duration.ofMillis;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardPollSchedulerTest {
+
+    private ShardPollScheduler pollScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        pollScheduler = new ShardPollScheduler(ofMillis(100), ofMillis(1000), 5.0);
+    }
+
+    @Test
+    public void shouldPollImmediatelyWhileBehindLatest() throws Exception {
+        // when
+        Duration wait = pollScheduler.nextWait(response(42L, true));
+
+        // then
+        assertThat(wait, is(Duration.ZERO));
+    }
+
+    @Test
+    public void shouldPollImmediatelyForEmptyResponseWhileBehindLatest() throws Exception {
+        // when
+        Duration wait = pollScheduler.nextWait(response(42L, false));
+
+        // then
+        assertThat(wait, is(Duration.ZERO));
+    }
+
+    @Test
+    public void shouldWaitMinIdleWaitIfCaughtUpWithRecords() throws Exception {
+        // when
+        Duration wait = pollScheduler.nextWait(response(0L, true));
+
+        // then
+        assertThat(wait, is(ofMillis(100)));
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyWhileIdle() throws Exception {
+        // when
+        Duration first = pollScheduler.nextWait(response(0L, false));
+        Duration second = pollScheduler.nextWait(response(0L, false));
+        Duration third = pollScheduler.nextWait(response(0L, false));
+        Duration fourth = pollScheduler.nextWait(response(0L, false));
+        Duration fifth = pollScheduler.nextWait(response(0L, false));
+        Duration sixth = pollScheduler.nextWait(response(0L, false));
+
+        // then
+        assertThat(first, is(ofMillis(100)));
+        assertThat(second, is(ofMillis(200)));
+        assertThat(third, is(ofMillis(400)));
+        assertThat(fourth, is(ofMillis(800)));
+        assertThat(fifth, is(ofMillis(1000)));
+        assertThat(sixth, is(ofMillis(1000)));
+    }
+
+    @Test
+    public void shouldResetBackOffAfterReceivingRecords() throws Exception {
+        // given
+        pollScheduler.nextWait(response(0L, false));
+        pollScheduler.nextWait(response(0L, false));
+        pollScheduler.nextWait(response(0L, true));
+
+        // when
+        Duration wait = pollScheduler.nextWait(response(0L, false));
+
+        // then
+        assertThat(wait, is(ofMillis(100)));
+    }
+
+    @Test
+    public void shouldTreatMissingMillisBehindLatestAsCaughtUp() throws Exception {
+        // when
+        Duration wait = pollScheduler.nextWait(response(null, false));
+
+        // then
+        assertThat(wait, is(ofMillis(100)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMinIdleWaitGreaterThanMaxIdleWait() {
+        new ShardPollScheduler(ofMillis(1000), ofMillis(100), 5.0);
+    }
+
+    private GetRecordsResponse response(Long millisBehindLatest, boolean withRecords) {
+        GetRecordsResponse.Builder builder = GetRecordsResponse.builder()
+                .millisBehindLatest(millisBehindLatest)
+                .nextShardIterator("nextShardIterator");
+        if (withRecords) {
+            builder.records(Record.builder().sequenceNumber("1").build());
+        } else {
+            builder.records();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,112 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.otto.edison.eventsourcing.kinesis.KplAggregatedRecords.aggregate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardRecordProcessorTest {
+
+    private final List<String> consumed = new ArrayList<>();
+
+    @Test
+    public void shouldConsumeRecordsAndRememberLastPosition() {
+        // given
+        final ShardRecordProcessor<String> processor = processor("0", null);
+
+        // when
+        final boolean stop = processor.process(asList(record("1", "one"), record("2", "two")), 100L);
+
+        // then
+        assertThat(stop, is(false));
+        assertThat(consumed, contains("one", "two"));
+        assertThat(processor.lastSequenceNumber(), is("2"));
+    }
+
+    @Test
+    public void shouldSkipUserRecordsUpToStartPosition() throws Exception {
+        // given
+        final ShardRecordProcessor<String> processor = processor("42:0", null);
+        final Record aggregated = aggregate()
+                .withUserRecord("first", "blue")
+                .withUserRecord("second", "green")
+                .withUserRecord("first", "red")
+                .build("42");
+
+        // when
+        processor.process(asList(aggregated, record("43", "yellow")), 100L);
+
+        // then
+        assertThat(consumed, contains("green", "red", "yellow"));
+        assertThat(processor.lastSequenceNumber(), is("43"));
+    }
+
+    @Test
+    public void shouldKeepStartPositionForEmptyBatch() {
+        // given
+        final ShardRecordProcessor<String> processor = processor("7", null);
+
+        // when
+        final boolean stop = processor.process(emptyList(), 100L);
+
+        // then
+        assertThat(stop, is(false));
+        assertThat(consumed, is(empty()));
+        assertThat(processor.lastSequenceNumber(), is("7"));
+    }
+
+    @Test
+    public void shouldStopWhenStopConditionIsMetByLastRecord() {
+        // given
+        final ShardRecordProcessor<String> processor = new ShardRecordProcessor<>("0", null,
+                (millis, userRecord) -> UTF_8.decode(userRecord.data()).toString(),
+                "two"::equals,
+                consumed::add);
+
+        // when
+        final boolean stop = processor.process(asList(record("1", "one"), record("2", "two")), 100L);
+
+        // then
+        assertThat(stop, is(true));
+    }
+
+    @Test
+    public void shouldStopWhenCaughtUp() {
+        // given
+        final ShardRecordProcessor<String> processor = processor("0", Duration.ofSeconds(1));
+
+        // when
+        final boolean stop = processor.process(asList(record("1", "one")), 1000L);
+
+        // then
+        assertThat(stop, is(true));
+        assertThat(consumed, contains("one"));
+    }
+
+    private ShardRecordProcessor<String> processor(final String startFromSeqNumber, final Duration catchUpTolerance) {
+        return new ShardRecordProcessor<>(startFromSeqNumber, catchUpTolerance,
+                (millis, userRecord) -> UTF_8.decode(userRecord.data()).toString(),
+                decoded -> false,
+                consumed::add);
+    }
+
+    private Record record(final String sequenceNumber, final String data) {
+        return Record.builder()
+                .sequenceNumber(sequenceNumber)
+                .partitionKey("someKey")
+                .data(ByteBuffer.wrap(data.getBytes(UTF_8)))
+                .build();
+    }
+}
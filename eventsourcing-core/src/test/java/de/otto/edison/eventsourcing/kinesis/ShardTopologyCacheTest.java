@@ -0,0 +1,202 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ShardTopologyCacheTest {
+
+    private AtomicLong nanoTime = new AtomicLong();
+    private AtomicInteger loadCount = new AtomicInteger();
+    private ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private ShardTopologyCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ShardTopologyCache(() -> {
+            loadCount.incrementAndGet();
+            return new ShardTopology(ImmutableList.of());
+        }, Duration.ofSeconds(30), nanoTime::get, scheduler);
+        doReturn(mock(ScheduledFuture.class)).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void shouldReturnCachedTopology() {
+        // given
+        ShardTopology first = cache.get();
+
+        // when
+        nanoTime.addAndGet(Duration.ofSeconds(29).toNanos());
+        ShardTopology second = cache.get();
+
+        // then
+        assertThat(second, is(sameInstance(first)));
+        assertThat(loadCount.get(), is(1));
+    }
+
+    @Test
+    public void shouldReloadOutdatedTopology() {
+        // given
+        ShardTopology first = cache.get();
+
+        // when
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        ShardTopology second = cache.get();
+
+        // then
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(loadCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldReloadInvalidatedTopology() {
+        // given
+        cache.get();
+
+        // when
+        cache.invalidate();
+        cache.get();
+
+        // then
+        assertThat(loadCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldRefreshTopology() {
+        // given
+        cache.get();
+
+        // when
+        ShardTopology refreshed = cache.refresh();
+
+        // then
+        assertThat(cache.get(), is(sameInstance(refreshed)));
+        assertThat(loadCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldDiscardRefreshFinishingAfterNewerRefresh() throws Exception {
+        // given
+        ShardTopology outdated = new ShardTopology(ImmutableList.of());
+        ShardTopology current = new ShardTopology(ImmutableList.of());
+        CountDownLatch slowLoadStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ShardTopologyCache cache = new ShardTopologyCache(() -> {
+            if (loads.incrementAndGet() == 1) {
+                slowLoadStarted.countDown();
+                awaitUninterruptibly(releaseSlowLoad);
+                return outdated;
+            }
+            return current;
+        }, Duration.ofSeconds(30), nanoTime::get, scheduler);
+        Thread backgroundRefresh = new Thread(cache::refresh);
+        backgroundRefresh.start();
+        slowLoadStarted.await(5, SECONDS);
+
+        // when
+        cache.refresh();
+        releaseSlowLoad.countDown();
+        backgroundRefresh.join(5000);
+
+        // then
+        assertThat(cache.get(), is(sameInstance(current)));
+    }
+
+    @Test
+    public void shouldDiscardRefreshStartedBeforeInvalidation() throws Exception {
+        // given
+        CountDownLatch slowLoadStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ShardTopologyCache cache = new ShardTopologyCache(() -> {
+            if (loads.incrementAndGet() == 1) {
+                slowLoadStarted.countDown();
+                awaitUninterruptibly(releaseSlowLoad);
+            }
+            return new ShardTopology(ImmutableList.of());
+        }, Duration.ofSeconds(30), nanoTime::get, scheduler);
+        Thread backgroundRefresh = new Thread(cache::refresh);
+        backgroundRefresh.start();
+        slowLoadStarted.await(5, SECONDS);
+
+        // when
+        cache.invalidate();
+        releaseSlowLoad.countDown();
+        backgroundRefresh.join(5000);
+        cache.get();
+
+        // then
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void shouldScheduleBackgroundRefreshOnlyOnce() {
+        // when
+        cache.startBackgroundRefresh();
+        cache.startBackgroundRefresh();
+
+        // then
+        verify(scheduler, times(1)).scheduleWithFixedDelay(any(Runnable.class), eq(30000L), eq(30000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(cache.isRefreshingInBackground(), is(true));
+    }
+
+    @Test
+    public void shouldStopBackgroundRefreshAfterLastUser() {
+        // given
+        cache.startBackgroundRefresh();
+        cache.startBackgroundRefresh();
+
+        // when
+        cache.stopBackgroundRefresh();
+
+        // then
+        assertThat(cache.isRefreshingInBackground(), is(true));
+
+        // when
+        cache.stopBackgroundRefresh();
+
+        // then
+        assertThat(cache.isRefreshingInBackground(), is(false));
+    }
+
+    @Test
+    public void shouldNotCompeteWithBackgroundRefresh() {
+        // given
+        cache.get();
+        cache.startBackgroundRefresh();
+
+        // when
+        nanoTime.addAndGet(Duration.ofSeconds(31).toNanos());
+        cache.get();
+
+        // then
+        assertThat(loadCount.get(), is(1));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
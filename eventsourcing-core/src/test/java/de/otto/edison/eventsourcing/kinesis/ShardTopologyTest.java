@@ -0,0 +1,108 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import static java.util.Collections.emptySet;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardTopologyTest {
+
+    @Test
+    public void shouldReturnOpenShards() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard1", null, null, false),
+                someShard("shard2", "shard1", null, true)));
+
+        // when / then
+        assertThat(topology.getShardIds(), contains("shard1", "shard2"));
+        assertThat(topology.getOpenShardIds(), contains("shard2"));
+        assertThat(topology.isClosed("shard1"), is(true));
+        assertThat(topology.isClosed("shard2"), is(false));
+    }
+
+    @Test
+    public void shouldReturnParentsOfMergedShard() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard1", null, null, false),
+                someShard("shard2", null, null, false),
+                someShard("shard3", "shard1", "shard2", true)));
+
+        // when / then
+        assertThat(topology.parentsOf("shard3"), containsInAnyOrder("shard1", "shard2"));
+    }
+
+    @Test
+    public void shouldIgnoreExpiredParents() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard2", "shard1", null, true)));
+
+        // when / then
+        assertThat(topology.parentsOf("shard2"), is(empty()));
+        assertThat(topology.readyToConsume(emptySet(), emptySet()), contains("shard2"));
+    }
+
+    @Test
+    public void shouldOnlyReturnShardsWithFinishedParents() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard1", null, null, false),
+                someShard("shard2", null, null, false),
+                someShard("shard3", "shard1", null, true),
+                someShard("shard4", "shard1", null, true),
+                someShard("shard5", "shard2", null, true)));
+
+        // when / then
+        assertThat(topology.readyToConsume(emptySet(), emptySet()), contains("shard1", "shard2"));
+        assertThat(topology.readyToConsume(ImmutableSet.of("shard1"), ImmutableSet.of("shard2")), contains("shard3", "shard4"));
+    }
+
+    @Test
+    public void shouldWaitForBothParentsOfMergedShard() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard1", null, null, false),
+                someShard("shard2", null, null, false),
+                someShard("shard3", "shard1", "shard2", true)));
+
+        // when / then
+        assertThat(topology.readyToConsume(ImmutableSet.of("shard1"), ImmutableSet.of("shard2")), is(empty()));
+        assertThat(topology.readyToConsume(ImmutableSet.of("shard1", "shard2"), emptySet()), contains("shard3"));
+    }
+
+    @Test
+    public void shouldReturnAllAncestors() {
+        // given
+        ShardTopology topology = new ShardTopology(ImmutableList.of(
+                someShard("shard1", null, null, false),
+                someShard("shard2", "shard1", null, false),
+                someShard("shard3", "shard1", null, true),
+                someShard("shard4", "shard2", null, true)));
+
+        // when / then
+        assertThat(topology.ancestorsOf(ImmutableSet.of("shard4")), containsInAnyOrder("shard1", "shard2"));
+        assertThat(topology.ancestorsOf(ImmutableSet.of("unknownShard")), is(empty()));
+    }
+
+    private Shard someShard(String shardId, String parentShardId, String adjacentParentShardId, boolean open) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .adjacentParentShardId(adjacentParentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(open ? null : "1111")
+                        .build())
+                .build();
+    }
+}
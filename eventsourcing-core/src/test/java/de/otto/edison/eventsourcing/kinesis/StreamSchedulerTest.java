@@ -0,0 +1,385 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.otto.edison.eventsourcing.kinesis.StreamScheduler.QUEUED_METRIC;
+import static de.otto.edison.eventsourcing.kinesis.StreamScheduler.TASKS_METRIC;
+import static de.otto.edison.eventsourcing.kinesis.StreamScheduler.WAIT_METRIC;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StreamSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StreamScheduler scheduler;
+
+    @After
+    public void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldExecuteTasksOfStream() throws Exception {
+        // given
+        scheduler = new StreamScheduler(2, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(10);
+
+        // when
+        for (int i = 0; i < 10; ++i) {
+            scheduler.forStream("someStream").execute(executed::countDown);
+        }
+
+        // then
+        assertThat(executed.await(5, SECONDS), is(true));
+        assertThat(scheduler.queuedTasks("someStream"), is(0));
+    }
+
+    @Test
+    public void shouldReturnSameExecutorForSameStream() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+
+        // then
+        assertThat(scheduler.forStream("someStream"), is(sameInstance(scheduler.forStream("someStream"))));
+    }
+
+    @Test
+    public void shouldAlternateBetweenStreams() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        List<String> executed = synchronizedList(new ArrayList<>());
+        CountDownLatch workerBlocked = new CountDownLatch(1);
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        CountDownLatch allExecuted = new CountDownLatch(7);
+        ScheduledExecutorService busyStream = scheduler.forStream("busyStream");
+        ScheduledExecutorService otherStream = scheduler.forStream("otherStream");
+        busyStream.execute(() -> { workerBlocked.countDown(); await(blockWorker); });
+        workerBlocked.await(5, SECONDS);
+
+        // when
+        for (int i = 0; i < 5; ++i) {
+            busyStream.execute(() -> { executed.add("busy"); allExecuted.countDown(); });
+        }
+        for (int i = 0; i < 2; ++i) {
+            otherStream.execute(() -> { executed.add("other"); allExecuted.countDown(); });
+        }
+        blockWorker.countDown();
+
+        // then
+        assertThat(allExecuted.await(5, SECONDS), is(true));
+        assertThat(executed, contains("busy", "other", "busy", "other", "busy", "busy", "busy"));
+    }
+
+    @Test
+    public void shouldExecuteDelayedTasks() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(1);
+        long startNanos = System.nanoTime();
+
+        // when
+        scheduler.forStream("someStream").schedule(executed::countDown, 50, MILLISECONDS);
+
+        // then
+        assertThat(executed.await(5, SECONDS), is(true));
+        assertThat(System.nanoTime() - startNanos, is(greaterThanOrEqualTo(MILLISECONDS.toNanos(50))));
+    }
+
+    @Test
+    public void shouldPublishMetricsPerStream() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(3);
+
+        // when
+        for (int i = 0; i < 3; ++i) {
+            scheduler.forStream("someStream").execute(executed::countDown);
+        }
+        executed.await(5, SECONDS);
+        scheduler.forStream("someStream").shutdown();
+        scheduler.forStream("someStream").awaitTermination(5, SECONDS);
+
+        // then
+        assertThat(meterRegistry.get(TASKS_METRIC).tag("stream", "someStream").timer().count(), is(3L));
+        assertThat(meterRegistry.get(WAIT_METRIC).tag("stream", "someStream").timer().count(), is(3L));
+        assertThat(meterRegistry.get(QUEUED_METRIC).tag("stream", "someStream").gauge().value(), is(0.0));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectTasksAfterShutdownOfStream() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        scheduler.forStream("someStream").shutdown();
+
+        // when
+        scheduler.forStream("someStream").execute(() -> {});
+    }
+
+    @Test
+    public void shouldContinueAfterFailedTask() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        List<String> executed = synchronizedList(new ArrayList<>());
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+
+        // when
+        stream.execute(() -> { executed.add("failing"); throw new IllegalStateException("boom"); });
+        stream.execute(() -> executed.add("next"));
+        stream.shutdown();
+
+        // then
+        assertThat(stream.awaitTermination(5, SECONDS), is(true));
+        assertThat(executed, contains("failing", "next"));
+    }
+
+    @Test
+    public void shouldContinueAfterTaskThrowingError() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        List<String> executed = synchronizedList(new ArrayList<>());
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+
+        // when
+        stream.execute(() -> { executed.add("failing"); throw new AssertionError("boom"); });
+        stream.execute(() -> executed.add("next"));
+        stream.shutdown();
+
+        // then
+        assertThat(stream.awaitTermination(5, SECONDS), is(true));
+        assertThat(executed, contains("failing", "next"));
+    }
+
+    @Test
+    public void shouldContinueAfterTaskInterruptingItsWorker() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(1);
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+
+        // when
+        stream.execute(() -> Thread.currentThread().interrupt());
+        stream.execute(executed::countDown);
+
+        // then
+        assertThat(executed.await(5, SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldAwaitRunningTaskOnTermination() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+        stream.execute(() -> { running.countDown(); await(blockWorker); });
+        running.await(5, SECONDS);
+
+        // when
+        stream.shutdown();
+
+        // then
+        assertThat(stream.awaitTermination(10, MILLISECONDS), is(false));
+        blockWorker.countDown();
+        assertThat(stream.awaitTermination(5, SECONDS), is(true));
+        assertThat(stream.isTerminated(), is(true));
+    }
+
+    @Test
+    public void shouldCompleteFutureOfDelayedCallable() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+
+        // when
+        ScheduledFuture<String> future = scheduler.forStream("someStream").schedule(() -> "someResult", 10, MILLISECONDS);
+
+        // then
+        assertThat(future.get(5, SECONDS), is("someResult"));
+        assertThat(future.isDone(), is(true));
+    }
+
+    @Test
+    public void shouldFailFutureOfFailedDelayedCallable() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        ScheduledFuture<String> future = scheduler.forStream("someStream").schedule(() -> { throw new IOException("boom"); }, 10, MILLISECONDS);
+
+        try {
+            // when
+            future.get(5, SECONDS);
+            fail("expected ExecutionException");
+        } catch (final ExecutionException e) {
+            // then
+            assertThat(e.getCause(), is(instanceOf(IOException.class)));
+        }
+    }
+
+    @Test
+    public void shouldNotExecuteCancelledDelayedTask() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+        List<String> executed = synchronizedList(new ArrayList<>());
+        ScheduledFuture<?> future = stream.schedule(() -> executed.add("cancelled"), 50, MILLISECONDS);
+
+        // when
+        boolean cancelled = future.cancel(false);
+        stream.schedule(() -> executed.add("later"), 100, MILLISECONDS).get(5, SECONDS);
+
+        // then
+        assertThat(cancelled, is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(executed, contains("later"));
+    }
+
+    @Test
+    public void shouldExecuteTasksAtFixedRateUntilCancelled() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(3);
+        AtomicInteger executions = new AtomicInteger();
+
+        // when
+        ScheduledFuture<?> future = scheduler.forStream("someStream").scheduleAtFixedRate(() -> {
+            executions.incrementAndGet();
+            executed.countDown();
+        }, 0, 10, MILLISECONDS);
+
+        // then
+        assertThat(executed.await(5, SECONDS), is(true));
+        assertThat(future.cancel(false), is(true));
+        scheduler.forStream("someStream").submit(() -> {}).get(5, SECONDS);
+        int executionsAfterCancel = executions.get();
+        scheduler.forStream("someStream").schedule(() -> {}, 50, MILLISECONDS).get(5, SECONDS);
+        assertThat(executions.get(), is(executionsAfterCancel));
+    }
+
+    @Test
+    public void shouldExecuteTasksWithFixedDelayWithoutOverlapping() throws Exception {
+        // given
+        scheduler = new StreamScheduler(4, meterRegistry);
+        CountDownLatch executed = new CountDownLatch(5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // when
+        ScheduledFuture<?> future = scheduler.forStream("someStream").scheduleWithFixedDelay(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            running.decrementAndGet();
+            executed.countDown();
+        }, 0, 1, MILLISECONDS);
+
+        // then
+        assertThat(executed.await(5, SECONDS), is(true));
+        future.cancel(false);
+        assertThat(maxRunning.get(), is(1));
+    }
+
+    @Test
+    public void shouldStopPeriodicTaskAfterFailure() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        AtomicInteger executions = new AtomicInteger();
+
+        // when
+        ScheduledFuture<?> future = scheduler.forStream("someStream").scheduleAtFixedRate(() -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException("boom");
+        }, 0, 1, MILLISECONDS);
+
+        // then
+        try {
+            future.get(5, SECONDS);
+            fail("expected ExecutionException");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        scheduler.forStream("someStream").schedule(() -> {}, 20, MILLISECONDS).get(5, SECONDS);
+        assertThat(executions.get(), is(1));
+    }
+
+    @Test
+    public void shouldCancelDelayedTasksOnShutdownOfStream() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+        ScheduledFuture<?> future = stream.schedule(() -> {}, 10, MILLISECONDS);
+
+        // when
+        stream.shutdown();
+
+        // then
+        try {
+            future.get(5, SECONDS);
+            fail("expected CancellationException");
+        } catch (final CancellationException e) {
+            assertThat(future.isCancelled(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldCancelDelayedTasksOnShutdown() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        ScheduledFuture<?> delayed = scheduler.forStream("someStream").schedule(() -> {}, 1, SECONDS);
+        ScheduledFuture<?> periodic = scheduler.forStream("otherStream").scheduleWithFixedDelay(() -> {}, 1, 1, SECONDS);
+
+        // when
+        scheduler.shutdown();
+
+        // then
+        assertThat(delayed.isCancelled(), is(true));
+        assertThat(periodic.isCancelled(), is(true));
+    }
+
+    @Test
+    public void shouldCancelQueuedTasksOnShutdown() throws Exception {
+        // given
+        scheduler = new StreamScheduler(1, meterRegistry);
+        ScheduledExecutorService stream = scheduler.forStream("someStream");
+        CountDownLatch workerBlocked = new CountDownLatch(1);
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        stream.execute(() -> { workerBlocked.countDown(); await(blockWorker); });
+        workerBlocked.await(5, SECONDS);
+        Future<?> queued = stream.submit(() -> {});
+
+        // when
+        scheduler.shutdown();
+        blockWorker.countDown();
+
+        // then
+        assertThat(queued.isCancelled(), is(true));
+        assertThat(scheduler.queuedTasks("someStream"), is(0));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
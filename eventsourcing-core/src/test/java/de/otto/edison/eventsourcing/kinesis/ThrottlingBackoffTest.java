@@ -0,0 +1,52 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ThrottlingBackoffTest {
+
+    @Test
+    public void shouldDoubleBackoffUpToMaximum() {
+        // given
+        ThrottlingBackoff backoff = new ThrottlingBackoff(Duration.ofMillis(100), Duration.ofMillis(300));
+
+        // when
+        long first = backoff.next().toMillis();
+        long second = backoff.next().toMillis();
+        long third = backoff.next().toMillis();
+        long fourth = backoff.next().toMillis();
+
+        // then
+        assertThat(first, is(between(50, 100)));
+        assertThat(second, is(between(100, 200)));
+        assertThat(third, is(between(150, 300)));
+        assertThat(fourth, is(between(150, 300)));
+    }
+
+    @Test
+    public void shouldResetBackoff() {
+        // given
+        ThrottlingBackoff backoff = new ThrottlingBackoff(Duration.ofMillis(100), Duration.ofSeconds(10));
+        backoff.next();
+        backoff.next();
+        backoff.next();
+
+        // when
+        backoff.reset();
+
+        // then
+        assertThat(backoff.next().toMillis(), is(between(50, 100)));
+    }
+
+    private static Matcher<Long> between(long min, long max) {
+        return both(greaterThanOrEqualTo(min)).and(lessThanOrEqualTo(max));
+    }
+}
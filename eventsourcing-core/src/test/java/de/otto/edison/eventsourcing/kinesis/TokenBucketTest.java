@@ -0,0 +1,76 @@
+package de.otto.edison.eventsourcing.kinesis;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TokenBucketTest {
+
+    private final AtomicLong nanoClock = new AtomicLong(0);
+
+    @Test
+    public void shouldNotWaitForFirstToken() {
+        // given
+        TokenBucket tokenBucket = new TokenBucket(5.0, 1, nanoClock::get);
+
+        // when
+        long waitNanos = tokenBucket.reserve();
+
+        // then
+        assertThat(waitNanos, is(0L));
+    }
+
+    @Test
+    public void shouldWaitUntilNextTokenIsRefilled() {
+        // given
+        TokenBucket tokenBucket = new TokenBucket(5.0, 1, nanoClock::get);
+        tokenBucket.reserve();
+        nanoClock.addAndGet(MILLISECONDS.toNanos(50));
+
+        // when
+        long waitNanos = tokenBucket.reserve();
+
+        // then
+        assertThat(waitNanos, is(MILLISECONDS.toNanos(150)));
+    }
+
+    @Test
+    public void shouldQueueReservationsWithoutToken() {
+        // given
+        TokenBucket tokenBucket = new TokenBucket(5.0, 1, nanoClock::get);
+        tokenBucket.reserve();
+        tokenBucket.reserve();
+
+        // when
+        long waitNanos = tokenBucket.reserve();
+
+        // then
+        assertThat(waitNanos, is(MILLISECONDS.toNanos(400)));
+    }
+
+    @Test
+    public void shouldNotStoreMoreTokensThanCapacity() {
+        // given
+        TokenBucket tokenBucket = new TokenBucket(5.0, 2, nanoClock::get);
+        nanoClock.addAndGet(MILLISECONDS.toNanos(10_000));
+
+        // when
+        long first = tokenBucket.reserve();
+        long second = tokenBucket.reserve();
+        long third = tokenBucket.reserve();
+
+        // then
+        assertThat(first, is(0L));
+        assertThat(second, is(0L));
+        assertThat(third, is(MILLISECONDS.toNanos(200)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveRate() {
+        new TokenBucket(0, 1);
+    }
+}
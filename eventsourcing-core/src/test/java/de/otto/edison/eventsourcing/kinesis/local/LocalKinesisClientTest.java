@@ -0,0 +1,395 @@
+package de.otto.edison.eventsourcing.kinesis.local;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
+import de.otto.edison.eventsourcing.kinesis.KinesisEventSource;
+import de.otto.edison.eventsourcing.kinesis.KinesisStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import software.amazon.awssdk.services.kinesis.model.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.synchronizedList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LocalKinesisClientTest {
+
+    private MutableClock clock;
+    private LocalKinesisClient testee;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new MutableClock(Instant.parse("2018-06-01T10:00:00Z"));
+        testee = new LocalKinesisClient(clock);
+    }
+
+    @Test
+    public void shouldCreateShardsCoveringAllHashKeys() throws Exception {
+        // given
+        createStream("someStream", 4);
+
+        // when
+        List<Shard> shards = shardsOf("someStream");
+
+        // then
+        assertThat(shards.stream().map(Shard::shardId).collect(toList()),
+                contains("shardId-000000000000", "shardId-000000000001", "shardId-000000000002", "shardId-000000000003"));
+        assertThat(shards.get(0).hashKeyRange().startingHashKey(), is("0"));
+        assertThat(shards.get(3).hashKeyRange().endingHashKey(), is(BigInteger.valueOf(2).pow(128).subtract(BigInteger.ONE).toString()));
+        for (int i = 1; i < shards.size(); ++i) {
+            assertThat(new BigInteger(shards.get(i).hashKeyRange().startingHashKey()),
+                    is(new BigInteger(shards.get(i - 1).hashKeyRange().endingHashKey()).add(BigInteger.ONE)));
+        }
+    }
+
+    @Test
+    public void shouldPutAndGetRecordsWithIncreasingSequenceNumbers() throws Exception {
+        // given
+        createStream("someStream", 1);
+        String first = put("someStream", "key", "first").sequenceNumber();
+        String second = put("someStream", "key", "second").sequenceNumber();
+
+        // when
+        GetRecordsResponse response = getRecords(iterator("someStream", "shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null));
+
+        // then
+        assertThat(dataOf(response), contains("first", "second"));
+        assertThat(first.length(), is(56));
+        assertThat(new BigInteger(second), is(greaterThan(new BigInteger(first))));
+        assertThat(response.records().get(0).sequenceNumber(), is(first));
+        assertThat(response.millisBehindLatest(), is(0L));
+    }
+
+    @Test
+    public void shouldAssignRecordsToShardsByHashOfPartitionKey() throws Exception {
+        // given
+        createStream("someStream", 2);
+
+        // when
+        String shardOfKey = put("someStream", "someKey", "a").shardId();
+
+        // then
+        assertThat(put("someStream", "someKey", "b").shardId(), is(shardOfKey));
+        assertThat(testee.putRecord(PutRecordRequest.builder()
+                .streamName("someStream")
+                .partitionKey("someKey")
+                .explicitHashKey("0")
+                .data(ByteBuffer.wrap("c".getBytes(StandardCharsets.UTF_8)))
+                .build()).shardId(), is("shardId-000000000000"));
+    }
+
+    @Test
+    public void shouldStartAtAndAfterSequenceNumber() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "first");
+        String second = put("someStream", "key", "second").sequenceNumber();
+        put("someStream", "key", "third");
+
+        // when
+        GetRecordsResponse at = getRecords(iterator("someStream", "shardId-000000000000", ShardIteratorType.AT_SEQUENCE_NUMBER, second, null));
+        GetRecordsResponse after = getRecords(iterator("someStream", "shardId-000000000000", ShardIteratorType.AFTER_SEQUENCE_NUMBER, second, null));
+
+        // then
+        assertThat(dataOf(at), contains("second", "third"));
+        assertThat(dataOf(after), contains("third"));
+    }
+
+    @Test
+    public void shouldStartAtTimestamp() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "old");
+        clock.advance(Duration.ofMinutes(1));
+        put("someStream", "key", "new");
+
+        // when
+        GetRecordsResponse response = getRecords(iterator("someStream", "shardId-000000000000", ShardIteratorType.AT_TIMESTAMP, null, clock.instant()));
+
+        // then
+        assertThat(dataOf(response), contains("new"));
+    }
+
+    @Test
+    public void shouldStartAtLatest() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "old");
+        String iterator = iterator("someStream", "shardId-000000000000", ShardIteratorType.LATEST, null, null);
+        put("someStream", "key", "new");
+
+        // when
+        GetRecordsResponse response = getRecords(iterator);
+
+        // then
+        assertThat(dataOf(response), contains("new"));
+    }
+
+    @Test(expected = InvalidArgumentException.class)
+    public void shouldRejectSequenceNumberOfOtherShard() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "first");
+
+        // when
+        iterator("someStream", "shardId-000000000000", ShardIteratorType.AFTER_SEQUENCE_NUMBER, "4711", null);
+    }
+
+    @Test
+    public void shouldReturnMillisBehindLatestIfRecordsAreLeft() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "first");
+        put("someStream", "key", "second");
+        clock.advance(Duration.ofSeconds(3));
+
+        // when
+        GetRecordsResponse response = testee.getRecords(GetRecordsRequest.builder()
+                .shardIterator(iterator("someStream", "shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null))
+                .limit(1)
+                .build());
+        GetRecordsResponse next = getRecords(response.nextShardIterator());
+
+        // then
+        assertThat(dataOf(response), contains("first"));
+        assertThat(response.millisBehindLatest(), is(3000L));
+        assertThat(dataOf(next), contains("second"));
+        assertThat(next.millisBehindLatest(), is(0L));
+    }
+
+    @Test
+    public void shouldSplitShardAndCloseParent() throws Exception {
+        // given
+        createStream("someStream", 1);
+        put("someStream", "key", "before split");
+        String iterator = iterator("someStream", "shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null);
+
+        // when
+        testee.splitShard(SplitShardRequest.builder()
+                .streamName("someStream")
+                .shardToSplit("shardId-000000000000")
+                .newStartingHashKey(BigInteger.valueOf(2).pow(127).toString())
+                .build());
+        put("someStream", "key", "after split");
+
+        // then
+        List<Shard> shards = shardsOf("someStream");
+        assertThat(shards.get(0).sequenceNumberRange().endingSequenceNumber(), is(notNullValue()));
+        assertThat(shards.get(1).parentShardId(), is("shardId-000000000000"));
+        assertThat(shards.get(2).parentShardId(), is("shardId-000000000000"));
+        GetRecordsResponse parentResponse = getRecords(iterator);
+        assertThat(dataOf(parentResponse), contains("before split"));
+        assertThat(parentResponse.nextShardIterator(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldMergeAdjacentShards() throws Exception {
+        // given
+        createStream("someStream", 2);
+
+        // when
+        testee.mergeShards(MergeShardsRequest.builder()
+                .streamName("someStream")
+                .shardToMerge("shardId-000000000001")
+                .adjacentShardToMerge("shardId-000000000000")
+                .build());
+
+        // then
+        Shard child = shardsOf("someStream").get(2);
+        assertThat(child.parentShardId(), is("shardId-000000000001"));
+        assertThat(child.adjacentParentShardId(), is("shardId-000000000000"));
+        assertThat(child.hashKeyRange().startingHashKey(), is("0"));
+        assertThat(put("someStream", "key", "merged").shardId(), is("shardId-000000000002"));
+    }
+
+    @Test
+    public void shouldPageShardsOfDescribeStream() throws Exception {
+        // given
+        createStream("someStream", 3);
+
+        // when
+        StreamDescription firstPage = testee.describeStream(DescribeStreamRequest.builder().streamName("someStream").limit(2).build()).streamDescription();
+        StreamDescription secondPage = testee.describeStream(DescribeStreamRequest.builder()
+                .streamName("someStream")
+                .limit(2)
+                .exclusiveStartShardId("shardId-000000000001")
+                .build()).streamDescription();
+
+        // then
+        assertThat(firstPage.shards().size(), is(2));
+        assertThat(firstPage.hasMoreShards(), is(true));
+        assertThat(secondPage.shards().stream().map(Shard::shardId).collect(toList()), contains("shardId-000000000002"));
+        assertThat(secondPage.hasMoreShards(), is(false));
+    }
+
+    @Test(expected = ProvisionedThroughputExceededException.class)
+    public void shouldThrottleGetRecordsAboveRateLimit() throws Exception {
+        // given
+        testee.withShardRateLimits(2, 0);
+        createStream("someStream", 1);
+        String iterator = iterator("someStream", "shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null);
+        getRecords(iterator);
+        getRecords(iterator);
+
+        // when
+        getRecords(iterator);
+    }
+
+    @Test
+    public void shouldRejectPutRecordsAboveRateLimit() throws Exception {
+        // given
+        testee.withShardRateLimits(0, 2);
+        createStream("someStream", 1);
+        List<PutRecordsRequestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            entries.add(PutRecordsRequestEntry.builder().partitionKey("key").data(ByteBuffer.wrap(new byte[]{(byte) i})).build());
+        }
+
+        // when
+        PutRecordsResponse response = testee.putRecords(PutRecordsRequest.builder().streamName("someStream").records(entries).build());
+
+        // then
+        assertThat(response.failedRecordCount(), is(1));
+        assertThat(response.records().get(2).errorCode(), is("ProvisionedThroughputExceededException"));
+
+        // when
+        clock.advance(Duration.ofSeconds(1));
+
+        // then
+        assertThat(testee.putRecords(PutRecordsRequest.builder().streamName("someStream").records(entries.get(2)).build()).failedRecordCount(), is(0));
+    }
+
+    @Test(expected = ExpiredIteratorException.class)
+    public void shouldExpireShardIterators() throws Exception {
+        // given
+        createStream("someStream", 1);
+        String iterator = iterator("someStream", "shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null);
+        clock.advance(Duration.ofMinutes(6));
+
+        // when
+        getRecords(iterator);
+    }
+
+    @Test
+    public void shouldBeConsumedByKinesisEventSourceAcrossSplit() throws Exception {
+        // given
+        LocalKinesisClient kinesisClient = new LocalKinesisClient();
+        kinesisClient.createStream(CreateStreamRequest.builder().streamName("someStream").shardCount(2).build());
+        ObjectMapper objectMapper = new ObjectMapper();
+        KinesisStream kinesisStream = new KinesisStream(kinesisClient, "someStream", objectMapper, Encryptors.noOpText());
+        for (int i = 0; i < 10; ++i) {
+            kinesisStream.sendEvent("key-" + i, "before-" + i);
+        }
+        kinesisClient.splitShard(SplitShardRequest.builder()
+                .streamName("someStream")
+                .shardToSplit("shardId-000000000000")
+                .newStartingHashKey(BigInteger.valueOf(2).pow(126).toString())
+                .build());
+        for (int i = 0; i < 10; ++i) {
+            kinesisStream.sendEvent("key-" + i, "after-" + i);
+        }
+        KinesisEventSource<String> eventSource = new KinesisEventSource<>(String.class, objectMapper, kinesisStream, Encryptors.noOpText());
+        List<String> payloads = synchronizedList(new ArrayList<>());
+
+        // when
+        StreamPosition position = eventSource.consumeUntilCaughtUp(StreamPosition.of(), Duration.ZERO, event -> payloads.add(event.payload()));
+
+        // then
+        assertThat(payloads.size(), is(20));
+        for (int i = 0; i < 10; ++i) {
+            final String before = "\"before-" + i + "\"";
+            final String after = "\"after-" + i + "\"";
+            assertThat(payloads.indexOf(before) < payloads.indexOf(after), is(true));
+        }
+        assertThat(position.shards(), containsInAnyOrder(shardsOf(kinesisClient).toArray()));
+    }
+
+    private void createStream(String streamName, int shardCount) {
+        testee.createStream(CreateStreamRequest.builder().streamName(streamName).shardCount(shardCount).build());
+    }
+
+    private List<Shard> shardsOf(String streamName) {
+        return testee.describeStream(DescribeStreamRequest.builder().streamName(streamName).build()).streamDescription().shards();
+    }
+
+    private static Set<String> shardsOf(LocalKinesisClient kinesisClient) {
+        return kinesisClient.describeStream(DescribeStreamRequest.builder().streamName("someStream").build()).streamDescription().shards().stream()
+                .map(Shard::shardId)
+                .collect(Collectors.toSet());
+    }
+
+    private PutRecordResponse put(String streamName, String key, String data) {
+        return testee.putRecord(PutRecordRequest.builder()
+                .streamName(streamName)
+                .partitionKey(key)
+                .data(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)))
+                .build());
+    }
+
+    private String iterator(String streamName, String shardId, ShardIteratorType type, String sequenceNumber, Instant timestamp) {
+        return testee.getShardIterator(GetShardIteratorRequest.builder()
+                .streamName(streamName)
+                .shardId(shardId)
+                .shardIteratorType(type)
+                .startingSequenceNumber(sequenceNumber)
+                .timestamp(timestamp)
+                .build()).shardIterator();
+    }
+
+    private GetRecordsResponse getRecords(String shardIterator) {
+        return testee.getRecords(GetRecordsRequest.builder().shardIterator(shardIterator).build());
+    }
+
+    private static List<String> dataOf(GetRecordsResponse response) {
+        return response.records().stream()
+                .map(record -> StandardCharsets.UTF_8.decode(record.data()).toString())
+                .collect(toList());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
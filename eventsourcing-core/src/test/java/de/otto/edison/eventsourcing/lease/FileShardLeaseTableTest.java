@@ -0,0 +1,89 @@
+package de.otto.edison.eventsourcing.lease;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FileShardLeaseTableTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldCreateAndReadLeases() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath().resolve("leases"));
+        ShardLease lease = new ShardLease("shard1", "someOwner", Instant.ofEpochMilli(4711), "42:3", "otherOwner", 0);
+
+        // when
+        Optional<ShardLease> created = leaseTable.update("someStream", lease);
+
+        // then
+        assertThat(created, is(Optional.of(lease.withVersion(1))));
+        assertThat(leaseTable.leasesOf("someStream"), contains(lease.withVersion(1)));
+    }
+
+    @Test
+    public void shouldUpdateLeaseHavingCurrentVersion() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        ShardLease created = leaseTable.update("someStream", ShardLease.newLease("shard1")).get();
+
+        // when
+        Optional<ShardLease> updated = leaseTable.update("someStream", created.withCheckpoint("4711"));
+
+        // then
+        assertThat(updated.get().getCheckpoint(), is("4711"));
+        assertThat(updated.get().getVersion(), is(2L));
+    }
+
+    @Test
+    public void shouldRejectUpdateOfOutdatedLease() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        ShardLease created = leaseTable.update("someStream", ShardLease.newLease("shard1")).get();
+        leaseTable.update("someStream", created.ownedBy("someOwner", Instant.now()));
+
+        // when
+        Optional<ShardLease> updated = leaseTable.update("someStream", created.ownedBy("otherOwner", Instant.now()));
+
+        // then
+        assertThat(updated, is(Optional.empty()));
+        assertThat(leaseTable.leasesOf("someStream").get(0).getOwner(), is("someOwner"));
+    }
+
+    @Test
+    public void shouldNotCreateExistingLeaseTwice() throws Exception {
+        // given
+        FileShardLeaseTable leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        leaseTable.update("someStream", ShardLease.newLease("shard1").ownedBy("someOwner", Instant.now()));
+
+        // when
+        Optional<ShardLease> created = leaseTable.update("someStream", ShardLease.newLease("shard1").ownedBy("otherOwner", Instant.now()));
+
+        // then
+        assertThat(created, is(Optional.empty()));
+    }
+
+    @Test
+    public void shouldShareLeasesBetweenTablesUsingSameDirectory() throws Exception {
+        // given
+        FileShardLeaseTable someTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        FileShardLeaseTable otherTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+
+        // when
+        someTable.update("someStream", ShardLease.newLease("shard1"));
+
+        // then
+        assertThat(otherTable.leasesOf("someStream").size(), is(1));
+        assertThat(otherTable.leasesOf("otherStream"), is(empty()));
+    }
+}
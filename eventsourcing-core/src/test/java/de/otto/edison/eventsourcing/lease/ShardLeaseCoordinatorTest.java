@@ -0,0 +1,191 @@
+package de.otto.edison.eventsourcing.lease;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.lease.ShardLeaseCoordinator.LeaseAssignment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Collections.emptyMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardLeaseCoordinatorTest {
+
+    private static final List<String> SHARDS = ImmutableList.of("shard1", "shard2", "shard3", "shard4");
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(30);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Clock clock = mock(Clock.class);
+    private ShardLeaseTable leaseTable;
+    private ShardLeaseCoordinator someInstance;
+    private ShardLeaseCoordinator otherInstance;
+
+    @Before
+    public void setUp() throws Exception {
+        when(clock.instant()).thenReturn(Instant.parse("2018-06-01T10:00:00Z"));
+        leaseTable = new FileShardLeaseTable(temporaryFolder.getRoot().toPath());
+        someInstance = new ShardLeaseCoordinator(leaseTable, "someInstance", LEASE_DURATION, clock);
+        otherInstance = new ShardLeaseCoordinator(leaseTable, "otherInstance", LEASE_DURATION, clock);
+    }
+
+    @Test
+    public void shouldAcquireAllShardsIfAlone() throws Exception {
+        // when
+        LeaseAssignment assignment = someInstance.coordinate("someStream", SHARDS, emptyMap());
+
+        // then
+        assertThat(assignment.ownedShards(), containsInAnyOrder("shard1", "shard2", "shard3", "shard4"));
+        assertThat(assignment.handoffShards(), is(empty()));
+    }
+
+    @Test
+    public void shouldRenewLeasesUsingPositionsAsCheckpoints() throws Exception {
+        // given
+        someInstance.coordinate("someStream", SHARDS, emptyMap());
+        when(clock.instant()).thenReturn(Instant.parse("2018-06-01T10:00:10Z"));
+
+        // when
+        LeaseAssignment assignment = someInstance.coordinate("someStream", SHARDS, ImmutableMap.of("shard1", "4711"));
+
+        // then
+        assertThat(assignment.checkpointOf("shard1"), is(Optional.of("4711")));
+        ShardLease lease = leaseOf("shard1");
+        assertThat(lease.getCheckpoint(), is("4711"));
+        assertThat(lease.getExpiresAt(), is(Instant.parse("2018-06-01T10:00:40Z")));
+    }
+
+    @Test
+    public void shouldRetryRenewalOfLeaseModifiedConcurrently() throws Exception {
+        // given
+        someInstance.coordinate("someStream", ImmutableList.of("shard1"), emptyMap());
+        ShardLeaseTable requestingLeaseTable = new ShardLeaseTable() {
+            private boolean requested = false;
+
+            @Override
+            public List<ShardLease> leasesOf(String streamName) {
+                return leaseTable.leasesOf(streamName);
+            }
+
+            @Override
+            public Optional<ShardLease> update(String streamName, ShardLease lease) {
+                if (!requested) {
+                    requested = true;
+                    leaseTable.update(streamName, leaseOf(lease.getShardId()).withHandoffTo("otherInstance"));
+                }
+                return leaseTable.update(streamName, lease);
+            }
+        };
+        someInstance = new ShardLeaseCoordinator(requestingLeaseTable, "someInstance", LEASE_DURATION, clock);
+
+        // when
+        LeaseAssignment assignment = someInstance.coordinate("someStream", ImmutableList.of("shard1"), ImmutableMap.of("shard1", "4711"));
+
+        // then
+        assertThat(assignment.ownedShards(), contains("shard1"));
+        assertThat(assignment.handoffShards(), contains("shard1"));
+        assertThat(leaseOf("shard1").getCheckpoint(), is("4711"));
+        assertThat(leaseOf("shard1").getHandoffTo(), is("otherInstance"));
+    }
+
+    @Test
+    public void shouldNotAcquireLeasesOfOtherInstance() throws Exception {
+        // given
+        someInstance.coordinate("someStream", ImmutableList.of("shard1"), emptyMap());
+
+        // when
+        LeaseAssignment assignment = otherInstance.coordinate("someStream", ImmutableList.of("shard1"), emptyMap());
+
+        // then
+        assertThat(assignment.ownedShards(), is(empty()));
+        assertThat(leaseOf("shard1").getHandoffTo(), is((String) null));
+    }
+
+    @Test
+    public void shouldAcquireExpiredLeasesAtLastCheckpoint() throws Exception {
+        // given
+        someInstance.coordinate("someStream", SHARDS, emptyMap());
+        someInstance.coordinate("someStream", SHARDS, ImmutableMap.of("shard2", "42"));
+        when(clock.instant()).thenReturn(Instant.parse("2018-06-01T10:01:00Z"));
+
+        // when
+        LeaseAssignment assignment = otherInstance.coordinate("someStream", SHARDS, emptyMap());
+
+        // then
+        assertThat(assignment.ownedShards(), containsInAnyOrder("shard1", "shard2", "shard3", "shard4"));
+        assertThat(assignment.checkpointOf("shard2"), is(Optional.of("42")));
+    }
+
+    @Test
+    public void shouldBalanceShardsByHandingOffRequestedLeases() throws Exception {
+        // given
+        someInstance.coordinate("someStream", SHARDS, emptyMap());
+
+        // when
+        for (int round = 0; round < 4; ++round) {
+            otherInstance.coordinate("someStream", SHARDS, emptyMap());
+            final LeaseAssignment assignment = someInstance.coordinate("someStream", SHARDS, emptyMap());
+            assignment.handoffShards().forEach(shardId -> someInstance.release("someStream", shardId, "position-" + shardId));
+        }
+
+        // then
+        LeaseAssignment someAssignment = someInstance.coordinate("someStream", SHARDS, emptyMap());
+        LeaseAssignment otherAssignment = otherInstance.coordinate("someStream", SHARDS, emptyMap());
+        assertThat(someAssignment.ownedShards().size(), is(2));
+        assertThat(otherAssignment.ownedShards().size(), is(2));
+        assertThat(someAssignment.handoffShards(), is(empty()));
+        otherAssignment.ownedShards().forEach(shardId ->
+                assertThat(otherAssignment.checkpointOf(shardId), is(Optional.of("position-" + shardId))));
+    }
+
+    @Test
+    public void shouldReleaseLeaseWithoutOwnerIfNotRequested() throws Exception {
+        // given
+        someInstance.coordinate("someStream", ImmutableList.of("shard1"), emptyMap());
+
+        // when
+        someInstance.release("someStream", "shard1", "4711");
+
+        // then
+        assertThat(leaseOf("shard1").getOwner(), is((String) null));
+        LeaseAssignment assignment = otherInstance.coordinate("someStream", ImmutableList.of("shard1"), emptyMap());
+        assertThat(assignment.ownedShards(), contains("shard1"));
+        assertThat(assignment.checkpointOf("shard1"), is(Optional.of("4711")));
+    }
+
+    @Test
+    public void shouldReportFinishedShards() throws Exception {
+        // given
+        someInstance.coordinate("someStream", ImmutableList.of("parent"), emptyMap());
+        someInstance.finish("someStream", "parent");
+
+        // when
+        LeaseAssignment assignment = otherInstance.coordinate("someStream", ImmutableList.of("parent", "child"), emptyMap());
+
+        // then
+        assertThat(assignment.finishedShards(), contains("parent"));
+        assertThat(assignment.ownedShards(), contains("child"));
+    }
+
+    private ShardLease leaseOf(String shardId) {
+        return leaseTable.leasesOf("someStream").stream()
+                .filter(lease -> lease.getShardId().equals(shardId))
+                .findFirst()
+                .get();
+    }
+}
@@ -1,5 +1,7 @@
 package de.otto.edison.eventsourcing.s3;
 
+import com.google.common.collect.ImmutableMap;
+import de.otto.edison.eventsourcing.consumer.StreamPosition;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -8,8 +10,11 @@ import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Optional;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -72,4 +77,18 @@ public class SnapshotEventSourceTest {
         verify(snapshotReadService).deleteOlderSnapshots("streamName");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldReturnStreamPositionWithTimestampOfSnapshot() throws Exception {
+        // given
+        when(snapshotReadService.downloadLatestSnapshot(any())).thenReturn(Optional.of(new File("/tmp/streamName-snapshot-2018-06-01T10-00Z-1234.json.zip")));
+        when(snapshotConsumerService.consumeSnapshot(any(),any(),any(),any(),any())).thenReturn(StreamPosition.of(ImmutableMap.of("shard1", "42")));
+
+        // when
+        SnapshotStreamPosition streamPosition = snapshotEventSource.consumeAll((event) -> {});
+
+        // then
+        assertThat(streamPosition.positionOf("shard1"), is("42"));
+        assertThat(streamPosition.timestamp(), is(Optional.of(Instant.parse("2018-06-01T10:00:00Z"))));
+    }
+
+}
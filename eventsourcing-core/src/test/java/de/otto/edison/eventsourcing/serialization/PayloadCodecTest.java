@@ -0,0 +1,125 @@
+package de.otto.edison.eventsourcing.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.edison.eventsourcing.compression.Lz4CompressionCodec;
+import de.otto.edison.eventsourcing.compression.PayloadCompressor;
+import de.otto.edison.eventsourcing.encryption.Base64EncodingTextEncryptor;
+import org.junit.Test;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PayloadCodecTest {
+
+    private static final Map<String, String> PAYLOAD = Collections.singletonMap("value", "Hällo Wörld");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldEncodeSameBytesAsTextEncryptor() throws Exception {
+        // given
+        TextEncryptor textEncryptor = Encryptors.noOpText();
+        PayloadCodec codec = new PayloadCodec(objectMapper, textEncryptor, PayloadCompressor.none());
+
+        // when
+        byte[] encoded = codec.encode(PAYLOAD);
+
+        // then
+        assertThat(new String(encoded, UTF_8), is(textEncryptor.encrypt(objectMapper.writeValueAsString(PAYLOAD))));
+    }
+
+    @Test
+    public void shouldDecodePayloadEncryptedByTextEncryptor() throws Exception {
+        // given
+        Base64EncodingTextEncryptor textEncryptor = new Base64EncodingTextEncryptor(Encryptors.standard("test", "deadbeef"));
+        PayloadCodec codec = new PayloadCodec(objectMapper, textEncryptor, PayloadCompressor.none());
+        byte[] encrypted = textEncryptor.encrypt(objectMapper.writeValueAsString(PAYLOAD)).getBytes(UTF_8);
+
+        // when
+        Map<?, ?> decoded = codec.decode(encrypted, Map.class);
+
+        // then
+        assertThat(decoded, is(PAYLOAD));
+    }
+
+    @Test
+    public void shouldDecodeSameValueAsStringBasedDecodingWithoutEncryption() throws Exception {
+        assertDecodesSameValueAsStringBasedDecoding(Encryptors.noOpText());
+    }
+
+    @Test
+    public void shouldDecodeSameValueAsStringBasedDecodingWithEncryption() throws Exception {
+        assertDecodesSameValueAsStringBasedDecoding(new Base64EncodingTextEncryptor(Encryptors.standard("test", "deadbeef")));
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeCompressedPayload() throws Exception {
+        // given
+        PayloadCodec codec = new PayloadCodec(objectMapper, Encryptors.noOpText(), new PayloadCompressor(new Lz4CompressionCodec(), 0));
+        Map<String, String> payload = Collections.singletonMap("value", "banana banana banana banana banana banana banana");
+
+        // when
+        byte[] encoded = codec.encode(payload);
+
+        // then
+        assertThat(new String(encoded, UTF_8), startsWith("\u0000L"));
+        assertThat(codec.decode(ByteBuffer.wrap(encoded), Map.class), is(payload));
+    }
+
+    @Test
+    public void shouldDecodeRemainingBytesOfBufferWithoutChangingItsPosition() throws Exception {
+        // given
+        PayloadCodec codec = new PayloadCodec(objectMapper, Encryptors.noOpText(), PayloadCompressor.none());
+        ByteBuffer buffer = ByteBuffer.wrap("xx{\"value\":\"Hällo Wörld\"}".getBytes(UTF_8)).asReadOnlyBuffer();
+        buffer.position(2);
+
+        // when
+        Map<?, ?> decoded = codec.decode(buffer, Map.class);
+
+        // then
+        assertThat(decoded, is(PAYLOAD));
+        assertThat(buffer.position(), is(2));
+    }
+
+    @Test
+    public void shouldReturnStringPayloadsWithoutParsing() throws Exception {
+        // given
+        PayloadCodec codec = new PayloadCodec(objectMapper, Encryptors.noOpText(), PayloadCompressor.none());
+
+        // when
+        String decoded = codec.decode("not json".getBytes(UTF_8), String.class);
+
+        // then
+        assertThat(decoded, is("not json"));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void shouldFailToDecodeInvalidJson() throws Exception {
+        // given
+        PayloadCodec codec = new PayloadCodec(objectMapper, Encryptors.noOpText(), PayloadCompressor.none());
+
+        // when
+        codec.decode("not json".getBytes(UTF_8), Map.class);
+    }
+
+    private void assertDecodesSameValueAsStringBasedDecoding(TextEncryptor textEncryptor) throws Exception {
+        // given
+        PayloadCodec codec = new PayloadCodec(objectMapper, textEncryptor, PayloadCompressor.none());
+        String encrypted = textEncryptor.encrypt("{\"values\":[{\"name\":\"bänänä\",\"price\":42},{\"name\":\"\\u00e4\\\"\",\"price\":-1.5e3},{}]}");
+
+        // when
+        Map<?, ?> decoded = codec.decode(ByteBuffer.wrap(encrypted.getBytes(UTF_8)).asReadOnlyBuffer(), Map.class);
+
+        // then
+        assertThat(decoded, is(objectMapper.readValue(textEncryptor.decrypt(encrypted), Map.class)));
+    }
+}
@@ -30,7 +30,7 @@ public class ExampleProducer {
     private void produceSampleData() {
         try {
             ProductPayload productPayload = generatePayload();
-            kinesisStream.sendEvent(productPayload.getId(), productPayload);
+            kinesisStream.sendEventBatched(productPayload.getId(), productPayload);
         } catch (Exception e) {
             LOG.error("error occured while sending an event", e);
         }